@@ -2,27 +2,42 @@ package com.hubspot.blazar.base;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.hubspot.blazar.github.GitHubProtos.Commit;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 public class CommitInfo {
   private final Commit current;
   private final Optional<Commit> previous;
   private final List<Commit> newCommits;
   private final boolean truncated;
+  private final Optional<Set<String>> affectedPaths;
 
+  public CommitInfo(Commit current, Optional<Commit> previous, List<Commit> newCommits, boolean truncated) {
+    this(current, previous, newCommits, truncated, Optional.absent());
+  }
+
+  /**
+   * @param newCommits the most recent of the new commits, there may be more of them
+   * @param truncated whether we couldn't tell all the paths that changed since the previous commit
+   * @param affectedPaths all the paths that changed since the previous commit, absent for builds that predate it or
+   *                      when truncated
+   */
   @JsonCreator
   public CommitInfo(@JsonProperty("current") Commit current,
                     @JsonProperty("previous") Optional<Commit> previous,
                     @JsonProperty("newCommits") List<Commit> newCommits,
-                    @JsonProperty("truncated") boolean truncated) {
+                    @JsonProperty("truncated") boolean truncated,
+                    @JsonProperty("affectedPaths") Optional<Set<String>> affectedPaths) {
     this.current = current;
     this.previous = previous;
     this.newCommits = newCommits;
     this.truncated = truncated;
+    this.affectedPaths = MoreObjects.firstNonNull(affectedPaths, Optional.<Set<String>>absent());
   }
 
   public Commit getCurrent() {
@@ -41,6 +56,10 @@ public class CommitInfo {
     return truncated;
   }
 
+  public Optional<Set<String>> getAffectedPaths() {
+    return affectedPaths;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -55,11 +74,12 @@ public class CommitInfo {
     return Objects.equals(truncated, that.truncated) &&
         Objects.equals(current, that.current) &&
         Objects.equals(previous, that.previous) &&
-        Objects.equals(newCommits, that.newCommits);
+        Objects.equals(newCommits, that.newCommits) &&
+        Objects.equals(affectedPaths, that.affectedPaths);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(current, previous, newCommits, truncated);
+    return Objects.hash(current, previous, newCommits, truncated, affectedPaths);
   }
 }
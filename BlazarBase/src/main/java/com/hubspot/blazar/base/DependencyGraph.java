@@ -1,29 +1,93 @@
 package com.hubspot.blazar.base;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
+/**
+ * Immutable once constructed. Besides the transitive reduction and topological sort that make up its json form
+ * the graph keeps an int-indexed copy of its edges in both directions and the position of every vertex in the
+ * topological sort, so that walking the graph upstream or downstream is linear in the size of the graph.
+ */
 public class DependencyGraph {
   private final Map<Integer, Set<Integer>> transitiveReduction;
   private final List<Integer> topologicalSort;
 
+  private final Map<Integer, Integer> vertexIndex;
+  private final int[] vertices;
+  private final int[][] outgoing;
+  private final int[][] incoming;
+  private final int[] topologicalPosition;
+
   @JsonCreator
   public DependencyGraph(@JsonProperty("transitiveReduction") Map<Integer, Set<Integer>> transitiveReduction,
                          @JsonProperty("topologicalSort") List<Integer> topologicalSort) {
-    this.transitiveReduction = transitiveReduction;
-    this.topologicalSort = topologicalSort;
+    this.transitiveReduction = copyOf(MoreObjects.firstNonNull(transitiveReduction, Collections.<Integer, Set<Integer>>emptyMap()));
+    this.topologicalSort = Collections.unmodifiableList(Lists.newArrayList(MoreObjects.firstNonNull(topologicalSort, Collections.<Integer>emptyList())));
+
+    this.vertexIndex = new HashMap<>();
+    for (Entry<Integer, Set<Integer>> edgeSet : this.transitiveReduction.entrySet()) {
+      indexVertex(edgeSet.getKey());
+      edgeSet.getValue().forEach(this::indexVertex);
+    }
+    this.topologicalSort.forEach(this::indexVertex);
+
+    int vertexCount = vertexIndex.size();
+    this.vertices = new int[vertexCount];
+    for (Entry<Integer, Integer> vertex : vertexIndex.entrySet()) {
+      vertices[vertex.getValue()] = vertex.getKey();
+    }
+
+    int[] inDegree = new int[vertexCount];
+    this.outgoing = new int[vertexCount][];
+    Arrays.fill(outgoing, new int[0]);
+    for (Entry<Integer, Set<Integer>> edgeSet : this.transitiveReduction.entrySet()) {
+      int[] targets = new int[edgeSet.getValue().size()];
+      int i = 0;
+      for (int target : edgeSet.getValue()) {
+        targets[i++] = vertexIndex.get(target);
+        inDegree[vertexIndex.get(target)]++;
+      }
+      outgoing[vertexIndex.get(edgeSet.getKey())] = targets;
+    }
+
+    this.incoming = new int[vertexCount][];
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      incoming[vertex] = new int[inDegree[vertex]];
+    }
+    int[] filled = new int[vertexCount];
+    for (int source = 0; source < vertexCount; source++) {
+      for (int target : outgoing[source]) {
+        incoming[target][filled[target]++] = source;
+      }
+    }
+
+    // vertices missing from the topological sort get -1, i.e. they are ordered first like List.indexOf would do
+    this.topologicalPosition = new int[vertexCount];
+    Arrays.fill(topologicalPosition, -1);
+    for (int position = 0; position < this.topologicalSort.size(); position++) {
+      int vertex = vertexIndex.get(this.topologicalSort.get(position));
+      if (topologicalPosition[vertex] == -1) {
+        topologicalPosition[vertex] = position;
+      }
+    }
   }
 
   public Map<Integer, Set<Integer>> getTransitiveReduction() {
@@ -35,63 +99,86 @@ public class DependencyGraph {
   }
 
   public Set<Integer> incomingVertices(int moduleId) {
-    Set<Integer> incomingVertices = new HashSet<>();
-    for (Entry<Integer, Set<Integer>> edgeSet : transitiveReduction.entrySet()) {
-      int source = edgeSet.getKey();
-      for (int target : edgeSet.getValue()) {
-        if (target == moduleId) {
-          incomingVertices.add(source);
-        }
-      }
+    Integer vertex = vertexIndex.get(moduleId);
+    if (vertex == null) {
+      return Collections.emptySet();
     }
 
-    return incomingVertices;
+    ImmutableSet.Builder<Integer> incomingVertices = ImmutableSet.builder();
+    for (int source : incoming[vertex]) {
+      incomingVertices.add(vertices[source]);
+    }
+
+    return incomingVertices.build();
   }
 
   public Set<Integer> getAllUpstreamNodes(int moduleId) {
-    Stack<Integer> stack = new Stack<>();
-    stack.push(moduleId);
-    Set<Integer> seen = new HashSet<>();
-    Set<Integer> allIncoming = new HashSet<>();
-    while (!stack.empty()) {
-      int i = stack.pop();
-      if (seen.contains(i)) {
-        continue;
-      }
-      seen.add(i);
-      Set<Integer> incoming = incomingVertices(i);
-      allIncoming.addAll(incoming);
-      for (int each : incoming) {
-        if (seen.contains(each)) {
-          continue;
-        }
-        stack.add(each);
-      }
-    }
-    return allIncoming;
+    return walk(moduleId, incoming);
   }
 
   public List<Module> orderByTopologicalSort(Set<Module> modules) {
     List<Module> moduleList = Lists.newArrayList(modules);
-    // We want to sort by their build order (the topo-sort), so we compare their indices in that list
-    moduleList.sort(Comparator.comparingInt(module -> topologicalSort.indexOf(module.getId().get())));
+    // We want to sort by their build order (the topo-sort), so we compare their positions in that list
+    moduleList.sort(Comparator.comparingInt(module -> topologicalPosition(module.getId().get())));
     return ImmutableList.copyOf(moduleList);
   }
 
   public Set<Integer> reachableVertices(int moduleId) {
-    Set<Integer> reachableVertices = new HashSet<>();
-    for (int vertex : outgoingVertices(moduleId)) {
-      reachableVertices.add(vertex);
-      reachableVertices.addAll(reachableVertices(vertex));
-    }
-
-    return reachableVertices;
+    return walk(moduleId, outgoing);
   }
 
   public Set<Integer> outgoingVertices(int moduleId) {
     return MoreObjects.firstNonNull(transitiveReduction.get(moduleId), Collections.<Integer>emptySet());
   }
 
+  private int topologicalPosition(int moduleId) {
+    Integer vertex = vertexIndex.get(moduleId);
+    return vertex == null ? -1 : topologicalPosition[vertex];
+  }
+
+  /**
+   * @return every vertex that can be reached from moduleId following the given edges, each vertex is visited once
+   */
+  private Set<Integer> walk(int moduleId, int[][] edges) {
+    Set<Integer> reached = new HashSet<>();
+    Integer start = vertexIndex.get(moduleId);
+    if (start == null) {
+      return reached;
+    }
+
+    boolean[] visited = new boolean[vertices.length];
+    Deque<Integer> stack = new ArrayDeque<>();
+    visited[start] = true;
+    stack.push(start);
+    while (!stack.isEmpty()) {
+      for (int next : edges[stack.pop()]) {
+        reached.add(vertices[next]);
+        if (!visited[next]) {
+          visited[next] = true;
+          stack.push(next);
+        }
+      }
+    }
+
+    return reached;
+  }
+
+  private void indexVertex(int moduleId) {
+    if (!vertexIndex.containsKey(moduleId)) {
+      vertexIndex.put(moduleId, vertexIndex.size());
+    }
+  }
+
+  private static Map<Integer, Set<Integer>> copyOf(Map<Integer, Set<Integer>> transitiveReduction) {
+    Map<Integer, Set<Integer>> copy = new LinkedHashMap<>();
+    for (Entry<Integer, Set<Integer>> edgeSet : transitiveReduction.entrySet()) {
+      Set<Integer> targets = MoreObjects.firstNonNull(edgeSet.getValue(), Collections.<Integer>emptySet());
+      copy.put(edgeSet.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(targets)));
+    }
+
+    return Collections.unmodifiableMap(copy);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
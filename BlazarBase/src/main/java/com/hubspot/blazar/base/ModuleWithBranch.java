@@ -0,0 +1,49 @@
+package com.hubspot.blazar.base;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A module together with the branch it belongs to, so that both can be loaded for many modules in one query.
+ */
+public class ModuleWithBranch {
+  private final Module module;
+  private final GitInfo gitInfo;
+
+  @JsonCreator
+  public ModuleWithBranch(@JsonProperty("module") Module module,
+                          @JsonProperty("gitInfo") GitInfo gitInfo) {
+    this.module = module;
+    this.gitInfo = gitInfo;
+  }
+
+  public Module getModule() {
+    return module;
+  }
+
+  public GitInfo getGitInfo() {
+    return gitInfo;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ModuleWithBranch that = (ModuleWithBranch) o;
+    return Objects.equals(module, that.module) &&
+        Objects.equals(gitInfo, that.gitInfo);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(module, gitInfo);
+  }
+}
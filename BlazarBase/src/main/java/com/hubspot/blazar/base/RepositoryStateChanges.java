@@ -0,0 +1,77 @@
+package com.hubspot.blazar.base;
+
+import java.util.Objects;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The repository states that changed since a given version of the state cache. Clients keep the version and ask for
+ * the changes since that version on their next poll instead of fetching all the states again. If the cache can't tell
+ * the changes since that version, e.g. because it came from another instance, the response is complete and clients
+ * replace all the states they have.
+ */
+public class RepositoryStateChanges {
+  private final long version;
+  private final Set<RepositoryState> changed;
+  private final Set<Integer> removed;
+  private final boolean complete;
+
+  @JsonCreator
+  public RepositoryStateChanges(@JsonProperty("version") long version,
+                                @JsonProperty("changed") Set<RepositoryState> changed,
+                                @JsonProperty("removed") Set<Integer> removed,
+                                @JsonProperty("complete") boolean complete) {
+    this.version = version;
+    this.changed = MoreObjects.firstNonNull(changed, ImmutableSet.<RepositoryState>of());
+    this.removed = MoreObjects.firstNonNull(removed, ImmutableSet.<Integer>of());
+    this.complete = complete;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Set<RepositoryState> getChanged() {
+    return changed;
+  }
+
+  /**
+   * @return the ids of the branches that were deactivated since the given version
+   */
+  public Set<Integer> getRemoved() {
+    return removed;
+  }
+
+  /**
+   * @return whether the changed states are all the states there are
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    RepositoryStateChanges that = (RepositoryStateChanges) o;
+    return version == that.version &&
+        complete == that.complete &&
+        Objects.equals(changed, that.changed) &&
+        Objects.equals(removed, that.removed);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(version, changed, removed, complete);
+  }
+}
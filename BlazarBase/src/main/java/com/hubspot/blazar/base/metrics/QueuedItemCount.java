@@ -17,6 +17,14 @@ public class QueuedItemCount {
     this.count = count;
   }
 
+  public String getClassName() {
+    return className;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,93 @@
+package com.hubspot.blazar.base.notifications;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.RepositoryBuild;
+
+/**
+ * Asks a notifier (e.g. the GitHub commit status or a Slack notification) to report that a repository build reached a
+ * state. Notifications are queued like build events but delivered separately, so sending them never holds up the
+ * build itself.
+ */
+public class RepositoryBuildNotification {
+  private final String notifier;
+  private final long repositoryBuildId;
+  private final int branchId;
+  private final RepositoryBuild.State state;
+  private final Optional<String> sha;
+
+  public RepositoryBuildNotification(String notifier, RepositoryBuild build) {
+    this(notifier, build.getId().get(), build.getBranchId(), build.getState(), build.getSha());
+  }
+
+  @JsonCreator
+  public RepositoryBuildNotification(@JsonProperty("notifier") String notifier,
+                                     @JsonProperty("repositoryBuildId") long repositoryBuildId,
+                                     @JsonProperty("branchId") int branchId,
+                                     @JsonProperty("state") RepositoryBuild.State state,
+                                     @JsonProperty("sha") Optional<String> sha) {
+    this.notifier = notifier;
+    this.repositoryBuildId = repositoryBuildId;
+    this.branchId = branchId;
+    this.state = state;
+    this.sha = MoreObjects.firstNonNull(sha, Optional.<String>absent());
+  }
+
+  public String getNotifier() {
+    return notifier;
+  }
+
+  public long getRepositoryBuildId() {
+    return repositoryBuildId;
+  }
+
+  public int getBranchId() {
+    return branchId;
+  }
+
+  public RepositoryBuild.State getState() {
+    return state;
+  }
+
+  public Optional<String> getSha() {
+    return sha;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    RepositoryBuildNotification that = (RepositoryBuildNotification) o;
+    return repositoryBuildId == that.repositoryBuildId &&
+        branchId == that.branchId &&
+        Objects.equals(notifier, that.notifier) &&
+        state == that.state &&
+        Objects.equals(sha, that.sha);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(notifier, repositoryBuildId, branchId, state, sha);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("notifier", notifier)
+        .add("repositoryBuildId", repositoryBuildId)
+        .add("branchId", branchId)
+        .add("state", state)
+        .add("sha", sha)
+        .toString();
+  }
+}
@@ -0,0 +1,89 @@
+package com.hubspot.blazar.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.SetMultimap;
+import com.hubspot.blazar.data.util.GraphUtils;
+
+/**
+ * Compares {@link GraphUtils} with the algorithms it replaced ({@link LegacyGraphUtils}). The legacy reduction is
+ * cubic in the number of modules so it only runs on the smaller graphs, on the larger ones it doesn't finish.
+ *
+ * java -jar BlazarBenchmarks/target/benchmarks.jar GraphUtilsBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphUtilsBenchmark {
+  private static final long SEED = 42;
+
+  @State(Scope.Benchmark)
+  public static class Graphs {
+    @Param({"1000", "5000", "10000", "50000"})
+    int moduleCount;
+
+    SetMultimap<Integer, Integer> graph;
+    SetMultimap<Integer, Integer> transitiveReduction;
+
+    @Setup
+    public void setup() {
+      graph = SyntheticGraphs.moduleGraph(moduleCount, SEED);
+      transitiveReduction = GraphUtils.INSTANCE.transitiveReduction(graph);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class SmallGraphs {
+    @Param({"250", "1000"})
+    int moduleCount;
+
+    SetMultimap<Integer, Integer> graph;
+    SetMultimap<Integer, Integer> transitiveReduction;
+
+    @Setup
+    public void setup() {
+      graph = SyntheticGraphs.moduleGraph(moduleCount, SEED);
+      transitiveReduction = GraphUtils.INSTANCE.transitiveReduction(graph);
+    }
+  }
+
+  @Benchmark
+  public SetMultimap<Integer, Integer> transitiveReduction(Graphs graphs) {
+    return GraphUtils.INSTANCE.transitiveReduction(graphs.graph);
+  }
+
+  @Benchmark
+  public List<Integer> topologicalSort(Graphs graphs) {
+    return GraphUtils.INSTANCE.topologicalSort(graphs.transitiveReduction);
+  }
+
+  @Benchmark
+  public SetMultimap<Integer, Integer> transitiveReductionOfSmallGraphs(SmallGraphs graphs) {
+    return GraphUtils.INSTANCE.transitiveReduction(graphs.graph);
+  }
+
+  @Benchmark
+  public SetMultimap<Integer, Integer> legacyTransitiveReductionOfSmallGraphs(SmallGraphs graphs) {
+    return LegacyGraphUtils.INSTANCE.transitiveReduction(graphs.graph);
+  }
+
+  @Benchmark
+  public List<Integer> legacyTopologicalSort(Graphs graphs) {
+    return LegacyGraphUtils.INSTANCE.topologicalSort(graphs.transitiveReduction);
+  }
+}
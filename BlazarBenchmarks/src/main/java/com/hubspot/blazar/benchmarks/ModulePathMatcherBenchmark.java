@@ -0,0 +1,74 @@
+package com.hubspot.blazar.benchmarks;
+
+import java.nio.file.FileSystems;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hubspot.blazar.base.Module;
+import com.hubspot.blazar.data.util.ModulePathMatcher;
+
+/**
+ * Compares finding the modules affected by a push with {@link ModulePathMatcher}, including building it, against
+ * matching every changed path with the glob of every module like the repository build launcher used to.
+ *
+ * java -jar BlazarBenchmarks/target/benchmarks.jar ModulePathMatcherBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModulePathMatcherBenchmark {
+  private static final long SEED = 42;
+
+  @State(Scope.Benchmark)
+  public static class Push {
+    @Param({"50", "300", "1000"})
+    int moduleCount;
+
+    @Param({"10", "500"})
+    int pathCount;
+
+    List<Module> modules;
+    List<String> paths;
+
+    @Setup
+    public void setup() {
+      modules = SyntheticRepositories.monorepoModules(moduleCount, SEED);
+      paths = SyntheticRepositories.changedPaths(modules, pathCount, SEED);
+    }
+  }
+
+  @Benchmark
+  public Set<Module> pathMatcher(Push push) {
+    return new ModulePathMatcher(push.modules).getModulesContainingAny(push.paths);
+  }
+
+  @Benchmark
+  public Set<Module> globPerModule(Push push) {
+    Set<Module> affected = new HashSet<>();
+    for (String path : push.paths) {
+      for (Module module : push.modules) {
+        if (module.contains(FileSystems.getDefault().getPath(path))) {
+          affected.add(module);
+        }
+      }
+    }
+
+    return affected;
+  }
+}
@@ -0,0 +1,35 @@
+package com.hubspot.blazar.benchmarks;
+
+import java.util.Random;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+final class SyntheticGraphs {
+
+  private SyntheticGraphs() {}
+
+  /**
+   * A dependency graph shaped like the module graph of an org: every module depends on a few earlier modules,
+   * mostly ones created shortly before it (the same repo or team) and now and then an old, widely used one.
+   * Edges go from the upstream module to the module that depends on it, like the graphs DependenciesService builds.
+   */
+  static SetMultimap<Integer, Integer> moduleGraph(int moduleCount, long seed) {
+    Random random = new Random(seed);
+    SetMultimap<Integer, Integer> graph = HashMultimap.create();
+    for (int module = 1; module < moduleCount; module++) {
+      int dependencies = 1 + random.nextInt(5);
+      for (int i = 0; i < dependencies; i++) {
+        int upstream;
+        if (random.nextInt(4) == 0) {
+          upstream = random.nextInt(Math.min(module, 50));
+        } else {
+          upstream = Math.max(0, module - 1 - random.nextInt(Math.min(module, 200)));
+        }
+        graph.put(upstream, module);
+      }
+    }
+
+    return graph;
+  }
+}
@@ -0,0 +1,59 @@
+package com.hubspot.blazar.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.Module;
+
+final class SyntheticRepositories {
+
+  private SyntheticRepositories() {}
+
+  /**
+   * The modules of a monorepo laid out like ours: a few top level groups of projects, every project has a parent
+   * module at its root and a handful of sub-modules. Globs are the ones module discovery produces, i.e. the folder of
+   * the build file followed by **, and the repo has a root module as well.
+   */
+  static List<Module> monorepoModules(int moduleCount, long seed) {
+    Random random = new Random(seed);
+    List<Module> modules = new ArrayList<>();
+    modules.add(module(0, "**"));
+    int project = 0;
+    while (modules.size() < moduleCount) {
+      String projectName = "Project" + project++;
+      String projectFolder = "group" + random.nextInt(20) + "/" + projectName + "/";
+      modules.add(module(modules.size(), projectFolder + "**"));
+      int subModules = 1 + random.nextInt(6);
+      for (int i = 0; i < subModules && modules.size() < moduleCount; i++) {
+        modules.add(module(modules.size(), projectFolder + projectName + "Module" + i + "/**"));
+      }
+    }
+
+    return modules;
+  }
+
+  /**
+   * Files changed by a push: mostly sources deep inside a few modules, plus some files at the root of projects.
+   */
+  static List<String> changedPaths(List<Module> modules, int pathCount, long seed) {
+    Random random = new Random(seed);
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < pathCount; i++) {
+      String glob = modules.get(1 + random.nextInt(modules.size() - 1)).getGlob();
+      String folder = glob.substring(0, glob.length() - "**".length());
+      if (random.nextInt(10) == 0) {
+        paths.add(folder + "pom.xml");
+      } else {
+        paths.add(folder + "src/main/java/com/hubspot/package" + random.nextInt(10) + "/Class" + i + ".java");
+      }
+    }
+
+    return paths;
+  }
+
+  private static Module module(int id, String glob) {
+    return new Module(Optional.of(id), "module-" + id, "maven", glob.replace("**", "pom.xml"), glob, true, 0, 0, Optional.absent());
+  }
+}
@@ -11,6 +11,7 @@ import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.hubspot.blazar.data.dao.BranchDao;
 import com.hubspot.blazar.data.dao.BranchSettingsDao;
+import com.hubspot.blazar.data.dao.DeadQueueItemDao;
 import com.hubspot.blazar.data.dao.DependenciesDao;
 import com.hubspot.blazar.data.dao.InstantMessageConfigurationDao;
 import com.hubspot.blazar.data.dao.InterProjectBuildDao;
@@ -52,6 +53,7 @@ public class BlazarDaoModule extends AbstractModule {
     bindDao(binder(), BranchSettingsDao.class);
     bindDao(binder(), MetricsDao.class);
     bindDao(binder(), QueueItemDao.class);
+    bindDao(binder(), DeadQueueItemDao.class);
   }
 
   private static <T> void bindDao(Binder binder, Class<T> type) {
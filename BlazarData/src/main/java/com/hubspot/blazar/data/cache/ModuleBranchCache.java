@@ -0,0 +1,132 @@
+package com.hubspot.blazar.data.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.base.ModuleWithBranch;
+import com.hubspot.blazar.data.dao.BranchDao;
+import com.hubspot.blazar.data.dao.ModuleDao;
+
+/**
+ * Caches the branch of every module, which never changes, and the branches themselves for the code paths that look
+ * them up in loops. Branches are invalidated by the {@link com.hubspot.blazar.data.service.BranchService} when they are
+ * updated or deactivated, and expire after a while in case another instance changed them.
+ *
+ * Both lookups have batch variants that load everything that isn't cached in one query.
+ */
+@Singleton
+public class ModuleBranchCache {
+  private static final long MAX_MODULES = 100_000;
+  private static final long MAX_BRANCHES = 10_000;
+  private static final long BRANCH_EXPIRATION_MINUTES = 10;
+
+  private final ModuleDao moduleDao;
+  private final BranchDao branchDao;
+  private final Cache<Integer, Integer> branchIdsByModule;
+  private final Cache<Integer, GitInfo> branches;
+
+  @Inject
+  public ModuleBranchCache(ModuleDao moduleDao, BranchDao branchDao, MetricRegistry metricRegistry) {
+    this.moduleDao = moduleDao;
+    this.branchDao = branchDao;
+    this.branchIdsByModule = CacheBuilder.newBuilder().maximumSize(MAX_MODULES).recordStats().build();
+    this.branches = CacheBuilder.newBuilder()
+        .maximumSize(MAX_BRANCHES)
+        .expireAfterWrite(BRANCH_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+        .recordStats()
+        .build();
+
+    registerGauges(metricRegistry, "branchIdsByModule", branchIdsByModule);
+    registerGauges(metricRegistry, "branches", branches);
+  }
+
+  public int getBranchId(int moduleId) {
+    Integer branchId = getBranchIds(Collections.singleton(moduleId)).get(moduleId);
+    if (branchId == null) {
+      throw new IllegalArgumentException(String.format("Module %d does not exist", moduleId));
+    }
+    return branchId;
+  }
+
+  /**
+   * @return the branch id of every module that exists
+   */
+  public Map<Integer, Integer> getBranchIds(Set<Integer> moduleIds) {
+    Map<Integer, Integer> branchIds = new HashMap<>(branchIdsByModule.getAllPresent(moduleIds));
+    Set<Integer> missing = ImmutableSet.copyOf(Sets.difference(moduleIds, branchIds.keySet()));
+    if (missing.isEmpty()) {
+      return branchIds;
+    }
+
+    // the branches come with the modules for free, they are probably looked up next
+    for (ModuleWithBranch moduleWithBranch : moduleDao.getWithBranches(missing)) {
+      int moduleId = moduleWithBranch.getModule().getId().get();
+      int branchId = moduleWithBranch.getGitInfo().getId().get();
+      branchIdsByModule.put(moduleId, branchId);
+      branches.put(branchId, moduleWithBranch.getGitInfo());
+      branchIds.put(moduleId, branchId);
+    }
+    return branchIds;
+  }
+
+  public Optional<GitInfo> getBranch(int branchId) {
+    return Optional.fromNullable(getBranches(Collections.singleton(branchId)).get(branchId));
+  }
+
+  /**
+   * @return every branch that exists
+   */
+  public Map<Integer, GitInfo> getBranches(Set<Integer> branchIds) {
+    Map<Integer, GitInfo> found = new HashMap<>(branches.getAllPresent(branchIds));
+    Set<Integer> missing = ImmutableSet.copyOf(Sets.difference(branchIds, found.keySet()));
+    if (missing.isEmpty()) {
+      return found;
+    }
+
+    for (GitInfo gitInfo : branchDao.getByIds(missing)) {
+      branches.put(gitInfo.getId().get(), gitInfo);
+      found.put(gitInfo.getId().get(), gitInfo);
+    }
+    return found;
+  }
+
+  public void invalidateBranch(int branchId) {
+    branches.invalidate(branchId);
+  }
+
+  /**
+   * Only needed when modules are deleted, e.g. when tests truncate the tables between runs.
+   */
+  public void invalidateAll() {
+    branchIdsByModule.invalidateAll();
+    branches.invalidateAll();
+  }
+
+  private static void registerGauges(MetricRegistry metricRegistry, String cacheName, Cache<?, ?> cache) {
+    registerGauge(metricRegistry, cacheName, "size", cache::size);
+    registerGauge(metricRegistry, cacheName, "hitRate", () -> cache.stats().hitRate());
+    registerGauge(metricRegistry, cacheName, "missCount", () -> cache.stats().missCount());
+    registerGauge(metricRegistry, cacheName, "evictionCount", () -> cache.stats().evictionCount());
+  }
+
+  private static void registerGauge(MetricRegistry metricRegistry, String cacheName, String metric, Gauge<?> gauge) {
+    String name = MetricRegistry.name(ModuleBranchCache.class, cacheName, metric);
+    // a new instance replaces the gauges of the previous one, e.g. in tests that share the registry
+    metricRegistry.remove(name);
+    metricRegistry.register(name, gauge);
+  }
+}
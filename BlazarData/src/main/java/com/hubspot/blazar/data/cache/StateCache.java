@@ -1,80 +1,244 @@
 package com.hubspot.blazar.data.cache;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hubspot.blazar.base.RepositoryState;
+import com.hubspot.blazar.base.RepositoryStateChanges;
 import com.hubspot.blazar.data.service.StateService;
 
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Readers get an immutable snapshot of the states of all active branches, they never query mysql or copy the states.
+ * Every snapshot has a version, and remembers the version in which each branch last changed so that clients can ask
+ * for the changes since the version they have seen. The versions of an instance start at a random point, so that a
+ * version from another instance or from before a restart is recognized and answered with all the states instead.
+ *
+ * Once started the cache is refreshed in the background, until then it is refreshed when it is read.
+ */
 @Singleton
-public class StateCache {
+public class StateCache implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(StateCache.class);
+  private static final long REFRESH_INTERVAL_MILLIS = 1000;
+  // the versions stay below 2^53, so that JavaScript clients can hold on to them
+  private static final int VERSION_COUNTER_BITS = 21;
+  private static final int VERSION_START_BITS = 31;
+  // deactivated branches are remembered up to this many, clients that are further behind get all the states
+  private static final int MAX_REMOVED_BRANCHES = 1000;
+
   private final StateService stateService;
-  private final Map<Integer, RepositoryState> cache;
-  private final AtomicLong cacheTimestamp;
-  private final ReadWriteLock lock;
+  private final Lock refreshLock;
+  private volatile Snapshot snapshot;
+  private volatile boolean refreshingInBackground;
+  private ScheduledExecutorService executorService;
 
   @Inject
   public StateCache(StateService stateService) {
     this.stateService = stateService;
-    this.cache = new ConcurrentHashMap<>();
-
-    long maxTime = 0;
-    for (RepositoryState state : stateService.getAllRepositoryStates()) {
-      cache.put(state.getGitInfo().getId().get(), state);
+    this.refreshLock = new ReentrantLock();
+    long firstVersion = ThreadLocalRandom.current().nextLong(1, 1L << VERSION_START_BITS) << VERSION_COUNTER_BITS;
+    this.snapshot = Snapshot.empty(firstVersion).apply(stateService.getAllRepositoryStates());
+  }
 
-      if (state.getGitInfo().getUpdatedTimestamp() > maxTime) {
-        maxTime = state.getGitInfo().getUpdatedTimestamp();
+  @Override
+  public void start() {
+    executorService = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("StateCache-%d").setDaemon(true).build());
+    executorService.scheduleWithFixedDelay(() -> {
+      try {
+        refresh();
+      } catch (Exception e) {
+        LOG.error("Could not refresh the repository states, keeping the current ones", e);
       }
+    }, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    refreshingInBackground = true;
+  }
+
+  @Override
+  public void stop() {
+    refreshingInBackground = false;
+    if (executorService != null) {
+      executorService.shutdownNow();
     }
-    this.cacheTimestamp = new AtomicLong(maxTime);
-    this.lock = new ReentrantReadWriteLock();
   }
 
   public Set<RepositoryState> getAllRepositoryStates() {
-    updateCache();
-
-    Lock readLock = lock.readLock();
-    readLock.lock();
-    try {
-      return new HashSet<>(cache.values());
-    } finally {
-      readLock.unlock();
+    return getSnapshot().states;
+  }
+
+  public long getVersion() {
+    return getSnapshot().version;
+  }
+
+  public RepositoryStateChanges getChangesSince(long version) {
+    return getSnapshot().changesSince(version);
+  }
+
+  private Snapshot getSnapshot() {
+    if (!refreshingInBackground) {
+      refresh();
     }
+
+    return snapshot;
   }
 
-  private void updateCache() {
-    Lock writeLock = lock.writeLock();
-    if (writeLock.tryLock()) {
+  private void refresh() {
+    // readers that find a refresh running keep using the current snapshot instead of waiting for it
+    if (refreshLock.tryLock()) {
       try {
-        Set<RepositoryState> changes = stateService.getChangedRepositoryStates(cacheTimestamp.get());
-
-        long maxTime = cacheTimestamp.get();
-        for (RepositoryState change : changes) {
-          int branchId = change.getGitInfo().getId().get();
-          if (change.getGitInfo().isActive()) {
-            cache.put(branchId, change);
-          } else {
-            cache.remove(branchId);
-          }
-
-          if (change.getGitInfo().getUpdatedTimestamp() > maxTime) {
-            maxTime = change.getGitInfo().getUpdatedTimestamp();
-          }
+        Snapshot current = snapshot;
+        snapshot = current.apply(stateService.getChangedRepositoryStates(current.timestamp));
+      } finally {
+        refreshLock.unlock();
+      }
+    }
+  }
+
+  private static class Snapshot {
+    private final long version;
+    // the oldest version we can tell the changes since, older versions or those of other instances get all the states
+    private final long oldestVersion;
+    // the newest updatedTimestamp of all the branches we have seen
+    private final long timestamp;
+    private final Map<Integer, RepositoryState> statesByBranch;
+    private final Map<Integer, Long> changedVersions;
+    private final Map<Integer, Long> removedVersions;
+    private final Set<RepositoryState> states;
+
+    private Snapshot(long version,
+                     long oldestVersion,
+                     long timestamp,
+                     Map<Integer, RepositoryState> statesByBranch,
+                     Map<Integer, Long> changedVersions,
+                     Map<Integer, Long> removedVersions) {
+      this.version = version;
+      this.oldestVersion = oldestVersion;
+      this.timestamp = timestamp;
+      this.statesByBranch = statesByBranch;
+      this.changedVersions = changedVersions;
+      this.removedVersions = removedVersions;
+      this.states = ImmutableSet.copyOf(statesByBranch.values());
+    }
+
+    private static Snapshot empty(long version) {
+      return new Snapshot(version, version, 0, ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+    }
+
+    /**
+     * @return this snapshot if none of the states differ from the ones we have, otherwise the next version
+     */
+    private Snapshot apply(Set<RepositoryState> changes) {
+      long nextVersion = version + 1;
+      long nextTimestamp = timestamp;
+      Map<Integer, RepositoryState> nextStates = null;
+      Map<Integer, Long> nextChangedVersions = null;
+      Map<Integer, Long> nextRemovedVersions = null;
+
+      for (RepositoryState change : changes) {
+        nextTimestamp = Math.max(nextTimestamp, change.getGitInfo().getUpdatedTimestamp());
+
+        int branchId = change.getGitInfo().getId().get();
+        RepositoryState existing = statesByBranch.get(branchId);
+        boolean active = change.getGitInfo().isActive();
+        if (active ? isSame(change, existing) : existing == null) {
+          continue;
         }
 
-        cacheTimestamp.set(maxTime);
-      } finally {
-        writeLock.unlock();
+        if (nextStates == null) {
+          nextStates = new HashMap<>(statesByBranch);
+          nextChangedVersions = new HashMap<>(changedVersions);
+          nextRemovedVersions = new HashMap<>(removedVersions);
+        }
+
+        if (active) {
+          nextStates.put(branchId, change);
+          nextChangedVersions.put(branchId, nextVersion);
+          nextRemovedVersions.remove(branchId);
+        } else {
+          nextStates.remove(branchId);
+          nextChangedVersions.remove(branchId);
+          nextRemovedVersions.put(branchId, nextVersion);
+        }
+      }
+
+      if (nextStates == null) {
+        return nextTimestamp == timestamp ? this : new Snapshot(version, oldestVersion, nextTimestamp, statesByBranch, changedVersions, removedVersions);
+      }
+
+      long nextOldestVersion = Math.max(oldestVersion, pruneOldest(nextRemovedVersions));
+      return new Snapshot(nextVersion, nextOldestVersion, nextTimestamp, ImmutableMap.copyOf(nextStates),
+          ImmutableMap.copyOf(nextChangedVersions), ImmutableMap.copyOf(nextRemovedVersions));
+    }
+
+    /**
+     * Forgets the oldest removals beyond {@link #MAX_REMOVED_BRANCHES}
+     *
+     * @return the version of the newest removal it forgot, clients that haven't seen it need all the states
+     */
+    private static long pruneOldest(Map<Integer, Long> removedVersions) {
+      int excess = removedVersions.size() - MAX_REMOVED_BRANCHES;
+      if (excess <= 0) {
+        return 0;
       }
+
+      long prunedVersion = Ordering.natural().leastOf(removedVersions.values(), excess).get(excess - 1);
+      Iterator<Long> versions = removedVersions.values().iterator();
+      while (versions.hasNext()) {
+        if (versions.next() <= prunedVersion) {
+          versions.remove();
+        }
+      }
+      return prunedVersion;
+    }
+
+    // the equality of branches ignores their timestamps, which we want to pass on to clients
+    private static boolean isSame(RepositoryState change, RepositoryState existing) {
+      return change.equals(existing) && change.getGitInfo().getUpdatedTimestamp() == existing.getGitInfo().getUpdatedTimestamp();
+    }
+
+    private RepositoryStateChanges changesSince(long sinceVersion) {
+      if (sinceVersion < oldestVersion || sinceVersion > version) {
+        return new RepositoryStateChanges(version, states, ImmutableSet.of(), true);
+      }
+
+      if (sinceVersion == version) {
+        return new RepositoryStateChanges(version, ImmutableSet.of(), ImmutableSet.of(), false);
+      }
+
+      ImmutableSet.Builder<RepositoryState> changed = ImmutableSet.builder();
+      for (Map.Entry<Integer, Long> changedVersion : changedVersions.entrySet()) {
+        if (changedVersion.getValue() > sinceVersion) {
+          changed.add(statesByBranch.get(changedVersion.getKey()));
+        }
+      }
+
+      ImmutableSet.Builder<Integer> removed = ImmutableSet.builder();
+      for (Map.Entry<Integer, Long> removedVersion : removedVersions.entrySet()) {
+        if (removedVersion.getValue() > sinceVersion) {
+          removed.add(removedVersion.getKey());
+        }
+      }
+
+      return new RepositoryStateChanges(version, changed.build(), removed.build(), false);
     }
   }
 }
@@ -7,12 +7,15 @@ import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.SingleValueResult;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.google.common.base.Optional;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.RepositoryBuild;
 import com.hubspot.rosetta.jdbi.BindWithRosetta;
 
+@UseStringTemplate3StatementLocator
 public interface BranchDao {
 
   @SqlQuery("SELECT * FROM branches")
@@ -25,6 +28,9 @@ public interface BranchDao {
   @SqlQuery("SELECT * FROM branches WHERE id = :id")
   Optional<GitInfo> get(@Bind("id") int id);
 
+  @SqlQuery("SELECT * FROM branches WHERE id IN (<ids>)")
+  Set<GitInfo> getByIds(@BindIn("ids") Set<Integer> ids);
+
   @SqlQuery("SELECT * FROM branches WHERE repositoryId = :repositoryId")
   Set<GitInfo> getByRepository(@Bind("repositoryId") int repositoryId);
 
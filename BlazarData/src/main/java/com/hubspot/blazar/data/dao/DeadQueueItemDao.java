@@ -0,0 +1,37 @@
+package com.hubspot.blazar.data.dao;
+
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.SingleValueResult;
+
+import com.google.common.base.Optional;
+import com.hubspot.blazar.data.queue.DeadQueueItem;
+
+public interface DeadQueueItemDao {
+
+  @SqlQuery("SELECT id, type, item, partitionKey, retryCount, " +
+      "UNIX_TIMESTAMP(createdTimestamp) * 1000 AS createdTimestamp, UNIX_TIMESTAMP(deadTimestamp) * 1000 AS deadTimestamp " +
+      "FROM queue_items_dead WHERE id > :lastSeenId ORDER BY id LIMIT :limit")
+  List<DeadQueueItem> getDeadItems(@Bind("lastSeenId") long lastSeenId, @Bind("limit") int limit);
+
+  @SingleValueResult
+  @SqlQuery("SELECT id, type, item, partitionKey, retryCount, " +
+      "UNIX_TIMESTAMP(createdTimestamp) * 1000 AS createdTimestamp, UNIX_TIMESTAMP(deadTimestamp) * 1000 AS deadTimestamp " +
+      "FROM queue_items_dead WHERE id = :id")
+  Optional<DeadQueueItem> getDeadItem(@Bind("id") long id);
+
+  @SqlUpdate("INSERT IGNORE INTO queue_items_dead (id, type, item, partitionKey, retryCount, createdTimestamp) " +
+      "SELECT id, type, item, partitionKey, retryCount, createdTimestamp FROM queue_items WHERE id = :id")
+  int insertFromQueue(@Bind("id") long queueItemId);
+
+  @GetGeneratedKeys
+  @SqlUpdate("INSERT INTO queue_items (type, item, partitionKey) SELECT type, item, partitionKey FROM queue_items_dead WHERE id = :id")
+  long requeue(@Bind("id") long id);
+
+  @SqlUpdate("DELETE FROM queue_items_dead WHERE id = :id")
+  int delete(@Bind("id") long id);
+}
@@ -1,19 +1,22 @@
 package com.hubspot.blazar.data.dao;
 
+import java.util.List;
 import java.util.Set;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.SingleValueResult;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.unstable.BindIn;
 
+import com.google.common.base.Optional;
 import com.hubspot.blazar.base.Dependency;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.ModuleDependency;
-import com.hubspot.blazar.base.ModuleDependency.Source;
 import com.hubspot.blazar.base.graph.Edge;
+import com.hubspot.blazar.data.dependencies.IndexedModule;
 import com.hubspot.rosetta.jdbi.BindWithRosetta;
 
 @UseStringTemplate3StatementLocator
@@ -34,6 +37,47 @@ public interface DependenciesDao {
       ")")
   Set<Edge> getEdges(@Bind("branchId") int branchId, @BindIn("moduleIds") Set<Integer> moduleIds);
 
+  // interProjectBuildOptIn mirrors the branch conditions of getEdges
+  @SqlQuery("SELECT modules.id AS moduleId, modules.branchId, branches.active AS branchActive, " +
+      "COALESCE(branch_settings.interProjectBuildOptIn = 1 OR (branches.branch = 'master' AND branch_settings.interProjectBuildOptIn IS NULL), 0) AS interProjectBuildOptIn " +
+      "FROM modules " +
+      "INNER JOIN branches ON (modules.branchId = branches.id) " +
+      "LEFT JOIN branch_settings on (branches.id = branch_settings.branchId)")
+  List<IndexedModule> getIndexedModules();
+
+  @SingleValueResult
+  @SqlQuery("SELECT modules.id AS moduleId, modules.branchId, branches.active AS branchActive, " +
+      "COALESCE(branch_settings.interProjectBuildOptIn = 1 OR (branches.branch = 'master' AND branch_settings.interProjectBuildOptIn IS NULL), 0) AS interProjectBuildOptIn " +
+      "FROM modules " +
+      "INNER JOIN branches ON (modules.branchId = branches.id) " +
+      "LEFT JOIN branch_settings on (branches.id = branch_settings.branchId) " +
+      "WHERE modules.id = :moduleId")
+  Optional<IndexedModule> getIndexedModule(@Bind("moduleId") int moduleId);
+
+  @SqlQuery("SELECT modules.id AS moduleId, modules.branchId, branches.active AS branchActive, " +
+      "COALESCE(branch_settings.interProjectBuildOptIn = 1 OR (branches.branch = 'master' AND branch_settings.interProjectBuildOptIn IS NULL), 0) AS interProjectBuildOptIn " +
+      "FROM modules " +
+      "INNER JOIN branches ON (modules.branchId = branches.id) " +
+      "LEFT JOIN branch_settings on (branches.id = branch_settings.branchId) " +
+      "WHERE branches.id = :branchId")
+  Set<IndexedModule> getIndexedModulesOfBranch(@Bind("branchId") int branchId);
+
+  @SqlQuery("SELECT moduleId, name, version, source FROM module_provides")
+  List<ModuleDependency> getAllProvidedDependencies();
+
+  @SqlQuery("SELECT moduleId, name, version, source FROM module_depends")
+  List<ModuleDependency> getAllDependencies();
+
+  @SqlQuery("SELECT module_provides.moduleId, name, version, source FROM module_provides " +
+      "INNER JOIN modules ON (module_provides.moduleId = modules.id) " +
+      "WHERE modules.branchId = :branchId")
+  List<ModuleDependency> getProvidedDependenciesOfBranch(@Bind("branchId") int branchId);
+
+  @SqlQuery("SELECT module_depends.moduleId, name, version, source FROM module_depends " +
+      "INNER JOIN modules ON (module_depends.moduleId = modules.id) " +
+      "WHERE modules.branchId = :branchId")
+  List<ModuleDependency> getDependenciesOfBranch(@Bind("branchId") int branchId);
+
   @SqlQuery("SELECT * FROM module_provides WHERE moduleId = :moduleId")
   Set<Dependency> getProvidedDependencies(@Bind("moduleId") int moduleId);
 
@@ -69,15 +113,15 @@ public interface DependenciesDao {
   @SqlBatch("INSERT INTO module_depends (moduleId, name, version, source) VALUES (:moduleId, :name, :version, :source)")
   void insertDependencies(@BindWithRosetta Set<ModuleDependency> dependencies);
 
+  @SqlBatch("DELETE FROM module_provides WHERE moduleId = :moduleId AND name = :name AND version = :version")
+  void deleteProvidedDependencies(@BindWithRosetta Set<ModuleDependency> dependencies);
+
   @SqlUpdate("DELETE FROM module_provides WHERE moduleId = :moduleId")
-  void deleteProvidedDependencies(@Bind("moduleId") int moduleId);
+  int deleteProvidedDependencies(@Bind("moduleId") int moduleId);
 
-  @SqlUpdate("DELETE FROM module_provides WHERE moduleId = :moduleId AND source = :source")
-  void deleteProvidedDependenciesBySource(@Bind("moduleId") int moduleId, @Bind("source") Source source);
+  @SqlBatch("DELETE FROM module_depends WHERE moduleId = :moduleId AND name = :name AND version = :version")
+  void deleteDependencies(@BindWithRosetta Set<ModuleDependency> dependencies);
 
   @SqlUpdate("DELETE FROM module_depends WHERE moduleId = :moduleId")
-  void deleteDependencies(@Bind("moduleId") int moduleId);
-
-  @SqlUpdate("DELETE FROM module_depends WHERE moduleId = :moduleId AND source = :source")
-  void deleteDependenciesBySource(@Bind("moduleId") int moduleId, @Bind("source") Source source);
+  int deleteDependencies(@Bind("moduleId") int moduleId);
 }
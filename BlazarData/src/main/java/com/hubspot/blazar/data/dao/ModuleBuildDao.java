@@ -64,6 +64,15 @@ public interface ModuleBuildDao {
   @SqlQuery("SELECT * FROM module_builds WHERE moduleId = :id AND state != 'SKIPPED' ORDER BY buildNumber DESC LIMIT 1")
   Optional<ModuleBuild> getPreviousBuild(@BindWithRosetta Module module);
 
+  @SqlQuery("" +
+      "SELECT moduleBuild.* FROM module_builds AS moduleBuild " +
+      "JOIN (" +
+      "  SELECT moduleId, MAX(buildNumber) AS buildNumber FROM module_builds " +
+      "  WHERE moduleId IN (SELECT id FROM modules WHERE branchId = :branchId) AND state != 'SKIPPED' " +
+      "  GROUP BY moduleId" +
+      ") AS latest ON moduleBuild.moduleId = latest.moduleId AND moduleBuild.buildNumber = latest.buildNumber")
+  Set<ModuleBuild> getPreviousBuildsOfBranch(@Bind("branchId") int branchId);
+
   @GetGeneratedKeys
   @SqlUpdate("INSERT INTO module_builds (repoBuildId, moduleId, buildNumber, state) VALUES (:repoBuildId, :moduleId, :buildNumber, :state)")
   long skip(@BindWithRosetta ModuleBuild build);
@@ -7,12 +7,16 @@ import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.SingleValueResult;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.google.common.base.Optional;
 import com.hubspot.blazar.base.Module;
 import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.base.ModuleWithBranch;
 import com.hubspot.rosetta.jdbi.BindWithRosetta;
 
+@UseStringTemplate3StatementLocator
 public interface ModuleDao {
 
   @SingleValueResult
@@ -25,6 +29,11 @@ public interface ModuleDao {
   @SqlQuery("SELECT branchId FROM modules WHERE id = :moduleId")
   int getBranchIdFromModuleId(@Bind("moduleId") int moduleId);
 
+  @SqlQuery("SELECT module.*, gitInfo.* FROM modules AS module " +
+      "INNER JOIN branches AS gitInfo ON (module.branchId = gitInfo.id) " +
+      "WHERE module.id IN (<moduleIds>)")
+  Set<ModuleWithBranch> getWithBranches(@BindIn("moduleIds") Set<Integer> moduleIds);
+
   @GetGeneratedKeys
   @SqlUpdate("INSERT INTO modules (branchId, name, type, path, glob, active, buildpack, buildConfig, resolvedBuildConfig) VALUES (:branchId, :name, :type, :path, :glob, :active, :buildpack, :buildConfig, :resolvedBuildConfig)")
   int insert(@Bind("branchId") int branchId, @BindWithRosetta Module module);
@@ -1,29 +1,97 @@
 package com.hubspot.blazar.data.dao;
 
+import java.util.List;
 import java.util.Set;
 
+import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.SingleValueResult;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.unstable.BindIn;
 
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.metrics.QueuedItemCount;
 import com.hubspot.blazar.data.queue.QueueItem;
+import com.hubspot.blazar.data.queue.QueueItemKey;
 import com.hubspot.rosetta.jdbi.BindWithRosetta;
 
+/**
+ * Items can be processed by more than one instance at a time. An instance claims the items it is going to process by
+ * taking a lease on them, and only the oldest ready item of each partition can be claimed so that items of the same
+ * partition keep being processed one at a time, in order, across instances.
+ *
+ * Every item has a partition key (the column is NOT NULL), otherwise the partition checks would never match it.
+ */
+@UseStringTemplate3StatementLocator
 public interface QueueItemDao {
 
-  @SqlQuery("SELECT * FROM queue_items WHERE completedTimestamp IS NULL AND desiredExecutionTimestamp <= NOW()")
-  Set<QueueItem> getItemsReadyToExecute();
+  @SqlQuery("SELECT q.id, q.type, q.partitionKey FROM queue_items q " +
+      "WHERE q.id > :lastSeenId AND q.completedTimestamp IS NULL AND q.desiredExecutionTimestamp \\<= NOW() " +
+      "AND (q.leaseOwner IS NULL OR q.leaseExpiresTimestamp \\< NOW()) " +
+      "AND NOT EXISTS (SELECT 1 FROM queue_items p WHERE p.partitionKey = q.partitionKey AND p.completedTimestamp IS NULL " +
+      "AND p.desiredExecutionTimestamp \\<= NOW() AND p.id \\< q.id) " +
+      "ORDER BY q.id LIMIT :limit")
+  List<QueueItemKey> getItemsReadyToExecute(@Bind("lastSeenId") long lastSeenId, @Bind("limit") int limit);
 
-  @SqlQuery("SELECT count(*) FROM queue_items WHERE id = :id AND completedTimestamp IS NULL")
-  boolean isItemStillQueued(@BindWithRosetta QueueItem queueItem);
+  @SqlQuery("SELECT q.id, q.type, q.partitionKey FROM queue_items q " +
+      "WHERE q.id IN (<ids>) AND q.completedTimestamp IS NULL AND q.desiredExecutionTimestamp \\<= NOW() " +
+      "AND (q.leaseOwner IS NULL OR q.leaseExpiresTimestamp \\< NOW()) " +
+      "AND NOT EXISTS (SELECT 1 FROM queue_items p WHERE p.partitionKey = q.partitionKey AND p.completedTimestamp IS NULL " +
+      "AND p.desiredExecutionTimestamp \\<= NOW() AND p.id \\< q.id) " +
+      "ORDER BY q.id")
+  List<QueueItemKey> getItemsReadyToExecute(@BindIn("ids") Set<Long> ids);
+
+  // Used once the head of a partition is done, every earlier ready item of the partition is completed at that point
+  @SingleValueResult
+  @SqlQuery("SELECT id, type, partitionKey FROM queue_items " +
+      "WHERE partitionKey = :partitionKey AND completedTimestamp IS NULL AND desiredExecutionTimestamp \\<= NOW() " +
+      "AND (leaseOwner IS NULL OR leaseExpiresTimestamp \\< NOW()) " +
+      "ORDER BY id LIMIT 1")
+  Optional<QueueItemKey> getNextItemReadyToExecute(@Bind("partitionKey") String partitionKey);
+
+  @SqlQuery("SELECT type AS className, COUNT(*) AS count FROM queue_items WHERE completedTimestamp IS NULL AND desiredExecutionTimestamp \\<= NOW() GROUP BY type")
+  Set<QueuedItemCount> countItemsReadyToExecuteByType();
+
+  @SingleValueResult
+  @SqlQuery("SELECT * FROM queue_items WHERE id = :id AND completedTimestamp IS NULL")
+  Optional<QueueItem> getQueuedItem(@Bind("id") long id);
+
+  @SingleValueResult
+  @SqlQuery("SELECT * FROM queue_items WHERE id = :id AND completedTimestamp IS NULL AND leaseOwner = :leaseOwner")
+  Optional<QueueItem> getClaimedItem(@Bind("id") long id, @Bind("leaseOwner") String leaseOwner);
+
+  // The row locks taken by the update make concurrent claims of the same item wait for each other, only one of them matches.
+  // The partition heads read before may have changed since, so they are checked again here. MySQL only lets the update
+  // read queue_items through a derived table, which the GROUP BY keeps from being merged into the update
+  @SqlUpdate("UPDATE queue_items q SET q.leaseOwner = :leaseOwner, q.leaseExpiresTimestamp = TIMESTAMPADD(SECOND, :leaseSeconds, NOW()) " +
+      "WHERE q.id IN (<ids>) AND q.completedTimestamp IS NULL AND q.desiredExecutionTimestamp \\<= NOW() " +
+      "AND (q.leaseOwner IS NULL OR q.leaseExpiresTimestamp \\< NOW()) " +
+      "AND NOT EXISTS (SELECT 1 FROM (SELECT partitionKey, MIN(id) AS id FROM queue_items " +
+      "WHERE partitionKey IN (SELECT partitionKey FROM queue_items WHERE id IN (<ids>)) " +
+      "AND completedTimestamp IS NULL AND desiredExecutionTimestamp \\<= NOW() GROUP BY partitionKey) p " +
+      "WHERE p.partitionKey = q.partitionKey AND p.id \\< q.id)")
+  int claim(@BindIn("ids") Set<Long> ids, @Bind("leaseOwner") String leaseOwner, @Bind("leaseSeconds") int leaseSeconds);
+
+  @SqlQuery("SELECT id, type, partitionKey FROM queue_items WHERE id IN (<ids>) AND completedTimestamp IS NULL AND leaseOwner = :leaseOwner ORDER BY id")
+  List<QueueItemKey> getClaimedItems(@BindIn("ids") Set<Long> ids, @Bind("leaseOwner") String leaseOwner);
+
+  @SqlUpdate("UPDATE queue_items SET leaseExpiresTimestamp = TIMESTAMPADD(SECOND, :leaseSeconds, NOW()) " +
+      "WHERE id IN (<ids>) AND completedTimestamp IS NULL AND leaseOwner = :leaseOwner")
+  int renewLeases(@BindIn("ids") Set<Long> ids, @Bind("leaseOwner") String leaseOwner, @Bind("leaseSeconds") int leaseSeconds);
 
   @GetGeneratedKeys
-  @SqlUpdate("INSERT INTO queue_items (type, item) VALUES (:type, :item)")
-  int insert(@BindWithRosetta QueueItem queueItem);
+  @SqlUpdate("INSERT INTO queue_items (type, item, partitionKey) VALUES (:type, :item, :partitionKey)")
+  long insert(@BindWithRosetta QueueItem queueItem);
 
-  @SqlUpdate("UPDATE queue_items SET retryCount = retryCount + 1, desiredExecutionTimestamp = TIMESTAMPADD(SECOND, 10, NOW()) WHERE id = :id")
-  int increaseRetryCounter(@BindWithRosetta QueueItem queueItem);
+  // Like complete, updates nothing once the lease was lost to another instance
+  @SqlUpdate("UPDATE queue_items SET retryCount = retryCount + 1, desiredExecutionTimestamp = TIMESTAMPADD(SECOND, :delaySeconds, NOW()), " +
+      "leaseOwner = NULL, leaseExpiresTimestamp = NULL WHERE id = :id AND completedTimestamp IS NULL AND leaseOwner = :leaseOwner")
+  int increaseRetryCounter(@BindWithRosetta QueueItem queueItem, @Bind("leaseOwner") String leaseOwner, @Bind("delaySeconds") long delaySeconds);
 
-  @SqlUpdate("UPDATE queue_items SET completedTimestamp = NOW() WHERE id = :id")
-  int complete(@BindWithRosetta QueueItem queueItem);
+  // Only the current lease owner can complete an item, an instance whose lease expired updates nothing
+  @SqlUpdate("UPDATE queue_items SET completedTimestamp = NOW(), leaseOwner = NULL, leaseExpiresTimestamp = NULL " +
+      "WHERE id = :id AND completedTimestamp IS NULL AND leaseOwner = :leaseOwner")
+  int complete(@BindWithRosetta QueueItem queueItem, @Bind("leaseOwner") String leaseOwner);
 }
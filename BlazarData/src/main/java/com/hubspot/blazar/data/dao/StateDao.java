@@ -59,7 +59,7 @@ public interface StateDao {
    * - inProgress
    * <p>
    * It returns these in the form of a partially filled ModuleState object, A set of ModuleBuildInfo for
-   * lastSuccessful and lastNonSkipped can be fetched with #getLastSuccessfulAndNonSkippedModuleBuilds.
+   * lastSuccessful and lastNonSkipped can be fetched with #getLastSuccessfulAndNonSkippedModuleBuildsForBranch.
    */
   @SqlQuery("" +
       "SELECT * " +
@@ -78,15 +78,23 @@ public interface StateDao {
   Set<ModuleState> getLastAndInProgressAndPendingBuildsForBranchAndIncludedModules(@Bind("branchId") int branchId);
 
   /**
-   * This query fetches build information for the lastSuccessful and lastNonSkipped builds for a module.
-   * If they are the same this will return a set of 1 moduleBuildInfo, otherwise a set of 2 items.
+   * This query fetches build information for the lastSuccessful and lastNonSkipped builds of all modules of a branch
+   * at once, so that building the state of a branch doesn't need a query per module.
+   * If they are the same for a module this returns 1 moduleBuildInfo for it, otherwise 2.
    */
   @SqlQuery("" +
-      "SELECT * FROM " +
-      "((SELECT * FROM module_builds as lastNonSkipped WHERE lastNonSkipped.moduleId = :moduleId AND lastNonSkipped.state IN ('SUCCEEDED', 'CANCELLED', 'FAILED') ORDER BY lastNonSkipped.buildNumber DESC LIMIT 1) " +
-      "UNION " +
-      "(SELECT * FROM module_builds  as lastSuccessful WHERE moduleId = :moduleId AND lastSuccessful.state = 'SUCCEEDED' ORDER BY lastSuccessful.buildNumber DESC LIMIT 1)) AS moduleBuild " +
+      "SELECT moduleBuild.*, branchBuild.* FROM module_builds AS moduleBuild " +
+      "JOIN (" +
+      "  (SELECT lastNonSkipped.moduleId, MAX(lastNonSkipped.buildNumber) AS buildNumber " +
+      "     FROM modules JOIN module_builds AS lastNonSkipped ON (modules.id = lastNonSkipped.moduleId) " +
+      "     WHERE modules.branchId = :branchId AND lastNonSkipped.state IN ('SUCCEEDED', 'CANCELLED', 'FAILED') " +
+      "     GROUP BY lastNonSkipped.moduleId) " +
+      "  UNION " +
+      "  (SELECT lastSuccessful.moduleId, MAX(lastSuccessful.buildNumber) AS buildNumber " +
+      "     FROM modules JOIN module_builds AS lastSuccessful ON (modules.id = lastSuccessful.moduleId) " +
+      "     WHERE modules.branchId = :branchId AND lastSuccessful.state = 'SUCCEEDED' " +
+      "     GROUP BY lastSuccessful.moduleId)" +
+      ") AS latest ON (moduleBuild.moduleId = latest.moduleId AND moduleBuild.buildNumber = latest.buildNumber) " +
       "JOIN repo_builds AS branchBuild ON (branchBuild.id = moduleBuild.repoBuildId)")
-  Set<ModuleBuildInfo> getLastSuccessfulAndNonSkippedModuleBuilds(@Bind("moduleId") int moduleId);
+  Set<ModuleBuildInfo> getLastSuccessfulAndNonSkippedModuleBuildsForBranch(@Bind("branchId") int branchId);
 }
-
@@ -0,0 +1,301 @@
+package com.hubspot.blazar.data.dependencies;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hubspot.blazar.base.Dependency;
+import com.hubspot.blazar.base.ModuleDependency;
+import com.hubspot.blazar.data.dao.DependenciesDao;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Keeps every module_provides/module_depends edge in memory so that building a graph doesn't need to go to mysql.
+ * Dependency names are interned to ints, and for every dependency we keep the modules that depend on it.
+ *
+ * The index is updated through the {@link ModuleDependencyIndex} callbacks for changes made by this instance, and
+ * reloaded from mysql every reconcileIntervalSeconds to pick up the changes made by other instances. The callbacks
+ * read the rows inside the transaction that wrote them, a change that is rolled back afterwards stays in the index
+ * until the next reload.
+ */
+@Singleton
+public class InMemoryModuleDependencyIndex implements ModuleDependencyIndex, Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryModuleDependencyIndex.class);
+
+  private final DependenciesDao dependenciesDao;
+  private final long reconcileIntervalSeconds;
+  private final ReadWriteLock lock;
+  private final Object reloadLock;
+  private final Set<Integer> modulesChangedDuringReload;
+  private final Set<Integer> branchesChangedDuringReload;
+  private volatile boolean reloading;
+  private volatile boolean loaded;
+  private Index index;
+  private ScheduledExecutorService executorService;
+
+  @Inject
+  public InMemoryModuleDependencyIndex(DependenciesDao dependenciesDao,
+                                       @Named("dependencyIndexReconcileIntervalSeconds") long reconcileIntervalSeconds) {
+    this.dependenciesDao = dependenciesDao;
+    this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+    this.lock = new ReentrantReadWriteLock();
+    this.reloadLock = new Object();
+    this.modulesChangedDuringReload = ConcurrentHashMap.newKeySet();
+    this.branchesChangedDuringReload = ConcurrentHashMap.newKeySet();
+    this.index = new Index();
+  }
+
+  @Override
+  public void start() {
+    reload();
+
+    executorService = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("ModuleDependencyIndex-%d").setDaemon(true).build());
+    executorService.scheduleWithFixedDelay(() -> {
+      try {
+        reload();
+      } catch (Exception e) {
+        LOG.error("Could not reload the module dependency index, keeping the current one", e);
+      }
+    }, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Override
+  public SetMultimap<Integer, Integer> getGraphFromRootModules(int branchId, Set<Integer> rootModuleIds) {
+    if (!loaded) {
+      reload();
+    }
+
+    lock.readLock().lock();
+    try {
+      return index.getGraphFromRootModules(branchId, rootModuleIds);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void moduleDependenciesChanged(int moduleId) {
+    if (reloading) {
+      modulesChangedDuringReload.add(moduleId);
+    }
+
+    Optional<IndexedModule> module = dependenciesDao.getIndexedModule(moduleId);
+    Set<String> provided = names(dependenciesDao.getProvidedDependencies(moduleId));
+    Set<String> dependencies = names(dependenciesDao.getDependencies(moduleId));
+
+    lock.writeLock().lock();
+    try {
+      if (module.isPresent()) {
+        index.putModule(module.get());
+      } else {
+        index.removeModule(moduleId);
+      }
+      index.setDependencies(moduleId, provided, dependencies);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void branchChanged(int branchId) {
+    if (reloading) {
+      branchesChangedDuringReload.add(branchId);
+    }
+
+    Set<IndexedModule> modules = dependenciesDao.getIndexedModulesOfBranch(branchId);
+
+    lock.writeLock().lock();
+    try {
+      modules.forEach(index::putModule);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void reload() {
+    synchronized (reloadLock) {
+      long start = System.currentTimeMillis();
+      reloading = true;
+      try {
+        Index reloaded = new Index();
+        dependenciesDao.getIndexedModules().forEach(reloaded::putModule);
+
+        SetMultimap<Integer, String> provided = HashMultimap.create();
+        for (ModuleDependency dependency : dependenciesDao.getAllProvidedDependencies()) {
+          provided.put(dependency.getModuleId(), dependency.getName());
+        }
+        SetMultimap<Integer, String> dependencies = HashMultimap.create();
+        for (ModuleDependency dependency : dependenciesDao.getAllDependencies()) {
+          dependencies.put(dependency.getModuleId(), dependency.getName());
+        }
+
+        Set<Integer> moduleIds = new HashSet<>(provided.keySet());
+        moduleIds.addAll(dependencies.keySet());
+        for (int moduleId : moduleIds) {
+          reloaded.setDependencies(moduleId, provided.get(moduleId), dependencies.get(moduleId));
+        }
+
+        lock.writeLock().lock();
+        try {
+          index = reloaded;
+          loaded = true;
+        } finally {
+          lock.writeLock().unlock();
+        }
+
+        LOG.info("Loaded the dependencies of {} modules in {}ms", moduleIds.size(), System.currentTimeMillis() - start);
+      } finally {
+        reloading = false;
+      }
+
+      // the reload might have read these before they were changed, apply them again on top of it
+      for (int moduleId : drain(modulesChangedDuringReload)) {
+        moduleDependenciesChanged(moduleId);
+      }
+      for (int branchId : drain(branchesChangedDuringReload)) {
+        branchChanged(branchId);
+      }
+    }
+  }
+
+  private static Set<Integer> drain(Set<Integer> changed) {
+    Set<Integer> drained = new HashSet<>(changed);
+    changed.removeAll(drained);
+    return drained;
+  }
+
+  private static Set<String> names(Set<Dependency> dependencies) {
+    Set<String> names = new HashSet<>();
+    for (Dependency dependency : dependencies) {
+      names.add(dependency.getName());
+    }
+
+    return names;
+  }
+
+  /**
+   * Not thread safe, guarded by the lock of the enclosing index.
+   */
+  private static class Index {
+    private final Map<String, Integer> dependencyIds = new HashMap<>();
+    private final Map<Integer, IndexedModule> modules = new HashMap<>();
+    private final Map<Integer, int[]> providedByModule = new HashMap<>();
+    private final Map<Integer, int[]> dependenciesByModule = new HashMap<>();
+    private final Map<Integer, Set<Integer>> dependentModules = new HashMap<>();
+
+    private void putModule(IndexedModule module) {
+      modules.put(module.getModuleId(), module);
+    }
+
+    private void removeModule(int moduleId) {
+      modules.remove(moduleId);
+    }
+
+    private void setDependencies(int moduleId, Collection<String> provided, Collection<String> dependencies) {
+      int[] previousDependencies = dependenciesByModule.remove(moduleId);
+      if (previousDependencies != null) {
+        for (int dependencyId : previousDependencies) {
+          Set<Integer> dependents = dependentModules.get(dependencyId);
+          dependents.remove(moduleId);
+          if (dependents.isEmpty()) {
+            dependentModules.remove(dependencyId);
+          }
+        }
+      }
+
+      int[] dependencyIds = intern(dependencies);
+      if (dependencyIds.length > 0) {
+        dependenciesByModule.put(moduleId, dependencyIds);
+        for (int dependencyId : dependencyIds) {
+          dependentModules.computeIfAbsent(dependencyId, id -> new HashSet<>()).add(moduleId);
+        }
+      }
+
+      int[] providedIds = intern(provided);
+      if (providedIds.length > 0) {
+        providedByModule.put(moduleId, providedIds);
+      } else {
+        providedByModule.remove(moduleId);
+      }
+    }
+
+    private SetMultimap<Integer, Integer> getGraphFromRootModules(int branchId, Set<Integer> rootModuleIds) {
+      SetMultimap<Integer, Integer> graph = HashMultimap.create();
+
+      Set<Integer> seenModules = new HashSet<>(rootModuleIds);
+      Deque<Integer> moduleQueue = new ArrayDeque<>(rootModuleIds);
+      while (!moduleQueue.isEmpty()) {
+        int moduleId = moduleQueue.poll();
+        int[] provided = providedByModule.get(moduleId);
+        if (provided == null) {
+          continue;
+        }
+
+        for (int dependencyId : provided) {
+          for (int dependentId : dependentModules.getOrDefault(dependencyId, Collections.emptySet())) {
+            IndexedModule dependent = modules.get(dependentId);
+            if (dependent != null && dependent.isReachableFrom(branchId)) {
+              graph.put(moduleId, dependentId);
+              if (seenModules.add(dependentId)) {
+                moduleQueue.add(dependentId);
+              }
+            }
+          }
+        }
+      }
+
+      return graph;
+    }
+
+    private int[] intern(Collection<String> names) {
+      Set<Integer> ids = new LinkedHashSet<>();
+      for (String name : names) {
+        Integer id = dependencyIds.get(name);
+        if (id == null) {
+          id = dependencyIds.size();
+          dependencyIds.put(name, id);
+        }
+        ids.add(id);
+      }
+
+      int[] result = new int[ids.size()];
+      int i = 0;
+      for (int id : ids) {
+        result[i++] = id;
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.hubspot.blazar.data.dependencies;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+
+/**
+ * A module together with the state of its branch that decides whether the module can be reached by following the
+ * dependency edges that point to it.
+ */
+public class IndexedModule {
+  private final int moduleId;
+  private final int branchId;
+  private final boolean branchActive;
+  private final boolean interProjectBuildOptIn;
+
+  @JsonCreator
+  public IndexedModule(@JsonProperty("moduleId") int moduleId,
+                       @JsonProperty("branchId") int branchId,
+                       @JsonProperty("branchActive") boolean branchActive,
+                       @JsonProperty("interProjectBuildOptIn") boolean interProjectBuildOptIn) {
+    this.moduleId = moduleId;
+    this.branchId = branchId;
+    this.branchActive = branchActive;
+    this.interProjectBuildOptIn = interProjectBuildOptIn;
+  }
+
+  public int getModuleId() {
+    return moduleId;
+  }
+
+  public int getBranchId() {
+    return branchId;
+  }
+
+  public boolean isBranchActive() {
+    return branchActive;
+  }
+
+  public boolean isInterProjectBuildOptIn() {
+    return interProjectBuildOptIn;
+  }
+
+  public boolean isReachableFrom(int branchId) {
+    return branchActive && (interProjectBuildOptIn || this.branchId == branchId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    IndexedModule that = (IndexedModule) o;
+    return moduleId == that.moduleId &&
+        branchId == that.branchId &&
+        branchActive == that.branchActive &&
+        interProjectBuildOptIn == that.interProjectBuildOptIn;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(moduleId, branchId, branchActive, interProjectBuildOptIn);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("moduleId", moduleId)
+        .add("branchId", branchId)
+        .add("branchActive", branchActive)
+        .add("interProjectBuildOptIn", interProjectBuildOptIn)
+        .toString();
+  }
+}
@@ -0,0 +1,33 @@
+package com.hubspot.blazar.data.dependencies;
+
+import java.util.Set;
+
+import com.google.common.collect.SetMultimap;
+import com.google.inject.ImplementedBy;
+
+/**
+ * Resolves which modules depend on which, starting from a set of modules and following the edges between the modules
+ * that provide a dependency and the modules that depend on it. A module depends on another if the latter provides a
+ * dependency the former depends on, and the branch of the depending module is active and either opted in to
+ * inter-project builds or is the branch the graph is built for.
+ */
+@ImplementedBy(SqlModuleDependencyIndex.class)
+public interface ModuleDependencyIndex {
+
+  /**
+   * @param branchId The branch the graph is built for, its modules are followed even if it did not opt in to
+   *                 inter-project builds. Pass -1 to only follow the branches that opted in.
+   * @return every edge from a provider to a dependent module that can be reached from rootModuleIds
+   */
+  SetMultimap<Integer, Integer> getGraphFromRootModules(int branchId, Set<Integer> rootModuleIds);
+
+  /**
+   * Called after the dependencies a module provides or depends on were written, or the module itself was added.
+   */
+  default void moduleDependenciesChanged(int moduleId) {}
+
+  /**
+   * Called after a branch was added, (de)activated or its inter-project build settings changed.
+   */
+  default void branchChanged(int branchId) {}
+}
@@ -0,0 +1,82 @@
+package com.hubspot.blazar.data.dependencies;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.hubspot.blazar.base.graph.Edge;
+import com.hubspot.blazar.data.dao.DependenciesDao;
+
+/**
+ * Walks the graph breadth-first, querying the edges of every level of the graph from mysql.
+ */
+@Singleton
+public class SqlModuleDependencyIndex implements ModuleDependencyIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(SqlModuleDependencyIndex.class);
+
+  private final DependenciesDao dependenciesDao;
+
+  @Inject
+  public SqlModuleDependencyIndex(DependenciesDao dependenciesDao) {
+    this.dependenciesDao = dependenciesDao;
+  }
+
+  @Override
+  public SetMultimap<Integer, Integer> getGraphFromRootModules(int branchId, Set<Integer> rootModuleIds) {
+    SetMultimap<Integer, Integer> graph = HashMultimap.create();
+
+    Set<Integer> seenModules = new HashSet<>();
+    Queue<Integer> moduleQueue = new LinkedList<>(rootModuleIds);
+    List<Long> queryTimes = new ArrayList<>();
+
+    while (true) {
+      Set<Integer> modulesToProcess = new HashSet<>(moduleQueue);
+      modulesToProcess.removeAll(seenModules);
+      moduleQueue.clear();
+
+      if (modulesToProcess.isEmpty()) {
+        break;
+      }
+
+      long queryStart = System.currentTimeMillis();
+      Set<Edge> edges = dependenciesDao.getEdges(branchId, modulesToProcess);
+      long queryEnd = System.currentTimeMillis();
+      LOG.info("Query for {} took {}", modulesToProcess, queryEnd - queryStart);
+      queryTimes.add(queryEnd - queryStart);
+
+      for (Edge edge : edges) {
+        graph.put(edge.getSource(), edge.getTarget());
+        moduleQueue.add(edge.getTarget());
+      }
+
+      seenModules.addAll(modulesToProcess);
+    }
+
+    long sum = 0;
+    long max = 0;
+    long min = Long.MAX_VALUE;
+    for (long i : queryTimes) {
+      sum += i;
+      if (i > max) {
+        max = i;
+      }
+      if (i < min) {
+        min = i;
+      }
+    }
+    long average = queryTimes.size() == 0 ? 0 : sum / queryTimes.size();
+    LOG.info("MysqlQueries max: {} min: {} ct: {} each: {} total: {}", max, min, queryTimes.size(), average, sum);
+    return graph;
+  }
+}
@@ -0,0 +1,97 @@
+package com.hubspot.blazar.data.queue;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.google.common.base.MoreObjects;
+
+/**
+ * A queue item that failed on every attempt it was given. The payload is kept exactly as it was queued so that
+ * the item can be inspected and replayed without knowing its type.
+ */
+public class DeadQueueItem {
+  private final long id;
+  private final String type;
+  @JsonRawValue
+  private final String item;
+  private final String partitionKey;
+  private final int retryCount;
+  private final long createdTimestamp;
+  private final long deadTimestamp;
+
+  @JsonCreator
+  public DeadQueueItem(@JsonProperty("id") long id,
+                       @JsonProperty("type") String type,
+                       @JsonProperty("item") String item,
+                       @JsonProperty("partitionKey") String partitionKey,
+                       @JsonProperty("retryCount") int retryCount,
+                       @JsonProperty("createdTimestamp") long createdTimestamp,
+                       @JsonProperty("deadTimestamp") long deadTimestamp) {
+    this.id = id;
+    this.type = type;
+    this.item = item;
+    this.partitionKey = partitionKey;
+    this.retryCount = retryCount;
+    this.createdTimestamp = createdTimestamp;
+    this.deadTimestamp = deadTimestamp;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getItem() {
+    return item;
+  }
+
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+
+  public int getRetryCount() {
+    return retryCount;
+  }
+
+  public long getCreatedTimestamp() {
+    return createdTimestamp;
+  }
+
+  public long getDeadTimestamp() {
+    return deadTimestamp;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    DeadQueueItem deadQueueItem = (DeadQueueItem) o;
+    return id == deadQueueItem.id;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("id", id)
+        .add("type", type)
+        .add("partitionKey", partitionKey)
+        .add("retryCount", retryCount)
+        .toString();
+  }
+}
@@ -21,6 +21,7 @@ public class QueueItem {
   @StoredAsJson
   private final Object item;
   private final int retryCount;
+  private final String partitionKey;
 
   public QueueItem(Object item) {
     this(Optional.empty(), item.getClass(), item, 0);
@@ -31,6 +32,7 @@ public class QueueItem {
     this.type = type;
     this.item = item;
     this.retryCount = retryCount;
+    this.partitionKey = QueueItemPartitionKeys.forItem(item);
   }
 
   public Optional<Long> getId() {
@@ -49,6 +51,10 @@ public class QueueItem {
     return retryCount;
   }
 
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,66 @@
+package com.hubspot.blazar.data.queue;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+
+/**
+ * The primary key and event type of a row in queue_items, without its payload. This is what we read
+ * while polling the queue so we don't have to deserialize every pending event on every cycle, the
+ * full {@link QueueItem} is only loaded once a worker picks the row up.
+ */
+public class QueueItemKey {
+  private final long id;
+  private final Class<?> type;
+  private final String partitionKey;
+
+  @JsonCreator
+  public QueueItemKey(@JsonProperty("id") long id,
+                      @JsonProperty("type") Class<?> type,
+                      @JsonProperty("partitionKey") String partitionKey) {
+    this.id = id;
+    this.type = type;
+    this.partitionKey = partitionKey;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Class<?> getType() {
+    return type;
+  }
+
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    return id == ((QueueItemKey) o).id;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("id", id)
+        .add("type", type.getSimpleName())
+        .add("partitionKey", partitionKey)
+        .toString();
+  }
+}
@@ -0,0 +1,49 @@
+package com.hubspot.blazar.data.queue;
+
+import com.hubspot.blazar.base.InterProjectBuild;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.base.RepositoryBuild;
+import com.hubspot.blazar.base.notifications.RepositoryBuildNotification;
+import com.hubspot.blazar.github.GitHubProtos.CreateEvent;
+import com.hubspot.blazar.github.GitHubProtos.DeleteEvent;
+import com.hubspot.blazar.github.GitHubProtos.PushEvent;
+import com.hubspot.blazar.github.GitHubProtos.Repository;
+
+/**
+ * Events that share a partition key are processed one at a time in the order they were queued, events with
+ * different keys can be processed in parallel. Each event is keyed by the entity whose state it progresses
+ * so that e.g. module builds of unrelated repository builds don't wait on each other.
+ */
+public final class QueueItemPartitionKeys {
+
+  private QueueItemPartitionKeys() {}
+
+  public static String forItem(Object item) {
+    String type = item.getClass().getSimpleName();
+
+    if (item instanceof ModuleBuild) {
+      // module builds of the same repository build launch and complete each other so they stay ordered
+      return type + "-" + ((ModuleBuild) item).getRepoBuildId();
+    } else if (item instanceof RepositoryBuild) {
+      return type + "-" + ((RepositoryBuild) item).getBranchId();
+    } else if (item instanceof InterProjectBuild && ((InterProjectBuild) item).getId().isPresent()) {
+      return type + "-" + ((InterProjectBuild) item).getId().get();
+    } else if (item instanceof RepositoryBuildNotification) {
+      // notifications about the same commit are delivered in order, so the last commit status wins
+      RepositoryBuildNotification notification = (RepositoryBuildNotification) item;
+      return type + "-" + notification.getNotifier() + "-" + notification.getSha().or(String.valueOf(notification.getBranchId()));
+    } else if (item instanceof PushEvent && ((PushEvent) item).hasRepository()) {
+      return forRepository(type, ((PushEvent) item).getRepository());
+    } else if (item instanceof CreateEvent && ((CreateEvent) item).hasRepository()) {
+      return forRepository(type, ((CreateEvent) item).getRepository());
+    } else if (item instanceof DeleteEvent && ((DeleteEvent) item).hasRepository()) {
+      return forRepository(type, ((DeleteEvent) item).getRepository());
+    }
+
+    return type;
+  }
+
+  private static String forRepository(String type, Repository repository) {
+    return type + "-" + repository.getUrl();
+  }
+}
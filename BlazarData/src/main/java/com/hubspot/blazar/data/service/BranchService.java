@@ -14,15 +14,21 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.dao.BranchDao;
+import com.hubspot.blazar.data.dependencies.ModuleDependencyIndex;
 
 public class BranchService {
   private static final Logger LOG = LoggerFactory.getLogger(BranchService.class);
   private final BranchDao branchDao;
+  private final ModuleDependencyIndex dependencyIndex;
+  private final ModuleBranchCache moduleBranchCache;
 
   @Inject
-  public BranchService(BranchDao branchDao) {
+  public BranchService(BranchDao branchDao, ModuleDependencyIndex dependencyIndex, ModuleBranchCache moduleBranchCache) {
     this.branchDao = branchDao;
+    this.dependencyIndex = dependencyIndex;
+    this.moduleBranchCache = moduleBranchCache;
   }
 
   public Set<GitInfo> getAll() {
@@ -61,6 +67,8 @@ public class BranchService {
       if (!existing.get().equals(gitInfo)) {
         int updated = branchDao.update(gitInfo);
         Preconditions.checkState(updated == 1, "Expected to update 1 row but updated %s", updated);
+        dependencyIndex.branchChanged(gitInfo.getId().get());
+        moduleBranchCache.invalidateBranch(gitInfo.getId().get());
         handleConflictingBranches(gitInfo);
       }
 
@@ -94,5 +102,12 @@ public class BranchService {
 
   public void deactivate(GitInfo gitInfo) {
     branchDao.deactivate(gitInfo);
+
+    // branches deactivated because of delete events don't carry their id
+    Optional<GitInfo> deactivated = gitInfo.getId().isPresent() ? Optional.of(gitInfo) : getByRepositoryAndBranch(gitInfo.getRepositoryId(), gitInfo.getBranch());
+    if (deactivated.isPresent()) {
+      dependencyIndex.branchChanged(deactivated.get().getId().get());
+      moduleBranchCache.invalidateBranch(deactivated.get().getId().get());
+    }
   }
 }
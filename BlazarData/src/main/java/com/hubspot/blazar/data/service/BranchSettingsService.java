@@ -4,14 +4,17 @@ import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.hubspot.blazar.base.BranchSetting;
 import com.hubspot.blazar.data.dao.BranchSettingsDao;
+import com.hubspot.blazar.data.dependencies.ModuleDependencyIndex;
 
 public class BranchSettingsService {
 
   private final BranchSettingsDao dao;
+  private final ModuleDependencyIndex dependencyIndex;
 
   @Inject
-  public BranchSettingsService(BranchSettingsDao dao) {
+  public BranchSettingsService(BranchSettingsDao dao, ModuleDependencyIndex dependencyIndex) {
     this.dao = dao;
+    this.dependencyIndex = dependencyIndex;
   }
 
   public Optional<BranchSetting> getByBranchId(int branchId) {
@@ -20,10 +23,12 @@ public class BranchSettingsService {
 
   public void insert(BranchSetting branchSetting) {
     dao.insert(branchSetting);
+    dependencyIndex.branchChanged((int) branchSetting.getBranchId());
   }
 
   public void update(BranchSetting branchSetting) {
     dao.update(branchSetting);
+    dependencyIndex.branchChanged((int) branchSetting.getBranchId());
   }
 
 }
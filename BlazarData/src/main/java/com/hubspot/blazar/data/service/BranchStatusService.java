@@ -11,7 +11,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
 import com.google.inject.Inject;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.MalformedFile;
@@ -73,20 +75,25 @@ public class BranchStatusService {
     // In the first step we retrieve the module itself along with the build info about the 'last', 'in progress'
     // and 'pending' builds for the given branch as well as the included modules
     Set<ModuleState> partialStates = stateDao.getLastAndInProgressAndPendingBuildsForBranchAndIncludedModules(branchId);
+    // In the second step we retrieve the 'last successful' and 'non-skipped' module builds of all modules at once
+    // and enrich the module states with them
+    SetMultimap<Integer, ModuleBuildInfo> lastSuccessfulAndNonSkippedModuleBuilds = HashMultimap.create();
+    for (ModuleBuildInfo moduleBuildInfo : stateDao.getLastSuccessfulAndNonSkippedModuleBuildsForBranch(branchId)) {
+      lastSuccessfulAndNonSkippedModuleBuilds.put(moduleBuildInfo.getModuleBuild().getModuleId(), moduleBuildInfo);
+    }
+
     Set<ModuleState> completeStates = new HashSet<>();
-    // In the second state we enrich the module state with info about the 'last successful' and 'non-skipped' module builds
     for (ModuleState partialState : partialStates) {
-      completeStates.add(completePartialModuleStateWithLastSuccessfulAndNonSkippedModuleBuilds(partialState));
+      Set<ModuleBuildInfo> moduleBuilds = lastSuccessfulAndNonSkippedModuleBuilds.get(partialState.getModule().getId().get());
+      completeStates.add(completePartialModuleStateWithLastSuccessfulAndNonSkippedModuleBuilds(partialState, moduleBuilds));
     }
     LOG.info("Built all states for branch {} in {}", branchId, System.currentTimeMillis() - start);
     return completeStates;
   }
 
   // remaining info contains: the most recent successful build and the most recent non-skipped build
-  private ModuleState completePartialModuleStateWithLastSuccessfulAndNonSkippedModuleBuilds(ModuleState partialState) {
-    Set<ModuleBuildInfo> lastSuccessfulAndNonSkippedModuleBuilds =
-        stateDao.getLastSuccessfulAndNonSkippedModuleBuilds(partialState.getModule().getId().get());
-
+  private ModuleState completePartialModuleStateWithLastSuccessfulAndNonSkippedModuleBuilds(ModuleState partialState,
+                                                                                           Set<ModuleBuildInfo> lastSuccessfulAndNonSkippedModuleBuilds) {
     Optional<ModuleBuildInfo> successfulModuleBuildInfo = Optional.absent();
     Optional<ModuleBuildInfo> nonSkippedModuleBuildInfo = Optional.absent();
 
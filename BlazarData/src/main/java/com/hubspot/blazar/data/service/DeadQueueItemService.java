@@ -0,0 +1,66 @@
+package com.hubspot.blazar.data.service;
+
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.hubspot.blazar.data.dao.DeadQueueItemDao;
+import com.hubspot.blazar.data.dao.QueueItemDao;
+import com.hubspot.blazar.data.queue.DeadQueueItem;
+import com.hubspot.blazar.data.queue.QueueItem;
+
+public class DeadQueueItemService {
+  private final DeadQueueItemDao deadQueueItemDao;
+  private final QueueItemDao queueItemDao;
+
+  @Inject
+  public DeadQueueItemService(DeadQueueItemDao deadQueueItemDao, QueueItemDao queueItemDao) {
+    this.deadQueueItemDao = deadQueueItemDao;
+    this.queueItemDao = queueItemDao;
+  }
+
+  public List<DeadQueueItem> getDeadItems(long lastSeenId, int limit) {
+    return deadQueueItemDao.getDeadItems(lastSeenId, limit);
+  }
+
+  public Optional<DeadQueueItem> getDeadItem(long id) {
+    return deadQueueItemDao.getDeadItem(id);
+  }
+
+  /**
+   * Moves a queue item that ran out of retries to the dead items and completes it in the queue.
+   *
+   * @return false if the lease on the item was lost to another instance, the item is left in the queue then
+   */
+  @Transactional
+  public boolean bury(QueueItem queueItem, String leaseOwner) {
+    if (queueItemDao.complete(queueItem, leaseOwner) == 0) {
+      return false;
+    }
+
+    deadQueueItemDao.insertFromQueue(queueItem.getId().get());
+    return true;
+  }
+
+  /**
+   * Queues the dead item again as a new queue item with a fresh retry counter.
+   *
+   * @return the id of the new queue item or absent if there is no dead item with this id
+   */
+  @Transactional
+  public Optional<Long> replay(long id) {
+    if (!deadQueueItemDao.getDeadItem(id).isPresent()) {
+      return Optional.absent();
+    }
+
+    long queueItemId = deadQueueItemDao.requeue(id);
+    deadQueueItemDao.delete(id);
+    return Optional.of(queueItemId);
+  }
+
+  public boolean delete(long id) {
+    return deadQueueItemDao.delete(id) == 1;
+  }
+}
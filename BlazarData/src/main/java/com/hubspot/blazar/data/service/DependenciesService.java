@@ -9,10 +9,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -22,28 +21,33 @@ import javax.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import com.hubspot.blazar.base.Dependency;
 import com.hubspot.blazar.base.DependencyGraph;
 import com.hubspot.blazar.base.DiscoveredModule;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.Module;
-import com.hubspot.blazar.base.graph.Edge;
+import com.hubspot.blazar.base.ModuleDependency;
 import com.hubspot.blazar.data.dao.DependenciesDao;
+import com.hubspot.blazar.data.dependencies.ModuleDependencyIndex;
 import com.hubspot.blazar.data.util.GraphUtils;
 
 @Singleton
 public class DependenciesService {
   private final DependenciesDao dependenciesDao;
+  private final ModuleDependencyIndex dependencyIndex;
   private static final Logger LOG = LoggerFactory.getLogger(DependenciesService.class);
 
   @Inject
-  public DependenciesService(DependenciesDao dependenciesDao) {
+  public DependenciesService(DependenciesDao dependenciesDao, ModuleDependencyIndex dependencyIndex) {
     this.dependenciesDao = dependenciesDao;
+    this.dependencyIndex = dependencyIndex;
   }
 
   public DependencyGraph buildInterProjectDependencyGraph(Set<Module> modulesTriggered) {
@@ -105,75 +109,105 @@ public class DependenciesService {
   }
 
   private SetMultimap<Integer, Integer> computeGraphFromRootModules(int branchId, Set<Module> rootModules) {
-    SetMultimap<Integer, Integer> graph = HashMultimap.create();
-
-    Set<Integer> seenModules = new HashSet<>();
-    Queue<Integer> moduleQueue = new LinkedList<>();
-    List<Long> queryTimes = new ArrayList<>();
-
+    Set<Integer> rootModuleIds = new HashSet<>();
     for (Module module : rootModules) {
-      moduleQueue.add(module.getId().get());
+      rootModuleIds.add(module.getId().get());
     }
 
-    while (true) {
-      Set<Integer> modulesToProcess = new HashSet<>(moduleQueue);
-      modulesToProcess.removeAll(seenModules);
-      moduleQueue.clear();
-
-      if (modulesToProcess.isEmpty()) {
-        break;
-      }
-
-      long queryStart = System.currentTimeMillis();
-      Set<Edge> edges = dependenciesDao.getEdges(branchId, modulesToProcess);
-      long queryEnd = System.currentTimeMillis();
-      LOG.info("Query for {} took {}", modulesToProcess, queryEnd - queryStart);
-      queryTimes.add(queryEnd - queryStart);
+    return dependencyIndex.getGraphFromRootModules(branchId, rootModuleIds);
+  }
 
-      for (Edge edge : edges) {
-        graph.put(edge.getSource(), edge.getTarget());
-        moduleQueue.add(edge.getTarget());
-      }
+  /**
+   * Inserts the dependencies of newly discovered modules, with one batch per table for all of them.
+   * @return the number of rows written
+   */
+  @Transactional
+  public int insert(Collection<DiscoveredModule> modules) {
+    Set<ModuleDependency> providedDependencies = new HashSet<>();
+    Set<ModuleDependency> dependencies = new HashSet<>();
+    for (DiscoveredModule module : modules) {
+      providedDependencies.addAll(module.getBuildConfigProvidedDependencies());
+      providedDependencies.addAll(module.getPluginDiscoveredProvidedDependencies());
+      dependencies.addAll(module.getBuildConfigDependencies());
+      dependencies.addAll(module.getPluginDiscoveredDependencies());
+    }
 
-      seenModules.addAll(modulesToProcess);
+    if (!providedDependencies.isEmpty()) {
+      dependenciesDao.insertProvidedDependencies(providedDependencies);
+    }
+    if (!dependencies.isEmpty()) {
+      dependenciesDao.insertDependencies(dependencies);
     }
 
-    long sum = 0;
-    long max = 0;
-    long min = Long.MAX_VALUE;
-    for (long i : queryTimes) {
-      sum += i;
-      if (i > max) {
-        max = i;
-      }
-      if (i < min) {
-        min = i;
-      }
+    for (DiscoveredModule module : modules) {
+      dependencyIndex.moduleDependenciesChanged(module.getId().get());
     }
-    long average = queryTimes.size() == 0 ? 0 : sum / queryTimes.size();
-    LOG.info("MysqlQueries max: {} min: {} ct: {} each: {} total: {}", max, min, queryTimes.size(), average, sum);
-    return graph;
+    return providedDependencies.size() + dependencies.size();
   }
 
+  /**
+   * Brings the stored dependencies of the rediscovered modules of a branch in line with what was discovered. The
+   * stored rows of the branch are diffed against the discovered ones and only the rows that were added or removed
+   * are written, with one batch per table, so rediscovering a branch whose dependencies didn't change writes nothing.
+   *
+   * A source that discovered nothing for a module keeps its stored rows, rows without a source are always replaced.
+   * @return the number of rows written
+   */
   @Transactional
-  public void insert(DiscoveredModule module) {
-    dependenciesDao.insertProvidedDependencies(module.getBuildConfigProvidedDependencies());
-    dependenciesDao.insertProvidedDependencies(module.getPluginDiscoveredProvidedDependencies());
+  public int update(int branchId, Collection<DiscoveredModule> modules) {
+    if (modules.isEmpty()) {
+      return 0;
+    }
 
-    dependenciesDao.insertDependencies(module.getBuildConfigDependencies());
-    dependenciesDao.insertDependencies(module.getPluginDiscoveredDependencies());
-  }
+    Multimap<Integer, ModuleDependency> storedProvidedDependencies =
+        Multimaps.index(dependenciesDao.getProvidedDependenciesOfBranch(branchId), ModuleDependency::getModuleId);
+    Multimap<Integer, ModuleDependency> storedDependencies =
+        Multimaps.index(dependenciesDao.getDependenciesOfBranch(branchId), ModuleDependency::getModuleId);
+
+    Set<ModuleDependency> providedToInsert = new HashSet<>();
+    Set<ModuleDependency> providedToDelete = new HashSet<>();
+    Set<ModuleDependency> dependenciesToInsert = new HashSet<>();
+    Set<ModuleDependency> dependenciesToDelete = new HashSet<>();
+    Set<Integer> changedModuleIds = new HashSet<>();
+    for (DiscoveredModule module : modules) {
+      int moduleId = module.getId().get();
+      boolean providedChanged = diff(storedProvidedDependencies.get(moduleId), module.getBuildConfigProvidedDependencies(),
+          module.getPluginDiscoveredProvidedDependencies(), providedToInsert, providedToDelete);
+      boolean dependenciesChanged = diff(storedDependencies.get(moduleId), module.getBuildConfigDependencies(),
+          module.getPluginDiscoveredDependencies(), dependenciesToInsert, dependenciesToDelete);
+      if (providedChanged || dependenciesChanged) {
+        changedModuleIds.add(moduleId);
+      }
+    }
 
-  @Transactional
-  public void update(DiscoveredModule module) {
-    updateProvidedDependencies(module);
-    updateDependencies(module);
+    // deletes go first, a row whose source changed is deleted and inserted again under the same key
+    if (!providedToDelete.isEmpty()) {
+      dependenciesDao.deleteProvidedDependencies(providedToDelete);
+    }
+    if (!dependenciesToDelete.isEmpty()) {
+      dependenciesDao.deleteDependencies(dependenciesToDelete);
+    }
+    if (!providedToInsert.isEmpty()) {
+      dependenciesDao.insertProvidedDependencies(providedToInsert);
+    }
+    if (!dependenciesToInsert.isEmpty()) {
+      dependenciesDao.insertDependencies(dependenciesToInsert);
+    }
+
+    for (int moduleId : changedModuleIds) {
+      dependencyIndex.moduleDependenciesChanged(moduleId);
+    }
+    return providedToInsert.size() + providedToDelete.size() + dependenciesToInsert.size() + dependenciesToDelete.size();
   }
 
+  /**
+   * @return the number of rows deleted
+   */
   @Transactional
-  public void delete(int moduleId) {
-    dependenciesDao.deleteProvidedDependencies(moduleId);
-    dependenciesDao.deleteDependencies(moduleId);
+  public int delete(int moduleId) {
+    int deleted = dependenciesDao.deleteProvidedDependencies(moduleId) + dependenciesDao.deleteDependencies(moduleId);
+    dependencyIndex.moduleDependenciesChanged(moduleId);
+    return deleted;
   }
 
   public Set<Dependency> getProvided(int moduleId) {
@@ -196,34 +230,44 @@ public class DependenciesService {
     return dependenciesDao.getBranchesWithNonVersionedDependencies();
   }
 
-  private void updateProvidedDependencies(DiscoveredModule module) {
-    //TODO: remove that when no entries have UNKNOWN source
-    dependenciesDao.deleteProvidedDependenciesBySource(module.getId().get(), UNKNOWN);
-
-    if (!module.getBuildConfigProvidedDependencies().isEmpty()) {
-      dependenciesDao.deleteProvidedDependenciesBySource(module.getId().get(), BUILD_CONFIG);
-      dependenciesDao.insertProvidedDependencies(module.getBuildConfigProvidedDependencies());
+  /**
+   * Adds the rows of one module and table that have to be inserted or deleted to toInsert and toDelete
+   * @return whether any row of the module has to be written
+   */
+  private static boolean diff(Collection<ModuleDependency> stored,
+                              Set<ModuleDependency> fromBuildConfig,
+                              Set<ModuleDependency> fromPlugins,
+                              Set<ModuleDependency> toInsert,
+                              Set<ModuleDependency> toDelete) {
+    Set<ModuleDependency> wanted = new HashSet<>(fromBuildConfig);
+    wanted.addAll(fromPlugins);
+    Set<String> wantedKeys = new HashSet<>();
+    for (ModuleDependency dependency : wanted) {
+      wantedKeys.add(keyOf(dependency));
     }
 
-    if (!module.getPluginDiscoveredProvidedDependencies().isEmpty()) {
-      dependenciesDao.deleteProvidedDependenciesBySource(module.getId().get(), PLUGIN);
-      dependenciesDao.insertProvidedDependencies(module.getPluginDiscoveredProvidedDependencies());
+    for (ModuleDependency dependency : stored) {
+      //TODO: drop the UNKNOWN case when no entries have UNKNOWN source
+      boolean replaced = dependency.getSource() == UNKNOWN ||
+          (dependency.getSource() == BUILD_CONFIG && !fromBuildConfig.isEmpty()) ||
+          (dependency.getSource() == PLUGIN && !fromPlugins.isEmpty());
+      // a row that was discovered again from another source is replaced as well, they share the primary key
+      if (!replaced && !wantedKeys.contains(keyOf(dependency))) {
+        wanted.add(dependency);
+      }
     }
-  }
-
-  private void updateDependencies(DiscoveredModule module) {
-    //TODO: remove that when no entries have UNKNOWN source
-    dependenciesDao.deleteDependenciesBySource(module.getId().get(), UNKNOWN);
 
-    if (!module.getBuildConfigDependencies().isEmpty()) {
-      dependenciesDao.deleteDependenciesBySource(module.getId().get(), BUILD_CONFIG);
-      dependenciesDao.insertDependencies(module.getBuildConfigDependencies());
-    }
+    Set<ModuleDependency> storedSet = ImmutableSet.copyOf(stored);
+    Set<ModuleDependency> inserted = Sets.difference(wanted, storedSet);
+    Set<ModuleDependency> deleted = Sets.difference(storedSet, wanted);
+    toInsert.addAll(inserted);
+    toDelete.addAll(deleted);
+    return !inserted.isEmpty() || !deleted.isEmpty();
+  }
 
-    if (!module.getPluginDiscoveredProvidedDependencies().isEmpty()) {
-      dependenciesDao.deleteDependenciesBySource(module.getId().get(), PLUGIN);
-      dependenciesDao.insertDependencies(module.getPluginDiscoveredDependencies());
-    }
+  // the primary key of the tables, which compare names and versions case insensitively
+  private static String keyOf(ModuleDependency dependency) {
+    return (dependency.getName() + ":" + dependency.getVersion()).toLowerCase(Locale.ENGLISH);
   }
 
   private static List<Integer> findMissingModules(List<Integer> topologicalSort, Set<Module> allModules) {
@@ -1,10 +1,12 @@
 package com.hubspot.blazar.data.service;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import com.hubspot.blazar.base.InterProjectBuild;
@@ -13,11 +15,12 @@ import com.hubspot.blazar.base.RepositoryBuild;
 import com.hubspot.blazar.base.metrics.ActiveBranchBuildsInState;
 import com.hubspot.blazar.base.metrics.ActiveInterProjectBuildsInState;
 import com.hubspot.blazar.base.metrics.ActiveModuleBuildsInState;
+import com.hubspot.blazar.base.metrics.QueuedItemCount;
 import com.hubspot.blazar.data.dao.MetricsDao;
 import com.hubspot.blazar.data.dao.QueueItemDao;
-import com.hubspot.blazar.data.queue.QueueItem;
 
 public class MetricsService {
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsService.class);
   private static final long BUILD_PROBABLY_HUNG_AGE_MILLIS = TimeUnit.MINUTES.toMillis(30);
 
   private MetricsDao dao;
@@ -78,16 +81,15 @@ public class MetricsService {
    * @return Collection of events to counts of unprocessed events in that state
    */
   public Map<Class<?>, Integer> countQueuedEventsByType() {
-    Map<Class<?>, Integer> countMap = new HashMap<>();
-    Set<QueueItem> items = queueItemDao.getItemsReadyToExecute();
-    for (QueueItem item : items) {
-      if (countMap.containsKey(item.getType())) {
-        countMap.put(item.getType(), countMap.get(item.getType()) + 1);
-      } else {
-        countMap.put(item.getType(), 1);
+    ImmutableMap.Builder<Class<?>, Integer> mapBuilder = ImmutableMap.builder();
+    for (QueuedItemCount queuedItemCount : queueItemDao.countItemsReadyToExecuteByType()) {
+      try {
+        mapBuilder.put(Class.forName(queuedItemCount.getClassName()), queuedItemCount.getCount());
+      } catch (ClassNotFoundException e) {
+        LOG.warn("Ignoring {} queued events of unknown type {}", queuedItemCount.getCount(), queuedItemCount.getClassName());
       }
     }
-    return ImmutableMap.copyOf(countMap);
+    return mapBuilder.build();
   }
 
   /**
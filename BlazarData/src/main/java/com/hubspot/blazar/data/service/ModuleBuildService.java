@@ -1,6 +1,8 @@
 package com.hubspot.blazar.data.service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -94,6 +96,19 @@ public class ModuleBuildService {
     return moduleBuildDao.getPreviousBuild(module);
   }
 
+  /**
+   * Same as {@link #getPreviousBuild(Module)} for every module of a branch, in one query
+   *
+   * @return the previous build of every module of the branch that has one, by module id
+   */
+  public Map<Integer, ModuleBuild> getPreviousBuildsOfBranch(int branchId) {
+    Map<Integer, ModuleBuild> previousBuilds = new HashMap<>();
+    for (ModuleBuild build : moduleBuildDao.getPreviousBuildsOfBranch(branchId)) {
+      previousBuilds.put(build.getModuleId(), build);
+    }
+    return previousBuilds;
+  }
+
   public Optional<ModuleBuild> getByModuleAndNumber(int moduleId, int buildNumber) {
     return moduleBuildDao.getByModuleAndNumber(moduleId, buildNumber);
   }
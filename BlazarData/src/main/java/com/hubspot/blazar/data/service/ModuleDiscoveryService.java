@@ -19,14 +19,15 @@ public class ModuleDiscoveryService {
   }
 
   /**
-   * It return
+   * Persists the modules, their dependencies and the malformed files of a branch
    * @param branch
    * @param moduleDiscoveryResult
-   * @return
+   * @return the number of module and dependency rows that were written
    */
   @Transactional
-  public void persistDiscoveryResult(GitInfo branch, ModuleDiscoveryResult moduleDiscoveryResult) {
-    moduleService.persistModulesAndDependencies(branch, moduleDiscoveryResult.getModules());
+  public int persistDiscoveryResult(GitInfo branch, ModuleDiscoveryResult moduleDiscoveryResult) {
+    int rowsWritten = moduleService.persistModulesAndDependencies(branch, moduleDiscoveryResult.getModules());
     malformedFileService.setMalformedFiles(branch, moduleDiscoveryResult.getMalformedFiles());
+    return rowsWritten;
   }
 }
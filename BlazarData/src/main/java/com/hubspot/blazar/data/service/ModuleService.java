@@ -1,5 +1,8 @@
 package com.hubspot.blazar.data.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -19,6 +22,7 @@ import com.google.inject.Inject;
 import com.hubspot.blazar.base.DiscoveredModule;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.Module;
+import com.hubspot.blazar.base.ModuleWithBranch;
 import com.hubspot.blazar.data.dao.ModuleDao;
 
 public class ModuleService {
@@ -40,6 +44,14 @@ public class ModuleService {
     return moduleDao.getByBranch(branchId);
   }
 
+  public Set<ModuleWithBranch> getWithBranches(Set<Integer> moduleIds) {
+    if (moduleIds.isEmpty()) {
+      return Collections.emptySet();
+    }
+
+    return moduleDao.getWithBranches(moduleIds);
+  }
+
   public int getBranchIdFromModuleId(int moduleId) {
     return moduleDao.getBranchIdFromModuleId(moduleId);
   }
@@ -62,10 +74,10 @@ public class ModuleService {
    * may have updated build configs and updated dependencies. The Module entries have only their build configs updated.
    * @param branch
    * @param updatedModules
-   * @return
+   * @return the number of module and dependency rows that were written
    */
   @Transactional
-  public void persistModulesAndDependencies(GitInfo branch, Set<Module> updatedModules) {
+  public int persistModulesAndDependencies(GitInfo branch, Set<Module> updatedModules) {
     Set<Module> registeredActiveModules = getByBranch(branch.getId().get()).stream().filter(Module::isActive)
         .collect(Collectors.toSet());
 
@@ -74,22 +86,25 @@ public class ModuleService {
     LOG.debug("Registered Active Modules: {}", registeredActiveModulesByName.toString());
     LOG.debug("Updated Modules: {}", updatedModulesByName.toString());
 
-    deleteRemovedModules(updatedModulesByName, registeredActiveModulesByName);
+    int rowsWritten = deleteRemovedModules(updatedModulesByName, registeredActiveModulesByName);
 
-    updateExistingNotRediscoveredModules(updatedModules, registeredActiveModulesByName);
+    rowsWritten += updateExistingNotRediscoveredModules(updatedModules, registeredActiveModulesByName);
 
-    createNewlyDiscoveredModules(branch, updatedModules, registeredActiveModulesByName);
+    rowsWritten += createNewlyDiscoveredModules(branch, updatedModules, registeredActiveModulesByName);
 
-    updateRediscoveredModules(updatedModules, registeredActiveModulesByName);
+    rowsWritten += updateRediscoveredModules(branch, updatedModules, registeredActiveModulesByName);
+    return rowsWritten;
   }
 
   // For re-discovered modules we will update their module entries in db if the
   // build config has been refreshed and also update the relevant entries in the dependencies
-  // tables.
-  private void updateRediscoveredModules(Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
+  // tables. The dependencies of all of them are written together, only the rows that changed.
+  private int updateRediscoveredModules(GitInfo branch, Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
     Set<Module> rediscoveredModules = updatedModules.stream()
         .filter(module -> module.getClass() == DiscoveredModule.class && registeredActiveModulesByName.containsKey(module.getName())).collect(Collectors.toSet());
-    rediscoveredModules.forEach(rediscoveredModule -> {
+    List<DiscoveredModule> rediscoveredModulesWithIds = new ArrayList<>();
+    int rowsWritten = 0;
+    for (Module rediscoveredModule : rediscoveredModules) {
 
       Module previousModuleInstance = registeredActiveModulesByName.get(rediscoveredModule.getName());
 
@@ -100,63 +115,79 @@ public class ModuleService {
       if (buildConfigChanged(previousModuleInstance, rediscoveredModule)) {
         LOG.debug("Rediscovered module {}(type:{}, id:{}) has a changed build config. We will persist it.", rediscoveredModule.getName(), rediscoveredModule.getType(), moduleId);
         checkAffectedRowCount(moduleDao.update(rediscoveredModuleWithId));
+        rowsWritten++;
       } else {
         LOG.debug("Rediscovered module {}(type:{}, id:{}) has no changes in its build config, will not persist it", rediscoveredModule.getName(), rediscoveredModule.getType(), moduleId);
       }
 
-      LOG.debug("Persisting dependencies for rediscovered module {}(type:{}, id:{})", rediscoveredModule.getName(), rediscoveredModule.getType(), moduleId);
-      dependenciesService.update(rediscoveredModuleWithId);
-    });
+      rediscoveredModulesWithIds.add(rediscoveredModuleWithId);
+    }
+
+    int dependencyRowsWritten = dependenciesService.update(branch.getId().get(), rediscoveredModulesWithIds);
+    LOG.debug("Persisted dependencies for {} rediscovered modules, {} rows changed", rediscoveredModulesWithIds.size(), dependencyRowsWritten);
+    return rowsWritten + dependencyRowsWritten;
   }
 
   // For newly discovered modules we will create module entries and will also create entries in the dependencies
   // tables.
-  private void createNewlyDiscoveredModules(GitInfo branch, Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
+  private int createNewlyDiscoveredModules(GitInfo branch, Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
     Set<Module> newlyDiscoveredModules = updatedModules.stream()
         .filter(module -> module.getClass() == DiscoveredModule.class && !registeredActiveModulesByName.containsKey(module.getName())).collect(Collectors.toSet());
 
-    newlyDiscoveredModules.forEach(newModule -> {
+    List<DiscoveredModule> persistedModules = new ArrayList<>();
+    for (Module newModule : newlyDiscoveredModules) {
       LOG.debug("Persisting newly discovered module {}(type:{})", newModule.getName(), newModule.getType());
       int moduleId = moduleDao.insert(branch.getId().get(), newModule);
       LOG.debug("Persisted newly discovered module {}:{} with id:{})", newModule.getName(), newModule.getType(), moduleId);
-      LOG.debug("Persisting dependencies for newly discovered module {}(type:{}, id:{})", newModule.getName(), newModule.getType(), moduleId);
-      DiscoveredModule persistedModule = ((DiscoveredModule) newModule).withId(moduleId);
-      dependenciesService.insert(persistedModule);
-    });
+      persistedModules.add(((DiscoveredModule) newModule).withId(moduleId));
+    }
+
+    if (persistedModules.isEmpty()) {
+      return 0;
+    }
+
+    int dependencyRowsWritten = dependenciesService.insert(persistedModules);
+    LOG.debug("Persisted dependencies for {} newly discovered modules, {} rows inserted", persistedModules.size(), dependencyRowsWritten);
+    return persistedModules.size() + dependencyRowsWritten;
   }
 
-  private void updateExistingNotRediscoveredModules(Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
+  private int updateExistingNotRediscoveredModules(Set<Module> updatedModules, Map<String, Module> registeredActiveModulesByName) {
     // For already registered modules that were not rediscovered we will just update the module in db if the
     // build config has been refreshed
     Set<Module> alreadyRegisteredAndNotRediscovedModules = updatedModules.stream()
         .filter(module -> module.getClass() == Module.class).collect(Collectors.toSet());
 
-    alreadyRegisteredAndNotRediscovedModules.forEach(existingModule -> {
+    int rowsWritten = 0;
+    for (Module existingModule : alreadyRegisteredAndNotRediscovedModules) {
       Module previousModuleInstance = registeredActiveModulesByName.get(existingModule.getName());
       if (!previousModuleInstance.equals(existingModule)) {
         LOG.debug("Existing module {}(type:{}, id:{}) has a changed build config. We will persist it.", existingModule.getName(), existingModule.getType(), existingModule.getId().get());
         checkAffectedRowCount(moduleDao.update(existingModule));
+        rowsWritten++;
       } else {
         LOG.debug("Existing module {}(type:{}, id:{}) has no changes in its build config, will not persist it", existingModule.getName(), existingModule.getType(), existingModule.getId().get());
       }
-    });
+    }
+    return rowsWritten;
   }
 
   // For the modules that were removed we will deactivate them in db and remove their dependencies
-  private void deleteRemovedModules(Map<String, Module> updatedModulesByName, Map<String, Module> registeredActiveModulesByName) {
+  private int deleteRemovedModules(Map<String, Module> updatedModulesByName, Map<String, Module> registeredActiveModulesByName) {
     Set<String> deletedModuleNames = Sets.difference(registeredActiveModulesByName.keySet(),
         updatedModulesByName.keySet());
     LOG.debug("The following modules were removed from code and will be removed from database: [{}]",
         Joiner.on(" ,").join(deletedModuleNames));
+    int rowsWritten = 0;
     for (String deletedModuleName : deletedModuleNames) {
       Module module = registeredActiveModulesByName.get(deletedModuleName);
       LOG.debug("Module '{}' has been removed from code. Will deactivate the module and delete its dependencies from database",
           deletedModuleName);
       checkAffectedRowCount(moduleDao.deactivate(module.getId().get()));
       LOG.debug("Module '{}' was set to inactive in database", deletedModuleName);
-      dependenciesService.delete(module.getId().get());
+      rowsWritten += 1 + dependenciesService.delete(module.getId().get());
       LOG.debug("Dependencies of removed module {} were deleted from database", deletedModuleName);
     }
+    return rowsWritten;
   }
 
   private static void checkAffectedRowCount(int affectedRows) {
@@ -3,41 +3,31 @@ package com.hubspot.blazar.data.util;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.SetMultimap;
-import com.google.common.collect.TreeMultimap;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 
 public enum GraphUtils {
   INSTANCE;
 
   public <V extends Comparable<V>> List<V> topologicalSort(SetMultimap<V, V> transitiveReduction) {
-    SetMultimap<V, V> graph = TreeMultimap.create(transitiveReduction);
+    // indexing the vertices in their natural order makes Kahn's algorithm visit roots and children in that order
+    IndexedGraph<V> graph = new IndexedGraph<>(transitiveReduction, new ArrayList<>(new TreeSet<>(vertices(transitiveReduction))));
 
     List<V> sorted = new ArrayList<>();
-    Deque<V> roots = new ArrayDeque<>();
-    for (V vertex : graph.keySet()) {
-      if (incomingVertices(graph, vertex).isEmpty()) {
-        roots.add(vertex);
-      }
-    }
-
-    while (!roots.isEmpty()) {
-      V root = roots.removeFirst();
-      sorted.add(root);
-
-      Set<V> children = graph.removeAll(root);
-      for (V child : children) {
-        if (incomingVertices(graph, child).isEmpty()) {
-          roots.addLast(child);
-        }
-      }
+    for (int vertex : graph.kahnSort()) {
+      sorted.add(graph.vertex(vertex));
     }
 
     return sorted;
@@ -76,6 +66,56 @@ public enum GraphUtils {
   }
 
   public <V> SetMultimap<V, V> transitiveReduction(SetMultimap<V, V> edges) {
+    IndexedGraph<V> graph = new IndexedGraph<>(edges, new ArrayList<>(vertices(edges)));
+    int[] order = graph.kahnSort();
+    if (order.length < graph.size()) {
+      // the graph has a cycle so there is no topological order to work with
+      return transitiveReductionOfPathClosure(edges);
+    }
+
+    int[] position = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      position[order[i]] = i;
+    }
+
+    // Going from the bottom of the graph up, the descendants of a vertex are the union of the descendants of its
+    // children. Visiting the children closest to the vertex in topological order first, a child that is already
+    // known to be a descendant is reachable through another child so its edge is not part of the reduction.
+    // The descendants of a vertex are dropped as soon as all of its parents have been visited.
+    SetMultimap<V, V> reduced = HashMultimap.create();
+    BitSet[] descendants = new BitSet[order.length];
+    int[] parentsLeft = graph.inDegrees();
+    for (int i = order.length - 1; i >= 0; i--) {
+      int vertex = order[i];
+      int[] children = graph.children(vertex);
+      int[] childPositions = new int[children.length];
+      for (int c = 0; c < children.length; c++) {
+        childPositions[c] = position[children[c]];
+      }
+      Arrays.sort(childPositions);
+
+      BitSet reachable = new BitSet();
+      for (int childPosition : childPositions) {
+        if (!reachable.get(childPosition)) {
+          reduced.put(graph.vertex(vertex), graph.vertex(order[childPosition]));
+          reachable.set(childPosition);
+          reachable.or(descendants[childPosition]);
+        }
+
+        if (--parentsLeft[order[childPosition]] == 0) {
+          descendants[childPosition] = null;
+        }
+      }
+
+      if (parentsLeft[vertex] > 0) {
+        descendants[i] = reachable;
+      }
+    }
+
+    return reduced;
+  }
+
+  private <V> SetMultimap<V, V> transitiveReductionOfPathClosure(SetMultimap<V, V> edges) {
     SetMultimap<V, V> paths = findAllPaths(edges);
 
     SetMultimap<V, V> reduced = HashMultimap.create(paths);
@@ -96,17 +136,6 @@ public enum GraphUtils {
     return reduced;
   }
 
-  private <V> Set<V> incomingVertices(SetMultimap<V, V> graph, V target) {
-    Set<V> incomingVertices = new HashSet<>();
-    for (Entry<V, V> path : graph.entries()) {
-      if (path.getValue().equals(target)) {
-        incomingVertices.add(path.getKey());
-      }
-    }
-
-    return incomingVertices;
-  }
-
   private <V> SetMultimap<V, V> findAllPaths(SetMultimap<V, V> edges) {
     SetMultimap<V, V> paths = HashMultimap.create(edges);
     Set<V> vertices = vertices(paths);
@@ -130,6 +159,80 @@ public enum GraphUtils {
     return ImmutableSet.<V>builder().addAll(graph.keySet()).addAll(graph.values()).build();
   }
 
+  /**
+   * The vertices of a graph numbered 0..n-1 with the children of each vertex as an array of those numbers.
+   */
+  private static final class IndexedGraph<V> {
+    private final List<V> vertices;
+    private final int[][] children;
+    private final int[] inDegrees;
+
+    private IndexedGraph(SetMultimap<V, V> edges, List<V> vertices) {
+      this.vertices = vertices;
+      this.children = new int[vertices.size()][];
+      this.inDegrees = new int[vertices.size()];
+
+      Map<V, Integer> index = new HashMap<>();
+      for (int i = 0; i < vertices.size(); i++) {
+        index.put(vertices.get(i), i);
+      }
+
+      for (int i = 0; i < vertices.size(); i++) {
+        Set<V> targets = edges.get(vertices.get(i));
+        int[] vertexChildren = new int[targets.size()];
+        int c = 0;
+        for (V target : targets) {
+          int child = index.get(target);
+          vertexChildren[c++] = child;
+          inDegrees[child]++;
+        }
+        Arrays.sort(vertexChildren);
+        children[i] = vertexChildren;
+      }
+    }
+
+    private int size() {
+      return vertices.size();
+    }
+
+    private V vertex(int vertex) {
+      return vertices.get(vertex);
+    }
+
+    private int[] children(int vertex) {
+      return children[vertex];
+    }
+
+    private int[] inDegrees() {
+      return inDegrees.clone();
+    }
+
+    /**
+     * @return the vertices in topological order, vertices that are part of a cycle are left out
+     */
+    private int[] kahnSort() {
+      int[] remainingInDegrees = inDegrees();
+      int[] sorted = new int[vertices.size()];
+      int head = 0;
+      int tail = 0;
+      for (int vertex = 0; vertex < vertices.size(); vertex++) {
+        if (remainingInDegrees[vertex] == 0) {
+          sorted[tail++] = vertex;
+        }
+      }
+
+      while (head < tail) {
+        for (int child : children[sorted[head++]]) {
+          if (--remainingInDegrees[child] == 0) {
+            sorted[tail++] = child;
+          }
+        }
+      }
+
+      return Arrays.copyOf(sorted, tail);
+    }
+  }
+
   private static class Edge<T> {
     private final T source;
     private final T target;
@@ -0,0 +1,105 @@
+package com.hubspot.blazar.data.util;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hubspot.blazar.base.Module;
+
+/**
+ * Finds the modules whose glob contains a path without evaluating the glob of every module. The modules are indexed in
+ * a trie by the directories their glob starts with, so only the modules along the directories of a path are looked at.
+ *
+ * Globs of the form {@code some/dir/**}, which is what module discovery produces, contain every path under their
+ * directory and are matched without evaluating them. Any other glob is checked with {@link Module#contains} once the
+ * directories leading to it matched, so the result is the same as checking every module.
+ */
+public class ModulePathMatcher {
+  private static final String GLOB_METACHARACTERS = "*?[{\\";
+
+  private final Node root;
+
+  public ModulePathMatcher(Collection<Module> modules) {
+    this.root = new Node();
+    for (Module module : modules) {
+      String glob = module.getGlob();
+      String literalPrefix = glob.substring(0, firstMetacharacter(glob));
+      String directoryPrefix = literalPrefix.substring(0, literalPrefix.lastIndexOf('/') + 1);
+
+      Node node = root;
+      for (String directory : directories(directoryPrefix)) {
+        node = node.children.computeIfAbsent(directory, ignored -> new Node());
+      }
+
+      if (glob.equals(directoryPrefix + "**")) {
+        node.containingEverything.add(module);
+      } else {
+        node.toMatch.add(module);
+      }
+    }
+  }
+
+  public Set<Module> getModulesContaining(String path) {
+    Set<Module> modules = new HashSet<>();
+    addModulesContaining(path, modules);
+    return modules;
+  }
+
+  public Set<Module> getModulesContainingAny(Collection<String> paths) {
+    Set<Module> modules = new HashSet<>();
+    for (String path : paths) {
+      addModulesContaining(path, modules);
+    }
+    return modules;
+  }
+
+  private void addModulesContaining(String path, Set<Module> modules) {
+    Path normalized = FileSystems.getDefault().getPath(path);
+    String normalizedPath = normalized.toString();
+
+    Node node = root;
+    List<String> directories = directories(normalizedPath.substring(0, normalizedPath.lastIndexOf('/') + 1));
+    for (int i = 0; node != null; i++) {
+      modules.addAll(node.containingEverything);
+      for (Module module : node.toMatch) {
+        if (!modules.contains(module) && module.contains(normalized)) {
+          modules.add(module);
+        }
+      }
+
+      node = i < directories.size() ? node.children.get(directories.get(i)) : null;
+    }
+  }
+
+  private static int firstMetacharacter(String glob) {
+    for (int i = 0; i < glob.length(); i++) {
+      if (GLOB_METACHARACTERS.indexOf(glob.charAt(i)) >= 0) {
+        return i;
+      }
+    }
+    return glob.length();
+  }
+
+  // "a/b/" -> [a, b], "/a/" -> ["", a] so that absolute and relative globs end up in different nodes
+  private static List<String> directories(String directoryPrefix) {
+    List<String> directories = new ArrayList<>();
+    int start = 0;
+    for (int end = directoryPrefix.indexOf('/'); end >= 0; end = directoryPrefix.indexOf('/', start)) {
+      directories.add(directoryPrefix.substring(start, end));
+      start = end + 1;
+    }
+    return directories;
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private final List<Module> containingEverything = new ArrayList<>();
+    private final List<Module> toMatch = new ArrayList<>();
+  }
+}
@@ -241,3 +241,30 @@ CREATE INDEX moduleId_and_source ON module_depends (moduleId, source);
 
 -- changeset gchomatas:19
 ALTER TABLE `modules` MODIFY `name` VARCHAR(250) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL;
+
+-- changeset blazar:20
+CREATE INDEX completed_and_id ON queue_items (completedTimestamp, id);
+
+-- changeset blazar:21
+ALTER TABLE queue_items ADD COLUMN partitionKey varchar(250);
+
+-- changeset blazar:22
+ALTER TABLE queue_items ADD COLUMN leaseOwner varchar(250), ADD COLUMN leaseExpiresTimestamp TIMESTAMP NULL;
+CREATE INDEX partition_completed_and_id ON queue_items (partitionKey, completedTimestamp, id);
+
+-- changeset blazar:23
+CREATE TABLE queue_items_dead (
+  id bigint(20) unsigned NOT NULL,
+  type varchar(250) NOT NULL,
+  item mediumtext CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  partitionKey varchar(250),
+  retryCount int(11) unsigned NOT NULL,
+  createdTimestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  deadTimestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8;
+
+-- changeset blazar:24
+-- rows queued before partition keys were stored are keyed by the simple name of their type, like QueueItemPartitionKeys does for untyped events
+UPDATE queue_items SET partitionKey = SUBSTRING_INDEX(SUBSTRING_INDEX(type, '.', -1), '$', -1) WHERE partitionKey IS NULL;
+ALTER TABLE queue_items MODIFY partitionKey varchar(250) NOT NULL;
@@ -0,0 +1,107 @@
+package com.hubspot.blazar.data.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.base.RepositoryState;
+import com.hubspot.blazar.base.RepositoryStateChanges;
+import com.hubspot.blazar.data.service.StateService;
+
+public class StateCacheTest {
+  private static final RepositoryState branch1 = state(1, true, 1000);
+  private static final RepositoryState branch2 = state(2, true, 2000);
+  private static final RepositoryState branch1Updated = state(1, true, 3000);
+  private static final RepositoryState branch2Deactivated = state(2, false, 4000);
+
+  private final StateService stateService = mock(StateService.class);
+  private StateCache stateCache;
+
+  @Before
+  public void before() {
+    when(stateService.getAllRepositoryStates()).thenReturn(ImmutableSet.of(branch1, branch2));
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(ImmutableSet.of(branch2));
+    stateCache = new StateCache(stateService);
+  }
+
+  @Test
+  public void itKeepsTheVersionWhenNothingChanged() {
+    long version = stateCache.getVersion();
+
+    assertThat(stateCache.getAllRepositoryStates()).containsOnly(branch1, branch2);
+    assertThat(stateCache.getVersion()).isEqualTo(version);
+    assertThat(stateCache.getChangesSince(version).getChanged()).isEmpty();
+  }
+
+  @Test
+  public void itReturnsTheChangesSinceAVersion() {
+    long initialVersion = stateCache.getVersion();
+
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(ImmutableSet.of(branch1Updated, branch2));
+    long updatedVersion = stateCache.getVersion();
+    assertThat(updatedVersion).isGreaterThan(initialVersion);
+    assertThat(stateCache.getChangesSince(initialVersion).getChanged()).containsOnly(branch1Updated);
+
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(ImmutableSet.of(branch1Updated, branch2Deactivated));
+    assertThat(stateCache.getAllRepositoryStates()).containsOnly(branch1Updated);
+    assertThat(stateCache.getChangesSince(updatedVersion).getChanged()).isEmpty();
+    assertThat(stateCache.getChangesSince(updatedVersion).getRemoved()).containsOnly(2);
+    assertThat(stateCache.getChangesSince(initialVersion).getChanged()).containsOnly(branch1Updated);
+    assertThat(stateCache.getChangesSince(0).getChanged()).containsOnly(branch1Updated);
+  }
+
+  @Test
+  public void itReturnsAllStatesForAVersionItDoesNotKnow() {
+    long version = stateCache.getVersion();
+
+    // e.g. a version from another instance, or from before a restart
+    for (long unknownVersion : new long[] {0, version + 1}) {
+      RepositoryStateChanges changes = stateCache.getChangesSince(unknownVersion);
+      assertThat(changes.isComplete()).isTrue();
+      assertThat(changes.getChanged()).containsOnly(branch1, branch2);
+      assertThat(changes.getVersion()).isEqualTo(version);
+    }
+
+    assertThat(stateCache.getChangesSince(version).isComplete()).isFalse();
+    assertThat(new StateCache(stateService).getChangesSince(version).isComplete()).isTrue();
+  }
+
+  @Test
+  public void itReturnsAllStatesOnceItForgotARemovalTheClientHasNotSeen() {
+    Set<RepositoryState> active = new HashSet<>();
+    Set<RepositoryState> deactivated = new HashSet<>();
+    for (int branchId = 10; branchId < 1010; branchId++) {
+      active.add(state(branchId, true, 5000));
+      deactivated.add(state(branchId, false, 6000));
+    }
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(active);
+    long activeVersion = stateCache.getVersion();
+
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(deactivated);
+    long deactivatedVersion = stateCache.getVersion();
+    assertThat(stateCache.getChangesSince(activeVersion).getRemoved()).hasSize(1000);
+
+    // one more removal than it keeps, so the oldest ones are forgotten
+    when(stateService.getChangedRepositoryStates(anyLong())).thenReturn(ImmutableSet.of(branch2Deactivated));
+    stateCache.getVersion();
+    assertThat(stateCache.getChangesSince(activeVersion).isComplete()).isTrue();
+    assertThat(stateCache.getChangesSince(activeVersion).getChanged()).containsOnly(branch1);
+    assertThat(stateCache.getChangesSince(deactivatedVersion).isComplete()).isFalse();
+    assertThat(stateCache.getChangesSince(deactivatedVersion).getRemoved()).containsOnly(2);
+  }
+
+  private static RepositoryState state(int branchId, boolean active, long updatedTimestamp) {
+    GitInfo gitInfo = new GitInfo(Optional.of(branchId), "git.example.com", "example", "example" + branchId, branchId, "master", active, 0L, updatedTimestamp);
+    return new RepositoryState(gitInfo, Optional.absent(), Optional.absent(), Optional.absent());
+  }
+}
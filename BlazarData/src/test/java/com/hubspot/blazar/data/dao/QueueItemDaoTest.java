@@ -2,18 +2,24 @@ package com.hubspot.blazar.data.dao;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.jukito.JukitoRunner;
 import org.jukito.UseModules;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.hubspot.blazar.base.BranchSetting;
 import com.hubspot.blazar.data.BlazarDataTestModule;
 import com.hubspot.blazar.data.queue.QueueItem;
+import com.hubspot.blazar.data.queue.QueueItemKey;
+import com.hubspot.blazar.github.GitHubProtos.PushEvent;
+import com.hubspot.blazar.github.GitHubProtos.Repository;
 import com.hubspot.blazar.test.base.service.DatabaseBackedTest;
 
 @RunWith(JukitoRunner.class)
@@ -26,11 +32,13 @@ public class QueueItemDaoTest extends DatabaseBackedTest {
   public void testInsert() {
     queueItemDao.insert(new QueueItem(new BranchSetting(123, true, false)));
 
-    Set<QueueItem> queueItems = queueItemDao.getItemsReadyToExecute();
+    List<QueueItemKey> queueItemKeys = queueItemDao.getItemsReadyToExecute(0, 10);
 
-    assertThat(queueItems).hasSize(1);
+    assertThat(queueItemKeys).hasSize(1);
+    assertThat(queueItemKeys.get(0).getId()).isEqualTo(1L);
+    assertThat(queueItemKeys.get(0).getType()).isEqualTo(BranchSetting.class);
 
-    QueueItem queueItem = queueItems.iterator().next();
+    QueueItem queueItem = queueItemDao.getQueuedItem(1L).get();
     assertThat(queueItem.getId()).isEqualTo(Optional.of(1L));
     assertThat(queueItem.getType()).isEqualTo(BranchSetting.class);
     assertThat(queueItem.getRetryCount()).isEqualTo(0);
@@ -40,4 +48,118 @@ public class QueueItemDaoTest extends DatabaseBackedTest {
     assertThat(branchSetting.isTriggerInterProjectBuilds()).isTrue();
     assertThat(branchSetting.isInterProjectBuildOptIn()).isFalse();
   }
+
+  @Test
+  public void testKeysetPagination() {
+    for (int i = 0; i < 5; i++) {
+      queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo-" + i)));
+    }
+    complete(2L);
+
+    List<QueueItemKey> firstPage = queueItemDao.getItemsReadyToExecute(0, 2);
+    assertThat(ids(firstPage)).containsExactly(1L, 3L);
+
+    List<QueueItemKey> secondPage = queueItemDao.getItemsReadyToExecute(3, 2);
+    assertThat(ids(secondPage)).containsExactly(4L, 5L);
+
+    assertThat(queueItemDao.getItemsReadyToExecute(5, 2)).isEmpty();
+    assertThat(queueItemDao.getQueuedItem(2L).isPresent()).isFalse();
+  }
+
+  @Test
+  public void testOnlyTheOldestReadyItemOfAPartitionIsReady() {
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/first")));
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/first")));
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/second")));
+
+    assertThat(ids(queueItemDao.getItemsReadyToExecute(0, 10))).containsExactly(1L, 3L);
+    assertThat(ids(queueItemDao.getItemsReadyToExecute(ImmutableSet.of(2L, 3L)))).containsExactly(3L);
+
+    complete(1L);
+
+    assertThat(ids(queueItemDao.getItemsReadyToExecute(0, 10))).containsExactly(2L, 3L);
+    assertThat(queueItemDao.getNextItemReadyToExecute(queueItemDao.getQueuedItem(2L).get().getPartitionKey()).get().getId()).isEqualTo(2L);
+  }
+
+  @Test
+  public void testClaimIsExclusiveUntilTheLeaseExpires() {
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo")));
+    Set<Long> ids = ImmutableSet.of(1L);
+
+    assertThat(queueItemDao.claim(ids, "first-owner", 60)).isEqualTo(1);
+    assertThat(queueItemDao.claim(ids, "second-owner", 60)).isEqualTo(0);
+    assertThat(queueItemDao.getItemsReadyToExecute(0, 10)).isEmpty();
+    assertThat(ids(queueItemDao.getClaimedItems(ids, "first-owner"))).containsExactly(1L);
+    assertThat(queueItemDao.getClaimedItems(ids, "second-owner")).isEmpty();
+    assertThat(queueItemDao.getClaimedItem(1L, "second-owner").isPresent()).isFalse();
+
+    // let the lease of the first owner expire
+    assertThat(queueItemDao.renewLeases(ids, "first-owner", -1)).isEqualTo(1);
+
+    assertThat(queueItemDao.claim(ids, "second-owner", 60)).isEqualTo(1);
+    assertThat(queueItemDao.getClaimedItem(1L, "second-owner").isPresent()).isTrue();
+    assertThat(queueItemDao.renewLeases(ids, "first-owner", 60)).isEqualTo(0);
+  }
+
+  @Test
+  public void testOnlyTheHeadOfAPartitionCanBeClaimed() {
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo")));
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo")));
+    Set<Long> head = ImmutableSet.of(1L);
+    Set<Long> next = ImmutableSet.of(2L);
+
+    // e.g. an instance that read the partition while its head was delayed for a retry that is ready again by now
+    assertThat(queueItemDao.claim(next, "second-owner", 60)).isEqualTo(0);
+    assertThat(queueItemDao.claim(head, "first-owner", 60)).isEqualTo(1);
+    assertThat(queueItemDao.claim(next, "second-owner", 60)).isEqualTo(0);
+
+    queueItemDao.complete(queueItemDao.getClaimedItem(1L, "first-owner").get(), "first-owner");
+
+    assertThat(queueItemDao.claim(next, "second-owner", 60)).isEqualTo(1);
+    assertThat(ids(queueItemDao.getClaimedItems(ImmutableSet.of(1L, 2L), "second-owner"))).containsExactly(2L);
+  }
+
+  @Test
+  public void testRetryReleasesTheLease() {
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo")));
+    Set<Long> ids = ImmutableSet.of(1L);
+    queueItemDao.claim(ids, "first-owner", 60);
+
+    queueItemDao.increaseRetryCounter(queueItemDao.getClaimedItem(1L, "first-owner").get(), "first-owner", 10);
+
+    assertThat(queueItemDao.getClaimedItems(ids, "first-owner")).isEmpty();
+    assertThat(queueItemDao.getQueuedItem(1L).get().getRetryCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testOnlyTheLeaseOwnerCanCompleteOrRetry() {
+    queueItemDao.insert(new QueueItem(pushEvent("https://git.example.com/repo")));
+    Set<Long> ids = ImmutableSet.of(1L);
+    queueItemDao.claim(ids, "first-owner", 60);
+    QueueItem queueItem = queueItemDao.getClaimedItem(1L, "first-owner").get();
+
+    // the lease of the first owner expires and another instance claims the item
+    queueItemDao.renewLeases(ids, "first-owner", -1);
+    queueItemDao.claim(ids, "second-owner", 60);
+
+    assertThat(queueItemDao.complete(queueItem, "first-owner")).isEqualTo(0);
+    assertThat(queueItemDao.increaseRetryCounter(queueItem, "first-owner", 10)).isEqualTo(0);
+    assertThat(queueItemDao.getClaimedItem(1L, "second-owner").get().getRetryCount()).isEqualTo(0);
+
+    assertThat(queueItemDao.complete(queueItem, "second-owner")).isEqualTo(1);
+    assertThat(queueItemDao.getQueuedItem(1L).isPresent()).isFalse();
+  }
+
+  private void complete(long id) {
+    queueItemDao.claim(ImmutableSet.of(id), "owner", 60);
+    queueItemDao.complete(queueItemDao.getQueuedItem(id).get(), "owner");
+  }
+
+  private static PushEvent pushEvent(String repositoryUrl) {
+    return PushEvent.newBuilder().setRepository(Repository.newBuilder().setUrl(repositoryUrl)).build();
+  }
+
+  private static List<Long> ids(List<QueueItemKey> queueItemKeys) {
+    return queueItemKeys.stream().map(QueueItemKey::getId).collect(Collectors.toList());
+  }
 }
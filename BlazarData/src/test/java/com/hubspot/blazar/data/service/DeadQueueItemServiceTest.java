@@ -0,0 +1,90 @@
+package com.hubspot.blazar.data.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.jukito.JukitoRunner;
+import org.jukito.UseModules;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.hubspot.blazar.base.BranchSetting;
+import com.hubspot.blazar.data.BlazarDataTestModule;
+import com.hubspot.blazar.data.dao.QueueItemDao;
+import com.hubspot.blazar.data.queue.DeadQueueItem;
+import com.hubspot.blazar.data.queue.QueueItem;
+import com.hubspot.blazar.data.queue.QueueItemKey;
+import com.hubspot.blazar.test.base.service.DatabaseBackedTest;
+
+@RunWith(JukitoRunner.class)
+@UseModules({BlazarDataTestModule.class})
+public class DeadQueueItemServiceTest extends DatabaseBackedTest {
+  private static final String LEASE_OWNER = "owner";
+
+  @Inject
+  private DeadQueueItemService deadQueueItemService;
+  @Inject
+  private QueueItemDao queueItemDao;
+
+  @Test
+  public void itMovesBuriedItemsOutOfTheQueue() {
+    long id = queueItemDao.insert(new QueueItem(new BranchSetting(123, true, false)));
+    queueItemDao.claim(ImmutableSet.of(id), LEASE_OWNER, 60);
+    queueItemDao.increaseRetryCounter(queueItemDao.getQueuedItem(id).get(), LEASE_OWNER, 0);
+    queueItemDao.claim(ImmutableSet.of(id), LEASE_OWNER, 60);
+
+    assertThat(deadQueueItemService.bury(queueItemDao.getQueuedItem(id).get(), LEASE_OWNER)).isTrue();
+
+    assertThat(queueItemDao.getQueuedItem(id).isPresent()).isFalse();
+    List<DeadQueueItem> deadItems = deadQueueItemService.getDeadItems(0, 10);
+    assertThat(deadItems).hasSize(1);
+
+    DeadQueueItem deadItem = deadItems.get(0);
+    assertThat(deadItem.getId()).isEqualTo(id);
+    assertThat(deadItem.getType()).isEqualTo(BranchSetting.class.getName());
+    assertThat(deadItem.getRetryCount()).isEqualTo(1);
+    assertThat(deadItem.getItem()).contains("123");
+    assertThat(deadItem.getDeadTimestamp()).isGreaterThanOrEqualTo(deadItem.getCreatedTimestamp());
+  }
+
+  @Test
+  public void itReplaysDeadItemsAsNewQueueItems() {
+    long id = queueItemDao.insert(new QueueItem(new BranchSetting(123, true, false)));
+    queueItemDao.claim(ImmutableSet.of(id), LEASE_OWNER, 60);
+    deadQueueItemService.bury(queueItemDao.getQueuedItem(id).get(), LEASE_OWNER);
+
+    Optional<Long> replayedId = deadQueueItemService.replay(id);
+
+    assertThat(replayedId.isPresent()).isTrue();
+    assertThat(deadQueueItemService.getDeadItem(id).isPresent()).isFalse();
+
+    List<QueueItemKey> queued = queueItemDao.getItemsReadyToExecute(0, 10);
+    assertThat(queued).hasSize(1);
+    assertThat(queued.get(0).getId()).isEqualTo(replayedId.get());
+
+    QueueItem replayed = queueItemDao.getQueuedItem(replayedId.get()).get();
+    assertThat(replayed.getRetryCount()).isEqualTo(0);
+    assertThat(((BranchSetting) replayed.getItem()).getBranchId()).isEqualTo(123);
+  }
+
+  @Test
+  public void itDoesNotBuryItemsWhoseLeaseWasLost() {
+    long id = queueItemDao.insert(new QueueItem(new BranchSetting(123, true, false)));
+    queueItemDao.claim(ImmutableSet.of(id), "other-owner", 60);
+
+    assertThat(deadQueueItemService.bury(queueItemDao.getQueuedItem(id).get(), LEASE_OWNER)).isFalse();
+
+    assertThat(queueItemDao.getQueuedItem(id).isPresent()).isTrue();
+    assertThat(deadQueueItemService.getDeadItem(id).isPresent()).isFalse();
+  }
+
+  @Test
+  public void itDoesNotReplayUnknownItems() {
+    assertThat(deadQueueItemService.replay(42).isPresent()).isFalse();
+    assertThat(deadQueueItemService.delete(42)).isFalse();
+  }
+}
@@ -66,7 +66,7 @@ public class BranchStatusServiceTest {
   public void before() {
     when(branchDao.get(eq(1))).thenReturn(Optional.of(branch1));
     when(branchDao.getByRepository(eq(1337))).thenReturn(Sets.newHashSet(branch1, branch2));
-    when(stateDao.getLastSuccessfulAndNonSkippedModuleBuilds(eq(1)))
+    when(stateDao.getLastSuccessfulAndNonSkippedModuleBuildsForBranch(eq(1)))
         .thenReturn(ImmutableSet.of(module1Build1Info, module1Build3Info));
     when(branchBuildDao.getRepositoryBuildsByState(eq(1), eq(ImmutableList.of(RepositoryBuild.State.QUEUED))))
         .thenReturn(ImmutableSet.of(branch1Build5, branch1Build6));
@@ -97,6 +97,22 @@ public class GraphUtilsTest {
     assertThat(GraphUtils.INSTANCE.retain(EDGES, ImmutableSet.of(1, 5)).asMap()).isEqualTo(RETAINED.asMap());
   }
 
+  @Test
+  public void itWalksTheDependencyGraphInBothDirections() {
+    Map<Integer, Set<Integer>> transitiveReduction = new HashMap<>();
+    REDUCED.asMap().forEach((source, targets) -> transitiveReduction.put(source, new HashSet<>(targets)));
+    DependencyGraph graph = new DependencyGraph(transitiveReduction, GraphUtils.INSTANCE.topologicalSort(REDUCED));
+
+    assertThat(graph.incomingVertices(5)).containsOnly(4);
+    assertThat(graph.incomingVertices(1)).isEmpty();
+    assertThat(graph.getAllUpstreamNodes(2)).containsOnly(1, 3, 4, 5);
+    assertThat(graph.getAllUpstreamNodes(4)).containsOnly(1, 3);
+    assertThat(graph.reachableVertices(3)).containsOnly(2, 4, 5);
+    assertThat(graph.reachableVertices(2)).isEmpty();
+    assertThat(graph.getAllUpstreamNodes(42)).isEmpty();
+    assertThat(graph.outgoingVertices(42)).isEmpty();
+  }
+
   private static Module makeModuleWithId(int id) {
     return new Module(Optional.of(id), "test-module", "config", "/", "/*", true, System.currentTimeMillis(), System.currentTimeMillis(), Optional.absent());
   }
@@ -0,0 +1,84 @@
+package com.hubspot.blazar.data.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.FileSystems;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.Module;
+
+public class ModulePathMatcherTest {
+  private static final Module ROOT = module(1, "**");
+  private static final Module SERVICE = module(2, "service/**");
+  private static final Module SERVICE_CLIENT = module(3, "service/client/**");
+  private static final Module SERVICE_DATA = module(4, "service/data/**");
+  private static final Module TOP_LEVEL_FILES = module(5, "/activeModule/*");
+  private static final Module POMS = module(6, "libs/*/pom.xml");
+  private static final Module DOCS = module(7, "**/*.md");
+  private static final Module SIMILAR_NAME = module(8, "service-old/**");
+
+  private static final List<Module> MODULES = Arrays.asList(ROOT, SERVICE, SERVICE_CLIENT, SERVICE_DATA, TOP_LEVEL_FILES, POMS, DOCS, SIMILAR_NAME);
+  private static final List<String> PATHS = Arrays.asList(
+      "README.md",
+      "pom.xml",
+      "service",
+      "service/pom.xml",
+      "service/client/src/main/java/Client.java",
+      "service/data/README.md",
+      "service//data/./Data.java",
+      "service-old/pom.xml",
+      "servic/pom.xml",
+      "/activeModule/file",
+      "/activeModule/nested/file",
+      "activeModule/file",
+      "libs/a/pom.xml",
+      "libs/a/b/pom.xml");
+
+  @Test
+  public void itMatchesNestedModules() {
+    ModulePathMatcher matcher = new ModulePathMatcher(MODULES);
+
+    assertThat(matcher.getModulesContaining("service/client/src/main/java/Client.java")).containsOnly(ROOT, SERVICE, SERVICE_CLIENT);
+    assertThat(matcher.getModulesContaining("service-old/pom.xml")).containsOnly(ROOT, SIMILAR_NAME);
+  }
+
+  @Test
+  public void itMatchesGlobsThatAreNotDirectories() {
+    ModulePathMatcher matcher = new ModulePathMatcher(MODULES);
+
+    assertThat(matcher.getModulesContaining("/activeModule/file")).containsOnly(ROOT, TOP_LEVEL_FILES);
+    assertThat(matcher.getModulesContaining("/activeModule/nested/file")).containsOnly(ROOT);
+    assertThat(matcher.getModulesContaining("libs/a/pom.xml")).containsOnly(ROOT, POMS);
+    assertThat(matcher.getModulesContaining("service/data/README.md")).containsOnly(ROOT, SERVICE, SERVICE_DATA, DOCS);
+  }
+
+  @Test
+  public void itMatchesTheSameModulesAsTheirGlobs() {
+    ModulePathMatcher matcher = new ModulePathMatcher(MODULES);
+
+    Set<Module> expectedForAll = new HashSet<>();
+    for (String path : PATHS) {
+      Set<Module> expected = new HashSet<>();
+      for (Module module : MODULES) {
+        if (module.contains(FileSystems.getDefault().getPath(path))) {
+          expected.add(module);
+        }
+      }
+
+      assertThat(matcher.getModulesContaining(path)).as(path).isEqualTo(expected);
+      expectedForAll.addAll(expected);
+    }
+
+    assertThat(matcher.getModulesContainingAny(PATHS)).isEqualTo(expectedForAll);
+  }
+
+  private static Module module(int id, String glob) {
+    return new Module(Optional.of(id), "module-" + id, "config", "/", glob, true, System.currentTimeMillis(), System.currentTimeMillis(), Optional.absent());
+  }
+}
@@ -38,6 +38,36 @@ public class BlazarConfiguration {
   @JsonProperty("executor")
   private ExecutorConfiguration executorConfiguration = ExecutorConfiguration.defaultConfiguration();
 
+  // Options for processing the events in the sql backed event queue
+  @Valid
+  @NotNull
+  @JsonProperty("queue")
+  private QueueConfiguration queueConfiguration = QueueConfiguration.defaultConfiguration();
+
+  // Options for looking up the dependencies between modules when building dependency graphs
+  @Valid
+  @NotNull
+  @JsonProperty("dependencyIndex")
+  private DependencyIndexConfiguration dependencyIndexConfiguration = DependencyIndexConfiguration.defaultConfiguration();
+
+  // Options for caching the build configs (.blazar.yaml and buildpacks) fetched from GitHub
+  @Valid
+  @NotNull
+  @JsonProperty("buildConfigCache")
+  private BuildConfigCacheConfiguration buildConfigCacheConfiguration = BuildConfigCacheConfiguration.defaultConfiguration();
+
+  // Concurrency and rate limit options for the requests we send to GitHub in parallel
+  @Valid
+  @NotNull
+  @JsonProperty("gitHubRequests")
+  private GitHubRequestConfiguration gitHubRequestConfiguration = GitHubRequestConfiguration.defaultConfiguration();
+
+  // Options for caching the logs of finished builds served to the UI
+  @Valid
+  @NotNull
+  @JsonProperty("buildLogCache")
+  private BuildLogCacheConfiguration buildLogCacheConfiguration = BuildLogCacheConfiguration.defaultConfiguration();
+
   // Configuration for Blazar to connect to Zookeeper
   // Required for leader election, and for Blazar to enable the buildVisitors (only the master handles build events).
   @JsonProperty("zookeeper")
@@ -103,6 +133,51 @@ public class BlazarConfiguration {
     return this;
   }
 
+  public QueueConfiguration getQueueConfiguration() {
+    return queueConfiguration;
+  }
+
+  public BlazarConfiguration setQueueConfiguration(QueueConfiguration queueConfiguration) {
+    this.queueConfiguration = queueConfiguration;
+    return this;
+  }
+
+  public DependencyIndexConfiguration getDependencyIndexConfiguration() {
+    return dependencyIndexConfiguration;
+  }
+
+  public BlazarConfiguration setDependencyIndexConfiguration(DependencyIndexConfiguration dependencyIndexConfiguration) {
+    this.dependencyIndexConfiguration = dependencyIndexConfiguration;
+    return this;
+  }
+
+  public BuildConfigCacheConfiguration getBuildConfigCacheConfiguration() {
+    return buildConfigCacheConfiguration;
+  }
+
+  public BlazarConfiguration setBuildConfigCacheConfiguration(BuildConfigCacheConfiguration buildConfigCacheConfiguration) {
+    this.buildConfigCacheConfiguration = buildConfigCacheConfiguration;
+    return this;
+  }
+
+  public GitHubRequestConfiguration getGitHubRequestConfiguration() {
+    return gitHubRequestConfiguration;
+  }
+
+  public BlazarConfiguration setGitHubRequestConfiguration(GitHubRequestConfiguration gitHubRequestConfiguration) {
+    this.gitHubRequestConfiguration = gitHubRequestConfiguration;
+    return this;
+  }
+
+  public BuildLogCacheConfiguration getBuildLogCacheConfiguration() {
+    return buildLogCacheConfiguration;
+  }
+
+  public BlazarConfiguration setBuildLogCacheConfiguration(BuildLogCacheConfiguration buildLogCacheConfiguration) {
+    this.buildLogCacheConfiguration = buildLogCacheConfiguration;
+    return this;
+  }
+
   public Optional<ZooKeeperConfiguration> getZooKeeperConfiguration() {
     return zooKeeperConfiguration;
   }
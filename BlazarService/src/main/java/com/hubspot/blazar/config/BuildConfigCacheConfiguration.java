@@ -0,0 +1,50 @@
+package com.hubspot.blazar.config;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+public class BuildConfigCacheConfiguration {
+
+  @Min(0)
+  private final long maxSize;
+  @Min(0)
+  private final long branchHeadCacheSeconds;
+  private final Optional<String> diskCacheDirectory;
+
+  /**
+   * @param maxSize How many parsed configs are kept in memory, the least recently used ones are evicted first.
+   * @param branchHeadCacheSeconds For how long the commit a branch points to is reused when looking up configs (e.g.
+   *                               buildpacks) on that branch, 0 to look it up every time.
+   * @param diskCacheDirectory If set, fetched configs are also written to this directory so that they survive restarts.
+   *                           Files are named after the sha they were fetched at and never change, the directory can be
+   *                           emptied at any time.
+   */
+  @JsonCreator
+  public BuildConfigCacheConfiguration(@JsonProperty("maxSize") Optional<Long> maxSize,
+                                       @JsonProperty("branchHeadCacheSeconds") Optional<Long> branchHeadCacheSeconds,
+                                       @JsonProperty("diskCacheDirectory") Optional<String> diskCacheDirectory) {
+    this.maxSize = MoreObjects.firstNonNull(maxSize, Optional.<Long>absent()).or(10_000L);
+    this.branchHeadCacheSeconds = MoreObjects.firstNonNull(branchHeadCacheSeconds, Optional.<Long>absent()).or(30L);
+    this.diskCacheDirectory = MoreObjects.firstNonNull(diskCacheDirectory, Optional.<String>absent());
+  }
+
+  public static BuildConfigCacheConfiguration defaultConfiguration() {
+    return new BuildConfigCacheConfiguration(Optional.absent(), Optional.absent(), Optional.absent());
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getBranchHeadCacheSeconds() {
+    return branchHeadCacheSeconds;
+  }
+
+  public Optional<String> getDiskCacheDirectory() {
+    return diskCacheDirectory;
+  }
+}
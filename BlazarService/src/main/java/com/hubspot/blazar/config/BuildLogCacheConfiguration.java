@@ -0,0 +1,49 @@
+package com.hubspot.blazar.config;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+public class BuildLogCacheConfiguration {
+
+  @Min(0)
+  private final long maxSizeBytes;
+  @Min(1)
+  private final int blockSizeBytes;
+  @Min(0)
+  private final long s3LogCacheSeconds;
+
+  /**
+   * @param maxSizeBytes How many bytes of the logs of finished builds are kept in memory, 0 to not cache them.
+   * @param blockSizeBytes Logs are fetched and cached in blocks of this size, whatever range the UI asks for.
+   * @param s3LogCacheSeconds For how long the S3 location of an archived log is reused. The urls Singularity hands out
+   *                          expire, so this should stay well below their expiration.
+   */
+  @JsonCreator
+  public BuildLogCacheConfiguration(@JsonProperty("maxSizeBytes") Optional<Long> maxSizeBytes,
+                                    @JsonProperty("blockSizeBytes") Optional<Integer> blockSizeBytes,
+                                    @JsonProperty("s3LogCacheSeconds") Optional<Long> s3LogCacheSeconds) {
+    this.maxSizeBytes = MoreObjects.firstNonNull(maxSizeBytes, Optional.<Long>absent()).or(64L * 1024 * 1024);
+    this.blockSizeBytes = MoreObjects.firstNonNull(blockSizeBytes, Optional.<Integer>absent()).or(64 * 1024);
+    this.s3LogCacheSeconds = MoreObjects.firstNonNull(s3LogCacheSeconds, Optional.<Long>absent()).or(300L);
+  }
+
+  public static BuildLogCacheConfiguration defaultConfiguration() {
+    return new BuildLogCacheConfiguration(Optional.absent(), Optional.absent(), Optional.absent());
+  }
+
+  public long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
+
+  public int getBlockSizeBytes() {
+    return blockSizeBytes;
+  }
+
+  public long getS3LogCacheSeconds() {
+    return s3LogCacheSeconds;
+  }
+}
@@ -0,0 +1,40 @@
+package com.hubspot.blazar.config;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+public class DependencyIndexConfiguration {
+
+  private final boolean inMemory;
+  @Min(1)
+  private final long reconcileIntervalSeconds;
+
+  /**
+   * @param inMemory If true the dependencies of all modules are kept in memory and dependency graphs are built without
+   *                 querying mysql, otherwise every level of a graph is queried from mysql.
+   * @param reconcileIntervalSeconds How often the in-memory index is reloaded from mysql to pick up the changes made
+   *                                 by other instances.
+   */
+  @JsonCreator
+  public DependencyIndexConfiguration(@JsonProperty("inMemory") Optional<Boolean> inMemory,
+                                      @JsonProperty("reconcileIntervalSeconds") Optional<Long> reconcileIntervalSeconds) {
+    this.inMemory = MoreObjects.firstNonNull(inMemory, Optional.<Boolean>absent()).or(false);
+    this.reconcileIntervalSeconds = MoreObjects.firstNonNull(reconcileIntervalSeconds, Optional.<Long>absent()).or(300L);
+  }
+
+  public static DependencyIndexConfiguration defaultConfiguration() {
+    return new DependencyIndexConfiguration(Optional.absent(), Optional.absent());
+  }
+
+  public boolean isInMemory() {
+    return inMemory;
+  }
+
+  public long getReconcileIntervalSeconds() {
+    return reconcileIntervalSeconds;
+  }
+}
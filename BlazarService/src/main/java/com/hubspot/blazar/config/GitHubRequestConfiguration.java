@@ -0,0 +1,51 @@
+package com.hubspot.blazar.config;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+public class GitHubRequestConfiguration {
+
+  @Min(1)
+  private final int maxConcurrentRequestsPerHost;
+  @Min(0)
+  private final int rateLimitReserve;
+  @Min(1)
+  private final long rateLimitCheckIntervalSeconds;
+
+  /**
+   * @param maxConcurrentRequestsPerHost How many requests we send to a GitHub host at once when fetching in parallel,
+   *                                     e.g. the commits of a compare or the config files of a branch.
+   * @param rateLimitReserve Once fewer requests than this are left in the rate limit of a host, requests to it are
+   *                         spread out over the time left until the limit resets instead of running out of requests.
+   * @param rateLimitCheckIntervalSeconds How often we ask a host for its current rate limit, in between we count down
+   *                                      the requests we sent.
+   */
+  @JsonCreator
+  public GitHubRequestConfiguration(@JsonProperty("maxConcurrentRequestsPerHost") Optional<Integer> maxConcurrentRequestsPerHost,
+                                    @JsonProperty("rateLimitReserve") Optional<Integer> rateLimitReserve,
+                                    @JsonProperty("rateLimitCheckIntervalSeconds") Optional<Long> rateLimitCheckIntervalSeconds) {
+    this.maxConcurrentRequestsPerHost = MoreObjects.firstNonNull(maxConcurrentRequestsPerHost, Optional.<Integer>absent()).or(5);
+    this.rateLimitReserve = MoreObjects.firstNonNull(rateLimitReserve, Optional.<Integer>absent()).or(500);
+    this.rateLimitCheckIntervalSeconds = MoreObjects.firstNonNull(rateLimitCheckIntervalSeconds, Optional.<Long>absent()).or(30L);
+  }
+
+  public static GitHubRequestConfiguration defaultConfiguration() {
+    return new GitHubRequestConfiguration(Optional.absent(), Optional.absent(), Optional.absent());
+  }
+
+  public int getMaxConcurrentRequestsPerHost() {
+    return maxConcurrentRequestsPerHost;
+  }
+
+  public int getRateLimitReserve() {
+    return rateLimitReserve;
+  }
+
+  public long getRateLimitCheckIntervalSeconds() {
+    return rateLimitCheckIntervalSeconds;
+  }
+}
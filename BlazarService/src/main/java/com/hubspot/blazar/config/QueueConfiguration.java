@@ -0,0 +1,86 @@
+package com.hubspot.blazar.config;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+public class QueueConfiguration {
+
+  @Min(1)
+  private final int eventProcessorThreads;
+  @Min(1)
+  private final int notificationProcessorThreads;
+  private final boolean processOnAllInstances;
+  @Min(3)
+  private final int leaseSeconds;
+  @Valid
+  private final QueueRetryConfiguration retry;
+  @Valid
+  private final Map<String, QueueRetryConfiguration> retryByEventType;
+
+  /**
+   * @param eventProcessorThreads The number of threads that process queued events. Events for the same build or
+   *                              branch are still processed one at a time, in the order they were queued.
+   * @param notificationProcessorThreads The number of threads that deliver build notifications (Slack messages, GitHub
+   *                                     commit statuses). They are separate from the event threads so that slow
+   *                                     deliveries never hold up builds.
+   * @param processOnAllInstances If true every instance processes queued events instead of only the leader.
+   * @param leaseSeconds How long an instance holds on to the events it has claimed. Leases are renewed while the events
+   *                     are being processed, events of an instance that died are processed by others once they expire.
+   * @param retry How failed events are retried, unless their type has its own entry in retryByEventType.
+   * @param retryByEventType Retry configurations keyed by the simple class name of the event, e.g. "PushEvent".
+   */
+  @JsonCreator
+  public QueueConfiguration(@JsonProperty("eventProcessorThreads") Optional<Integer> eventProcessorThreads,
+                            @JsonProperty("notificationProcessorThreads") Optional<Integer> notificationProcessorThreads,
+                            @JsonProperty("processOnAllInstances") Optional<Boolean> processOnAllInstances,
+                            @JsonProperty("leaseSeconds") Optional<Integer> leaseSeconds,
+                            @JsonProperty("retry") Optional<QueueRetryConfiguration> retry,
+                            @JsonProperty("retryByEventType") Map<String, QueueRetryConfiguration> retryByEventType) {
+    this.eventProcessorThreads = MoreObjects.firstNonNull(eventProcessorThreads, Optional.<Integer>absent()).or(16);
+    this.notificationProcessorThreads = MoreObjects.firstNonNull(notificationProcessorThreads, Optional.<Integer>absent()).or(4);
+    this.processOnAllInstances = MoreObjects.firstNonNull(processOnAllInstances, Optional.<Boolean>absent()).or(false);
+    this.leaseSeconds = MoreObjects.firstNonNull(leaseSeconds, Optional.<Integer>absent()).or(30);
+    this.retry = MoreObjects.firstNonNull(retry, Optional.<QueueRetryConfiguration>absent()).or(QueueRetryConfiguration.defaultConfiguration());
+    this.retryByEventType = MoreObjects.firstNonNull(retryByEventType, Collections.<String, QueueRetryConfiguration>emptyMap());
+  }
+
+  public static QueueConfiguration defaultConfiguration() {
+    return new QueueConfiguration(Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Collections.emptyMap());
+  }
+
+  public int getEventProcessorThreads() {
+    return eventProcessorThreads;
+  }
+
+  public int getNotificationProcessorThreads() {
+    return notificationProcessorThreads;
+  }
+
+  public boolean isProcessOnAllInstances() {
+    return processOnAllInstances;
+  }
+
+  public int getLeaseSeconds() {
+    return leaseSeconds;
+  }
+
+  public QueueRetryConfiguration getRetry() {
+    return retry;
+  }
+
+  public Map<String, QueueRetryConfiguration> getRetryByEventType() {
+    return retryByEventType;
+  }
+
+  public QueueRetryConfiguration getRetryFor(Class<?> eventType) {
+    return MoreObjects.firstNonNull(retryByEventType.get(eventType.getSimpleName()), retry);
+  }
+}
@@ -0,0 +1,67 @@
+package com.hubspot.blazar.config;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+/**
+ * How a queued event that failed to process is retried. The n-th retry waits
+ * min(initialDelaySeconds * multiplier^(n-1), maxDelaySeconds), randomly shortened or lengthened by up to
+ * jitterFactor of that delay so that events that failed together don't all come back at the same time.
+ */
+public class QueueRetryConfiguration {
+
+  @Min(1)
+  private final int maxAttempts;
+  @Min(1)
+  private final long initialDelaySeconds;
+  @Min(1)
+  private final long maxDelaySeconds;
+  @DecimalMin("1.0")
+  private final double multiplier;
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private final double jitterFactor;
+
+  @JsonCreator
+  public QueueRetryConfiguration(@JsonProperty("maxAttempts") Optional<Integer> maxAttempts,
+                                 @JsonProperty("initialDelaySeconds") Optional<Long> initialDelaySeconds,
+                                 @JsonProperty("maxDelaySeconds") Optional<Long> maxDelaySeconds,
+                                 @JsonProperty("multiplier") Optional<Double> multiplier,
+                                 @JsonProperty("jitterFactor") Optional<Double> jitterFactor) {
+    this.maxAttempts = MoreObjects.firstNonNull(maxAttempts, Optional.<Integer>absent()).or(10);
+    this.initialDelaySeconds = MoreObjects.firstNonNull(initialDelaySeconds, Optional.<Long>absent()).or(10L);
+    this.maxDelaySeconds = MoreObjects.firstNonNull(maxDelaySeconds, Optional.<Long>absent()).or(600L);
+    this.multiplier = MoreObjects.firstNonNull(multiplier, Optional.<Double>absent()).or(2.0);
+    this.jitterFactor = MoreObjects.firstNonNull(jitterFactor, Optional.<Double>absent()).or(0.2);
+  }
+
+  public static QueueRetryConfiguration defaultConfiguration() {
+    return new QueueRetryConfiguration(Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent());
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getInitialDelaySeconds() {
+    return initialDelaySeconds;
+  }
+
+  public long getMaxDelaySeconds() {
+    return maxDelaySeconds;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public double getJitterFactor() {
+    return jitterFactor;
+  }
+}
@@ -24,8 +24,8 @@ public class SingularityClusterConfiguration {
     EXCLUSIVE_WHITELIST, // Build the repositories provided in the whitelist exclusively in this cluster and nowhere else
     ALWAYS, // This cluster is available for any build
     EMERGENCY, // Only build in this cluster if there is an emergency, i.e. other clusters are unavailable
-    EMERGENCY_AND_WHITELIST,
-    EMERGENCY_AND_EXCLUSIVE_WHITELIST
+    EMERGENCY_AND_WHITELIST, // Like WHITELIST, but only used if the other clusters that could build the repository are unavailable
+    EMERGENCY_AND_EXCLUSIVE_WHITELIST // Like EXCLUSIVE_WHITELIST, but only used if the other exclusive clusters of the repository are unavailable
   }
 
   @NotNull
@@ -1,8 +1,14 @@
 package com.hubspot.blazar.discovery;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -14,59 +20,115 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.hubspot.blazar.base.BuildConfig;
 import com.hubspot.blazar.base.BuildConfigDiscoveryResult;
 import com.hubspot.blazar.base.DiscoveredBuildConfig;
 import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.MalformedFile;
 import com.hubspot.blazar.util.GitHubHelper;
+import com.hubspot.blazar.util.GitHubRequestExecutor;
 
+/**
+ * Finds the .blazar.yaml files in the tree of a branch. We remember the blob sha of every file we've seen in a branch
+ * together with what we made of it, so rediscovering a branch only fetches and parses the files whose sha changed.
+ * That includes malformed files, which the config cache doesn't keep. The files that did change are fetched in
+ * parallel.
+ */
 @Singleton
 public class BuildConfigDiscovery {
   private static final Logger LOG = LoggerFactory.getLogger(BuildConfigDiscovery.class);
+  private static final long MAX_BRANCHES = 10_000;
 
   private final GitHubHelper gitHubHelper;
+  private final GitHubRequestExecutor gitHubRequestExecutor;
+  private final Cache<String, Map<String, SeenBuildConfigFile>> seenBuildConfigFilesByBranch;
 
   @Inject
-  public BuildConfigDiscovery(GitHubHelper gitHubHelper) {
+  public BuildConfigDiscovery(GitHubHelper gitHubHelper, GitHubRequestExecutor gitHubRequestExecutor) {
     this.gitHubHelper = gitHubHelper;
+    this.gitHubRequestExecutor = gitHubRequestExecutor;
+    this.seenBuildConfigFilesByBranch = CacheBuilder.newBuilder().maximumSize(MAX_BRANCHES).build();
   }
 
-  public BuildConfigDiscoveryResult discover(GitInfo branch) throws IOException {
-    GHRepository repository = gitHubHelper.repositoryFor(branch);
-    GHTree tree = gitHubHelper.treeFor(repository, branch);
+  /**
+   * @param tree the recursive tree of the branch, see {@link GitHubHelper#treeFor(GHRepository, GitInfo)}
+   */
+  public BuildConfigDiscoveryResult discover(GitInfo branch, GHRepository repository, GHTree tree) throws IOException {
+    String branchKey = branch.getHost() + "/" + branch.getFullRepositoryName() + "#" + branch.getBranch();
+    Map<String, SeenBuildConfigFile> previouslySeen = MoreObjects.firstNonNull(seenBuildConfigFilesByBranch.getIfPresent(branchKey),
+        Collections.<String, SeenBuildConfigFile>emptyMap());
 
-    Set<String> buildConfigFilePaths = new HashSet<>();
+    Map<String, SeenBuildConfigFile> seen = new HashMap<>();
+    List<GHTreeEntry> changed = new ArrayList<>();
     for (GHTreeEntry entry : tree.getTree()) {
-      if (isBuildConfig(entry.getPath())) {
-        buildConfigFilePaths.add(entry.getPath());
+      if (!isBuildConfig(entry.getPath())) {
+        continue;
+      }
+
+      SeenBuildConfigFile buildConfigFile = previouslySeen.get(entry.getPath());
+      if (buildConfigFile == null || !buildConfigFile.sha.equals(entry.getSha())) {
+        changed.add(entry);
+      } else {
+        seen.put(entry.getPath(), buildConfigFile);
       }
     }
 
+    List<Callable<SeenBuildConfigFile>> fetches = new ArrayList<>(changed.size());
+    for (GHTreeEntry entry : changed) {
+      fetches.add(() -> fetch(branch, repository, entry.getPath(), entry.getSha()));
+    }
+    List<SeenBuildConfigFile> fetched = gitHubRequestExecutor.invokeAll(branch.getHost(), fetches);
+    for (int i = 0; i < changed.size(); i++) {
+      seen.put(changed.get(i).getPath(), fetched.get(i));
+    }
+    // replacing the files of the branch also forgets the ones that were deleted
+    seenBuildConfigFilesByBranch.put(branchKey, seen);
+
     Set<DiscoveredBuildConfig> discoveredBuildConfigs = new HashSet<>();
     Set<MalformedFile> malformedFiles = new HashSet<>();
-
-    for (String buildConfigFilePath : buildConfigFilePaths) {
-      final BuildConfig buildConfig;
-      try {
-        buildConfig = gitHubHelper.configFor(buildConfigFilePath, repository, branch).get();
-      } catch (JsonProcessingException e) {
-        LOG.warn("Error parsing config at path {} for repository {}@{}", buildConfigFilePath, branch.getFullRepositoryName(), branch.getBranch());
-        malformedFiles.add(new MalformedFile(branch.getId().get(), "config", buildConfigFilePath, Throwables.getStackTraceAsString(e)));
-        continue;
+    for (Map.Entry<String, SeenBuildConfigFile> buildConfigFile : seen.entrySet()) {
+      discoveredBuildConfigs.addAll(buildConfigFile.getValue().discoveredBuildConfig.asSet());
+      if (buildConfigFile.getValue().parseError.isPresent()) {
+        malformedFiles.add(new MalformedFile(branch.getId().get(), "config", buildConfigFile.getKey(), buildConfigFile.getValue().parseError.get()));
       }
+    }
 
-      String glob = (buildConfigFilePath.contains("/") ?
-          buildConfigFilePath.substring(0, buildConfigFilePath.lastIndexOf('/') + 1) : "") + "**";
+    return new BuildConfigDiscoveryResult(discoveredBuildConfigs, malformedFiles);
+  }
 
-      discoveredBuildConfigs.add(new DiscoveredBuildConfig(buildConfig, buildConfigFilePath, glob));
+  private SeenBuildConfigFile fetch(GitInfo branch, GHRepository repository, String buildConfigFilePath, String sha) throws IOException {
+    final BuildConfig buildConfig;
+    try {
+      buildConfig = gitHubHelper.configFor(buildConfigFilePath, repository, branch, sha).get();
+    } catch (JsonProcessingException e) {
+      LOG.warn("Error parsing config at path {} for repository {}@{}", buildConfigFilePath, branch.getFullRepositoryName(), branch.getBranch());
+      return new SeenBuildConfigFile(sha, Optional.absent(), Optional.of(Throwables.getStackTraceAsString(e)));
     }
 
-    return new BuildConfigDiscoveryResult(discoveredBuildConfigs, malformedFiles);
+    String glob = (buildConfigFilePath.contains("/") ?
+        buildConfigFilePath.substring(0, buildConfigFilePath.lastIndexOf('/') + 1) : "") + "**";
+
+    return new SeenBuildConfigFile(sha, Optional.of(new DiscoveredBuildConfig(buildConfig, buildConfigFilePath, glob)), Optional.absent());
   }
 
   private static boolean isBuildConfig(String path) {
     return ".blazar.yaml".equals(path) || path.endsWith("/.blazar.yaml");
   }
+
+  private static class SeenBuildConfigFile {
+    private final String sha;
+    private final Optional<DiscoveredBuildConfig> discoveredBuildConfig;
+    private final Optional<String> parseError;
+
+    private SeenBuildConfigFile(String sha, Optional<DiscoveredBuildConfig> discoveredBuildConfig, Optional<String> parseError) {
+      this.sha = sha;
+      this.discoveredBuildConfig = discoveredBuildConfig;
+      this.parseError = parseError;
+    }
+  }
 }
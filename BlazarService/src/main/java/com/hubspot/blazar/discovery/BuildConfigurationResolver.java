@@ -7,6 +7,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTree;
+
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
@@ -68,10 +71,12 @@ public class BuildConfigurationResolver {
    *        config file with config files of the discovered modules.
    */
   public void findAndResolveBuildConfigurations(GitInfo branch,
+                                                GHRepository repository,
+                                                GHTree tree,
                                                 Multimap<String, Module> modulesByFolder,
                                                 Set<MalformedFile> malformedFiles) throws IOException {
 
-    BuildConfigDiscoveryResult buildConfigDiscoveryResult = buildConfigDiscovery.discover(branch);
+    BuildConfigDiscoveryResult buildConfigDiscoveryResult = buildConfigDiscovery.discover(branch, repository, tree);
     malformedFiles.addAll(buildConfigDiscoveryResult.getMalformedFiles());
 
     for (DiscoveredBuildConfig discoveredBuildConfig : buildConfigDiscoveryResult.getDiscoveredBuildConfigs()) {
@@ -1,13 +1,46 @@
 package com.hubspot.blazar.discovery;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.kohsuke.github.GHTree;
 
 import com.hubspot.blazar.base.CommitInfo;
 import com.hubspot.blazar.base.DiscoveryResult;
 import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.github.GitHubProtos.Commit;
 
 public interface ModuleDiscovery {
+  /**
+   * Only looks at the new commits of the commit info, which are only the most recent ones. Called through
+   * {@link #shouldRediscover(GitInfo, CommitInfo, Set)} when they cover all the paths that changed.
+   */
   boolean shouldRediscover(GitInfo gitInfo, CommitInfo commitInfo) throws IOException;
   DiscoveryResult discover(GitInfo gitInfo) throws IOException;
   boolean isEnabled(GitInfo gitInfo);
+
+  /**
+   * Only called when the commit info isn't truncated, with all the paths that changed since the previous commit.
+   * Plugins should override this to look at those paths. By default a compare with more files than its new commits
+   * show is always rediscovered, otherwise {@link #shouldRediscover(GitInfo, CommitInfo)} decides.
+   */
+  default boolean shouldRediscover(GitInfo gitInfo, CommitInfo commitInfo, Set<String> affectedPaths) throws IOException {
+    Set<String> newCommitPaths = new HashSet<>();
+    for (Commit commit : commitInfo.getNewCommits()) {
+      newCommitPaths.addAll(commit.getAddedList());
+      newCommitPaths.addAll(commit.getModifiedList());
+      newCommitPaths.addAll(commit.getRemovedList());
+    }
+
+    return !newCommitPaths.containsAll(affectedPaths) || shouldRediscover(gitInfo, commitInfo);
+  }
+
+  /**
+   * Called by the {@link ModuleDiscoveryHandler} with the recursive tree of the branch it fetched once for all the
+   * plugins. Plugins should override this to use the tree instead of fetching it again.
+   */
+  default DiscoveryResult discover(GitInfo gitInfo, GHTree tree) throws IOException {
+    return discover(gitInfo);
+  }
 }
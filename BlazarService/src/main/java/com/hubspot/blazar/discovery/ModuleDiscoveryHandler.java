@@ -6,6 +6,7 @@ import static com.hubspot.blazar.util.ModuleDiscoveryValidations.preDiscoveryBra
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -14,6 +15,8 @@ import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +35,7 @@ import com.hubspot.blazar.base.ModuleDiscoveryResult;
 import com.hubspot.blazar.data.service.DependenciesService;
 import com.hubspot.blazar.data.service.ModuleDiscoveryService;
 import com.hubspot.blazar.data.service.ModuleService;
+import com.hubspot.blazar.util.GitHubHelper;
 
 @Singleton
 public class ModuleDiscoveryHandler {
@@ -44,6 +48,7 @@ public class ModuleDiscoveryHandler {
   private final ModuleDiscoveryService moduleDiscoveryService;
   private final ModuleService moduleService;
   private final DependenciesService dependenciesService;
+  private final GitHubHelper gitHubHelper;
 
   @Inject
   public ModuleDiscoveryHandler(Set<ModuleDiscovery> moduleDiscoveryPlugins,
@@ -51,7 +56,8 @@ public class ModuleDiscoveryHandler {
                                 BuildConfigurationResolver buildConfigurationResolver,
                                 ModuleDiscoveryService moduleDiscoveryService,
                                 ModuleService moduleService,
-                                DependenciesService dependenciesService) {
+                                DependenciesService dependenciesService,
+                                GitHubHelper gitHubHelper) {
 
     this.moduleDiscoveryPlugins = moduleDiscoveryPlugins;
     this.buildConfigDiscovery = buildConfigDiscovery;
@@ -59,6 +65,7 @@ public class ModuleDiscoveryHandler {
     this.moduleDiscoveryService = moduleDiscoveryService;
     this.moduleService = moduleService;
     this.dependenciesService = dependenciesService;
+    this.gitHubHelper = gitHubHelper;
   }
 
   public ModuleDiscoveryResult updateModules(GitInfo branch, boolean persistUpdatedModules) throws IOException {
@@ -78,13 +85,17 @@ public class ModuleDiscoveryHandler {
     if (malformedBranchFile.isPresent()) {
       ModuleDiscoveryResult moduleDiscoveryResult = new ModuleDiscoveryResult(ImmutableSet.of(), ImmutableSet.of(malformedBranchFile.get()));
       if (persistUpdatedModules) {
-        moduleDiscoveryService.persistDiscoveryResult(branch, moduleDiscoveryResult);
+        persist(branch, moduleDiscoveryResult);
       }
       return moduleDiscoveryResult;
     }
 
+    // the tree is fetched once and shared by the plugins and the build config discovery
+    GHRepository repository = gitHubHelper.repositoryFor(branch);
+    GHTree tree = gitHubHelper.treeFor(repository, branch);
+
     // apply the available plugins to discover modules inside the branch
-    applyModuleDiscoveryPlugins(branch, commitInfo, discoveredModulesByFolder, malformedFiles);
+    applyModuleDiscoveryPlugins(branch, tree, commitInfo, discoveredModulesByFolder, malformedFiles);
 
     // We will now create a combined map of the (re)discovered modules plus the modules that have been registered before
     // and have not been deleted during this discovery iteration.
@@ -108,16 +119,22 @@ public class ModuleDiscoveryHandler {
     // in .blazar.yaml files.
     // Another option is that users use .blazar.yaml files to disable module building or override
     // the auto-discovered configurations
-    buildConfigurationResolver.findAndResolveBuildConfigurations(branch, allActiveModules, malformedFiles);
+    buildConfigurationResolver.findAndResolveBuildConfigurations(branch, repository, tree, allActiveModules, malformedFiles);
 
     ModuleDiscoveryResult moduleDiscoveryResult = new ModuleDiscoveryResult(ImmutableSet.copyOf(allActiveModules.values()), ImmutableSet.copyOf(malformedFiles));
     if (persistUpdatedModules) {
-      moduleDiscoveryService.persistDiscoveryResult(branch, moduleDiscoveryResult);
+      persist(branch, moduleDiscoveryResult);
     }
 
     return moduleDiscoveryResult;
   }
 
+  private void persist(GitInfo branch, ModuleDiscoveryResult moduleDiscoveryResult) {
+    int rowsWritten = moduleDiscoveryService.persistDiscoveryResult(branch, moduleDiscoveryResult);
+    LOG.info("Persisted {} modules of branch {}, wrote {} module and dependency rows",
+        moduleDiscoveryResult.getModules().size(), branch.getFullRepositoryName() + "#" + branch.getBranch(), rowsWritten);
+  }
+
 
   private boolean isRediscovered(Module existingModule, Collection<Module> discoveredModulesInSameFolder) {
     return discoveredModulesInSameFolder.stream().anyMatch(discoveredModuleInSameFolder ->
@@ -144,6 +161,7 @@ public class ModuleDiscoveryHandler {
   * use the discovery plugins to discover modules
   */
   private void applyModuleDiscoveryPlugins(GitInfo branch,
+                                           GHTree tree,
                                            Optional<CommitInfo> commitInfo,
                                            Multimap<String, Module> discoveredModulesByFolder,
                                            Set<MalformedFile> malformedFiles) throws IOException {
@@ -160,15 +178,16 @@ public class ModuleDiscoveryHandler {
     LOG.debug("Commit info for branch {} is truncated: {}", fullBranchName, commitInfo.isPresent() && commitInfo.get().isTruncated());
     boolean rediscoverAllModules = !commitInfo.isPresent() || commitInfo.get().isTruncated() || dependencySourceIsMissingInBranchModules;
     LOG.debug("Modules for branch {} will be rediscovered: {}", fullBranchName, rediscoverAllModules);
+    Set<String> affectedPaths = rediscoverAllModules ? Collections.emptySet() : gitHubHelper.affectedPaths(commitInfo.get());
     Set<ModuleDiscovery> moduleDiscoveryPluginsToUse = new HashSet<>();
     for (ModuleDiscovery moduleDiscoveryPlugin : moduleDiscoveryPlugins) {
-      if (moduleDiscoveryPlugin.isEnabled(branch) && (rediscoverAllModules || (commitInfo.isPresent() && moduleDiscoveryPlugin.shouldRediscover(branch, commitInfo.get())))) {
+      if (moduleDiscoveryPlugin.isEnabled(branch) && (rediscoverAllModules || moduleDiscoveryPlugin.shouldRediscover(branch, commitInfo.get(), affectedPaths))) {
         moduleDiscoveryPluginsToUse.add(moduleDiscoveryPlugin);
       }
     }
 
     for (ModuleDiscovery moduleDiscoveryPluginToUse : moduleDiscoveryPluginsToUse) {
-      DiscoveryResult result = moduleDiscoveryPluginToUse.discover(branch);
+      DiscoveryResult result = moduleDiscoveryPluginToUse.discover(branch, tree);
       malformedFiles.addAll(result.getMalformedFiles());
       for (DiscoveredModule module : result.getModules()) {
         discoveredModulesByFolder.put(module.getFolder(), module);
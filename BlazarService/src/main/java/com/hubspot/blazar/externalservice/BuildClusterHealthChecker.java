@@ -51,38 +51,36 @@ public class BuildClusterHealthChecker implements LeaderLatchListener, Managed {
   public void start() throws Exception {
     running.compareAndSet(false, true);
     LOG.info("We have been started");
+    // when every instance processes queued events every instance needs to know which clusters can take builds
+    if (blazarConfiguration.getQueueConfiguration().isProcessOnAllInstances()) {
+      LOG.info("Queued events are processed on all instances. Starting build cluster health check monitoring");
+      startMonitoring();
+    }
   }
 
   @Override
   public void stop() throws Exception {
     running.compareAndSet(true, false);
     LOG.info("We have been stopped. Stopping build clusters health checks");
-    Disposable clusterHealthCheckObserver = clusterHealthObserver.get();
-    if (clusterHealthCheckObserver != null) {
-      clusterHealthObserver.get().dispose();
-    }
+    stopMonitoring();
   }
 
   @Override
   public void isLeader() {
     LOG.info("We are the leader. Starting build cluster health check monitoring");
     leader.set(true);
-
-    Disposable disposable = getObservableOfAllClustersHealth()
-        .subscribe(clusterHealthCheck -> {
-          clusterHealthCheckMap.put(clusterHealthCheck.getClusterName(), clusterHealthCheck);
-        });
-    clusterHealthObserver.getAndSet(disposable);
+    startMonitoring();
   }
 
   @Override
   public void notLeader() {
-    LOG.info("We are not the leader. Stopping build cluster health check monitoring");
     leader.set(false);
-    Disposable clusterHealthCheckObserver = clusterHealthObserver.get();
-    if (clusterHealthCheckObserver != null) {
-      clusterHealthObserver.get().dispose();
+    if (blazarConfiguration.getQueueConfiguration().isProcessOnAllInstances()) {
+      LOG.info("We are not the leader. Build cluster health check monitoring continues because queued events are processed on all instances");
+      return;
     }
+    LOG.info("We are not the leader. Stopping build cluster health check monitoring");
+    stopMonitoring();
   }
 
   public boolean isSomeClusterAvailable() {
@@ -93,6 +91,34 @@ public class BuildClusterHealthChecker implements LeaderLatchListener, Managed {
     return clusterHealthCheckMap.get(clusterName) != null && clusterHealthCheckMap.get(clusterName).isHealthy();
   }
 
+  /**
+   * @return the load of the cluster as of its last successful health check, absent if its state couldn't be retrieved
+   */
+  public Optional<ClusterLoad> getClusterLoad(String clusterName) {
+    ClusterHealthCheck clusterHealthCheck = clusterHealthCheckMap.get(clusterName);
+    return clusterHealthCheck == null ? Optional.absent() : clusterHealthCheck.getLoad();
+  }
+
+  private synchronized void startMonitoring() {
+    Disposable clusterHealthCheckObserver = clusterHealthObserver.get();
+    if (clusterHealthCheckObserver != null && !clusterHealthCheckObserver.isDisposed()) {
+      return;
+    }
+
+    Disposable disposable = getObservableOfAllClustersHealth()
+        .subscribe(clusterHealthCheck -> {
+          clusterHealthCheckMap.put(clusterHealthCheck.getClusterName(), clusterHealthCheck);
+        });
+    clusterHealthObserver.set(disposable);
+  }
+
+  private synchronized void stopMonitoring() {
+    Disposable clusterHealthCheckObserver = clusterHealthObserver.get();
+    if (clusterHealthCheckObserver != null) {
+      clusterHealthCheckObserver.dispose();
+    }
+  }
+
   private Observable<ClusterHealthCheck> getObservableOfAllClustersHealth() {
     List<Observable<ClusterHealthCheck>> clusterHealthCheckObservables = singularityClusterClients.keySet().stream()
         .map(clusterName -> getObservableSingularityClusterHealth(clusterName)).collect(Collectors.toList());
@@ -108,20 +134,22 @@ public class BuildClusterHealthChecker implements LeaderLatchListener, Managed {
       try {
         singularityState = singularityClient.getState(Optional.of(false), Optional.of(false));
         if (singularityState != null) {
+          Optional<ClusterLoad> load = Optional.of(new ClusterLoad(singularityState.getActiveTasks(), singularityState.getLateTasks(),
+              singularityState.getScheduledTasks(), System.currentTimeMillis()));
           if (singularityClusterHasAvailableResources(singularityState)) {
             LOG.debug("Cluster {} is healthy", clusterName);
-            return new ClusterHealthCheck(clusterName, true);
+            return new ClusterHealthCheck(clusterName, true, load);
           } else {
             LOG.warn("Cluster {} has not enough resources and will not be used for running builds in this cycle. The ratio of overdue tasks over active tasks is greater than 10% ({}%)",
                 clusterName, getRatioOfOverdueOverActiveTasks(singularityState));
-            return new ClusterHealthCheck(clusterName, false);
+            return new ClusterHealthCheck(clusterName, false, load);
           }
         }
         LOG.warn("Could not retrieve cluster state for cluster {}. It will not be used for running builds in this cycle. ", clusterName);
-        return new ClusterHealthCheck(clusterName, false);
+        return new ClusterHealthCheck(clusterName, false, Optional.absent());
       } catch (Exception e) {
         LOG.warn("An error occurred while checking health of cluster {}. It will be marked as not healthy and will retry in next cycle.", clusterName);
-        return new ClusterHealthCheck(clusterName,false);
+        return new ClusterHealthCheck(clusterName, false, Optional.absent());
       }
 
     });
@@ -139,6 +167,7 @@ public class BuildClusterHealthChecker implements LeaderLatchListener, Managed {
   private static final class ClusterHealthCheck {
     private final String clusterName;
     private final boolean healthy;
+    private final Optional<ClusterLoad> load;
 
     public String getClusterName() {
       return clusterName;
@@ -148,11 +177,47 @@ public class BuildClusterHealthChecker implements LeaderLatchListener, Managed {
       return healthy;
     }
 
-    public ClusterHealthCheck(String clusterName, boolean healthy) {
+    public Optional<ClusterLoad> getLoad() {
+      return load;
+    }
+
+    public ClusterHealthCheck(String clusterName, boolean healthy, Optional<ClusterLoad> load) {
       this.clusterName = clusterName;
       this.healthy = healthy;
+      this.load = load;
+    }
+  }
+
+  /**
+   * The task counts Singularity reported for a cluster. Pending tasks are the ones scheduled but not yet launched.
+   */
+  public static final class ClusterLoad {
+    private final int activeTasks;
+    private final int lateTasks;
+    private final int pendingTasks;
+    private final long checkedAtMillis;
+
+    public ClusterLoad(int activeTasks, int lateTasks, int pendingTasks, long checkedAtMillis) {
+      this.activeTasks = activeTasks;
+      this.lateTasks = lateTasks;
+      this.pendingTasks = pendingTasks;
+      this.checkedAtMillis = checkedAtMillis;
+    }
 
+    public int getActiveTasks() {
+      return activeTasks;
+    }
+
+    public int getLateTasks() {
+      return lateTasks;
+    }
+
+    public int getPendingTasks() {
+      return pendingTasks;
+    }
 
+    public long getCheckedAtMillis() {
+      return checkedAtMillis;
     }
   }
 }
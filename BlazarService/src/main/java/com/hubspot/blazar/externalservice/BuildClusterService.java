@@ -6,17 +6,20 @@ import static com.hubspot.blazar.externalservice.BuildClusterService.BuildContai
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -25,12 +28,13 @@ import com.hubspot.blazar.base.LogChunk;
 import com.hubspot.blazar.base.ModuleBuild;
 import com.hubspot.blazar.config.BlazarConfiguration;
 import com.hubspot.blazar.config.SingularityClusterConfiguration;
-import com.hubspot.blazar.data.service.BranchService;
+import com.hubspot.blazar.config.SingularityClusterConfiguration.BuildStrategy;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.service.ModuleBuildService;
-import com.hubspot.blazar.data.service.ModuleService;
 import com.hubspot.blazar.exception.BuildClusterException;
 import com.hubspot.blazar.exception.LogNotFoundException;
 import com.hubspot.blazar.exception.NonRetryableBuildException;
+import com.hubspot.blazar.externalservice.BuildClusterHealthChecker.ClusterLoad;
 import com.hubspot.blazar.externalservice.BuildClusterService.BuildContainerInfo.BuildContainerState;
 import com.hubspot.blazar.util.TimeUtils;
 import com.hubspot.horizon.AsyncHttpClient;
@@ -55,32 +59,33 @@ public class BuildClusterService {
 
   private static final Logger LOG = LoggerFactory.getLogger(BuildClusterService.class);
   private static final String DEFAULT_LOG_FILE_NAME = "service.log";
+  private static final int PENDING_TASK_WEIGHT = 2;
+  private static final int LATE_TASK_WEIGHT = 10;
+  private static final long MAX_CACHED_S3_LOGS = 10_000;
 
   private final Map<String, SingularityClient> singularityClusterClients;
   private final BlazarConfiguration blazarConfiguration;
-  private final ModuleService moduleService;
+  private final ModuleBranchCache moduleBranchCache;
   protected final ModuleBuildService moduleBuildService;
-  private final BranchService branchService;
   private final BuildClusterHealthChecker buildClusterHealthChecker;
   private final List<String> availableClusters;
-  private final AtomicInteger nextClusterIndex;
+  private final Map<String, ClusterLaunches> launchesByCluster;
+  private final Cache<String, SingularityS3Log> s3LogsByTaskId;
   private final SingularityKillTaskRequest singularityKillTaskRequest;
   private final AsyncHttpClient asyncHttpClient;
 
   @Inject
   public BuildClusterService(Map<String, SingularityClient> singularityClusterClients,
                              BlazarConfiguration blazarConfiguration,
-                             ModuleService moduleService,
+                             ModuleBranchCache moduleBranchCache,
                              ModuleBuildService moduleBuildService,
-                             BranchService branchService,
                              BuildClusterHealthChecker buildClusterHealthChecker,
                              AsyncHttpClient asyncHttpClient) {
     this.singularityClusterClients = singularityClusterClients;
     this.blazarConfiguration = blazarConfiguration;
-    this.moduleService = moduleService;
+    this.moduleBranchCache = moduleBranchCache;
     this.moduleBuildService = moduleBuildService;
     this.buildClusterHealthChecker = buildClusterHealthChecker;
-    this.branchService = branchService;
     this.asyncHttpClient = asyncHttpClient;
 
     this.singularityKillTaskRequest = new SingularityKillTaskRequest(
@@ -91,7 +96,14 @@ public class BuildClusterService {
         Optional.absent());
 
     availableClusters = ImmutableList.<String>builder().addAll(singularityClusterClients.keySet()).build();
-    nextClusterIndex = new AtomicInteger(0);
+    s3LogsByTaskId = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_S3_LOGS)
+        .expireAfterWrite(blazarConfiguration.getBuildLogCacheConfiguration().getS3LogCacheSeconds(), TimeUnit.SECONDS)
+        .build();
+    launchesByCluster = new HashMap<>();
+    for (String cluster : availableClusters) {
+      launchesByCluster.put(cluster, new ClusterLaunches());
+    }
   }
 
   /**
@@ -103,8 +115,8 @@ public class BuildClusterService {
    *    the module build that the launched container should execute
    * @throws NonRetryableBuildException
    */
-  public synchronized String launchBuildContainer(ModuleBuild moduleBuild) throws BuildClusterException {
-    Optional<String> clusterToUseOptional = pickClusterToLaunchBuild(moduleBuild, new HashSet<>());
+  public String launchBuildContainer(ModuleBuild moduleBuild) throws BuildClusterException {
+    Optional<String> clusterToUseOptional = pickClusterToLaunchBuild(moduleBuild);
     if (!clusterToUseOptional.isPresent()) {
       String message = String.format("Could not find a cluster to launch module build %d", moduleBuild.getId().get());
       LOG.warn(message);
@@ -113,10 +125,13 @@ public class BuildClusterService {
     final String clusterToUse = clusterToUseOptional.get();
     SingularityClient singularityClient = singularityClusterClients.get(clusterToUse);
     SingularityClusterConfiguration singularityClusterConfiguration = blazarConfiguration.getSingularityClusterConfigurations().get(clusterToUse);
+    ClusterLaunches clusterLaunches = launchesByCluster.get(clusterToUse);
+    long launchStartedAtMillis = clusterLaunches.start();
     try {
       singularityClient.runSingularityRequest(singularityClusterConfiguration.getRequest(), Optional.of(buildRequest(moduleBuild)));
       LOG.info("Run Blazar executor in Build cluster '{}' for module build {}", clusterToUse, moduleBuild.getId().get());
     } catch (Exception e) {
+      clusterLaunches.failed(launchStartedAtMillis);
       String message = String.format("Failed to start build container in cluster %s for module build %d", clusterToUse, moduleBuild.getId().get());
       LOG.error(message, e);
       throw new BuildClusterException(message, e);
@@ -137,6 +152,56 @@ public class BuildClusterService {
     }
   }
 
+  /**
+   * Looks up the build containers of many module builds at once, with one request for the active and one for the
+   * recently finished tasks of each build cluster, instead of one request per build. A build whose container is in
+   * neither is reported as NOT_STARTED, even though it may have finished long ago, so callers that act on NOT_STARTED
+   * should confirm it with {@link #getBuildContainerInfo(ModuleBuild)}. Builds without a cluster, or whose cluster
+   * couldn't be queried, are left out of the result.
+   * @return the container info by module build id
+   */
+  public Map<Long, BuildContainerInfo> getBuildContainerInfos(Collection<ModuleBuild> moduleBuilds) {
+    Map<String, List<ModuleBuild>> moduleBuildsByCluster = new HashMap<>();
+    for (ModuleBuild moduleBuild : moduleBuilds) {
+      if (moduleBuild.getBuildClusterName().isPresent() && isMesosCluster(moduleBuild.getBuildClusterName().get())) {
+        moduleBuildsByCluster.computeIfAbsent(moduleBuild.getBuildClusterName().get(), cluster -> new ArrayList<>()).add(moduleBuild);
+      }
+    }
+
+    Map<Long, BuildContainerInfo> buildContainerInfos = new HashMap<>();
+    for (Map.Entry<String, List<ModuleBuild>> entry : moduleBuildsByCluster.entrySet()) {
+      String buildClusterName = entry.getKey();
+      String singularityRequestId = blazarConfiguration.getSingularityClusterConfigurations().get(buildClusterName).getRequest();
+      SingularityClient singularityClient = singularityClusterClients.get(buildClusterName);
+
+      Map<String, SingularityTaskIdHistory> tasksByRunId = new HashMap<>();
+      try {
+        // active tasks go last, a build that is retried in the same run has its running task win over the finished one
+        indexByRunId(singularityClient.getInactiveTaskHistoryForRequest(singularityRequestId), tasksByRunId);
+        indexByRunId(singularityClient.getActiveTaskHistoryForRequest(singularityRequestId), tasksByRunId);
+      } catch (Exception e) {
+        LOG.warn("Could not get the tasks of request {} in build cluster {}. The containers of its {} builds will be checked in the next cycle",
+            singularityRequestId, buildClusterName, entry.getValue().size(), e);
+        continue;
+      }
+
+      for (ModuleBuild moduleBuild : entry.getValue()) {
+        long moduleBuildId = moduleBuild.getId().get();
+        buildContainerInfos.put(moduleBuildId, toBuildContainerInfo(Optional.fromNullable(tasksByRunId.get(String.valueOf(moduleBuildId)))));
+      }
+    }
+
+    return buildContainerInfos;
+  }
+
+  private static void indexByRunId(Collection<SingularityTaskIdHistory> tasks, Map<String, SingularityTaskIdHistory> tasksByRunId) {
+    for (SingularityTaskIdHistory task : tasks) {
+      if (task.getRunId().isPresent()) {
+        tasksByRunId.put(task.getRunId().get(), task);
+      }
+    }
+  }
+
   public void killBuildContainer(ModuleBuild moduleBuild) throws BuildClusterException {
     if (!moduleBuild.getBuildClusterName().isPresent()) {
       throw new BuildClusterException(String.format("The 'buildClusterName' is missing in module build %d. Cannot find and kill the associated build container", moduleBuild.getId().get()));
@@ -278,6 +343,12 @@ public class BuildClusterService {
   }
 
   private SingularityS3Log findS3ServiceLog(String singularityTaskId, SingularityClient singularityClient) throws LogNotFoundException {
+    // logs are only archived once the task has finished, so the listing doesn't change until its urls expire
+    SingularityS3Log cachedS3Log = s3LogsByTaskId.getIfPresent(singularityTaskId);
+    if (cachedS3Log != null) {
+      return cachedS3Log;
+    }
+
     Collection<SingularityS3Log> s3Logs = singularityClient.getTaskLogs(singularityTaskId);
     List<SingularityS3Log> serviceLogs = new ArrayList<>();
     for (SingularityS3Log s3Log : s3Logs) {
@@ -291,6 +362,7 @@ public class BuildClusterService {
     } else if (serviceLogs.size() > 1) {
       throw new LogNotFoundException("Multiple S3 logs found for singularity task id" + singularityTaskId);
     } else {
+      s3LogsByTaskId.put(singularityTaskId, serviceLogs.get(0));
       return serviceLogs.get(0);
     }
   }
@@ -366,8 +438,10 @@ public class BuildClusterService {
     String runId =  String.valueOf(moduleBuild.getId().get());
     SingularityClient singularityClient = singularityClusterClients.get(buildClusterName);
 
-    Optional<SingularityTaskIdHistory> task = singularityClient.getHistoryForTask(singularityRequestId, runId);
+    return toBuildContainerInfo(singularityClient.getHistoryForTask(singularityRequestId, runId));
+  }
 
+  private static BuildContainerInfo toBuildContainerInfo(Optional<SingularityTaskIdHistory> task) {
     if (!task.isPresent()) {
       return new BuildContainerInfo(NOT_STARTED, Optional.absent(), TimeUtils.nowInUtcMillis());
     }
@@ -389,52 +463,113 @@ public class BuildClusterService {
     return blazarConfiguration.getSingularityClusterConfigurations().keySet().contains(buildClusterName);
   }
 
-  private Optional<String> pickClusterToLaunchBuild(ModuleBuild moduleBuild, Set<String> examinedClusters) throws BuildClusterException {
-    if (examinedClusters.containsAll(availableClusters)) {
-      return Optional.absent();
-    }
-
+  /**
+   * Picks the least loaded cluster the module build may run on. A cluster is eligible if its build strategy allows the
+   * repository of the module and its last health check passed. Repositories in the list of an exclusive cluster are
+   * only built on the exclusive clusters that list them. Emergency clusters are only used when none of the other
+   * eligible clusters is healthy.
+   */
+  private Optional<String> pickClusterToLaunchBuild(ModuleBuild moduleBuild) throws BuildClusterException {
     long moduleBuildId = moduleBuild.getId().get();
-    String clusterToUse = getAndSetNextClusterToUse();
-    examinedClusters.add(clusterToUse);
-    SingularityClusterConfiguration singularityClusterConfiguration = blazarConfiguration.getSingularityClusterConfigurations().get(clusterToUse);
+    Map<String, SingularityClusterConfiguration> clusterConfigurations = blazarConfiguration.getSingularityClusterConfigurations();
+    Optional<String> moduleRepository = Optional.absent();
+    if (clusterConfigurations.values().stream().anyMatch(configuration -> configuration.getBuildStrategy() != BuildStrategy.ALWAYS)) {
+      moduleRepository = getModuleRepository(moduleBuild.getModuleId());
+      if (!moduleRepository.isPresent()) {
+        throw new BuildClusterException(String.format("Could not get the repository for module %d", moduleBuild.getModuleId()));
+      }
+    }
 
-    switch (singularityClusterConfiguration.getBuildStrategy()) {
-      case ALWAYS:
-        LOG.debug("Strategy for Build Cluster '{}' is ALWAYS. Will check if this cluster is healthy for executing module build {}", clusterToUse, moduleBuildId);
-        return checkAvailabilityAndPersistCluster(clusterToUse, moduleBuild, examinedClusters);
-      case WHITELIST:
-        if (singularityClusterConfiguration.getRepositories().isEmpty()) {
-          LOG.warn("You have selected the 'WHITELIST' build strategy for build cluster {} but you have not provided any repositories. " +
-                  "So the cluster is considered available for any repo build. Will check if it is healthy to execute module build {}",
-              clusterToUse, moduleBuildId);
-          return checkAvailabilityAndPersistCluster(clusterToUse, moduleBuild, examinedClusters);
-        }
-        Optional<String> moduleRepository = getModuleRepository(moduleBuild.getModuleId());
-        if (!moduleRepository.isPresent()) {
-          throw new BuildClusterException(String.format("Could not get the repository for module %d", moduleBuild.getModuleId()));
+    List<String> allowedClusters = new ArrayList<>();
+    List<String> exclusiveClusters = new ArrayList<>();
+    for (String cluster : availableClusters) {
+      SingularityClusterConfiguration configuration = clusterConfigurations.get(cluster);
+      if (isAllowed(configuration, moduleRepository)) {
+        allowedClusters.add(cluster);
+        if (isExclusive(configuration.getBuildStrategy()) && isListed(configuration, moduleRepository.get())) {
+          exclusiveClusters.add(cluster);
         }
+      }
+    }
 
-        boolean moduleRepositoryIsWhitelisted = singularityClusterConfiguration.getRepositories().stream()
-            .anyMatch(whitelistedRepo -> whitelistedRepo.toLowerCase().equals(moduleRepository.get().toLowerCase()));
+    List<String> candidates = exclusiveClusters.isEmpty() ? allowedClusters : exclusiveClusters;
+    List<String> healthyClusters = new ArrayList<>();
+    List<String> healthyEmergencyClusters = new ArrayList<>();
+    for (String cluster : candidates) {
+      if (!buildClusterHealthChecker.isClusterAvailable(cluster)) {
+        LOG.debug("Build cluster {} is not healthy and will not be used for module build {}", cluster, moduleBuildId);
+      } else if (isEmergency(clusterConfigurations.get(cluster).getBuildStrategy())) {
+        healthyEmergencyClusters.add(cluster);
+      } else {
+        healthyClusters.add(cluster);
+      }
+    }
 
-        if (moduleRepositoryIsWhitelisted) {
-          LOG.debug("Strategy for Build Cluster '{}' is WHITELIST and repository {} is in the whitelist. Will check if the cluster is healthy for module build {}",
-              clusterToUse, moduleRepository.get(), moduleBuildId);
-          return checkAvailabilityAndPersistCluster(clusterToUse, moduleBuild, examinedClusters);
-        }
-        LOG.debug("Strategy for Build Cluster '{}' is WHITELIST but repository {} is NOT in the whitelist. Will try to pick another cluster for module build {}",
-            clusterToUse, moduleRepository.get(), moduleBuildId);
-        return pickClusterToLaunchBuild(moduleBuild, examinedClusters);
-      case EXCLUSIVE_WHITELIST:
+    if (healthyClusters.isEmpty() && !healthyEmergencyClusters.isEmpty()) {
+      LOG.warn("None of the build clusters {} is healthy for module build {}. Will use one of the emergency clusters {}",
+          candidates, moduleBuildId, healthyEmergencyClusters);
+      healthyClusters = healthyEmergencyClusters;
+    }
+
+    Optional<String> clusterToUse = Optional.fromNullable(healthyClusters.stream()
+        .min(Comparator.comparingLong(this::loadScore).thenComparing(Comparator.<String>naturalOrder()))
+        .orElse(null));
+    if (clusterToUse.isPresent()) {
+      LOG.debug("Build cluster {} is the least loaded of {} and will be used to execute module build {}", clusterToUse.get(), healthyClusters, moduleBuildId);
+      moduleBuildService.updateBuildClusterName(moduleBuildId, clusterToUse.get());
+    }
+    return clusterToUse;
+  }
+
+  /**
+   * Pending and late tasks are weighted above active ones, they mean the cluster can't keep up. Our own launches count
+   * until the cluster has reported a state that includes them.
+   */
+  private long loadScore(String cluster) {
+    Optional<ClusterLoad> load = buildClusterHealthChecker.getClusterLoad(cluster);
+    long reportedAtMillis = load.isPresent() ? load.get().getCheckedAtMillis() : 0;
+    long score = launchesByCluster.get(cluster).countSince(reportedAtMillis) * PENDING_TASK_WEIGHT;
+    if (load.isPresent()) {
+      score += load.get().getActiveTasks() + PENDING_TASK_WEIGHT * load.get().getPendingTasks() + LATE_TASK_WEIGHT * load.get().getLateTasks();
+    }
+    return score;
+  }
+
+  private static boolean isAllowed(SingularityClusterConfiguration configuration, Optional<String> moduleRepository) {
+    switch (configuration.getBuildStrategy()) {
+      case ALWAYS:
       case EMERGENCY:
+        return true;
+      case BLACKLIST:
+        return !isListed(configuration, moduleRepository.get());
+      case WHITELIST:
+      case EXCLUSIVE_WHITELIST:
       case EMERGENCY_AND_WHITELIST:
       case EMERGENCY_AND_EXCLUSIVE_WHITELIST:
+        if (configuration.getRepositories().isEmpty()) {
+          LOG.warn("A build cluster has the '{}' build strategy but no repositories. It is considered available for any repository",
+              configuration.getBuildStrategy());
+          return true;
+        }
+        return isListed(configuration, moduleRepository.get());
       default:
-        throw new BuildClusterException(String.format("Strategy %s is not yet implemented", singularityClusterConfiguration.getBuildStrategy()));
+        throw new IllegalStateException(String.format("Unknown build strategy %s", configuration.getBuildStrategy()));
     }
   }
 
+  private static boolean isListed(SingularityClusterConfiguration configuration, String moduleRepository) {
+    return configuration.getRepositories().stream().anyMatch(repository -> repository.equalsIgnoreCase(moduleRepository));
+  }
+
+  private static boolean isExclusive(BuildStrategy buildStrategy) {
+    return buildStrategy == BuildStrategy.EXCLUSIVE_WHITELIST || buildStrategy == BuildStrategy.EMERGENCY_AND_EXCLUSIVE_WHITELIST;
+  }
+
+  private static boolean isEmergency(BuildStrategy buildStrategy) {
+    return buildStrategy == BuildStrategy.EMERGENCY || buildStrategy == BuildStrategy.EMERGENCY_AND_WHITELIST ||
+        buildStrategy == BuildStrategy.EMERGENCY_AND_EXCLUSIVE_WHITELIST;
+  }
+
   private SingularityRunNowRequest buildRequest(ModuleBuild moduleBuild) {
     String buildId = Long.toString(moduleBuild.getId().get());
     Optional<com.hubspot.mesos.Resources> buildResources = Optional.absent();
@@ -451,8 +586,8 @@ public class BuildClusterService {
   }
 
   private Optional<String> getModuleRepository(int moduleId) {
-    int branchId = moduleService.getBranchIdFromModuleId(moduleId);
-    Optional<GitInfo> moduleBranchMaybe = branchService.get(branchId);
+    int branchId = moduleBranchCache.getBranchId(moduleId);
+    Optional<GitInfo> moduleBranchMaybe = moduleBranchCache.getBranch(branchId);
     if (moduleBranchMaybe.isPresent()) {
       GitInfo moduleBranch = moduleBranchMaybe.get();
       return Optional.of(String.format("%s-%s-%s",
@@ -461,28 +596,30 @@ public class BuildClusterService {
     return Optional.absent();
   }
 
-  private Optional<String> checkAvailabilityAndPersistCluster(String clusterToUse,
-                                                              ModuleBuild moduleBuild,
-                                                              Set<String> examinedClusters) throws BuildClusterException {
-    long moduleBuildId = moduleBuild.getId().get();
-    if (buildClusterHealthChecker.isClusterAvailable(clusterToUse)) {
-      LOG.debug("Build cluster {} is healthy. Will be used to execute module build {}", clusterToUse, moduleBuildId);
-      moduleBuildService.updateBuildClusterName(moduleBuildId, clusterToUse);
-      return Optional.of(clusterToUse);
-    } else {
-      LOG.warn("Build cluster {} is not healthy for executing module build {}. Will look for another cluster", clusterToUse, moduleBuildId);
-      return pickClusterToLaunchBuild(moduleBuild, examinedClusters);
+  /**
+   * The launches we sent to a cluster recently, so clusters we just picked don't look idle until their next health check
+   */
+  private static class ClusterLaunches {
+    private final ConcurrentLinkedDeque<Long> launchedAtMillis = new ConcurrentLinkedDeque<>();
+
+    private long start() {
+      long now = System.currentTimeMillis();
+      launchedAtMillis.addLast(now);
+      return now;
     }
-  }
 
-  private String getAndSetNextClusterToUse() {
-    int clusterIndex;
-    try {
-      clusterIndex = nextClusterIndex.incrementAndGet();
-    } catch (Exception e) { // in the almost improbable case we have reached the max int we reset the counter;
-      clusterIndex = nextClusterIndex.getAndSet(0);
+    private void failed(long startedAtMillis) {
+      launchedAtMillis.removeLastOccurrence(startedAtMillis);
+    }
+
+    private int countSince(long sinceMillis) {
+      // launches before the cluster reported its state are part of it already
+      Long oldest;
+      while ((oldest = launchedAtMillis.peekFirst()) != null && oldest < sinceMillis) {
+        launchedAtMillis.remove(oldest);
+      }
+      return launchedAtMillis.size();
     }
-    return availableClusters.get(clusterIndex % availableClusters.size());
   }
 
   public static class BuildContainerInfo {
@@ -0,0 +1,279 @@
+package com.hubspot.blazar.externalservice;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hubspot.blazar.base.LogChunk;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.BuildLogCacheConfiguration;
+
+/**
+ * Serves build logs to the UI without going to the build cluster for every poll. The logs of finished builds don't
+ * change, so they are fetched in fixed size blocks that are kept in a cache bounded by their total size, whatever
+ * ranges are asked for. Only full blocks are cached, the end of a log is always read from the cluster, which is also
+ * the only one who can tell whether the log is complete.
+ *
+ * The cluster hands out log bytes as text, so a character that a block boundary splits in two doesn't survive being
+ * read as two halves. A block therefore holds the characters that start in it, and is fetched with a few extra bytes
+ * so that its last character is whole. Offsets are only ever derived from those characters, never from the length of
+ * text that was decoded and encoded again.
+ *
+ * Identical requests that arrive while one of them is being fetched share its result, for the blocks of finished builds
+ * as well as for the ranges of running builds, so many people watching the same build cost a single fetch.
+ */
+@Singleton
+public class BuildLogCache {
+  private static final int MAX_CHARACTER_BYTES = 4;
+
+  private final BuildClusterService buildClusterService;
+  private final int blockSizeBytes;
+  private final Cache<BlockKey, Block> blocks;
+  private final ConcurrentMap<Object, CompletableFuture<LogChunk>> inFlightFetches;
+  private final Meter coalescedFetches;
+
+  @Inject
+  public BuildLogCache(BuildClusterService buildClusterService, BlazarConfiguration blazarConfiguration, MetricRegistry metricRegistry) {
+    BuildLogCacheConfiguration configuration = blazarConfiguration.getBuildLogCacheConfiguration();
+    this.buildClusterService = buildClusterService;
+    this.blockSizeBytes = configuration.getBlockSizeBytes();
+    this.blocks = CacheBuilder.newBuilder()
+        .maximumWeight(configuration.getMaxSizeBytes())
+        .weigher((BlockKey key, Block block) -> block.data.length)
+        .recordStats()
+        .build();
+    this.inFlightFetches = new ConcurrentHashMap<>();
+    this.coalescedFetches = metricRegistry.meter(MetricRegistry.name(BuildLogCache.class, "coalescedFetches"));
+    registerGauge(metricRegistry, "size", blocks::size);
+    registerGauge(metricRegistry, "hitRate", () -> blocks.stats().hitRate());
+    registerGauge(metricRegistry, "evictionCount", () -> blocks.stats().evictionCount());
+  }
+
+  public LogChunk getLog(ModuleBuild moduleBuild, long offset, long length) throws Exception {
+    if (!moduleBuild.getState().isComplete() || !moduleBuild.getTaskId().isPresent() || length <= 0) {
+      return fetchRange(moduleBuild, offset, length);
+    }
+
+    String taskId = moduleBuild.getTaskId().get();
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    long position = offset;
+    long end = offset + length;
+    while (position < end) {
+      long blockOffset = position - position % blockSizeBytes;
+      Block block = getBlock(moduleBuild, taskId, blockOffset);
+      // a range that starts within a character continues with the next one, and one that ends within a character
+      // stops before it
+      int from = (int) Math.max(0, position - block.offset);
+      int to = (int) Math.min(block.data.length, end - block.offset);
+      while (to > from && to < block.data.length && isContinuationByte(block.data[to])) {
+        to--;
+      }
+      if (from >= to) {
+        break;
+      }
+
+      data.write(block.data, from, to - from);
+      position = to == block.data.length ? block.nextOffset : block.offset + to;
+      if (!block.full) {
+        // the log ends in this block
+        break;
+      }
+    }
+
+    if (data.size() == 0) {
+      // at the end of the log only the cluster knows whether it is complete
+      return fetchRange(moduleBuild, offset, length);
+    }
+    return new LogChunk(new String(data.toByteArray(), StandardCharsets.UTF_8), offset, position);
+  }
+
+  private LogChunk fetchRange(ModuleBuild moduleBuild, long offset, long length) throws Exception {
+    return fetchOnce(new RangeKey(moduleBuild.getId().get(), offset, length),
+        () -> buildClusterService.getBuildContainerLog(moduleBuild, offset, length));
+  }
+
+  private Block getBlock(ModuleBuild moduleBuild, String taskId, long blockOffset) throws Exception {
+    BlockKey key = new BlockKey(taskId, blockOffset);
+    Block block = blocks.getIfPresent(key);
+    if (block != null) {
+      return block;
+    }
+
+    // the extra bytes complete a character that starts at the end of the block
+    LogChunk logChunk = fetchOnce(key,
+        () -> buildClusterService.getBuildContainerLog(moduleBuild, blockOffset, blockSizeBytes + MAX_CHARACTER_BYTES));
+    block = Block.of(logChunk, blockOffset, blockOffset + blockSizeBytes);
+    // the last block of a log may still grow while the container flushes it, only full blocks are final
+    if (block.full) {
+      blocks.put(key, block);
+    }
+    return block;
+  }
+
+  private static boolean isContinuationByte(byte b) {
+    return (b & 0xC0) == 0x80;
+  }
+
+  private static int utf8Length(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    } else if (codePoint < 0x800) {
+      return 2;
+    } else if (codePoint < 0x10000) {
+      return 3;
+    } else {
+      return 4;
+    }
+  }
+
+  private LogChunk fetchOnce(Object key, Callable<LogChunk> fetch) throws Exception {
+    CompletableFuture<LogChunk> future = new CompletableFuture<>();
+    CompletableFuture<LogChunk> inFlightFetch = inFlightFetches.putIfAbsent(key, future);
+    if (inFlightFetch != null) {
+      coalescedFetches.mark();
+      try {
+        return inFlightFetch.get();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+
+    try {
+      LogChunk logChunk = fetch.call();
+      future.complete(logChunk);
+      return logChunk;
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightFetches.remove(key, future);
+    }
+  }
+
+  private static void registerGauge(MetricRegistry metricRegistry, String metric, Gauge<?> gauge) {
+    String name = MetricRegistry.name(BuildLogCache.class, "blocks", metric);
+    // a new instance replaces the gauges of the previous one, e.g. in tests that share the registry
+    metricRegistry.remove(name);
+    metricRegistry.register(name, gauge);
+  }
+
+  private static class Block {
+    // where the first character that starts in the block starts in the log
+    private final long offset;
+    // the characters that start in the block, the last one may end after it
+    private final byte[] data;
+    // where the next block's characters start, or the end of the log read so far
+    private final long nextOffset;
+    // whether a character starts after the block, which means the log goes on and all of the block's characters are whole
+    private final boolean full;
+
+    private Block(long offset, byte[] data, long nextOffset, boolean full) {
+      this.offset = offset;
+      this.data = data;
+      this.nextOffset = nextOffset;
+      this.full = full;
+    }
+
+    private static Block of(LogChunk logChunk, long blockOffset, long blockEnd) {
+      String text = logChunk.getData();
+      long position = blockOffset;
+      int index = 0;
+      // the rest of a character that started in the previous block, each of its bytes was decoded as a replacement
+      // character. It belongs to the previous block
+      while (index < text.length() && index < MAX_CHARACTER_BYTES - 1 && text.charAt(index) == '\uFFFD') {
+        index++;
+        position++;
+      }
+
+      long offset = position;
+      int start = index;
+      while (index < text.length() && position < blockEnd) {
+        int codePoint = text.codePointAt(index);
+        position += utf8Length(codePoint);
+        index += Character.charCount(codePoint);
+      }
+
+      byte[] data = text.substring(start, index).getBytes(StandardCharsets.UTF_8);
+      boolean full = index < text.length();
+      // the end of the log may be a character that is cut off, only the cluster knows how many bytes it read
+      long nextOffset = full || logChunk.getNextOffset() < 0 ? position : logChunk.getNextOffset();
+      return new Block(offset, data, nextOffset, full);
+    }
+  }
+
+  private static class BlockKey {
+    private final String taskId;
+    private final long offset;
+
+    private BlockKey(String taskId, long offset) {
+      this.taskId = taskId;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      BlockKey that = (BlockKey) o;
+      return offset == that.offset && Objects.equals(taskId, that.taskId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(taskId, offset);
+    }
+  }
+
+  private static class RangeKey {
+    private final long moduleBuildId;
+    private final long offset;
+    private final long length;
+
+    private RangeKey(long moduleBuildId, long offset, long length) {
+      this.moduleBuildId = moduleBuildId;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      RangeKey that = (RangeKey) o;
+      return moduleBuildId == that.moduleBuildId && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(moduleBuildId, offset, length);
+    }
+  }
+}
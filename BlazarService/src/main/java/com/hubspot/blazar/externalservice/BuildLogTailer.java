@@ -0,0 +1,299 @@
+package com.hubspot.blazar.externalservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hubspot.blazar.base.LogChunk;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.data.service.ModuleBuildService;
+import com.hubspot.blazar.exception.LogNotFoundException;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Streams the log of a module build to everyone watching it. However many viewers a build has, its log is read by a
+ * single tail that polls the build cluster for new bytes and hands them to all viewers. The tail stops once the
+ * cluster reports that the log is complete, or once its last viewer is gone.
+ *
+ * Every viewer writes on its own thread. A viewer that starts behind the tail, or falls so far behind that chunks had
+ * to be dropped for it, reads the bytes it missed through the {@link BuildLogCache} before it continues with the tail.
+ */
+@Singleton
+public class BuildLogTailer implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildLogTailer.class);
+  private static final int THREADS = 4;
+  private static final long POLL_INTERVAL_MILLIS = 1000;
+  private static final int READ_LENGTH = 65536;
+  private static final int MAX_CONSECUTIVE_ERRORS = 10;
+  private static final int MAX_QUEUED_CHUNKS_PER_VIEWER = 64;
+  private static final long MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final BuildLogCache buildLogCache;
+  private final ModuleBuildService moduleBuildService;
+  private final ScheduledExecutorService executorService;
+  private final ConcurrentMap<Long, Tail> tailsByModuleBuildId;
+  private final Meter upstreamReads;
+
+  @Inject
+  public BuildLogTailer(BuildLogCache buildLogCache, ModuleBuildService moduleBuildService, MetricRegistry metricRegistry) {
+    this.buildLogCache = buildLogCache;
+    this.moduleBuildService = moduleBuildService;
+    this.executorService = Executors.newScheduledThreadPool(THREADS,
+        new ThreadFactoryBuilder().setNameFormat("BuildLogTailer-%d").setDaemon(true).build());
+    this.tailsByModuleBuildId = new ConcurrentHashMap<>();
+    this.upstreamReads = metricRegistry.meter(MetricRegistry.name(BuildLogTailer.class, "upstreamReads"));
+    String tailsGauge = MetricRegistry.name(BuildLogTailer.class, "tails");
+    // a new instance replaces the gauge of the previous one, e.g. in tests that share the registry
+    metricRegistry.remove(tailsGauge);
+    metricRegistry.register(tailsGauge, (Gauge<Integer>) tailsByModuleBuildId::size);
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Writes the log of the module build from the offset on to the output stream as it grows, and returns once the log
+   * is complete, or once it hasn't grown for {@link #MAX_IDLE_MILLIS}. Blocks the calling thread until then.
+   */
+  public void stream(long moduleBuildId, long offset, OutputStream outputStream) throws IOException {
+    Viewer viewer = new Viewer(offset);
+    Tail tail = follow(moduleBuildId, viewer);
+    try {
+      // commits the response, so that the client knows it is connected before the first bytes arrive
+      outputStream.flush();
+      long lastWriteMillis = System.currentTimeMillis();
+      while (true) {
+        Chunk chunk = viewer.chunks.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (chunk == null) {
+          if (viewer.finished && viewer.chunks.isEmpty()) {
+            // the bytes the tail read before this viewer joined it, or that were dropped for it
+            catchUp(moduleBuildId, viewer, viewer.end, outputStream);
+            outputStream.flush();
+            return;
+          }
+
+          if (System.currentTimeMillis() - lastWriteMillis >= MAX_IDLE_MILLIS) {
+            // bounds how long a connection that was dropped without the container noticing holds on to its thread,
+            // a client that is still there reconnects from its offset
+            return;
+          }
+          // fails once the container knows that the client went away, which lets the tail stop without it
+          outputStream.flush();
+          continue;
+        }
+
+        if (chunk.offset > viewer.position) {
+          catchUp(moduleBuildId, viewer, chunk.offset, outputStream);
+        }
+        int from = (int) Math.max(0, viewer.position - chunk.offset);
+        if (from < chunk.data.length) {
+          outputStream.write(chunk.data, from, chunk.data.length - from);
+          outputStream.flush();
+          viewer.position = chunk.nextOffset;
+          lastWriteMillis = System.currentTimeMillis();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      tail.unfollow(viewer);
+    }
+  }
+
+  private Tail follow(long moduleBuildId, Viewer viewer) {
+    while (true) {
+      Tail tail = tailsByModuleBuildId.computeIfAbsent(moduleBuildId, id -> new Tail(id, viewer.position));
+      if (tail.follow(viewer)) {
+        return tail;
+      }
+      // the tail stopped while we looked it up, the next lookup starts a new one
+      tailsByModuleBuildId.remove(moduleBuildId, tail);
+    }
+  }
+
+  private void catchUp(long moduleBuildId, Viewer viewer, long until, OutputStream outputStream) throws IOException {
+    Optional<ModuleBuild> moduleBuild = moduleBuildService.get(moduleBuildId);
+    while (moduleBuild.isPresent() && viewer.position < until) {
+      LogChunk logChunk;
+      try {
+        logChunk = buildLogCache.getLog(moduleBuild.get(), viewer.position, Math.min(READ_LENGTH, until - viewer.position));
+      } catch (Exception e) {
+        throw new IOException(String.format("Could not read the log of module build %d at offset %d", moduleBuildId, viewer.position), e);
+      }
+
+      byte[] data = logChunk.getData().getBytes(StandardCharsets.UTF_8);
+      if (data.length == 0 || logChunk.getNextOffset() <= viewer.position) {
+        return;
+      }
+      outputStream.write(data);
+      // the text may be longer or shorter than the bytes it was read from, only the cluster knows where it ended
+      viewer.position = logChunk.getNextOffset();
+    }
+  }
+
+  private static class Chunk {
+    private final long offset;
+    private final long nextOffset;
+    private final byte[] data;
+
+    private Chunk(long offset, long nextOffset, byte[] data) {
+      this.offset = offset;
+      this.nextOffset = nextOffset;
+      this.data = data;
+    }
+  }
+
+  private static class Viewer {
+    private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS_PER_VIEWER);
+    private volatile boolean finished;
+    private volatile long end;
+    // only used by the thread that writes to the viewer
+    private long position;
+
+    private Viewer(long position) {
+      this.position = position;
+    }
+  }
+
+  private class Tail implements Runnable {
+    private final long moduleBuildId;
+    private final Set<Viewer> viewers;
+    private ScheduledFuture<?> future;
+    private boolean stopped;
+    // only used by the polling task, which never runs concurrently with itself
+    private long position;
+    private int consecutiveErrors;
+
+    private Tail(long moduleBuildId, long position) {
+      this.moduleBuildId = moduleBuildId;
+      this.position = position;
+      this.viewers = new HashSet<>();
+    }
+
+    private synchronized boolean follow(Viewer viewer) {
+      if (stopped) {
+        return false;
+      }
+
+      viewers.add(viewer);
+      if (future == null) {
+        future = executorService.scheduleWithFixedDelay(this, 0, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      return true;
+    }
+
+    private synchronized void unfollow(Viewer viewer) {
+      viewers.remove(viewer);
+      if (viewers.isEmpty()) {
+        stop();
+      }
+    }
+
+    @Override
+    public void run() {
+      Optional<ModuleBuild> moduleBuild = Optional.absent();
+      try {
+        moduleBuild = moduleBuildService.get(moduleBuildId);
+        if (!moduleBuild.isPresent()) {
+          finish();
+          return;
+        }
+
+        if (!moduleBuild.get().getTaskId().isPresent()) {
+          if (moduleBuild.get().getState().isComplete()) {
+            // it finished without ever running, there is no log to wait for
+            finish();
+          }
+          return;
+        }
+
+        while (true) {
+          upstreamReads.mark();
+          LogChunk logChunk = buildLogCache.getLog(moduleBuild.get(), position, READ_LENGTH);
+          consecutiveErrors = 0;
+          if (logChunk.getNextOffset() == -1) {
+            finish();
+            return;
+          }
+
+          byte[] data = logChunk.getData().getBytes(StandardCharsets.UTF_8);
+          if (data.length == 0) {
+            return;
+          }
+          long nextOffset = logChunk.getNextOffset();
+          publish(new Chunk(position, nextOffset, data));
+          long bytesRead = nextOffset - position;
+          position = nextOffset;
+          if (bytesRead < READ_LENGTH) {
+            return;
+          }
+        }
+      } catch (LogNotFoundException e) {
+        if (moduleBuild.isPresent() && moduleBuild.get().getState().isComplete()) {
+          // the sandbox of a finished build is gone and there is no copy of its log in S3, it won't show up later
+          LOG.warn("The log of finished module build {} cannot be found, closing its streams", moduleBuildId, e);
+          finish();
+        } else {
+          LOG.debug("The log of module build {} is not available yet", moduleBuildId);
+        }
+      } catch (Throwable t) {
+        if (++consecutiveErrors >= MAX_CONSECUTIVE_ERRORS) {
+          LOG.error("Failed to read the log of module build {} {} times in a row, closing its streams", moduleBuildId, consecutiveErrors, t);
+          finish();
+        } else {
+          LOG.warn("Failed to read the log of module build {} at offset {}, will retry", moduleBuildId, position, t);
+        }
+      }
+    }
+
+    private synchronized void publish(Chunk chunk) {
+      for (Viewer viewer : viewers) {
+        // a viewer whose queue is full reads what it missed from the cache once it gets to the next chunk
+        viewer.chunks.offer(chunk);
+      }
+    }
+
+    private synchronized void finish() {
+      for (Viewer viewer : viewers) {
+        viewer.end = position;
+        viewer.finished = true;
+      }
+      stop();
+    }
+
+    private synchronized void stop() {
+      stopped = true;
+      if (future != null) {
+        future.cancel(false);
+      }
+      tailsByModuleBuildId.remove(moduleBuildId, this);
+    }
+  }
+}
@@ -5,9 +5,13 @@ import static com.hubspot.blazar.externalservice.BuildClusterService.BuildContai
 import static com.hubspot.blazar.externalservice.BuildClusterService.BuildContainerInfo.BuildContainerState.RUNNING;
 import static com.hubspot.blazar.externalservice.BuildClusterService.BuildContainerInfo.BuildContainerState.UNKNOWN;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -16,7 +20,12 @@ import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.inject.name.Named;
 import com.hubspot.blazar.base.ModuleBuild;
 import com.hubspot.blazar.base.ModuleBuild.State;
@@ -37,6 +46,9 @@ import io.dropwizard.lifecycle.Managed;
  * We also watch for builds that have been running for longer than the maximum time configured.
  * If we find a build container that has been running for longer than the configured time we kill
  * the container and fail the build.
+ * <p>
+ * Each cycle looks up the containers of all the builds it checks with a couple of requests per build cluster, and runs
+ * on its own executor so a slow cluster doesn't hold up queue processing.
  */
 @Singleton
 public class LostBuildCleaner implements LeaderLatchListener, Managed {
@@ -46,18 +58,25 @@ public class LostBuildCleaner implements LeaderLatchListener, Managed {
   private final ModuleBuildService moduleBuildService;
   private final BuildClusterService buildClusterService;
   private final ExecutorConfiguration executorConfiguration;
+  private final Timer cycleTimer;
+  private final Histogram checkedBuilds;
+  private final Timer containerLookupTimer;
   private final AtomicBoolean running;
   private final AtomicBoolean leader;
 
   @Inject
-  public LostBuildCleaner(@Named("QueueProcessor") ScheduledExecutorService executorService,
+  public LostBuildCleaner(@Named("LostBuildCleaner") ScheduledExecutorService executorService,
                           ModuleBuildService moduleBuildService,
                           BuildClusterService buildClusterService,
-                          BlazarConfiguration blazarConfiguration) {
+                          BlazarConfiguration blazarConfiguration,
+                          MetricRegistry metricRegistry) {
     this.executorService = executorService;
     this.moduleBuildService = moduleBuildService;
     this.buildClusterService = buildClusterService;
     this.executorConfiguration = blazarConfiguration.getExecutorConfiguration();
+    this.cycleTimer = metricRegistry.timer(MetricRegistry.name(LostBuildCleaner.class, "cycle"));
+    this.checkedBuilds = metricRegistry.histogram(MetricRegistry.name(LostBuildCleaner.class, "checkedBuilds"));
+    this.containerLookupTimer = metricRegistry.timer(MetricRegistry.name(LostBuildCleaner.class, "containerLookup"));
 
     this.running = new AtomicBoolean();
     this.leader = new AtomicBoolean();
@@ -90,29 +109,56 @@ public class LostBuildCleaner implements LeaderLatchListener, Managed {
     public void run() {
       try {
         if (running.get() && leader.get()) {
-          handleLostLaunchingBuilds();
-          handleLongRunningBuilds();
+          try (Timer.Context ignored = cycleTimer.time()) {
+            checkBuilds();
+          }
         }
       } catch (Throwable t) {
         LOG.error("Error checking for failed or lost tasks", t);
       }
     }
 
-    // Handle builds that are in launching state and their container didn't report back after a minute
-    private void handleLostLaunchingBuilds() {
-      for (ModuleBuild moduleBuild : moduleBuildService.getByState(State.LAUNCHING)) {
-        handleLostLaunchingBuild(moduleBuild);
+    // The containers of all the builds we check are looked up together, with a couple of requests per build cluster
+    private void checkBuilds() {
+      List<ModuleBuild> launchingBuilds = olderThanAMinute(moduleBuildService.getByState(State.LAUNCHING));
+      List<ModuleBuild> inProgressBuilds = olderThanAMinute(moduleBuildService.getByState(State.IN_PROGRESS));
+      checkedBuilds.update(launchingBuilds.size() + inProgressBuilds.size());
+      if (launchingBuilds.isEmpty() && inProgressBuilds.isEmpty()) {
+        return;
+      }
+
+      Map<Long, BuildContainerInfo> buildContainerInfos;
+      try (Timer.Context ignored = containerLookupTimer.time()) {
+        buildContainerInfos = buildClusterService.getBuildContainerInfos(Lists.newArrayList(Iterables.concat(launchingBuilds, inProgressBuilds)));
       }
+
+      for (ModuleBuild moduleBuild : launchingBuilds) {
+        handleLostLaunchingBuild(moduleBuild, buildContainerInfos);
+      }
+      for (ModuleBuild moduleBuild : inProgressBuilds) {
+        handleLongRunningBuild(moduleBuild, buildContainerInfos);
+      }
+    }
+
+    private List<ModuleBuild> olderThanAMinute(Collection<ModuleBuild> moduleBuilds) {
+      long now = System.currentTimeMillis();
+      return moduleBuilds.stream()
+          .filter(moduleBuild -> !moduleBuild.getStartTimestamp().isPresent() ||
+              now - moduleBuild.getStartTimestamp().get() >= TimeUnit.MINUTES.toMillis(1))
+          .collect(Collectors.toList());
     }
 
-    private void handleLostLaunchingBuild(ModuleBuild moduleBuild) {
+    // Handle builds that are in launching state and their container didn't report back after a minute
+    private void handleLostLaunchingBuild(ModuleBuild moduleBuild, Map<Long, BuildContainerInfo> buildContainerInfos) {
       try {
         long age = System.currentTimeMillis() - moduleBuild.getStartTimestamp().get();
-        if (age < TimeUnit.MINUTES.toMillis(1)) {
-          return;
-        }
 
-        BuildContainerInfo buildContainerInfo = buildClusterService.getBuildContainerInfo(moduleBuild);
+        BuildContainerInfo buildContainerInfo = buildContainerInfos.get(moduleBuild.getId().get());
+        // a container that wasn't found may have finished long ago, we only ask for it when the answer matters
+        if (buildContainerInfo == null ||
+            (buildContainerInfo.getState() == NOT_STARTED && age > executorConfiguration.getContainerStartTimeoutMillis())) {
+          buildContainerInfo = buildClusterService.getBuildContainerInfo(moduleBuild);
+        }
         BuildContainerState buildContainerState = buildContainerInfo.getState();
 
         if (buildContainerState == NOT_STARTED && age > executorConfiguration.getContainerStartTimeoutMillis()) {
@@ -158,22 +204,16 @@ public class LostBuildCleaner implements LeaderLatchListener, Managed {
 
     // Handle builds that are in progress for too long, i.e. they have reported back that the build has started but
     // they haven't reported back to signal that the build finished after waiting for executorConfiguration.getBuildTimeoutMillis()
-    private void handleLongRunningBuilds() {
-      for (ModuleBuild moduleBuild : moduleBuildService.getByState(State.IN_PROGRESS)) {
-        handleLongRunningBuild(moduleBuild);
-      }
-    }
-
-    private void handleLongRunningBuild(ModuleBuild moduleBuild) {
+    private void handleLongRunningBuild(ModuleBuild moduleBuild, Map<Long, BuildContainerInfo> buildContainerInfos) {
       LOG.debug("Checking state of build container for module build: {}", moduleBuild.getId().get());
       try {
         long age = System.currentTimeMillis() - moduleBuild.getStartTimestamp().get();
         long maxAge = executorConfiguration.getBuildTimeoutMillis();
-        if (age < TimeUnit.MINUTES.toMillis(1)) {
-          return;
-        }
 
-        BuildContainerInfo buildContainerInfo = buildClusterService.getBuildContainerInfo(moduleBuild);
+        BuildContainerInfo buildContainerInfo = buildContainerInfos.get(moduleBuild.getId().get());
+        if (buildContainerInfo == null || buildContainerInfo.getState() == NOT_STARTED) {
+          buildContainerInfo = buildClusterService.getBuildContainerInfo(moduleBuild);
+        }
         BuildContainerState buildContainerState = buildContainerInfo.getState();
         //The fact that the module build has state IN_PROGRESS means that its container started and it reported back
         // to blazar once to tell us that it has started but it has not yet reported back to tell us that it has finished.
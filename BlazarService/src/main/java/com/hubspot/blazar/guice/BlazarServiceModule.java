@@ -32,8 +32,12 @@ import com.google.inject.name.Names;
 import com.hubspot.blazar.GitHubNamingFilter;
 import com.hubspot.blazar.config.BlazarConfiguration;
 import com.hubspot.blazar.config.BlazarConfigurationWrapper;
+import com.hubspot.blazar.config.DependencyIndexConfiguration;
 import com.hubspot.blazar.config.GitHubConfiguration;
 import com.hubspot.blazar.data.BlazarDataModule;
+import com.hubspot.blazar.data.cache.StateCache;
+import com.hubspot.blazar.data.dependencies.InMemoryModuleDependencyIndex;
+import com.hubspot.blazar.data.dependencies.ModuleDependencyIndex;
 import com.hubspot.blazar.exception.IllegalArgumentExceptionMapper;
 import com.hubspot.blazar.exception.IllegalStateExceptionMapper;
 import com.hubspot.blazar.resources.BranchResource;
@@ -42,10 +46,13 @@ import com.hubspot.blazar.resources.BuildHistoryResource;
 import com.hubspot.blazar.resources.GitHubWebhookResource;
 import com.hubspot.blazar.resources.InstantMessageResource;
 import com.hubspot.blazar.resources.InterProjectBuildResource;
+import com.hubspot.blazar.resources.QueueResource;
 import com.hubspot.blazar.resources.ModuleBuildResource;
 import com.hubspot.blazar.resources.RepositoryBuildResource;
 import com.hubspot.blazar.util.GitHubWebhookHandler;
+import com.hubspot.blazar.externalservice.BuildLogTailer;
 import com.hubspot.blazar.externalservice.LostBuildCleaner;
+import com.hubspot.blazar.util.GitHubRequestExecutor;
 import com.hubspot.blazar.util.ManagedScheduledExecutorServiceProvider;
 import com.hubspot.dropwizard.guicier.DropwizardAwareModule;
 import com.hubspot.horizon.AsyncHttpClient;
@@ -126,6 +133,23 @@ public class BlazarServiceModule extends DropwizardAwareModule<BlazarConfigurati
     binder.bind(BuildHistoryResource.class);
     binder.bind(InstantMessageResource.class);
     binder.bind(InterProjectBuildResource.class);
+    binder.bind(QueueResource.class);
+
+    // Bound explicitly so that it is managed, the repository states are then refreshed in the background
+    binder.bind(StateCache.class);
+    // Bound explicitly so that it is managed, its request pools are shut down with the service
+    binder.bind(GitHubRequestExecutor.class);
+    // Bound explicitly so that it is managed, its log tails are stopped with the service
+    binder.bind(BuildLogTailer.class);
+
+    DependencyIndexConfiguration dependencyIndexConfiguration = blazarConfiguration.getDependencyIndexConfiguration();
+    if (dependencyIndexConfiguration.isInMemory()) {
+      binder.bindConstant()
+          .annotatedWith(Names.named("dependencyIndexReconcileIntervalSeconds"))
+          .to(dependencyIndexConfiguration.getReconcileIntervalSeconds());
+      binder.bind(InMemoryModuleDependencyIndex.class).in(Scopes.SINGLETON);
+      binder.bind(ModuleDependencyIndex.class).to(InMemoryModuleDependencyIndex.class);
+    }
 
     // Only configure leader-based activities like processing events etc. if you are connected to zookeeper
     if (blazarConfiguration.getZooKeeperConfiguration().isPresent()) {
@@ -6,7 +6,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Optional;
 import com.google.inject.Binder;
 import com.google.inject.Module;
-import com.google.inject.multibindings.Multibinder;
+import com.google.inject.multibindings.MapBinder;
 import com.hubspot.blazar.base.visitor.RepositoryBuildVisitor;
 import com.hubspot.blazar.config.BlazarConfiguration;
 import com.hubspot.blazar.config.BlazarSlackConfiguration;
@@ -38,9 +38,9 @@ public class BlazarSlackModule implements Module {
       return;
     }
 
-    Multibinder<RepositoryBuildVisitor> repositoryBuildVisitorMultibinder = Multibinder.newSetBinder(binder, RepositoryBuildVisitor.class);
-    repositoryBuildVisitorMultibinder.addBinding().to(SlackDmNotificationVisitor.class);
-    repositoryBuildVisitorMultibinder.addBinding().to(SlackRoomNotificationVisitor.class);
+    MapBinder<String, RepositoryBuildVisitor> notifiers = BuildVisitorModule.notifiersBinder(binder);
+    notifiers.addBinding(SlackDmNotificationVisitor.class.getSimpleName()).to(SlackDmNotificationVisitor.class);
+    notifiers.addBinding(SlackRoomNotificationVisitor.class.getSimpleName()).to(SlackRoomNotificationVisitor.class);
 
     binder.bind(SlackSession.class).toInstance(SlackSessionFactory.createWebSocketSlackSession(slackConfiguration.get().getSlackApiToken()));
     binder.bind(SlackResource.class);
@@ -19,6 +19,7 @@ import com.hubspot.blazar.queue.QueueProcessor;
 import com.hubspot.blazar.util.HostUtils;
 import com.hubspot.blazar.util.HostUtils.Host;
 import com.hubspot.blazar.util.HostUtils.Port;
+import com.hubspot.blazar.visitor.InterProjectBuildSchedulerStateCache;
 import com.hubspot.blazar.zookeeper.BlazarCuratorProvider;
 import com.hubspot.blazar.zookeeper.BlazarLeaderLatch;
 import com.hubspot.blazar.zookeeper.LeaderMetricManager;
@@ -37,6 +38,7 @@ public class BlazarZooKeeperModule implements Module {
     leaderLatchListeners.addBinding().to(QueueProcessor.class);
     leaderLatchListeners.addBinding().to(LeaderMetricManager.class);
     leaderLatchListeners.addBinding().to(BuildClusterHealthChecker.class);
+    leaderLatchListeners.addBinding().to(InterProjectBuildSchedulerStateCache.class);
   }
 
   @Provides
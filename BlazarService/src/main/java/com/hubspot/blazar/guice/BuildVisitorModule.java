@@ -2,7 +2,9 @@ package com.hubspot.blazar.guice;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Names;
 import com.hubspot.blazar.base.visitor.InterProjectBuildVisitor;
 import com.hubspot.blazar.base.visitor.ModuleBuildVisitor;
 import com.hubspot.blazar.base.visitor.RepositoryBuildVisitor;
@@ -39,11 +41,13 @@ public class BuildVisitorModule implements Module {
     repositoryBuildVisitors.addBinding().to(CancelledRepositoryBuildVisitor.class);
     // post event for queued repository build if present
     repositoryBuildVisitors.addBinding().to(CompletedRepositoryBuildVisitor.class);
-    // update GitHub status
-    repositoryBuildVisitors.addBinding().to(GitHubStatusVisitor.class);
     // Make note of launched module Builds for IPR builds
     repositoryBuildVisitors.addBinding().to(InterProjectRepositoryBuildVisitor.class);
 
+    // Notifiers are keyed by name, they run off the queued notifications rather than the build events
+    MapBinder<String, RepositoryBuildVisitor> notifiers = notifiersBinder(binder);
+    // update GitHub status
+    notifiers.addBinding(GitHubStatusVisitor.class.getSimpleName()).to(GitHubStatusVisitor.class);
 
     Multibinder<ModuleBuildVisitor> moduleBuildVisitors = Multibinder.newSetBinder(binder, ModuleBuildVisitor.class);
     // launch the queued build if nothing upstream
@@ -62,4 +66,8 @@ public class BuildVisitorModule implements Module {
     Multibinder<InterProjectBuildVisitor> interProjectBuildVisitors = Multibinder.newSetBinder(binder, InterProjectBuildVisitor.class);
     interProjectBuildVisitors.addBinding().to(InterProjectBuildHandler.class);
   }
+
+  public static MapBinder<String, RepositoryBuildVisitor> notifiersBinder(Binder binder) {
+    return MapBinder.newMapBinder(binder, String.class, RepositoryBuildVisitor.class, Names.named("notifiers"));
+  }
 }
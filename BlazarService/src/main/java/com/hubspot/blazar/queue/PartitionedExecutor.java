@@ -0,0 +1,106 @@
+package com.hubspot.blazar.queue;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs tasks on a fixed pool of threads while guaranteeing that tasks submitted with the same partition key
+ * run one at a time and in submission order. Tasks with different keys run in parallel, so a slow task only
+ * holds up the tasks queued behind it in its own partition.
+ */
+public class PartitionedExecutor {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+  private final ExecutorService executorService;
+  // guarded by itself, a partition is only present while it has tasks queued or running
+  private final Map<String, Partition> partitions;
+
+  public PartitionedExecutor(int threads, String name) {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(name + "-pool-%d").setDaemon(true).build();
+    this.executorService = Executors.newFixedThreadPool(threads, threadFactory);
+    this.partitions = new HashMap<>();
+  }
+
+  public void execute(String partitionKey, Runnable task) {
+    Partition partition;
+    synchronized (partitions) {
+      partition = partitions.computeIfAbsent(partitionKey, Partition::new);
+      partition.tasks.add(task);
+      if (partition.scheduled) {
+        return;
+      }
+      partition.scheduled = true;
+    }
+
+    executorService.execute(partition);
+  }
+
+  public int getActivePartitionCount() {
+    synchronized (partitions) {
+      return partitions.size();
+    }
+  }
+
+  public int getQueuedTaskCount() {
+    synchronized (partitions) {
+      return partitions.values().stream().mapToInt(partition -> partition.tasks.size()).sum();
+    }
+  }
+
+  public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
+    executorService.shutdown();
+    executorService.awaitTermination(timeout, timeUnit);
+  }
+
+  private class Partition implements Runnable {
+    private final String key;
+    private final Queue<Runnable> tasks;
+    private boolean scheduled;
+
+    private Partition(String key) {
+      this.key = key;
+      this.tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public void run() {
+      Runnable task;
+      synchronized (partitions) {
+        task = tasks.poll();
+      }
+
+      try {
+        task.run();
+      } catch (Throwable t) {
+        LOG.error("Uncaught error while running task for partition {}", key, t);
+      }
+
+      // run a single task per turn and go to the back of the pool's queue so busy partitions can't starve the others
+      synchronized (partitions) {
+        if (tasks.isEmpty()) {
+          scheduled = false;
+          partitions.remove(key);
+          return;
+        }
+      }
+      try {
+        executorService.execute(this);
+      } catch (RejectedExecutionException e) {
+        // shutting down, the tasks that are still queued in the partition won't run
+        LOG.debug("Executor is shut down, dropping the remaining tasks of partition {}", key);
+      }
+    }
+  }
+}
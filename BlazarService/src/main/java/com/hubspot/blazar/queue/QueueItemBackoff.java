@@ -0,0 +1,29 @@
+package com.hubspot.blazar.queue;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.hubspot.blazar.config.QueueRetryConfiguration;
+
+/**
+ * Computes how long a failed queue item waits before it is retried, see {@link QueueRetryConfiguration}.
+ */
+final class QueueItemBackoff {
+
+  private QueueItemBackoff() {}
+
+  static long getDelaySeconds(QueueRetryConfiguration retryConfiguration, int failedAttempts) {
+    return getDelaySeconds(retryConfiguration, failedAttempts, ThreadLocalRandom.current().nextDouble());
+  }
+
+  /**
+   * @param failedAttempts how many times the item failed so far, including the attempt that just failed
+   * @param random a number in [0, 1) that picks where in the jitter range the delay falls
+   */
+  static long getDelaySeconds(QueueRetryConfiguration retryConfiguration, int failedAttempts, double random) {
+    double delay = retryConfiguration.getInitialDelaySeconds() * Math.pow(retryConfiguration.getMultiplier(), Math.max(0, failedAttempts - 1));
+    delay = Math.min(delay, retryConfiguration.getMaxDelaySeconds());
+
+    double jitter = delay * retryConfiguration.getJitterFactor() * (2 * random - 1);
+    return Math.max(1, Math.round(delay + jitter));
+  }
+}
@@ -1,16 +1,18 @@
 package com.hubspot.blazar.queue;
 
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -24,11 +26,17 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.inject.name.Named;
+import com.hubspot.blazar.base.notifications.RepositoryBuildNotification;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.QueueConfiguration;
+import com.hubspot.blazar.config.QueueRetryConfiguration;
 import com.hubspot.blazar.data.dao.QueueItemDao;
 import com.hubspot.blazar.data.queue.QueueItem;
+import com.hubspot.blazar.data.queue.QueueItemKey;
+import com.hubspot.blazar.data.service.DeadQueueItemService;
 import com.hubspot.blazar.externalservice.BuildClusterHealthChecker;
 import com.hubspot.blazar.github.GitHubProtos;
-import com.hubspot.blazar.util.ManagedScheduledExecutorServiceProvider;
+import com.hubspot.blazar.util.HostUtils;
 
 import io.dropwizard.lifecycle.Managed;
 
@@ -36,29 +44,57 @@ import io.dropwizard.lifecycle.Managed;
 public class QueueProcessor implements LeaderLatchListener, Managed, Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(QueueProcessor.class);
   private static final List<Class> PROCESSED_EVENTS_WHEN_CLUSTERS_DOWN  = ImmutableList.of(
-      GitHubProtos.PushEvent.class, GitHubProtos.DeleteEvent.class, GitHubProtos.CreateEvent.class);
-
+      GitHubProtos.PushEvent.class, GitHubProtos.DeleteEvent.class, GitHubProtos.CreateEvent.class, RepositoryBuildNotification.class);
+  // Events inserted by the leader are dispatched as soon as they are posted, so polling the db only needs
+  // to catch events inserted by other instances, retries and anything the push path missed
+  private static final long SAFETY_NET_POLLING_INTERVAL_SECONDS = 5;
+  // An inserted item can be invisible to us for a while if it was posted inside a transaction that has not committed
+  private static final long INSERTED_ITEM_RECHECK_DELAY_MILLIS = 50;
+  private static final long INSERTED_ITEM_MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(3);
+  // Bounds the work of a single poll when the queue backs up, the rest is read in the following cycles
+  private static final int DEQUEUE_PAGE_SIZE = 250;
+  private static final int MAX_ITEMS_READ_PER_CYCLE = 1000;
+  // Leases of the events being processed are renewed a few times per lease period so that a slow db doesn't let them expire
+  private static final int LEASE_RENEWALS_PER_LEASE = 3;
+  // How long stopping waits for the events being processed to finish, the leases of the others expire and another instance takes them
+  private static final long EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS = 30;
 
   private final ScheduledExecutorService executorService;
-  private final Map<String, ScheduledExecutorService> queueExecutors;
+  // created on start and shut down on stop
+  private volatile PartitionedExecutor eventExecutor;
+  // notifications wait on Slack and GitHub, on their own threads they can't hold up the build events
+  private volatile PartitionedExecutor notificationExecutor;
   private final QueueItemDao queueItemDao;
+  private final DeadQueueItemService deadQueueItemService;
   private final SqlEventBus eventBus;
   private final Set<Object> erroredItems;
-  private final Set<QueueItem> processingItems;
+  private final Set<Long> processingItems;
   private final AtomicBoolean running;
   private final AtomicBoolean leader;
+  private final ConcurrentMap<Long, Long> insertedItemIds;
+  private final AtomicBoolean insertedItemsCheckScheduled;
   private final BuildClusterHealthChecker buildClusterHealthChecker;
+  // identifies the leases taken by this instance, a restarted instance does not own the leases of its previous run
+  private final String leaseOwner;
+  private final int leaseSeconds;
+  private final boolean processOnAllInstances;
+  private final QueueConfiguration queueConfiguration;
   private Optional<ScheduledFuture<?>> processingTask;
+  private Optional<ScheduledFuture<?>> leaseRenewalTask;
+  // keyset cursor into queue_items, only touched by the polling task
+  private long lastSeenId;
 
   @Inject
   public QueueProcessor(@Named("QueueProcessor") ScheduledExecutorService executorService,
                         QueueItemDao queueItemDao,
+                        DeadQueueItemService deadQueueItemService,
                         SqlEventBus eventBus,
                         BuildClusterHealthChecker buildClusterHealthChecker,
+                        BlazarConfiguration blazarConfiguration,
                         Set<Object> erroredItems) {
     this.executorService = executorService;
-    this.queueExecutors = new ConcurrentHashMap<>();
     this.queueItemDao = queueItemDao;
+    this.deadQueueItemService = deadQueueItemService;
     this.eventBus = eventBus;
     this.erroredItems = erroredItems;
     this.processingItems = Sets.newConcurrentHashSet();
@@ -66,18 +102,34 @@ public class QueueProcessor implements LeaderLatchListener, Managed, Runnable {
 
     this.running = new AtomicBoolean();
     this.leader = new AtomicBoolean();
+    this.insertedItemIds = new ConcurrentHashMap<>();
+    this.insertedItemsCheckScheduled = new AtomicBoolean();
     this.processingTask = Optional.absent();
+    this.leaseRenewalTask = Optional.absent();
+
+    this.leaseOwner = HostUtils.getHostName().or("unknown") + "-" + UUID.randomUUID().toString();
+    this.leaseSeconds = blazarConfiguration.getQueueConfiguration().getLeaseSeconds();
+    this.processOnAllInstances = blazarConfiguration.getQueueConfiguration().isProcessOnAllInstances();
+    this.queueConfiguration = blazarConfiguration.getQueueConfiguration();
+
+    eventBus.addInsertListener(this::itemInserted);
   }
 
   @Override
   public void start() {
-    startProcessorWithCustomPollingRate(1, TimeUnit.SECONDS);
+    startProcessorWithCustomPollingRate(SAFETY_NET_POLLING_INTERVAL_SECONDS, TimeUnit.SECONDS);
   }
 
   public void startProcessorWithCustomPollingRate(long delay, TimeUnit timeUnit) {
+    eventExecutor = new PartitionedExecutor(queueConfiguration.getEventProcessorThreads(), "QueueProcessor-events");
+    notificationExecutor = new PartitionedExecutor(queueConfiguration.getNotificationProcessorThreads(), "QueueProcessor-notifications");
+    // events left over from a previous run were dropped with its executors, their leases expire and they are claimed again
+    processingItems.clear();
     running.set(true);
     LOG.info("Starting Queue Processor with delay of {} {}", delay, timeUnit);
     processingTask = Optional.of(executorService.scheduleAtFixedRate(this, 0, delay, timeUnit));
+    long leaseRenewalPeriodMillis = TimeUnit.SECONDS.toMillis(leaseSeconds) / LEASE_RENEWALS_PER_LEASE;
+    leaseRenewalTask = Optional.of(executorService.scheduleAtFixedRate(this::renewLeases, leaseRenewalPeriodMillis, leaseRenewalPeriodMillis, TimeUnit.MILLISECONDS));
     LOG.info("Queue Processor Started");
   }
 
@@ -92,9 +144,28 @@ public class QueueProcessor implements LeaderLatchListener, Managed, Runnable {
         LOG.error("Error stopping QueueProcessor", scheduledExecutorShutdownError);
       }
     }
+    // events that are still being processed are completed normally, their leases are renewed until they are done
+    shutdown(eventExecutor);
+    shutdown(notificationExecutor);
+    if (leaseRenewalTask.isPresent()) {
+      leaseRenewalTask.get().cancel(false);
+    }
     LOG.info("Queue Processor Stopped");
   }
 
+  private static void shutdown(PartitionedExecutor partitionedExecutor) {
+    if (partitionedExecutor == null) {
+      return;
+    }
+
+    try {
+      partitionedExecutor.shutdown(EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for the events being processed to finish");
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public void isLeader() {
     LOG.info("Now the leader, starting queue processing");
@@ -103,95 +174,226 @@ public class QueueProcessor implements LeaderLatchListener, Managed, Runnable {
 
   @Override
   public void notLeader() {
-    LOG.info("Not the leader, stopping queue processing");
+    if (processOnAllInstances) {
+      LOG.info("Not the leader, queue processing continues because events are processed on all instances");
+    } else {
+      LOG.info("Not the leader, stopping queue processing");
+    }
     leader.set(false);
   }
 
+  private boolean isProcessing() {
+    return running.get() && (leader.get() || processOnAllInstances);
+  }
+
   @Override
   public void run() {
     try {
-      if (running.get() && leader.get()) {
-        List<QueueItem> queueItemsSorted = sort(queueItemDao.getItemsReadyToExecute());
-        LOG.debug("{} events found in db", queueItemsSorted.size());
+      if (isProcessing()) {
+        int itemsRead = 0;
+        boolean wrapped = lastSeenId == 0;
+        while (itemsRead < MAX_ITEMS_READ_PER_CYCLE) {
+          int limit = Math.min(DEQUEUE_PAGE_SIZE, MAX_ITEMS_READ_PER_CYCLE - itemsRead);
+          List<QueueItemKey> page = queueItemDao.getItemsReadyToExecute(lastSeenId, limit);
+          itemsRead += page.size();
+          scheduleForProcessing(page);
+
+          if (page.size() == limit) {
+            lastSeenId = page.get(page.size() - 1).getId();
+          } else {
+            // reached the end of the queue, start from the oldest items again so that retries are picked up
+            lastSeenId = 0;
+            if (wrapped) {
+              break;
+            }
+            wrapped = true;
+          }
+        }
+        LOG.debug("{} events read from db in this cycle", itemsRead);
 
         if (processingItems.size() > 0) {
-          LOG.debug("{} events of those in db are in the following event thread pools (ONLY one event in each thread pool is currently running and the other are waiting)):", processingItems.size());
-          printItemsInProcessingQueues();
+          LOG.debug("{} events are being processed or waiting for an earlier event of the same build or branch, spread over {} partitions ({} waiting, {} of them notifications)",
+              processingItems.size(), eventExecutor.getActivePartitionCount() + notificationExecutor.getActivePartitionCount(),
+              eventExecutor.getQueuedTaskCount() + notificationExecutor.getQueuedTaskCount(), notificationExecutor.getQueuedTaskCount());
         } else {
-          LOG.debug("No events exist in the event processing thread pools", queueItemsSorted.size(), processingItems.size());
+          LOG.debug("No events are being processed");
         }
+      }
+    } catch (Throwable t) {
+      LOG.error("An error occurred while scheduling events in the queue for processing.", t);
+    }
+  }
 
-        queueItemsSorted.removeAll(processingItems);
-        if (queueItemsSorted.size() > 0) {
-          LOG.debug("Will schedule {} events for processing (i.e. those found in db minus those already processing)", queueItemsSorted.size());
-        }
+  /**
+   * Called by the {@link SqlEventBus} with the id of every event this instance inserts. When we are processing events
+   * the event is claimed and handed to the event thread pools right away instead of waiting for the next db poll.
+   */
+  private void itemInserted(long queueItemId) {
+    if (!isProcessing()) {
+      return;
+    }
 
-        processingItems.addAll(queueItemsSorted);
+    insertedItemIds.putIfAbsent(queueItemId, System.currentTimeMillis());
+    scheduleInsertedItemsCheck(0);
+  }
 
+  private void scheduleInsertedItemsCheck(long delayMillis) {
+    if (insertedItemsCheckScheduled.compareAndSet(false, true)) {
+      executorService.schedule(this::processInsertedItems, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
 
-        for (QueueItem queuedItem : queueItemsSorted) {
-          String eventType = queuedItem.getType().getSimpleName();
-          LOG.debug("Processing event {}: eventId:{}", eventType, queuedItem.getId().get());
+  private void processInsertedItems() {
+    insertedItemsCheckScheduled.set(false);
+    try {
+      if (!isProcessing()) {
+        insertedItemIds.clear();
+        return;
+      }
 
-          if (!canDequeueEvent(queuedItem)) {
-            LOG.warn("Will not schedule event {}(id: {}) for processing because there is no healthy cluster available at the moment (only git push events are dequeued when all build clusters are down)",
-                eventType, queuedItem.getId().get());
-            processingItems.remove(queuedItem);
-            return;
-          }
+      Set<Long> ids = new HashSet<>(insertedItemIds.keySet());
+      if (ids.isEmpty()) {
+        return;
+      }
 
-          queueExecutors.computeIfAbsent(eventType, k -> {
-            return new ManagedScheduledExecutorServiceProvider(1, "QueueProcessor-" + eventType).get();
-          }).execute(new ProcessItemRunnable(queuedItem));
-        }
+      List<QueueItemKey> queueItemKeys = queueItemDao.getItemsReadyToExecute(ids);
+      for (QueueItemKey queueItemKey : queueItemKeys) {
+        insertedItemIds.remove(queueItemKey.getId());
       }
+
+      long now = System.currentTimeMillis();
+      insertedItemIds.values().removeIf(insertedAt -> now - insertedAt > INSERTED_ITEM_MAX_WAIT_MILLIS);
+      if (!insertedItemIds.isEmpty()) {
+        LOG.debug("{} inserted events are not visible yet, will check them again in {}ms", insertedItemIds.size(), INSERTED_ITEM_RECHECK_DELAY_MILLIS);
+        scheduleInsertedItemsCheck(INSERTED_ITEM_RECHECK_DELAY_MILLIS);
+      }
+
+      scheduleForProcessing(queueItemKeys);
     } catch (Throwable t) {
-      LOG.error("An error occurred while scheduling events in the queue for processing.", t);
+      LOG.error("An error occurred while scheduling inserted events for processing, they will be picked up by the next db poll.", t);
     }
   }
 
-  private List<QueueItem> sort(Set<QueueItem> queueItems) {
-    return queueItems.stream()
-        .sorted(Comparator.comparing(item -> item.getId().get()))
-        .collect(Collectors.toList());
+  private synchronized void scheduleForProcessing(List<QueueItemKey> queueItemKeys) {
+    Set<Long> idsToClaim = new LinkedHashSet<>();
+    for (QueueItemKey queueItemKey : queueItemKeys) {
+      if (!canDequeueEvent(queueItemKey)) {
+        LOG.warn("Will not schedule event {}(id: {}) for processing because there is no healthy cluster available at the moment (only git push events are dequeued when all build clusters are down)",
+            queueItemKey.getType().getSimpleName(), queueItemKey.getId());
+        continue;
+      }
+
+      // events that are already waiting in (or running on) the event executor are skipped
+      if (!processingItems.contains(queueItemKey.getId())) {
+        idsToClaim.add(queueItemKey.getId());
+      }
+    }
+
+    if (idsToClaim.isEmpty()) {
+      return;
+    }
+
+    // other instances may be reading the same events, we only process the ones we managed to take a lease on
+    queueItemDao.claim(idsToClaim, leaseOwner, leaseSeconds);
+    for (QueueItemKey queueItemKey : queueItemDao.getClaimedItems(idsToClaim, leaseOwner)) {
+      if (!processingItems.add(queueItemKey.getId())) {
+        continue;
+      }
+
+      LOG.debug("Processing event {}: eventId:{} partition:{}", queueItemKey.getType().getSimpleName(), queueItemKey.getId(), queueItemKey.getPartitionKey());
+      try {
+        executorFor(queueItemKey).execute(queueItemKey.getPartitionKey(), new ProcessItemRunnable(queueItemKey));
+      } catch (RejectedExecutionException e) {
+        // we are stopping, the lease expires and the event is claimed again
+        processingItems.remove(queueItemKey.getId());
+      }
+    }
   }
 
-  private boolean canDequeueEvent(QueueItem queueItem) {
+  /**
+   * Only the oldest ready event of a partition can be claimed, so once it is done the next one is claimed right away
+   * instead of waiting for the next db poll.
+   */
+  private void scheduleNextItemOfPartition(String partitionKey) {
+    if (!isProcessing()) {
+      return;
+    }
+
+    try {
+      Optional<QueueItemKey> nextQueueItemKey = queueItemDao.getNextItemReadyToExecute(partitionKey);
+      if (nextQueueItemKey.isPresent()) {
+        scheduleForProcessing(Collections.singletonList(nextQueueItemKey.get()));
+      }
+    } catch (Throwable t) {
+      LOG.error("An error occurred while scheduling the next event of partition {}, it will be picked up by the next db poll.", partitionKey, t);
+    }
+  }
+
+  private void renewLeases() {
+    try {
+      Set<Long> ids = new HashSet<>(processingItems);
+      if (!ids.isEmpty()) {
+        int renewed = queueItemDao.renewLeases(ids, leaseOwner, leaseSeconds);
+        LOG.debug("Renewed the lease of {} out of {} events being processed", renewed, ids.size());
+      }
+    } catch (Throwable t) {
+      LOG.error("An error occurred while renewing the leases of the events being processed.", t);
+    }
+  }
+
+  private PartitionedExecutor executorFor(QueueItemKey queueItemKey) {
+    return queueItemKey.getType() == RepositoryBuildNotification.class ? notificationExecutor : eventExecutor;
+  }
+
+  private boolean canDequeueEvent(QueueItemKey queueItemKey) {
     return buildClusterHealthChecker.isSomeClusterAvailable() ||
         (!buildClusterHealthChecker.isSomeClusterAvailable() &&
-            PROCESSED_EVENTS_WHEN_CLUSTERS_DOWN.contains(queueItem.getType()));
+            PROCESSED_EVENTS_WHEN_CLUSTERS_DOWN.contains(queueItemKey.getType()));
   }
 
   private class ProcessItemRunnable implements Runnable {
-    private final QueueItem queueItem;
+    private final QueueItemKey queueItemKey;
 
-    public ProcessItemRunnable(QueueItem queueItem) {
-      this.queueItem = queueItem;
+    public ProcessItemRunnable(QueueItemKey queueItemKey) {
+      this.queueItemKey = queueItemKey;
     }
 
     @Override
     public void run() {
       Stopwatch timer = Stopwatch.createStarted();
-      String eventName = queueItem.getType().getSimpleName();
+      String eventName = queueItemKey.getType().getSimpleName();
       try {
-        if (!queueItemDao.isItemStillQueued(queueItem)) {
-          LOG.info("Queued event {}(id: {}) was already completed, will not schedule for processing", eventName, queueItem.getId().get());
-        } else if (process(queueItem.getItem())) {
-          LOG.debug("Queued event {}(id: {}) was successfully processed, will be marked as completed", eventName, queueItem.getId().get());
-          checkResult(queueItemDao.complete(queueItem), queueItem);
-        } else if (queueItem.getRetryCount() < 9) {
-          LOG.warn("Queued event {}(id: {}) failed to process, will increase its retry counter and will leave it in the queue to be scheduled for processing in the next cycle", eventName, queueItem.getId().get());
-          checkResult(queueItemDao.increaseRetryCounter(queueItem), queueItem);
+        // the payload is only loaded (and deserialized) now that the item is about to be processed
+        Optional<QueueItem> maybeQueueItem = queueItemDao.getClaimedItem(queueItemKey.getId(), leaseOwner);
+        if (!maybeQueueItem.isPresent()) {
+          LOG.info("Queued event {}(id: {}) was already completed or our lease on it expired, will not process it", eventName, queueItemKey.getId());
+          return;
+        }
+
+        QueueItem queueItem = maybeQueueItem.get();
+        QueueRetryConfiguration retryConfiguration = queueConfiguration.getRetryFor(queueItemKey.getType());
+        int failedAttempts = queueItem.getRetryCount() + 1;
+        if (process(queueItem.getItem())) {
+          LOG.debug("Queued event {}(id: {}) was successfully processed, will be marked as completed", eventName, queueItemKey.getId());
+          checkResult(queueItemDao.complete(queueItem, leaseOwner));
+        } else if (failedAttempts < retryConfiguration.getMaxAttempts()) {
+          long delaySeconds = QueueItemBackoff.getDelaySeconds(retryConfiguration, failedAttempts);
+          LOG.warn("Queued event {}(id: {}) failed to process ({} of {} attempts), will retry it in {} seconds", eventName, queueItemKey.getId(),
+              failedAttempts, retryConfiguration.getMaxAttempts(), delaySeconds);
+          checkResult(queueItemDao.increaseRetryCounter(queueItem, leaseOwner, delaySeconds));
         } else {
-          LOG.warn("Queued event {}(id: {}) failed to process 10 times, will be marked as completed and will not be retried", eventName, queueItem.getId().get());
-          checkResult(queueItemDao.complete(queueItem), queueItem);
+          LOG.warn("Queued event {}(id: {}) failed to process {} times, will be moved to the dead queue items and will not be retried", eventName, queueItemKey.getId(), failedAttempts);
+          if (!deadQueueItemService.bury(queueItem, leaseOwner)) {
+            logLostLease();
+          }
         }
       } catch (Throwable t) {
-        LOG.error("Unexpected error while processing queued event: {}(id: {})", eventName, queueItem.getId().get(), t);
+        LOG.error("Unexpected error while processing queued event: {}(id: {})", eventName, queueItemKey.getId(), t);
       } finally {
-        processingItems.remove(queueItem);
+        processingItems.remove(queueItemKey.getId());
         timer.stop();
-        LOG.debug("Processing of event {}(id: {}) took {}ms", eventName, queueItem.getId().get(), timer.elapsed(TimeUnit.MILLISECONDS));
+        LOG.debug("Processing of event {}(id: {}) took {}ms", eventName, queueItemKey.getId(), timer.elapsed(TimeUnit.MILLISECONDS));
+        scheduleNextItemOfPartition(queueItemKey.getPartitionKey());
       }
     }
 
@@ -201,16 +403,15 @@ public class QueueProcessor implements LeaderLatchListener, Managed, Runnable {
       return !erroredItems.remove(event);
     }
 
-    private void checkResult(int result, QueueItem queueItem) {
+    private void checkResult(int result) {
       if (result != 1) {
-        LOG.warn("Could not find queue item with id {} to update", queueItem.getId().get());
+        logLostLease();
       }
     }
-  }
 
-  private void printItemsInProcessingQueues() {
-    queueExecutors.forEach((eventClass, scheduledExecutorService) -> {
-      LOG.debug("Event processing thread pool:'{}' has {} events queued and 1 processing", eventClass, ((ScheduledThreadPoolExecutor)scheduledExecutorService).getQueue().size());
-    });
+    private void logLostLease() {
+      // the lease expired while the event was processed, the instance that claimed it since decides what happens to it
+      LOG.warn("Lost the lease on queue item with id {} while processing it, another instance owns it now", queueItemKey.getId());
+    }
   }
 }
@@ -11,11 +11,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
 
 @Singleton
 public class SqlEventBus extends EventBus {
+  private static final Logger LOG = LoggerFactory.getLogger(SqlEventBus.class);
+
   private final QueueItemDao queueItemDao;
+  private final List<LongConsumer> insertListeners;
 
   @Inject
   public SqlEventBus(QueueItemDao queueItemDao, final Set<Object> erroredItems) {
@@ -32,14 +38,32 @@ public class SqlEventBus extends EventBus {
     });
 
     this.queueItemDao = queueItemDao;
+    this.insertListeners = new CopyOnWriteArrayList<>();
   }
 
   @Override
   public void post(Object event) {
-    queueItemDao.insert(new QueueItem(event));
+    long queueItemId = queueItemDao.insert(new QueueItem(event));
+
+    for (LongConsumer listener : insertListeners) {
+      try {
+        listener.accept(queueItemId);
+      } catch (Throwable t) {
+        // the item is already stored so it will still be picked up when the queue is polled
+        LOG.warn("Error notifying listener about queued event {}(id: {})", event.getClass().getSimpleName(), queueItemId, t);
+      }
+    }
   }
 
   public void dispatch(Object event) {
     super.post(event);
   }
+
+  /**
+   * Registers a listener that gets the id of every queue item that is inserted through this bus. Listeners are
+   * notified on the posting thread so they should only hand the id off and return.
+   */
+  public void addInsertListener(LongConsumer listener) {
+    insertListeners.add(listener);
+  }
 }
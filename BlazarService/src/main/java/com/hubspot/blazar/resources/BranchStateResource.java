@@ -6,10 +6,12 @@ import java.util.HashSet;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.StreamingOutput;
@@ -21,6 +23,7 @@ import com.google.common.io.Resources;
 import com.hubspot.blazar.base.ModuleState;
 import com.hubspot.blazar.base.RepositoryBuild;
 import com.hubspot.blazar.base.RepositoryState;
+import com.hubspot.blazar.base.RepositoryStateChanges;
 import com.hubspot.blazar.base.branch.BranchStatus;
 import com.hubspot.blazar.cctray.CCTrayProject;
 import com.hubspot.blazar.cctray.CCTrayProjectFactory;
@@ -30,6 +33,7 @@ import com.hubspot.blazar.data.service.BranchStatusService;
 import com.hubspot.blazar.data.service.StateService;
 import com.hubspot.jackson.jaxrs.PropertyFiltering;
 
+@Singleton
 @Path("/branches/state")
 @Produces(MediaType.APPLICATION_JSON)
 public class BranchStateResource {
@@ -37,6 +41,8 @@ public class BranchStateResource {
   private BranchStatusService branchStatusService;
   private final StateCache stateCache;
   private final CCTrayProjectFactory ccTrayProjectFactory;
+  // cc.xml is built at most once per version of the state cache
+  private volatile CachedCCTrayWrapper ccTrayWrapper;
 
   @Inject
   public BranchStateResource(StateService stateService,
@@ -55,10 +61,23 @@ public class BranchStateResource {
     return stateCache.getAllRepositoryStates();
   }
 
+  @GET
+  @Path("/changes")
+  @PropertyFiltering
+  public RepositoryStateChanges getChanges(@QueryParam("since") long since) {
+    return stateCache.getChangesSince(since);
+  }
+
   @GET
   @Path("/cc.xml")
   @Produces(MediaType.APPLICATION_XML)
   public CCTrayWrapper getCCTrayXml() {
+    long version = stateCache.getVersion();
+    CachedCCTrayWrapper cached = ccTrayWrapper;
+    if (cached != null && cached.version == version) {
+      return cached.wrapper;
+    }
+
     Set<CCTrayProject> projects = new HashSet<>();
     for (RepositoryState repositoryState : getAll()) {
       Optional<CCTrayProject> maybeProject = ccTrayProjectFactory.apply(repositoryState);
@@ -67,7 +86,9 @@ public class BranchStateResource {
       }
     }
 
-    return new CCTrayWrapper(projects);
+    CCTrayWrapper wrapper = new CCTrayWrapper(projects);
+    ccTrayWrapper = new CachedCCTrayWrapper(version, wrapper);
+    return wrapper;
   }
 
   @GET
@@ -127,4 +148,14 @@ public class BranchStateResource {
         return "shields/build-???-lightgrey.svg";
     }
   }
+
+  private static class CachedCCTrayWrapper {
+    private final long version;
+    private final CCTrayWrapper wrapper;
+
+    private CachedCCTrayWrapper(long version, CCTrayWrapper wrapper) {
+      this.version = version;
+      this.wrapper = wrapper;
+    }
+  }
 }
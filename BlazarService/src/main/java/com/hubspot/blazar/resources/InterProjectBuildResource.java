@@ -3,11 +3,13 @@ package com.hubspot.blazar.resources;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.ws.rs.GET;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
@@ -18,8 +20,12 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
 import com.hubspot.blazar.base.BuildOptions;
 import com.hubspot.blazar.base.BuildTrigger;
@@ -32,37 +38,42 @@ import com.hubspot.blazar.base.InterProjectBuild;
 import com.hubspot.blazar.base.InterProjectBuildMapping;
 import com.hubspot.blazar.base.InterProjectBuildStatus;
 import com.hubspot.blazar.base.Module;
+import com.hubspot.blazar.base.ModuleWithBranch;
 import com.hubspot.blazar.base.RepositoryBuild;
-import com.hubspot.blazar.data.service.BranchService;
 import com.hubspot.blazar.data.service.DependenciesService;
 import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
 import com.hubspot.blazar.data.service.InterProjectBuildService;
 import com.hubspot.blazar.data.service.ModuleService;
 import com.hubspot.blazar.data.service.RepositoryBuildService;
 
+@Singleton
 @Path("/inter-project-builds")
 @Produces(MediaType.APPLICATION_JSON)
 public class InterProjectBuildResource {
+  private static final int MAX_CACHED_GRAPHS = 500;
+  private static final int MAX_CACHED_STATUSES = 5000;
+
   private final DependenciesService dependenciesService;
   private InterProjectBuildService interProjectBuildService;
   private InterProjectBuildMappingService interProjectBuildMappingService;
-  private BranchService branchService;
   private final ModuleService moduleService;
   private RepositoryBuildService repositoryBuildService;
+  private final Cache<Long, D3GraphData> finishedBuildGraphs;
+  private final Cache<Long, InterProjectBuildStatus> finishedBuildStatuses;
 
   @Inject
   public InterProjectBuildResource(DependenciesService dependenciesService,
                                    InterProjectBuildService interProjectBuildService,
                                    InterProjectBuildMappingService interProjectBuildMappingService,
                                    RepositoryBuildService repositoryBuildService,
-                                   BranchService branchService,
                                    ModuleService moduleService) {
     this.repositoryBuildService = repositoryBuildService;
     this.dependenciesService = dependenciesService;
     this.interProjectBuildService = interProjectBuildService;
     this.interProjectBuildMappingService = interProjectBuildMappingService;
-    this.branchService = branchService;
     this.moduleService = moduleService;
+    this.finishedBuildGraphs = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_GRAPHS).build();
+    this.finishedBuildStatuses = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_STATUSES).build();
   }
 
   @POST
@@ -82,6 +93,12 @@ public class InterProjectBuildResource {
   @GET
   @Path("/repository-build/{repoBuildId}/up-and-downstreams")
   public InterProjectBuildStatus getMappingsForRepoBuild(@PathParam("repoBuildId") long repoBuildId) {
+    // the status of a repo build that is part of a finished build doesn't change anymore
+    InterProjectBuildStatus cached = finishedBuildStatuses.getIfPresent(repoBuildId);
+    if (cached != null) {
+      return cached;
+    }
+
     InterProjectBuildStatus empty = new InterProjectBuildStatus(repoBuildId, Optional.<Long>absent(), Optional.<InterProjectBuild.State>absent(), ImmutableMap.<Long, String>of(), ImmutableMap.<Long, String>of(), ImmutableMap.<Long, String>of(), ImmutableMap.<Long, String>of(), ImmutableSet.<Module>of());
     Optional<RepositoryBuild> repoBuild = repositoryBuildService.get(repoBuildId);
     Set<InterProjectBuildMapping> interProjectBuildMappingsForRepoBuild = interProjectBuildMappingService.getByRepoBuildId(repoBuildId);
@@ -97,6 +114,7 @@ public class InterProjectBuildResource {
       return empty;
     }
 
+    DependencyGraph graph = build.get().getDependencyGraph().get();
     Set<InterProjectBuildMapping> mappings = interProjectBuildMappingService.getMappingsForInterProjectBuild(build.get().getId().get());
 
     Set<Integer> rootBuildModuleIds = build.get().getModuleIds();
@@ -104,33 +122,46 @@ public class InterProjectBuildResource {
     Set<Integer> upstreamModuleIds = new HashSet<>();
     Set<Integer> failedModules = new HashSet<>();
 
-    // filter out mappings that are from this repo build
-    Set<InterProjectBuildMapping> toRemove = new HashSet<>();
+    // filter out mappings that are from this repo build and index the others by module
+    ListMultimap<Integer, InterProjectBuildMapping> mappingsByModule = ArrayListMultimap.create();
     for (InterProjectBuildMapping m : mappings) {
-      if (m.getRepoBuildId().isPresent() && m.getRepoBuildId().get().equals(repoBuildId)) {
-        toRemove.add(m);
-        Set<Integer> outgoing = build.get().getDependencyGraph().get().outgoingVertices(m.getModuleId());
-        downstreamModuleIds.addAll(outgoing);
-        upstreamModuleIds.addAll(build.get().getDependencyGraph().get().incomingVertices(m.getModuleId()));
+      if (m.getState() == InterProjectBuild.State.FAILED) {
+        failedModules.add(m.getModuleId());
       }
-      if (m.getState().equals(InterProjectBuild.State.FAILED)) {
-          failedModules.add(m.getModuleId());
+      if (m.getRepoBuildId().isPresent() && m.getRepoBuildId().get().equals(repoBuildId)) {
+        downstreamModuleIds.addAll(graph.outgoingVertices(m.getModuleId()));
+        upstreamModuleIds.addAll(graph.incomingVertices(m.getModuleId()));
+      } else {
+        mappingsByModule.put(m.getModuleId(), m);
       }
     }
-    mappings.removeAll(toRemove);
     upstreamModuleIds.removeAll(rootBuildModuleIds);
+
+    // one query for the modules and branches of every mapping we might report
+    Map<Integer, ModuleWithBranch> modules = new HashMap<>();
+    for (ModuleWithBranch moduleWithBranch : moduleService.getWithBranches(mappingsByModule.keySet())) {
+      modules.put(moduleWithBranch.getModule().getId().get(), moduleWithBranch);
+    }
+
     // find downstream, upstream and cancelled nodes
-    Map<Long, String> rootRepoBuilds = getRepoBuildIdsFromModuleIds(rootBuildModuleIds, mappings);
-    Map<Long, String> downstreamRepoBuilds = getRepoBuildIdsFromModuleIds(downstreamModuleIds, mappings);
-    Map<Long, String> upstreamRepoBuilds = getRepoBuildIdsFromModuleIds(upstreamModuleIds, mappings);
-    Map<Long, String> failedRepoBuilds = getRepoBuildIdsFromModuleIds(failedModules, mappings);
+    Map<Long, String> rootRepoBuilds = getRepoBuildIdsFromModuleIds(rootBuildModuleIds, mappingsByModule, modules);
+    Map<Long, String> downstreamRepoBuilds = getRepoBuildIdsFromModuleIds(downstreamModuleIds, mappingsByModule, modules);
+    Map<Long, String> upstreamRepoBuilds = getRepoBuildIdsFromModuleIds(upstreamModuleIds, mappingsByModule, modules);
+    Map<Long, String> failedRepoBuilds = getRepoBuildIdsFromModuleIds(failedModules, mappingsByModule, modules);
     Set<Module> cancelled = new HashSet<>();
-    for (InterProjectBuildMapping m : mappings) {
-      if (m.getState().equals(InterProjectBuild.State.CANCELLED) && downstreamModuleIds.contains(m.getModuleId())) {
-        cancelled.add(moduleService.get(m.getModuleId()).get());
+    for (int moduleId : downstreamModuleIds) {
+      for (InterProjectBuildMapping m : mappingsByModule.get(moduleId)) {
+        if (m.getState() == InterProjectBuild.State.CANCELLED && modules.containsKey(moduleId)) {
+          cancelled.add(modules.get(moduleId).getModule());
+        }
       }
     }
-    return new InterProjectBuildStatus(repoBuildId, build.get().getId(), Optional.of(build.get().getState()), rootRepoBuilds, upstreamRepoBuilds, downstreamRepoBuilds, failedRepoBuilds, cancelled);
+
+    InterProjectBuildStatus status = new InterProjectBuildStatus(repoBuildId, build.get().getId(), Optional.of(build.get().getState()), rootRepoBuilds, upstreamRepoBuilds, downstreamRepoBuilds, failedRepoBuilds, cancelled);
+    if (build.get().getState().isFinished()) {
+      finishedBuildStatuses.put(repoBuildId, status);
+    }
+    return status;
   }
 
   @GET
@@ -154,11 +185,8 @@ public class InterProjectBuildResource {
   public D3GraphData getDrawableGraph(@QueryParam("moduleId") Set<Integer> moduleIds) {
     Set<Module> modules = new HashSet<>();
     Map<Integer, InterProjectBuild.State> moduleIdToState = new HashMap<>();
-    for (int i : moduleIds) {
-      Optional<Module> m = moduleService.get(i);
-      if (m.isPresent()) {
-        modules.add(m.get());
-      }
+    for (ModuleWithBranch moduleWithBranch : moduleService.getWithBranches(moduleIds)) {
+      modules.add(moduleWithBranch.getModule());
     }
     DependencyGraph graph = dependenciesService.buildInterProjectDependencyGraph(modules);
     for (Map.Entry<Integer, Set<Integer>> entry : graph.getTransitiveReduction().entrySet()) {
@@ -167,14 +195,18 @@ public class InterProjectBuildResource {
         moduleIdToState.put(i, InterProjectBuild.State.QUEUED);
       }
     }
-    List<D3GraphNode> nodes = getNodes(graph, moduleIdToState);
-    List<D3GraphLink> links = drawLinks(nodes, graph);
-    return new D3GraphData(links, nodes);
+    return toD3GraphData(graph, moduleIdToState);
   }
 
   @GET
   @Path("/drawableGraph/{id}")
   public D3GraphData getDrawableGraphForBuild(@PathParam("id") long interProjectBuildId) {
+    // the graph and the states of a finished build don't change anymore
+    D3GraphData cached = finishedBuildGraphs.getIfPresent(interProjectBuildId);
+    if (cached != null) {
+      return cached;
+    }
+
     InterProjectBuild build = interProjectBuildService.getWithId(interProjectBuildId).get();
     Set<InterProjectBuildMapping> mappings = interProjectBuildMappingService.getMappingsForInterProjectBuild(interProjectBuildId);
     Map<Integer, InterProjectBuild.State> moduleIdToState = new HashMap<>();
@@ -191,64 +223,76 @@ public class InterProjectBuildResource {
         }
       }
     }
-    List<D3GraphNode> nodes = getNodes(build.getDependencyGraph().get(), moduleIdToState);
-    List<D3GraphLink> links = drawLinks(nodes, build.getDependencyGraph().get());
+    D3GraphData graphData = toD3GraphData(build.getDependencyGraph().get(), moduleIdToState);
+    if (build.getState().isFinished()) {
+      finishedBuildGraphs.put(interProjectBuildId, graphData);
+    }
+    return graphData;
+  }
+
+  private D3GraphData toD3GraphData(DependencyGraph graph, Map<Integer, InterProjectBuild.State> moduleIdToState) {
+    List<D3GraphNode> nodes = getNodes(graph, moduleIdToState);
+    List<D3GraphLink> links = drawLinks(nodes, graph);
     return new D3GraphData(links, nodes);
   }
 
+  // Loads all modules along with their branches in one query, the nodes are in the order of the topological sort.
+  // A module that no longer exists has no node, like it never had, and drawLinks leaves out the edges to it
   private List<D3GraphNode> getNodes(DependencyGraph graph, Map<Integer, InterProjectBuild.State> moduleIdToState) {
-    Set<Module> modules = new HashSet<>();
-    for (int i: graph.getTopologicalSort()) {
-      Optional<Module> m = moduleService.get(i);
-      if (m.isPresent()) {
-        modules.add(m.get());
-      }
+    Map<Integer, ModuleWithBranch> modules = new HashMap<>();
+    for (ModuleWithBranch moduleWithBranch : moduleService.getWithBranches(new HashSet<>(graph.getTopologicalSort()))) {
+      modules.put(moduleWithBranch.getModule().getId().get(), moduleWithBranch);
     }
+
     List<D3GraphNode> nodes = new ArrayList<>();
-    for (Module module : modules) {
-      GitInfo gitInfo = branchService.get(moduleService.getBranchIdFromModuleId(module.getId().get())).get();
-      String source = String.format("%s-%s", gitInfo.getRepository(), module.getName());
-      D3GraphNode node = new D3GraphNode(source, module.getId().get(), 100, 100, moduleIdToState.get(module.getId().get()));
-      nodes.add(node);
+    for (int moduleId : new LinkedHashSet<>(graph.getTopologicalSort())) {
+      ModuleWithBranch moduleWithBranch = modules.get(moduleId);
+      if (moduleWithBranch == null) {
+        continue;
+      }
+      String source = String.format("%s-%s", moduleWithBranch.getGitInfo().getRepository(), moduleWithBranch.getModule().getName());
+      nodes.add(new D3GraphNode(source, moduleId, 100, 100, moduleIdToState.get(moduleId)));
     }
     return nodes;
   }
 
   private List<D3GraphLink> drawLinks(List<D3GraphNode> nodes, DependencyGraph graph) {
-    List<D3GraphLink> links = new ArrayList<>();
-    int pos = 0;
-    for (D3GraphNode node : nodes) {
-      Set<Integer> outgoingModules = graph.outgoingVertices(node.getModuleId());
-      for (int module : outgoingModules) {
-        links.add(new D3GraphLink(getPos(nodes, module), pos));
-      }
-      pos++;
+    Map<Integer, Integer> positions = new HashMap<>();
+    for (int pos = 0; pos < nodes.size(); pos++) {
+      positions.put(nodes.get(pos).getModuleId(), pos);
     }
-    return links;
-  }
 
-  private int getPos(List<D3GraphNode> nodes, int moduleId) {
-    int pos = 0;
-    for (D3GraphNode node : nodes) {
-      if (node.getModuleId() == moduleId) {
-        return pos;
+    List<D3GraphLink> links = new ArrayList<>();
+    for (int pos = 0; pos < nodes.size(); pos++) {
+      for (int module : graph.outgoingVertices(nodes.get(pos).getModuleId())) {
+        Integer targetPos = positions.get(module);
+        if (targetPos != null) {
+          links.add(new D3GraphLink(targetPos, pos));
+        }
       }
-      pos++;
     }
-    throw new IllegalStateException(String.format("No node with moduleId %d", moduleId));
+    return links;
   }
 
-  private Map<Long, String> getRepoBuildIdsFromModuleIds(Set<Integer> moduleIds, Set<InterProjectBuildMapping> mappings) {
+  // Repo builds are named after the branch of their module, which is the branch the mappings were built on. A module
+  // that no longer exists has no branch to name its repo builds after, so they are left out like in the graph
+  private static Map<Long, String> getRepoBuildIdsFromModuleIds(Set<Integer> moduleIds,
+                                                                ListMultimap<Integer, InterProjectBuildMapping> mappingsByModule,
+                                                                Map<Integer, ModuleWithBranch> modules) {
     Map<Long, String> repoBuildIds = new HashMap<>();
-    for (int i : moduleIds) {
-      for (InterProjectBuildMapping m : mappings) {
-        if (m.getModuleId() == i && m.getRepoBuildId().isPresent()) {
-          GitInfo branch = branchService.get(m.getBranchId()).get();
-          String name = String.format("%s-%s-%s-%s",
-              branch.getHost(),
-              branch.getOrganization(),
-              branch.getRepository(),
-              branch.getBranch());
+    for (int moduleId : moduleIds) {
+      ModuleWithBranch moduleWithBranch = modules.get(moduleId);
+      if (moduleWithBranch == null) {
+        continue;
+      }
+      GitInfo branch = moduleWithBranch.getGitInfo();
+      String name = String.format("%s-%s-%s-%s",
+          branch.getHost(),
+          branch.getOrganization(),
+          branch.getRepository(),
+          branch.getBranch());
+      for (InterProjectBuildMapping m : mappingsByModule.get(moduleId)) {
+        if (m.getRepoBuildId().isPresent()) {
           repoBuildIds.put(m.getRepoBuildId().get(), name);
         }
       }
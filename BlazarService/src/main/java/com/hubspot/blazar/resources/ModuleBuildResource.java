@@ -1,5 +1,8 @@
 package com.hubspot.blazar.resources;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import javax.inject.Inject;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -12,6 +15,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +27,8 @@ import com.hubspot.blazar.base.ModuleBuild.State;
 import com.hubspot.blazar.data.service.ModuleBuildService;
 import com.hubspot.blazar.exception.LogNotFoundException;
 import com.hubspot.blazar.externalservice.BuildClusterService;
+import com.hubspot.blazar.externalservice.BuildLogCache;
+import com.hubspot.blazar.externalservice.BuildLogTailer;
 import com.hubspot.horizon.AsyncHttpClient;
 
 @Path("/modules/builds")
@@ -32,15 +38,21 @@ public class ModuleBuildResource {
   private static final String BUILD_LOG_NAME = "service.log";
 
   private final BuildClusterService buildClusterService;
+  private final BuildLogCache buildLogCache;
+  private final BuildLogTailer buildLogTailer;
   private final ModuleBuildService moduleBuildService;
   private final AsyncHttpClient asyncHttpClient;
 
   @Inject
   public ModuleBuildResource(BuildClusterService buildClusterService,
+                             BuildLogCache buildLogCache,
+                             BuildLogTailer buildLogTailer,
                              ModuleBuildService moduleBuildService,
                              AsyncHttpClient asyncHttpClient) {
 
     this.buildClusterService = buildClusterService;
+    this.buildLogCache = buildLogCache;
+    this.buildLogTailer = buildLogTailer;
     this.moduleBuildService = moduleBuildService;
     this.asyncHttpClient = asyncHttpClient;
   }
@@ -80,7 +92,7 @@ public class ModuleBuildResource {
                          @QueryParam("length") @DefaultValue("65536") long length) throws Exception {
     try {
       ModuleBuild moduleBuild = getBuildWithError(moduleBuildId);
-      return buildClusterService.getBuildContainerLog(moduleBuild, offset, length);
+      return buildLogCache.getLog(moduleBuild, offset, length);
     } catch (LogNotFoundException e) {
       throw new NotFoundException(e.getMessage(), e);
     } catch (NotFoundException e) {
@@ -92,6 +104,40 @@ public class ModuleBuildResource {
     }
   }
 
+  /**
+   * Streams the log from the offset on as plain text while the build runs, the response ends once the log is complete.
+   * It also ends after five minutes without new bytes, clients of a build that is still running then reconnect from
+   * their offset. All viewers of a build share a single read of its log, see {@link BuildLogTailer}.
+   */
+  @GET
+  @Path("/{id}/log/stream")
+  @Produces(MediaType.TEXT_PLAIN + "; charset=utf-8")
+  public StreamingOutput streamLog(@PathParam("id") long moduleBuildId,
+                                   @QueryParam("offset") @DefaultValue("0") long offset) {
+    try {
+      ModuleBuild moduleBuild = getBuildWithError(moduleBuildId);
+      if (moduleBuild.getState().isComplete()) {
+        // the stream waits for the log of a running build to show up, the log of a finished one has to be there already
+        buildLogCache.getLog(moduleBuild, offset, 1);
+      }
+    } catch (LogNotFoundException e) {
+      throw new NotFoundException(e.getMessage(), e);
+    } catch (NotFoundException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new WebApplicationException(String.format("An error occurred while streaming the log for module build %d. The error is: %s",
+          moduleBuildId, e.getMessage()), Status.INTERNAL_SERVER_ERROR);
+    }
+
+    return new StreamingOutput() {
+      @Override
+      public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+        buildLogTailer.stream(moduleBuildId, offset, outputStream);
+      }
+    };
+  }
+
   @GET
   @Path("/{id}/log/size")
   public Object getLogSize(@PathParam("id") long moduleBuildId) {
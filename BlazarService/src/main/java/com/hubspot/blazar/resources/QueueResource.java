@@ -0,0 +1,72 @@
+package com.hubspot.blazar.resources;
+
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.hubspot.blazar.data.queue.DeadQueueItem;
+import com.hubspot.blazar.data.service.DeadQueueItemService;
+import com.hubspot.jackson.jaxrs.PropertyFiltering;
+
+@Path("/queue")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class QueueResource {
+  private static final int MAX_DEAD_ITEMS_PER_PAGE = 500;
+
+  private final DeadQueueItemService deadQueueItemService;
+
+  @Inject
+  public QueueResource(DeadQueueItemService deadQueueItemService) {
+    this.deadQueueItemService = deadQueueItemService;
+  }
+
+  @GET
+  @Path("/dead")
+  @PropertyFiltering
+  public List<DeadQueueItem> getDeadItems(@QueryParam("since") @DefaultValue("0") long lastSeenId,
+                                          @QueryParam("limit") @DefaultValue("100") int limit) {
+    return deadQueueItemService.getDeadItems(lastSeenId, Math.max(1, Math.min(limit, MAX_DEAD_ITEMS_PER_PAGE)));
+  }
+
+  @GET
+  @Path("/dead/{id}")
+  @PropertyFiltering
+  public Optional<DeadQueueItem> getDeadItem(@PathParam("id") long id) {
+    return deadQueueItemService.getDeadItem(id);
+  }
+
+  /**
+   * @return the id of the queue item the dead item was queued again as
+   */
+  @POST
+  @Path("/dead/{id}/replay")
+  public long replay(@PathParam("id") long id) {
+    Optional<Long> queueItemId = deadQueueItemService.replay(id);
+    if (!queueItemId.isPresent()) {
+      throw new NotFoundException("No dead queue item with id " + id);
+    }
+
+    return queueItemId.get();
+  }
+
+  @DELETE
+  @Path("/dead/{id}")
+  public void delete(@PathParam("id") long id) {
+    if (!deadQueueItemService.delete(id)) {
+      throw new NotFoundException("No dead queue item with id " + id);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.hubspot.blazar.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.hubspot.blazar.base.BuildConfig;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.BuildConfigCacheConfiguration;
+
+/**
+ * Parsed build configs keyed by the repository, path and sha they were fetched at. The sha is either the blob sha of
+ * the file or the sha of the commit it was read at, either way the content behind a key never changes so entries
+ * don't need to be invalidated, only evicted when there are too many.
+ *
+ * The raw yaml of every config is optionally written to disk as well, so a restart doesn't refetch every buildpack
+ * and .blazar.yaml from GitHub. Configs are parsed again when read back, which keeps the disk tier independent of the
+ * {@link BuildConfig} format.
+ */
+@Singleton
+public class BuildConfigCache {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildConfigCache.class);
+
+  private final ObjectMapper mapper;
+  private final YAMLFactory yamlFactory;
+  private final Cache<Key, BuildConfig> configs;
+  private final Cache<String, String> branchHeads;
+  private final Optional<Path> diskCacheDirectory;
+  private final Counter diskHits;
+  private final Counter diskMisses;
+
+  @Inject
+  public BuildConfigCache(BlazarConfiguration blazarConfiguration,
+                          ObjectMapper mapper,
+                          YAMLFactory yamlFactory,
+                          MetricRegistry metricRegistry) throws IOException {
+    BuildConfigCacheConfiguration configuration = blazarConfiguration.getBuildConfigCacheConfiguration();
+    this.mapper = mapper;
+    this.yamlFactory = yamlFactory;
+    this.configs = CacheBuilder.newBuilder().maximumSize(configuration.getMaxSize()).recordStats().build();
+    this.branchHeads = CacheBuilder.newBuilder()
+        .maximumSize(configuration.getMaxSize())
+        .expireAfterWrite(configuration.getBranchHeadCacheSeconds(), TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    if (configuration.getDiskCacheDirectory().isPresent()) {
+      Path directory = Paths.get(configuration.getDiskCacheDirectory().get());
+      Files.createDirectories(directory);
+      this.diskCacheDirectory = Optional.of(directory);
+    } else {
+      this.diskCacheDirectory = Optional.absent();
+    }
+
+    registerGauges(metricRegistry, "configs", configs);
+    registerGauges(metricRegistry, "branchHeads", branchHeads);
+    this.diskHits = metricRegistry.counter(MetricRegistry.name(BuildConfigCache.class, "disk", "hitCount"));
+    this.diskMisses = metricRegistry.counter(MetricRegistry.name(BuildConfigCache.class, "disk", "missCount"));
+    // a config read back from disk is also a miss of the in-memory tier, so its hit rate alone undersells the cache
+    registerGauge(metricRegistry, "total", "hitRate", () -> {
+      CacheStats stats = configs.stats();
+      return stats.requestCount() == 0 ? 1.0 : (double) (stats.hitCount() + diskHits.getCount()) / stats.requestCount();
+    });
+  }
+
+  /**
+   * @param sha the blob sha of the file or the sha of the commit the file is read at
+   */
+  public Optional<BuildConfig> getIfPresent(GitInfo gitInfo, String path, String sha) {
+    Key key = new Key(gitInfo, path, sha);
+    BuildConfig config = configs.getIfPresent(key);
+    if (config != null || !diskCacheDirectory.isPresent()) {
+      return Optional.fromNullable(config);
+    }
+
+    Path file = fileFor(key);
+    if (!Files.exists(file)) {
+      diskMisses.inc();
+      return Optional.absent();
+    }
+
+    try {
+      config = parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      diskHits.inc();
+      configs.put(key, config);
+      return Optional.of(config);
+    } catch (IOException e) {
+      LOG.warn("Error reading cached config {} for {}@{} from {}, ignoring it", path, gitInfo.getFullRepositoryName(), sha, file, e);
+      diskMisses.inc();
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Parses a config fetched at the given sha and caches it. Configs that can't be parsed aren't cached.
+   */
+  public BuildConfig put(GitInfo gitInfo, String path, String sha, String yaml) throws IOException {
+    Key key = new Key(gitInfo, path, sha);
+    BuildConfig config = parse(yaml);
+    configs.put(key, config);
+    if (diskCacheDirectory.isPresent()) {
+      write(key, yaml);
+    }
+
+    return config;
+  }
+
+  /**
+   * The commit a branch (or any other ref that isn't a full sha) points to, reused for a short while so looking up the
+   * same buildpack for many modules only resolves its ref once.
+   */
+  public String getBranchHead(GitInfo gitInfo, String branch, Callable<String> loader) throws IOException {
+    try {
+      return branchHeads.get(gitInfo.getHost() + "/" + gitInfo.getFullRepositoryName() + "#" + branch, loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private BuildConfig parse(String yaml) throws IOException {
+    return mapper.readValue(yamlFactory.createParser(yaml), BuildConfig.class);
+  }
+
+  private void write(Key key, String yaml) {
+    Path file = fileFor(key);
+    try {
+      // write to a temporary file first so that a concurrent reader never sees half a file
+      Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      Files.write(temporaryFile, yaml.getBytes(StandardCharsets.UTF_8));
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Error writing config {} for {}@{} to {}", key.path, key.repository, key.sha, file, e);
+    }
+  }
+
+  private Path fileFor(Key key) {
+    String name = Hashing.sha256().hashString(key.toString(), StandardCharsets.UTF_8).toString();
+    return diskCacheDirectory.get().resolve(name + ".yaml");
+  }
+
+  private static void registerGauges(MetricRegistry metricRegistry, String cacheName, Cache<?, ?> cache) {
+    registerGauge(metricRegistry, cacheName, "size", cache::size);
+    registerGauge(metricRegistry, cacheName, "hitRate", () -> cache.stats().hitRate());
+    registerGauge(metricRegistry, cacheName, "missCount", () -> cache.stats().missCount());
+    registerGauge(metricRegistry, cacheName, "evictionCount", () -> cache.stats().evictionCount());
+  }
+
+  private static void registerGauge(MetricRegistry metricRegistry, String cacheName, String metric, Gauge<?> gauge) {
+    String name = MetricRegistry.name(BuildConfigCache.class, cacheName, metric);
+    // a new instance replaces the gauges of the previous one, e.g. in tests that share the registry
+    metricRegistry.remove(name);
+    metricRegistry.register(name, gauge);
+  }
+
+  private static class Key {
+    private final String host;
+    private final String repository;
+    private final String path;
+    private final String sha;
+
+    private Key(GitInfo gitInfo, String path, String sha) {
+      this.host = gitInfo.getHost();
+      this.repository = gitInfo.getFullRepositoryName();
+      this.path = path;
+      this.sha = sha;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Key key = (Key) o;
+      return Objects.equals(host, key.host) &&
+          Objects.equals(repository, key.repository) &&
+          Objects.equals(path, key.path) &&
+          Objects.equals(sha, key.sha);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(host, repository, path, sha);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("host", host)
+          .add("repository", repository)
+          .add("path", path)
+          .add("sha", sha)
+          .toString();
+    }
+  }
+}
@@ -9,6 +9,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -28,6 +30,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
 import com.google.common.net.UrlEscapers;
 import com.hubspot.blazar.base.BuildConfig;
 import com.hubspot.blazar.base.CommitInfo;
@@ -39,16 +43,28 @@ import com.hubspot.blazar.github.GitHubProtos.User;
 @Singleton
 public class GitHubHelper {
   private static final Logger LOG = LoggerFactory.getLogger(GitHubHelper.class);
+  private static final Pattern COMMIT_SHA = Pattern.compile("[0-9a-f]{40}");
+  private static final int MAX_NEW_COMMITS = 10;
+  // GitHub lists at most this many files for a compare or a commit and leaves out the rest
+  private static final int MAX_FILES_PER_RESPONSE = 300;
 
   private final Map<String, GitHub> gitHubByHost;
   private final ObjectMapper mapper;
   private final YAMLFactory yamlFactory;
+  private final BuildConfigCache buildConfigCache;
+  private final GitHubRequestExecutor gitHubRequestExecutor;
 
   @Inject
-  public GitHubHelper(Map<String, GitHub> gitHubByHost, ObjectMapper mapper, YAMLFactory yamlFactory) {
+  public GitHubHelper(Map<String, GitHub> gitHubByHost,
+                      ObjectMapper mapper,
+                      YAMLFactory yamlFactory,
+                      BuildConfigCache buildConfigCache,
+                      GitHubRequestExecutor gitHubRequestExecutor) {
     this.gitHubByHost = gitHubByHost;
     this.mapper = mapper;
     this.yamlFactory = yamlFactory;
+    this.buildConfigCache = buildConfigCache;
+    this.gitHubRequestExecutor = gitHubRequestExecutor;
   }
 
   public Optional<String> shaFor(GHRepository repository, GitInfo gitInfo) throws IOException {
@@ -61,42 +77,83 @@ public class GitHubHelper {
   }
 
   public CommitInfo commitInfoFor(GHRepository repository, Commit current, Optional<Commit> previous) throws IOException {
-    final List<Commit> newCommits;
-    boolean truncated = false;
-    if (previous.isPresent()) {
-      newCommits = new ArrayList<>();
-
-      List<GHCompare.Commit> commits = Collections.emptyList();
-      try {
-        GHCompare compare = repository.getCompare(previous.get().getId(), current.getId());
-        commits = Arrays.asList(compare.getCommits());
-      } catch (FileNotFoundException e) {
-        LOG.warn("Error generating compare from sha {} to sha {}", previous.get().getId(), current.getId(), e);
-      }
+    if (!previous.isPresent()) {
+      return new CommitInfo(current, previous, Collections.emptyList(), true);
+    }
 
-      if (commits.size() > 10) {
-        commits = commits.subList(commits.size() - 10, commits.size());
-        truncated = true;
-      }
+    final GHCompare compare;
+    try {
+      compare = repository.getCompare(previous.get().getId(), current.getId());
+    } catch (FileNotFoundException e) {
+      LOG.warn("Error generating compare from sha {} to sha {}", previous.get().getId(), current.getId(), e);
+      return new CommitInfo(current, previous, Collections.emptyList(), false);
+    }
 
-      for (GHCompare.Commit newCommit : commits) {
-        newCommits.add(toCommit(repository.getCommit(newCommit.getSHA1())));
-      }
-    } else {
-      newCommits = Collections.emptyList();
-      truncated = true;
+    String host = repository.getHtmlUrl().getHost();
+    List<GHCompare.Commit> commits = Arrays.asList(compare.getCommits());
+
+    // only the most recent commits are kept with the build, so only those are fetched in full
+    List<Callable<Commit>> commitRequests = new ArrayList<>(MAX_NEW_COMMITS);
+    for (GHCompare.Commit newCommit : commits.subList(Math.max(0, commits.size() - MAX_NEW_COMMITS), commits.size())) {
+      commitRequests.add(() -> toCommit(repository.getCommit(newCommit.getSHA1())));
     }
+    List<Commit> newCommits = gitHubRequestExecutor.invokeAll(host, commitRequests);
 
-    return new CommitInfo(current, previous, newCommits, truncated);
+    Optional<Set<String>> affectedPaths = affectedPathsFor(repository, host, compare, commits);
+    return new CommitInfo(current, previous, newCommits, !affectedPaths.isPresent(), affectedPaths);
   }
 
   public Optional<BuildConfig> getCurrentConfigOnBranch(String path, GitInfo gitInfo) throws IOException {
     return configFor(path, repositoryFor(gitInfo), gitInfo);
   }
 
-  public Optional<BuildConfig> configAtSha(String path, GitInfo gitInfo, String sha) throws IOException {
+  /**
+   * @param ref a commit sha, a branch, a tag or an abbreviated sha, everything but a full sha is resolved to the commit
+   *            it points to so that the config can be cached by sha
+   */
+  public Optional<BuildConfig> configAtSha(String path, GitInfo gitInfo, String ref) throws IOException {
+    String sha = COMMIT_SHA.matcher(ref).matches() ? ref : buildConfigCache.getBranchHead(gitInfo, ref, () -> resolveRef(gitInfo, ref));
+
+    Optional<BuildConfig> cached = buildConfigCache.getIfPresent(gitInfo, path, sha);
+    if (cached.isPresent()) {
+      return cached;
+    }
+
     GHContent fileContent = repositoryFor(gitInfo).getFileContent(path, sha);
-    return Optional.of(mapper.readValue(yamlFactory.createParser(fileContent.getContent()), BuildConfig.class));
+    return Optional.of(buildConfigCache.put(gitInfo, path, sha, fileContent.getContent()));
+  }
+
+  private String resolveRef(GitInfo gitInfo, String ref) throws IOException {
+    GHRepository repository = repositoryFor(gitInfo);
+    try {
+      return repository.getRef("heads/" + ref).getObject().getSha();
+    } catch (IOException e) {
+      // not a branch, or only the prefix of some branches in which case GitHub lists them all. Tags and abbreviated
+      // shas are resolved by looking up the commit they point to
+      LOG.debug("{} is not a branch of {}, resolving it as a commit", ref, gitInfo.getFullRepositoryName());
+      return repository.getCommit(ref).getSHA1();
+    }
+  }
+
+  /**
+   * Same as {@link #configFor(String, GHRepository, GitInfo)} for a file whose blob sha is known, e.g. from the tree
+   * of the branch, which lets us skip fetching and parsing files we've seen before.
+   */
+  public Optional<BuildConfig> configFor(String path, GHRepository repository, GitInfo gitInfo, String blobSha) throws IOException {
+    Optional<BuildConfig> cached = buildConfigCache.getIfPresent(gitInfo, path, blobSha);
+    if (cached.isPresent()) {
+      return cached;
+    }
+
+    final GHContent content;
+    try {
+      content = repository.getFileContent(path, gitInfo.getBranch());
+    } catch (FileNotFoundException e) {
+      return Optional.absent();
+    }
+
+    // the branch may have moved since we got the sha, so cache the config under the sha of what we actually fetched
+    return Optional.of(buildConfigCache.put(gitInfo, path, content.getSha(), content.getContent()));
   }
 
   public Optional<BuildConfig> configFor(String path, GHRepository repository, GitInfo gitInfo) throws IOException {
@@ -131,6 +188,11 @@ public class GitHubHelper {
   }
 
   public Set<String> affectedPaths(CommitInfo commitInfo) {
+    if (commitInfo.getAffectedPaths().isPresent()) {
+      return commitInfo.getAffectedPaths().get();
+    }
+
+    // builds from before we kept the affected paths only have the files of their new commits
     Set<String> affectedPaths = new HashSet<>();
     for (Commit commit : commitInfo.getNewCommits()) {
       affectedPaths.addAll(commit.getAddedList());
@@ -141,6 +203,50 @@ public class GitHubHelper {
     return affectedPaths;
   }
 
+  /**
+   * All the paths that changed between the two ends of a compare. They normally come with the compare, only when
+   * GitHub cut its file list short we go through the files of every commit instead, adding them to the set as they
+   * arrive rather than building a {@link Commit} for each of them. Absent if we still can't tell all the paths.
+   */
+  private Optional<Set<String>> affectedPathsFor(GHRepository repository,
+                                                 String host,
+                                                 GHCompare compare,
+                                                 List<GHCompare.Commit> commits) throws IOException {
+    Set<String> affectedPaths = Sets.newConcurrentHashSet();
+    GHCommit.File[] files = compare.getFiles();
+    if (files.length < MAX_FILES_PER_RESPONSE) {
+      addPaths(Arrays.asList(files), affectedPaths);
+      return Optional.<Set<String>>of(ImmutableSortedSet.copyOf(affectedPaths));
+    }
+
+    if (compare.getTotalCommits() > commits.size()) {
+      LOG.info("Compare of {} lists {} of {} commits, can't tell the affected paths", repository.getFullName(), commits.size(), compare.getTotalCommits());
+      return Optional.absent();
+    }
+
+    List<Callable<Boolean>> fileRequests = new ArrayList<>(commits.size());
+    for (GHCompare.Commit commit : commits) {
+      fileRequests.add(() -> {
+        List<GHCommit.File> commitFiles = repository.getCommit(commit.getSHA1()).getFiles();
+        addPaths(commitFiles, affectedPaths);
+        return commitFiles.size() < MAX_FILES_PER_RESPONSE;
+      });
+    }
+
+    if (gitHubRequestExecutor.invokeAll(host, fileRequests).contains(false)) {
+      LOG.info("A commit in the compare of {} has too many files, can't tell the affected paths", repository.getFullName());
+      return Optional.absent();
+    }
+
+    return Optional.<Set<String>>of(ImmutableSortedSet.copyOf(affectedPaths));
+  }
+
+  private static void addPaths(List<GHCommit.File> files, Set<String> paths) {
+    for (GHCommit.File file : files) {
+      paths.add(file.getFileName());
+    }
+  }
+
   public Commit toCommit(GHCommit commit) throws IOException {
     Commit.Builder builder = Commit.newBuilder()
         .setId(commit.getSHA1())
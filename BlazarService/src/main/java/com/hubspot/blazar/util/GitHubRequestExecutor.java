@@ -0,0 +1,166 @@
+package com.hubspot.blazar.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.kohsuke.github.GHRateLimit;
+import org.kohsuke.github.GitHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.GitHubRequestConfiguration;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Sends requests to GitHub in parallel, so fetching many commits or files takes about as long as the slowest request
+ * instead of all of them together. Every host gets its own bounded pool, a busy host can't hold up requests to the
+ * others and never gets more than maxConcurrentRequestsPerHost requests from us at once.
+ *
+ * Requests are paced by the rate limit of their host: once fewer than rateLimitReserve requests are left, each request
+ * waits its share of the time until the limit resets, so we slow down rather than fail when the limit runs out.
+ */
+@Singleton
+public class GitHubRequestExecutor implements Managed {
+  private static final Logger LOG = LoggerFactory.getLogger(GitHubRequestExecutor.class);
+  private static final long MAX_THROTTLE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final Map<String, GitHub> gitHubByHost;
+  private final GitHubRequestConfiguration configuration;
+  private final ConcurrentMap<String, ListeningExecutorService> executorsByHost;
+  private final ConcurrentMap<String, RateLimit> rateLimitsByHost;
+  private final Meter throttledRequests;
+  private volatile boolean stopped;
+
+  @Inject
+  public GitHubRequestExecutor(Map<String, GitHub> gitHubByHost, BlazarConfiguration blazarConfiguration, MetricRegistry metricRegistry) {
+    this.gitHubByHost = gitHubByHost;
+    this.configuration = blazarConfiguration.getGitHubRequestConfiguration();
+    this.executorsByHost = new ConcurrentHashMap<>();
+    this.rateLimitsByHost = new ConcurrentHashMap<>();
+    this.throttledRequests = metricRegistry.meter(MetricRegistry.name(GitHubRequestExecutor.class, "throttledRequests"));
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    stopped = true;
+    for (ListeningExecutorService executorService : executorsByHost.values()) {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the requests in parallel and returns their results in the same order as the requests. If any request fails
+   * the others are cancelled and its exception is rethrown. The requests must not call this method themselves, they
+   * would wait for the pool they are running on.
+   */
+  public <T> List<T> invokeAll(String host, List<? extends Callable<T>> requests) throws IOException {
+    ListeningExecutorService executorService = executorFor(host);
+
+    List<ListenableFuture<T>> futures = new ArrayList<>(requests.size());
+    for (Callable<T> request : requests) {
+      futures.add(executorService.submit(() -> {
+        throttle(host);
+        return request.call();
+      }));
+    }
+
+    try {
+      return Futures.allAsList(futures).get();
+    } catch (InterruptedException e) {
+      cancel(futures);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for requests to " + host);
+    } catch (ExecutionException e) {
+      cancel(futures);
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private ListeningExecutorService executorFor(String host) {
+    Preconditions.checkState(!stopped, "Already stopped");
+    return executorsByHost.computeIfAbsent(host, ignored -> MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(
+        configuration.getMaxConcurrentRequestsPerHost(),
+        new ThreadFactoryBuilder().setNameFormat("GitHubRequests-" + host + "-%d").setDaemon(true).build())));
+  }
+
+  private void throttle(String host) throws InterruptedException {
+    GitHub gitHub = gitHubByHost.get(host);
+    if (gitHub == null) {
+      // not a host we know, the request will fail on its own
+      return;
+    }
+
+    long delayMillis = rateLimitsByHost.computeIfAbsent(host, ignored -> new RateLimit()).acquire(host, gitHub);
+    if (delayMillis > 0) {
+      throttledRequests.mark();
+      Thread.sleep(delayMillis);
+    }
+  }
+
+  private static void cancel(List<? extends ListenableFuture<?>> futures) {
+    for (ListenableFuture<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private class RateLimit {
+    private long checkedAtMillis;
+    private int remaining = Integer.MAX_VALUE;
+    private long resetAtMillis;
+
+    /**
+     * Counts a request against the rate limit and returns for how long it should wait before it's sent
+     */
+    private synchronized long acquire(String host, GitHub gitHub) {
+      long now = System.currentTimeMillis();
+      if (now - checkedAtMillis >= TimeUnit.SECONDS.toMillis(configuration.getRateLimitCheckIntervalSeconds())) {
+        try {
+          // asking for the rate limit doesn't count against it
+          GHRateLimit rateLimit = gitHub.getRateLimit();
+          remaining = rateLimit.remaining;
+          resetAtMillis = rateLimit.reset.getTime();
+        } catch (IOException e) {
+          LOG.warn("Could not get the rate limit for {}, keeping the last known one", host, e);
+        }
+        checkedAtMillis = now;
+      }
+
+      if (remaining > 0) {
+        remaining--;
+      }
+
+      if (remaining >= configuration.getRateLimitReserve() || now >= resetAtMillis) {
+        return 0;
+      }
+
+      return Math.min(MAX_THROTTLE_MILLIS, (resetAtMillis - now) / Math.max(remaining, 1));
+    }
+  }
+}
@@ -1,9 +1,11 @@
 package com.hubspot.blazar.visitor;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.transaction.Transactional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,9 +13,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Optional;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.inject.name.Named;
 import com.hubspot.blazar.base.InterProjectBuild;
 import com.hubspot.blazar.base.ModuleBuild;
 import com.hubspot.blazar.base.RepositoryBuild;
+import com.hubspot.blazar.base.notifications.RepositoryBuildNotification;
 import com.hubspot.blazar.base.visitor.InterProjectBuildVisitor;
 import com.hubspot.blazar.base.visitor.ModuleBuildVisitor;
 import com.hubspot.blazar.base.visitor.RepositoryBuildVisitor;
@@ -32,6 +36,8 @@ public class BuildEventDispatcher {
   private final InterProjectBuildService interProjectBuildService;
   private final Set<InterProjectBuildVisitor> interProjectBuildVisitors;
   private final Set<ModuleBuildVisitor> moduleVisitors;
+  private final Map<String, RepositoryBuildVisitor> notifiers;
+  private final EventBus eventBus;
 
   @Inject
   public BuildEventDispatcher(RepositoryBuildService repositoryBuildService,
@@ -40,6 +46,7 @@ public class BuildEventDispatcher {
                               Set<RepositoryBuildVisitor> repositoryVisitors,
                               Set<InterProjectBuildVisitor> interProjectBuildVisitors,
                               Set<ModuleBuildVisitor> moduleVisitors,
+                              @Named("notifiers") Map<String, RepositoryBuildVisitor> notifiers,
                               EventBus eventBus) {
     this.repositoryBuildService = repositoryBuildService;
     this.moduleBuildService = moduleBuildService;
@@ -47,6 +54,8 @@ public class BuildEventDispatcher {
     this.repositoryVisitors = repositoryVisitors;
     this.interProjectBuildVisitors = interProjectBuildVisitors;
     this.moduleVisitors = moduleVisitors;
+    this.notifiers = notifiers;
+    this.eventBus = eventBus;
 
     eventBus.register(this);
   }
@@ -68,6 +77,8 @@ public class BuildEventDispatcher {
       for (RepositoryBuildVisitor visitor : repositoryVisitors) {
         visitor.visit(build);
       }
+
+      postNotifications(build);
     } catch (NonRetryableBuildException e) {
       if (build.getState().isComplete()) {
         LOG.error("Caught error while processing completed build {} will not fail the build because it is already complete.", build, e);
@@ -78,6 +89,43 @@ public class BuildEventDispatcher {
     }
   }
 
+  /**
+   * Queues a notification per notifier once the visitors went through. They are inserted in one transaction, so if
+   * one of them fails none is queued and the retry of the event doesn't notify anyone twice.
+   */
+  @Transactional
+  protected void postNotifications(RepositoryBuild build) {
+    for (String notifier : notifiers.keySet()) {
+      eventBus.post(new RepositoryBuildNotification(notifier, build));
+    }
+  }
+
+  /**
+   * Notifiers talk to Slack and GitHub, which can be slow or down, so they run off the queued notifications instead
+   * of holding up the build events. A failed notification is retried by the queue on its own. Notifications of a
+   * state the build already moved past are dropped, only the latest state of a build is worth reporting.
+   */
+  @Subscribe
+  public void dispatch(RepositoryBuildNotification notification) throws Exception {
+    RepositoryBuildVisitor notifier = notifiers.get(notification.getNotifier());
+    if (notifier == null) {
+      LOG.warn("No notifier {}, ignoring notification for repository build {}", notification.getNotifier(), notification.getRepositoryBuildId());
+      return;
+    }
+
+    Optional<RepositoryBuild> build = repositoryBuildService.get(notification.getRepositoryBuildId());
+    if (!build.isPresent()) {
+      LOG.warn("No repository build {}, ignoring notification", notification.getRepositoryBuildId());
+      return;
+    } else if (build.get().getState() != notification.getState()) {
+      LOG.debug("Ignoring {} notification with state {} for repository build {}, current state is {}", notification.getNotifier(),
+          notification.getState(), notification.getRepositoryBuildId(), build.get().getState());
+      return;
+    }
+
+    notifier.visit(build.get());
+  }
+
   @Subscribe
   public void dispatch(ModuleBuild build) throws Exception {
     ModuleBuild current = moduleBuildService.get(build.getId().get()).get();
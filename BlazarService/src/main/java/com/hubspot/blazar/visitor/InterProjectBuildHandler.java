@@ -23,7 +23,7 @@ import com.hubspot.blazar.base.InterProjectBuildMapping;
 import com.hubspot.blazar.base.Module;
 import com.hubspot.blazar.base.RepositoryBuild;
 import com.hubspot.blazar.base.visitor.AbstractInterProjectBuildVisitor;
-import com.hubspot.blazar.data.service.BranchService;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.service.DependenciesService;
 import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
 import com.hubspot.blazar.data.service.InterProjectBuildService;
@@ -37,7 +37,7 @@ public class InterProjectBuildHandler extends AbstractInterProjectBuildVisitor {
   private DependenciesService dependenciesService;
   private ModuleService moduleService;
   private ModuleBuildService moduleBuildService;
-  private BranchService branchService;
+  private final ModuleBranchCache moduleBranchCache;
   private RepositoryBuildService repositoryBuildService;
   private GitHubHelper gitHubHelper;
   private InterProjectBuildMappingService interProjectBuildMappingService;
@@ -47,7 +47,7 @@ public class InterProjectBuildHandler extends AbstractInterProjectBuildVisitor {
   public InterProjectBuildHandler(DependenciesService dependenciesService,
                                   ModuleService moduleService,
                                   ModuleBuildService moduleBuildService,
-                                  BranchService branchService,
+                                  ModuleBranchCache moduleBranchCache,
                                   RepositoryBuildService repositoryBuildService,
                                   GitHubHelper gitHubHelper,
                                   InterProjectBuildMappingService interProjectBuildMappingService,
@@ -55,7 +55,7 @@ public class InterProjectBuildHandler extends AbstractInterProjectBuildVisitor {
     this.dependenciesService = dependenciesService;
     this.moduleService = moduleService;
     this.moduleBuildService = moduleBuildService;
-    this.branchService = branchService;
+    this.moduleBranchCache = moduleBranchCache;
     this.repositoryBuildService = repositoryBuildService;
     this.gitHubHelper = gitHubHelper;
     this.interProjectBuildMappingService = interProjectBuildMappingService;
@@ -100,7 +100,7 @@ public class InterProjectBuildHandler extends AbstractInterProjectBuildVisitor {
       Set<Integer> moduleIds = ImmutableSet.copyOf(entry.getValue());
       BuildTrigger buildTrigger = BuildTrigger.forInterProjectBuild(build.getId().get());
       BuildOptions buildOptions = new BuildOptions(moduleIds, BuildOptions.BuildDownstreams.NONE, false);
-      GitInfo gitInfo = branchService.get(entry.getKey()).get();
+      GitInfo gitInfo = moduleBranchCache.getBranch(entry.getKey()).get();
       long buildId = repositoryBuildService.enqueue(gitInfo, buildTrigger, buildOptions);
       for (int moduleId : moduleIds) {
         interProjectBuildMappingService.insert(InterProjectBuildMapping.makeNewMapping(build.getId().get(), gitInfo.getId().get(), Optional.of(buildId), moduleId));
@@ -140,9 +140,10 @@ public class InterProjectBuildHandler extends AbstractInterProjectBuildVisitor {
     SetMultimap<Integer, Integer> branchIdToLaunchableModules = HashMultimap.create();
     // Modules with no upstreams in our graph become the 'root' nodes from which the InterProject build will spread
     Set<Integer> rootModules = originallyTriggeredModuleIds.stream().filter(moduleId -> graph.incomingVertices(moduleId).isEmpty()).collect(Collectors.toSet());
+    Map<Integer, Integer> rootModuleBranchIds = moduleBranchCache.getBranchIds(rootModules);
 
     for (int rootModule : rootModules) {
-      int branchId = moduleService.getBranchIdFromModuleId(rootModule);
+      int branchId = rootModuleBranchIds.get(rootModule);
       // add this to the map because we want to build it
       branchIdToLaunchableModules.put(branchId, rootModule);
 
@@ -0,0 +1,210 @@
+package com.hubspot.blazar.visitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.hubspot.blazar.base.DependencyGraph;
+import com.hubspot.blazar.base.InterProjectBuild;
+import com.hubspot.blazar.base.InterProjectBuildMapping;
+
+/**
+ * What scheduling an inter-project build needs to know about it: its graph, the branch of every module in the graph
+ * and the mapping of every module that was started or cancelled. For every module we also keep the number of its
+ * direct upstreams that haven't succeeded yet, so when a module finishes we only look at the modules downstream of it
+ * instead of reloading the build and walking all the upstreams of every module reachable from it.
+ *
+ * A module whose direct upstreams succeeded can rely on their own upstreams having succeeded, because we never start
+ * a module before its upstreams are built.
+ *
+ * Not thread safe, see {@link InterProjectBuildSchedulerStateCache#getLock(long)}.
+ */
+public class InterProjectBuildSchedulerState {
+  private final long interProjectBuildId;
+  private final DependencyGraph graph;
+  private final Map<Integer, Integer> topologicalPositions;
+  private final Map<Integer, Integer> branchIds;
+  private final Map<Integer, InterProjectBuildMapping> mappings;
+  private final Map<Integer, Integer> unsucceededUpstreams;
+  private int finishedModules;
+
+  public InterProjectBuildSchedulerState(long interProjectBuildId,
+                                         DependencyGraph graph,
+                                         Map<Integer, Integer> branchIds,
+                                         Collection<InterProjectBuildMapping> mappings) {
+    this.interProjectBuildId = interProjectBuildId;
+    this.graph = graph;
+    this.branchIds = new HashMap<>(branchIds);
+    this.topologicalPositions = new HashMap<>();
+    for (int moduleId : graph.getTopologicalSort()) {
+      topologicalPositions.putIfAbsent(moduleId, topologicalPositions.size());
+    }
+
+    this.mappings = new HashMap<>();
+    for (InterProjectBuildMapping mapping : mappings) {
+      this.mappings.put(mapping.getModuleId(), mapping);
+    }
+
+    this.unsucceededUpstreams = new HashMap<>();
+    for (int moduleId : topologicalPositions.keySet()) {
+      int unsucceeded = 0;
+      for (int upstream : graph.incomingVertices(moduleId)) {
+        if (!isSucceeded(this.mappings.get(upstream))) {
+          unsucceeded++;
+        }
+      }
+      unsucceededUpstreams.put(moduleId, unsucceeded);
+
+      if (isFinished(this.mappings.get(moduleId))) {
+        finishedModules++;
+      }
+    }
+  }
+
+  public long getInterProjectBuildId() {
+    return interProjectBuildId;
+  }
+
+  public int getBranchId(int moduleId) {
+    Integer branchId = branchIds.get(moduleId);
+    if (branchId == null) {
+      throw new IllegalStateException(String.format("Module %d is not part of inter-project build %d", moduleId, interProjectBuildId));
+    }
+    return branchId;
+  }
+
+  /**
+   * @return true if we know the mapping as it is, i.e. nothing changed it behind our back
+   */
+  public boolean isCurrent(InterProjectBuildMapping mapping) {
+    InterProjectBuildMapping known = mappings.get(mapping.getModuleId());
+    return known != null && known.getId().equals(mapping.getId()) && known.getState() == mapping.getState();
+  }
+
+  /**
+   * Has to be called for every mapping that is inserted or whose state is updated.
+   */
+  public void mappingChanged(InterProjectBuildMapping mapping) {
+    InterProjectBuildMapping previous = mappings.put(mapping.getModuleId(), mapping);
+    if (!topologicalPositions.containsKey(mapping.getModuleId())) {
+      return;
+    }
+
+    if (isFinished(mapping) != isFinished(previous)) {
+      finishedModules += isFinished(mapping) ? 1 : -1;
+    }
+
+    if (isSucceeded(mapping) != isSucceeded(previous)) {
+      int change = isSucceeded(mapping) ? -1 : 1;
+      for (int downstream : graph.outgoingVertices(mapping.getModuleId())) {
+        unsucceededUpstreams.merge(downstream, change, Integer::sum);
+      }
+    }
+  }
+
+  /**
+   * Finds the modules downstream of a module that succeeded which can be started now. A module can be started if all
+   * of its upstreams succeeded, or if the ones that didn't are in the same branch and can be started with it as part
+   * of the same repository build.
+   *
+   * @return the modules that can be started, by branch
+   */
+  public SetMultimap<Integer, Integer> getLaunchableModulesByBranch(int succeededModuleId) {
+    SetMultimap<Integer, Integer> launchable = HashMultimap.create();
+    Set<Integer> launched = new HashSet<>();
+
+    // visiting the candidates in topological order means all of their upstreams have been decided on before them
+    PriorityQueue<Integer> candidates = new PriorityQueue<>(Comparator.comparingInt(moduleId -> topologicalPositions.getOrDefault(moduleId, -1)));
+    Set<Integer> seen = new HashSet<>(graph.outgoingVertices(succeededModuleId));
+    candidates.addAll(seen);
+    while (!candidates.isEmpty()) {
+      int moduleId = candidates.poll();
+      if (!canLaunch(moduleId, launched)) {
+        continue;
+      }
+
+      launched.add(moduleId);
+      launchable.put(getBranchId(moduleId), moduleId);
+      for (int downstream : graph.outgoingVertices(moduleId)) {
+        if (seen.add(downstream)) {
+          candidates.add(downstream);
+        }
+      }
+    }
+
+    return launchable;
+  }
+
+  /**
+   * @return the modules downstream of the given one that have no mapping, i.e. the ones that won't be built anymore
+   */
+  public List<Integer> getUnmappedDownstreamModules(int moduleId) {
+    List<Integer> unmapped = new ArrayList<>();
+    Deque<Integer> deque = new ArrayDeque<>(graph.outgoingVertices(moduleId));
+    Set<Integer> visited = new HashSet<>();
+    while (!deque.isEmpty()) {
+      int downstream = deque.pop();
+      if (visited.add(downstream) && !mappings.containsKey(downstream)) {
+        unmapped.add(downstream);
+        deque.addAll(graph.outgoingVertices(downstream));
+      }
+    }
+
+    return unmapped;
+  }
+
+  /**
+   * @return true once every module in the graph has a mapping in a finished state
+   */
+  public boolean isFinished() {
+    return finishedModules == topologicalPositions.size();
+  }
+
+  public Set<InterProjectBuild.State> getMappingStates() {
+    Set<InterProjectBuild.State> states = new HashSet<>();
+    for (InterProjectBuildMapping mapping : mappings.values()) {
+      states.add(mapping.getState());
+    }
+
+    return states;
+  }
+
+  private boolean canLaunch(int moduleId, Set<Integer> launched) {
+    // don't start builds of modules that have mappings
+    if (mappings.containsKey(moduleId)) {
+      return false;
+    }
+
+    int unsucceeded = unsucceededUpstreams.getOrDefault(moduleId, 0);
+    if (unsucceeded == 0) {
+      return true;
+    }
+
+    int branchId = getBranchId(moduleId);
+    for (int upstream : graph.incomingVertices(moduleId)) {
+      if (launched.contains(upstream) && getBranchId(upstream) == branchId) {
+        unsucceeded--;
+      }
+    }
+
+    return unsucceeded == 0;
+  }
+
+  private static boolean isSucceeded(InterProjectBuildMapping mapping) {
+    return mapping != null && mapping.getState() == InterProjectBuild.State.SUCCEEDED;
+  }
+
+  private static boolean isFinished(InterProjectBuildMapping mapping) {
+    return mapping != null && mapping.getState().isFinished();
+  }
+}
@@ -0,0 +1,103 @@
+package com.hubspot.blazar.visitor;
+
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hubspot.blazar.base.DependencyGraph;
+import com.hubspot.blazar.base.InterProjectBuild;
+import com.hubspot.blazar.base.InterProjectBuildMapping;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
+import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
+import com.hubspot.blazar.data.service.InterProjectBuildService;
+
+/**
+ * Keeps the scheduler state of the running inter-project builds. A state is loaded from the db the first time one of
+ * the module builds of an inter-project build finishes, and kept up to date by the module build visitor afterwards.
+ *
+ * Another instance may change the mappings of a build when events are processed on all instances, so in that case
+ * nothing is cached and the state is loaded every time. States are also dropped when leadership changes, and reloaded
+ * whenever the mapping of a finished module build doesn't match the one we know.
+ */
+@Singleton
+public class InterProjectBuildSchedulerStateCache implements LeaderLatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(InterProjectBuildSchedulerStateCache.class);
+  private static final int LOCK_STRIPES = 64;
+
+  private final InterProjectBuildService interProjectBuildService;
+  private final InterProjectBuildMappingService interProjectBuildMappingService;
+  private final ModuleBranchCache moduleBranchCache;
+  private final boolean cachingEnabled;
+  private final ConcurrentMap<Long, InterProjectBuildSchedulerState> states;
+  private final Striped<Lock> locks;
+
+  @Inject
+  public InterProjectBuildSchedulerStateCache(InterProjectBuildService interProjectBuildService,
+                                              InterProjectBuildMappingService interProjectBuildMappingService,
+                                              ModuleBranchCache moduleBranchCache,
+                                              BlazarConfiguration blazarConfiguration) {
+    this.interProjectBuildService = interProjectBuildService;
+    this.interProjectBuildMappingService = interProjectBuildMappingService;
+    this.moduleBranchCache = moduleBranchCache;
+    this.cachingEnabled = !blazarConfiguration.getQueueConfiguration().isProcessOnAllInstances();
+    this.states = new ConcurrentHashMap<>();
+    this.locks = Striped.lock(LOCK_STRIPES);
+  }
+
+  /**
+   * Events of different repository builds can be processed concurrently, the state of an inter-project build must
+   * only be read and changed while holding its lock.
+   */
+  public Lock getLock(long interProjectBuildId) {
+    return locks.get(interProjectBuildId);
+  }
+
+  /**
+   * @param mapping the mapping of a module build of the inter-project build, as it is in the db
+   */
+  public InterProjectBuildSchedulerState get(InterProjectBuildMapping mapping) {
+    long interProjectBuildId = mapping.getInterProjectBuildId();
+    InterProjectBuildSchedulerState state = states.get(interProjectBuildId);
+    if (state != null && state.isCurrent(mapping)) {
+      return state;
+    }
+
+    state = load(interProjectBuildId);
+    if (cachingEnabled) {
+      states.put(interProjectBuildId, state);
+    }
+    return state;
+  }
+
+  public void invalidate(long interProjectBuildId) {
+    states.remove(interProjectBuildId);
+  }
+
+  @Override
+  public void isLeader() {
+    LOG.info("Now the leader, dropping {} cached inter-project build states", states.size());
+    states.clear();
+  }
+
+  @Override
+  public void notLeader() {
+    LOG.info("Not the leader, dropping {} cached inter-project build states", states.size());
+    states.clear();
+  }
+
+  private InterProjectBuildSchedulerState load(long interProjectBuildId) {
+    InterProjectBuild interProjectBuild = interProjectBuildService.getWithId(interProjectBuildId).get();
+    DependencyGraph graph = interProjectBuild.getDependencyGraph().get();
+    return new InterProjectBuildSchedulerState(interProjectBuildId, graph, moduleBranchCache.getBranchIds(new HashSet<>(graph.getTopologicalSort())),
+        interProjectBuildMappingService.getMappingsForInterProjectBuild(interProjectBuildId));
+  }
+}
@@ -85,7 +85,9 @@ public class GitHubStatusVisitor implements RepositoryBuildVisitor {
           return;
         }
       }
-      LOG.error("Error setting status of commit {} to {} for build {}", sha, state, build.getId().get(), e);
+      // the notification is retried by the queue
+      LOG.warn("Error setting status of commit {} to {} for build {}", sha, state, build.getId().get(), e);
+      throw e;
     }
   }
 
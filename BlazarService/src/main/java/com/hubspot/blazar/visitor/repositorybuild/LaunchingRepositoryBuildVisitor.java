@@ -1,7 +1,6 @@
 package com.hubspot.blazar.visitor.repositorybuild;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -27,6 +26,7 @@ import com.hubspot.blazar.base.ModuleBuild;
 import com.hubspot.blazar.base.RepositoryBuild;
 import com.hubspot.blazar.base.RepositoryBuild.State;
 import com.hubspot.blazar.base.visitor.AbstractRepositoryBuildVisitor;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.service.DependenciesService;
 import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
 import com.hubspot.blazar.data.service.InterProjectBuildService;
@@ -34,6 +34,7 @@ import com.hubspot.blazar.data.service.MalformedFileService;
 import com.hubspot.blazar.data.service.ModuleBuildService;
 import com.hubspot.blazar.data.service.ModuleService;
 import com.hubspot.blazar.data.service.RepositoryBuildService;
+import com.hubspot.blazar.data.util.ModulePathMatcher;
 import com.hubspot.blazar.exception.NonRetryableBuildException;
 import com.hubspot.blazar.util.GitHubHelper;
 
@@ -47,6 +48,7 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
   private InterProjectBuildService interProjectBuildService;
   private InterProjectBuildMappingService interProjectBuildMappingService;
   private final ModuleService moduleService;
+  private final ModuleBranchCache moduleBranchCache;
   private final DependenciesService dependenciesService;
   private final GitHubHelper gitHubHelper;
 
@@ -57,6 +59,7 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
                                          InterProjectBuildService interProjectBuildService,
                                          InterProjectBuildMappingService interProjectBuildMappingService,
                                          ModuleService moduleService,
+                                         ModuleBranchCache moduleBranchCache,
                                          DependenciesService dependenciesService,
                                          GitHubHelper gitHubHelper) {
     this.repositoryBuildService = repositoryBuildService;
@@ -65,6 +68,7 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
     this.interProjectBuildService = interProjectBuildService;
     this.interProjectBuildMappingService = interProjectBuildMappingService;
     this.moduleService = moduleService;
+    this.moduleBranchCache = moduleBranchCache;
     this.dependenciesService = dependenciesService;
     this.gitHubHelper = gitHubHelper;
   }
@@ -158,7 +162,7 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
       // find all downstream this root module would trigger
       // if they (and their upstreams) are in this repo we can also build them now
       for (int downstream : interProjectGraph.reachableVertices(rootModule.getId().get())) {
-        boolean sameBranch = moduleService.getBranchIdFromModuleId(downstream) == build.getBranchId();
+        boolean sameBranch = moduleBranchCache.getBranchId(downstream) == build.getBranchId();
         boolean noExternalUpstreams = allModuleIds.containsAll(interProjectGraph.getAllUpstreamNodes(downstream));
         if (sameBranch && noExternalUpstreams) {
           interProjectModulesToBuild.add(moduleService.get(downstream).get());
@@ -176,11 +180,13 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
       if (commitInfo.isTruncated()) {
         toBuild.addAll(buildableModules);
       } else {
-        for (String path : gitHubHelper.affectedPaths(commitInfo)) {
-          for (Module module : buildableModules) {
-            if (module.contains(FileSystems.getDefault().getPath(path))) {
-              toBuild.add(module);
-            } else if (!lastBuildSucceeded(module)) {
+        Set<String> affectedPaths = gitHubHelper.affectedPaths(commitInfo);
+        if (!affectedPaths.isEmpty()) {
+          toBuild.addAll(new ModulePathMatcher(buildableModules).getModulesContainingAny(affectedPaths));
+          // modules whose last build didn't succeed are rebuilt on any change
+          Map<Integer, ModuleBuild> previousBuilds = moduleBuildService.getPreviousBuildsOfBranch(build.getBranchId());
+          for (Module module : Sets.difference(buildableModules, toBuild).immutableCopy()) {
+            if (!succeeded(previousBuilds.get(module.getId().get()))) {
               toBuild.add(module);
             }
           }
@@ -218,9 +224,8 @@ public class LaunchingRepositoryBuildVisitor extends AbstractRepositoryBuildVisi
     LOG.info("All modules to build (including downstream dependencies): {}", mapByModuleId(toBuild).keySet());
   }
 
-  private boolean lastBuildSucceeded(Module module) {
-    Optional<ModuleBuild> previous = moduleBuildService.getPreviousBuild(module);
-    return previous.isPresent() && previous.get().getState() == ModuleBuild.State.SUCCEEDED;
+  private static boolean succeeded(ModuleBuild previous) {
+    return previous != null && previous.getState() == ModuleBuild.State.SUCCEEDED;
   }
 
   private static Set<Integer> getIds(Set<Module> modules) {
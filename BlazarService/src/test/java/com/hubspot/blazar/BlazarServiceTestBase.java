@@ -8,6 +8,7 @@ import org.junit.After;
 import org.junit.Before;
 
 import com.google.inject.Inject;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.externalservice.BuildClusterHealthChecker;
 import com.hubspot.blazar.visitor.BuildEventDispatcher;
 import com.hubspot.blazar.queue.QueueProcessor;
@@ -21,6 +22,8 @@ public class BlazarServiceTestBase extends DatabaseBackedTest {
   BuildClusterHealthChecker buildClusterHealthChecker;
   @Inject
   BuildEventDispatcher buildEventDispatcher;
+  @Inject
+  ModuleBranchCache moduleBranchCache;
 
   @Before
   public void startEventBus() throws Exception {
@@ -38,6 +41,12 @@ public class BlazarServiceTestBase extends DatabaseBackedTest {
     queueProcessor.stop();
   }
 
+  @After
+  public void clearModuleBranchCache() {
+    // the module ids are reused once the tables are truncated
+    moduleBranchCache.invalidateAll();
+  }
+
   @After
   public void checkEventBusExceptions() throws Exception {
     if (BlazarServiceTestModule.EVENT_BUS_EXCEPTION_COUNT.size() > 0) {
@@ -0,0 +1,53 @@
+package com.hubspot.blazar.discovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.blazar.base.CommitInfo;
+import com.hubspot.blazar.base.DiscoveryResult;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.github.GitHubProtos.Commit;
+
+public class ModuleDiscoveryTest {
+  private static final GitInfo BRANCH = GitInfo.fromString("git.example.com/TestOrg/repo.git#master");
+  // a plugin that only knows about the new commits and never finds anything in them
+  private static final ModuleDiscovery PLUGIN = new ModuleDiscovery() {
+    @Override
+    public boolean shouldRediscover(GitInfo gitInfo, CommitInfo commitInfo) {
+      return false;
+    }
+
+    @Override
+    public DiscoveryResult discover(GitInfo gitInfo) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isEnabled(GitInfo gitInfo) {
+      return true;
+    }
+  };
+
+  @Test
+  public void itAsksThePluginIfTheNewCommitsCoverAllAffectedPaths() throws Exception {
+    CommitInfo commitInfo = commitInfo(Commit.newBuilder().setId("new").addModified("module/pom.xml").build());
+
+    assertThat(PLUGIN.shouldRediscover(BRANCH, commitInfo, ImmutableSet.of("module/pom.xml"))).isFalse();
+  }
+
+  @Test
+  public void itRediscoversIfOlderCommitsChangedOtherPaths() throws Exception {
+    CommitInfo commitInfo = commitInfo(Commit.newBuilder().setId("new").addModified("module/pom.xml").build());
+
+    assertThat(PLUGIN.shouldRediscover(BRANCH, commitInfo, ImmutableSet.of("module/pom.xml", "other/pom.xml"))).isTrue();
+  }
+
+  private static CommitInfo commitInfo(Commit newCommit) {
+    return new CommitInfo(newCommit, Optional.of(Commit.newBuilder().setId("old").build()), Collections.singletonList(newCommit), false);
+  }
+}
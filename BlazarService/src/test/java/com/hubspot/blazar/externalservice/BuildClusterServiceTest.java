@@ -0,0 +1,160 @@
+package com.hubspot.blazar.externalservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.SingularityClusterConfiguration;
+import com.hubspot.blazar.config.SingularityClusterConfiguration.BuildStrategy;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
+import com.hubspot.blazar.data.service.ModuleBuildService;
+import com.hubspot.blazar.exception.BuildClusterException;
+import com.hubspot.blazar.externalservice.BuildClusterHealthChecker.ClusterLoad;
+import com.hubspot.blazar.externalservice.BuildClusterService.BuildContainerInfo;
+import com.hubspot.blazar.externalservice.BuildClusterService.BuildContainerInfo.BuildContainerState;
+import com.hubspot.horizon.AsyncHttpClient;
+import com.hubspot.singularity.ExtendedTaskState;
+import com.hubspot.singularity.SingularityTaskId;
+import com.hubspot.singularity.SingularityTaskIdHistory;
+import com.hubspot.singularity.client.SingularityClient;
+
+public class BuildClusterServiceTest {
+  private static final int MODULE_ID = 1;
+  private static final int BRANCH_ID = 2;
+  private static final String REPOSITORY = "git.example.com-TestOrg-repo.git";
+
+  private final ModuleBranchCache moduleBranchCache = mock(ModuleBranchCache.class);
+  private final BuildClusterHealthChecker buildClusterHealthChecker = mock(BuildClusterHealthChecker.class);
+  private final Map<String, SingularityClusterConfiguration> clusterConfigurations = new HashMap<>();
+  private final Map<String, SingularityClient> clusterClients = new HashMap<>();
+
+  @Before
+  public void before() {
+    when(moduleBranchCache.getBranchId(MODULE_ID)).thenReturn(BRANCH_ID);
+    when(moduleBranchCache.getBranch(BRANCH_ID)).thenReturn(Optional.of(GitInfo.fromString("git.example.com/TestOrg/repo.git#master")));
+  }
+
+  @Test
+  public void itPicksTheLeastLoadedCluster() throws Exception {
+    addCluster("busy", BuildStrategy.ALWAYS, Collections.emptySet(), true, 100, 0, 0);
+    addCluster("late", BuildStrategy.ALWAYS, Collections.emptySet(), true, 20, 10, 0);
+    addCluster("idle", BuildStrategy.ALWAYS, Collections.emptySet(), true, 50, 0, 5);
+
+    assertThat(buildClusterService().launchBuildContainer(moduleBuild())).isEqualTo("idle");
+  }
+
+  @Test
+  public void itCountsItsOwnLaunchesUntilTheClusterReportsThem() throws Exception {
+    addCluster("cluster1", BuildStrategy.ALWAYS, Collections.emptySet(), true, 10, 0, 0);
+    addCluster("cluster2", BuildStrategy.ALWAYS, Collections.emptySet(), true, 11, 0, 0);
+    BuildClusterService buildClusterService = buildClusterService();
+
+    assertThat(buildClusterService.launchBuildContainer(moduleBuild())).isEqualTo("cluster1");
+    assertThat(buildClusterService.launchBuildContainer(moduleBuild())).isEqualTo("cluster2");
+  }
+
+  @Test
+  public void itOnlyBuildsExclusivelyWhitelistedRepositoriesInTheirClusters() throws Exception {
+    addCluster("shared", BuildStrategy.ALWAYS, Collections.emptySet(), true, 0, 0, 0);
+    addCluster("exclusive", BuildStrategy.EXCLUSIVE_WHITELIST, ImmutableSet.of(REPOSITORY.toUpperCase()), true, 100, 0, 0);
+    assertThat(buildClusterService().launchBuildContainer(moduleBuild())).isEqualTo("exclusive");
+
+    clusterConfigurations.put("exclusive", configuration(BuildStrategy.EXCLUSIVE_WHITELIST, ImmutableSet.of("git.example.com-TestOrg-other-repo.git")));
+    assertThat(buildClusterService().launchBuildContainer(moduleBuild())).isEqualTo("shared");
+  }
+
+  @Test
+  public void itUsesEmergencyClustersOnlyIfNoOtherClusterIsHealthy() throws Exception {
+    addCluster("regular", BuildStrategy.ALWAYS, Collections.emptySet(), true, 100, 0, 0);
+    addCluster("emergency", BuildStrategy.EMERGENCY, Collections.emptySet(), true, 0, 0, 0);
+    assertThat(buildClusterService().launchBuildContainer(moduleBuild())).isEqualTo("regular");
+
+    when(buildClusterHealthChecker.isClusterAvailable("regular")).thenReturn(false);
+    assertThat(buildClusterService().launchBuildContainer(moduleBuild())).isEqualTo("emergency");
+  }
+
+  @Test(expected = BuildClusterException.class)
+  public void itFailsIfNoClusterMayBuildTheRepository() throws Exception {
+    addCluster("blacklisting", BuildStrategy.BLACKLIST, ImmutableSet.of(REPOSITORY), true, 0, 0, 0);
+    addCluster("unhealthy", BuildStrategy.ALWAYS, Collections.emptySet(), false, 0, 0, 0);
+
+    buildClusterService().launchBuildContainer(moduleBuild());
+  }
+
+  @Test
+  public void itLooksUpTheContainersOfAllBuildsOfAClusterAtOnce() {
+    addCluster("cluster", BuildStrategy.ALWAYS, Collections.emptySet(), true, 0, 0, 0);
+    SingularityClient singularityClient = clusterClients.get("cluster");
+    when(singularityClient.getActiveTaskHistoryForRequest("request")).thenReturn(ImmutableList.of(task("3", "task-3", Optional.of(ExtendedTaskState.TASK_RUNNING))));
+    when(singularityClient.getInactiveTaskHistoryForRequest("request")).thenReturn(ImmutableList.of(task("4", "task-4", Optional.of(ExtendedTaskState.TASK_LOST))));
+
+    Map<Long, BuildContainerInfo> buildContainerInfos = buildClusterService().getBuildContainerInfos(ImmutableList.of(
+        moduleBuild(3, Optional.of("cluster")), moduleBuild(4, Optional.of("cluster")),
+        moduleBuild(5, Optional.of("cluster")), moduleBuild(6, Optional.absent())));
+
+    assertThat(buildContainerInfos.keySet()).containsOnly(3L, 4L, 5L);
+    assertThat(buildContainerInfos.get(3L).getState()).isEqualTo(BuildContainerState.RUNNING);
+    assertThat(buildContainerInfos.get(3L).getContainerId()).isEqualTo(Optional.of("task-3"));
+    assertThat(buildContainerInfos.get(4L).getState()).isEqualTo(BuildContainerState.FINISHED);
+    assertThat(buildContainerInfos.get(5L).getState()).isEqualTo(BuildContainerState.NOT_STARTED);
+    verify(singularityClient, never()).getHistoryForTask(anyString(), anyString());
+  }
+
+  private static SingularityTaskIdHistory task(String runId, String taskId, Optional<ExtendedTaskState> lastTaskState) {
+    SingularityTaskId singularityTaskId = mock(SingularityTaskId.class);
+    when(singularityTaskId.getId()).thenReturn(taskId);
+    SingularityTaskIdHistory task = mock(SingularityTaskIdHistory.class);
+    when(task.getRunId()).thenReturn(Optional.of(runId));
+    when(task.getTaskId()).thenReturn(singularityTaskId);
+    when(task.getLastTaskState()).thenReturn(lastTaskState);
+    when(task.getUpdatedAt()).thenReturn(System.currentTimeMillis());
+    return task;
+  }
+
+  private void addCluster(String name, BuildStrategy buildStrategy, Set<String> repositories, boolean healthy,
+                          int activeTasks, int lateTasks, int pendingTasks) {
+    clusterConfigurations.put(name, configuration(buildStrategy, repositories));
+    clusterClients.put(name, mock(SingularityClient.class));
+    when(buildClusterHealthChecker.isClusterAvailable(name)).thenReturn(healthy);
+    when(buildClusterHealthChecker.getClusterLoad(name))
+        .thenReturn(Optional.of(new ClusterLoad(activeTasks, lateTasks, pendingTasks, System.currentTimeMillis())));
+  }
+
+  private static SingularityClusterConfiguration configuration(BuildStrategy buildStrategy, Set<String> repositories) {
+    return new SingularityClusterConfiguration("host", "request", Optional.absent(), Optional.absent(), 5000, buildStrategy, repositories);
+  }
+
+  private BuildClusterService buildClusterService() {
+    BlazarConfiguration blazarConfiguration = new BlazarConfiguration().setSingularityClusterConfigurations(clusterConfigurations);
+    return new BuildClusterService(clusterClients, blazarConfiguration, moduleBranchCache, mock(ModuleBuildService.class),
+        buildClusterHealthChecker, mock(AsyncHttpClient.class));
+  }
+
+  private static ModuleBuild moduleBuild() {
+    return moduleBuild(3, Optional.absent());
+  }
+
+  private static ModuleBuild moduleBuild(long id, Optional<String> buildClusterName) {
+    return ModuleBuild.newBuilder(1, MODULE_ID, 1, ModuleBuild.State.QUEUED)
+        .setId(Optional.of(id))
+        .setBuildClusterName(buildClusterName)
+        .build();
+  }
+}
@@ -0,0 +1,133 @@
+package com.hubspot.blazar.externalservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.LogChunk;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.BuildLogCacheConfiguration;
+
+public class BuildLogCacheTest {
+  private static final String LOG = "0123456789";
+  private static final int BLOCK_SIZE = 4;
+  // blocks are fetched with the bytes of a whole character more, in case one starts at their end
+  private static final int BLOCK_FETCH_SIZE = BLOCK_SIZE + 4;
+
+  private final BuildClusterService buildClusterService = mock(BuildClusterService.class);
+  private final MetricRegistry metricRegistry = new MetricRegistry();
+  private final BuildLogCache buildLogCache = new BuildLogCache(buildClusterService,
+      new BlazarConfiguration().setBuildLogCacheConfiguration(new BuildLogCacheConfiguration(Optional.absent(), Optional.of(BLOCK_SIZE), Optional.absent())),
+      metricRegistry);
+
+  @Test
+  public void itServesFinishedLogsFromFullBlocks() throws Exception {
+    ModuleBuild moduleBuild = moduleBuild(ModuleBuild.State.FAILED);
+    when(buildClusterService.getBuildContainerLog(any(ModuleBuild.class), anyLong(), anyLong())).then(invocation -> {
+      long offset = (long) invocation.getArguments()[1];
+      long length = (long) invocation.getArguments()[2];
+      if (offset >= LOG.length()) {
+        return new LogChunk("", offset, -1);
+      }
+      return new LogChunk(LOG.substring((int) offset, (int) Math.min(LOG.length(), offset + length)), offset);
+    });
+
+    assertThat(buildLogCache.getLog(moduleBuild, 1, 6)).isEqualTo(new LogChunk("123456", 1));
+    assertThat(buildLogCache.getLog(moduleBuild, 2, 5)).isEqualTo(new LogChunk("23456", 2));
+    assertThat(buildLogCache.getLog(moduleBuild, 6, 100)).isEqualTo(new LogChunk("6789", 6));
+    assertThat(buildLogCache.getLog(moduleBuild, 10, 100).getNextOffset()).isEqualTo(-1);
+
+    // the two full blocks are fetched once, the last one every time it is read
+    verify(buildClusterService, times(1)).getBuildContainerLog(moduleBuild, 0, BLOCK_FETCH_SIZE);
+    verify(buildClusterService, times(1)).getBuildContainerLog(moduleBuild, 4, BLOCK_FETCH_SIZE);
+    verify(buildClusterService, times(2)).getBuildContainerLog(moduleBuild, 8, BLOCK_FETCH_SIZE);
+  }
+
+  @Test
+  public void itKeepsTheOffsetsOfCharactersSplitByABlockBoundary() throws Exception {
+    ModuleBuild moduleBuild = moduleBuild(ModuleBuild.State.SUCCEEDED);
+    // the é takes the bytes 3 and 4, the first block ends between them
+    byte[] log = "abc\u00e9defghij".getBytes(StandardCharsets.UTF_8);
+    when(buildClusterService.getBuildContainerLog(any(ModuleBuild.class), anyLong(), anyLong())).then(invocation -> {
+      int offset = (int) (long) invocation.getArguments()[1];
+      int length = (int) (long) invocation.getArguments()[2];
+      if (offset >= log.length) {
+        return new LogChunk("", offset, -1);
+      }
+      // like the S3 log, the bytes of the range are decoded as they are
+      return new LogChunk(Arrays.copyOfRange(log, offset, Math.min(log.length, offset + length)), offset);
+    });
+
+    assertChunk(buildLogCache.getLog(moduleBuild, 0, 100), "abc\u00e9defghij", 12);
+    // a range that ends within the character stops before it, the next one starts with it
+    assertChunk(buildLogCache.getLog(moduleBuild, 0, 4), "abc", 3);
+    assertChunk(buildLogCache.getLog(moduleBuild, 3, 3), "\u00e9d", 6);
+    // a range that starts within the character starts with the next one
+    assertChunk(buildLogCache.getLog(moduleBuild, 4, 100), "defghij", 12);
+  }
+
+  @Test
+  public void itCoalescesConcurrentRequestsForTheSameRange() throws Exception {
+    ModuleBuild moduleBuild = moduleBuild(ModuleBuild.State.IN_PROGRESS);
+    CountDownLatch fetching = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(buildClusterService.getBuildContainerLog(moduleBuild, 0, 10)).then(invocation -> {
+      fetching.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return new LogChunk(LOG, 0);
+    });
+
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      Future<LogChunk> first = executorService.submit(() -> buildLogCache.getLog(moduleBuild, 0, 10));
+      assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+      Future<LogChunk> second = executorService.submit(() -> buildLogCache.getLog(moduleBuild, 0, 10));
+      // the second request joins the first one before it completes
+      Meter coalescedFetches = metricRegistry.meter(MetricRegistry.name(BuildLogCache.class, "coalescedFetches"));
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+      while (coalescedFetches.getCount() < 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(coalescedFetches.getCount()).isEqualTo(1);
+      release.countDown();
+
+      assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(new LogChunk(LOG, 0));
+      assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(new LogChunk(LOG, 0));
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    verify(buildClusterService, times(1)).getBuildContainerLog(moduleBuild, 0, 10);
+  }
+
+  private static void assertChunk(LogChunk logChunk, String data, long nextOffset) {
+    assertThat(logChunk.getData()).isEqualTo(data);
+    assertThat(logChunk.getNextOffset()).isEqualTo(nextOffset);
+  }
+
+  private static ModuleBuild moduleBuild(ModuleBuild.State state) {
+    return ModuleBuild.newBuilder(1, 2, 1, state)
+        .setId(Optional.of(3L))
+        .setTaskId(Optional.of("task-3"))
+        .setBuildClusterName(Optional.of("cluster"))
+        .build();
+  }
+}
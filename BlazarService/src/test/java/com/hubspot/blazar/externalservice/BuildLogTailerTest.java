@@ -0,0 +1,111 @@
+package com.hubspot.blazar.externalservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.LogChunk;
+import com.hubspot.blazar.base.ModuleBuild;
+import com.hubspot.blazar.data.service.ModuleBuildService;
+import com.hubspot.blazar.exception.LogNotFoundException;
+
+public class BuildLogTailerTest {
+  private static final long MODULE_BUILD_ID = 3;
+
+  private final BuildLogCache buildLogCache = mock(BuildLogCache.class);
+  private final ModuleBuildService moduleBuildService = mock(ModuleBuildService.class);
+  private final BuildLogTailer buildLogTailer = new BuildLogTailer(buildLogCache, moduleBuildService, new MetricRegistry());
+  private final ExecutorService viewers = Executors.newFixedThreadPool(2);
+  private final StringBuffer log = new StringBuffer();
+  private volatile ModuleBuild.State state = ModuleBuild.State.IN_PROGRESS;
+
+  @After
+  public void after() {
+    viewers.shutdownNow();
+    buildLogTailer.stop();
+  }
+
+  @Test
+  public void itSharesOneTailBetweenAllViewersUntilTheLogIsComplete() throws Exception {
+    when(moduleBuildService.get(MODULE_BUILD_ID)).then(invocation -> Optional.of(moduleBuild(state)));
+    when(buildLogCache.getLog(any(ModuleBuild.class), anyLong(), anyLong())).then(invocation -> {
+      ModuleBuild moduleBuild = (ModuleBuild) invocation.getArguments()[0];
+      int offset = (int) (long) invocation.getArguments()[1];
+      int length = (int) (long) invocation.getArguments()[2];
+      if (offset >= log.length() && moduleBuild.getState().isComplete()) {
+        return new LogChunk("", offset, -1);
+      }
+      return new LogChunk(log.substring(Math.min(offset, log.length()), Math.min(log.length(), offset + length)), offset);
+    });
+
+    log.append("first\n");
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    Future<?> firstViewer = viewers.submit(() -> stream(first));
+    Future<?> secondViewer = viewers.submit(() -> stream(second));
+    // a viewer that joins after the first chunk was read catches up with the next one
+    verify(buildLogCache, timeout(10000)).getLog(any(ModuleBuild.class), eq(0L), eq(65536L));
+
+    log.append("second\n");
+    awaitContent(first, "first\nsecond\n");
+    awaitContent(second, "first\nsecond\n");
+
+    state = ModuleBuild.State.SUCCEEDED;
+    firstViewer.get(10, TimeUnit.SECONDS);
+    secondViewer.get(10, TimeUnit.SECONDS);
+
+    assertThat(first.toString("UTF-8")).isEqualTo("first\nsecond\n");
+    assertThat(second.toString("UTF-8")).isEqualTo("first\nsecond\n");
+    // the start of the log was read from upstream once, whichever viewer joined the tail last
+    verify(buildLogCache, times(1)).getLog(any(ModuleBuild.class), eq(0L), eq(65536L));
+  }
+
+  @Test
+  public void itClosesTheStreamsOfAFinishedBuildWhoseLogIsGone() throws Exception {
+    when(moduleBuildService.get(MODULE_BUILD_ID)).thenReturn(Optional.of(moduleBuild(ModuleBuild.State.FAILED)));
+    when(buildLogCache.getLog(any(ModuleBuild.class), anyLong(), anyLong())).thenThrow(new LogNotFoundException("No S3 log found"));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    viewers.submit(() -> stream(outputStream)).get(10, TimeUnit.SECONDS);
+
+    assertThat(outputStream.size()).isEqualTo(0);
+  }
+
+  private Void stream(ByteArrayOutputStream outputStream) throws Exception {
+    buildLogTailer.stream(MODULE_BUILD_ID, 0, outputStream);
+    return null;
+  }
+
+  private static void awaitContent(ByteArrayOutputStream outputStream, String expected) throws Exception {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (!outputStream.toString("UTF-8").equals(expected) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertThat(outputStream.toString("UTF-8")).isEqualTo(expected);
+  }
+
+  private static ModuleBuild moduleBuild(ModuleBuild.State state) {
+    return ModuleBuild.newBuilder(1, 2, 1, state)
+        .setId(Optional.of(MODULE_BUILD_ID))
+        .setTaskId(Optional.of("task-3"))
+        .setBuildClusterName(Optional.of("cluster"))
+        .build();
+  }
+}
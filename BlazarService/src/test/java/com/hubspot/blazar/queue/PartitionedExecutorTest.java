@@ -0,0 +1,56 @@
+package com.hubspot.blazar.queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class PartitionedExecutorTest {
+  private final PartitionedExecutor executor = new PartitionedExecutor(4, "PartitionedExecutorTest");
+
+  @After
+  public void shutdown() throws InterruptedException {
+    executor.shutdown(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void itRunsTasksOfAPartitionInOrder() {
+    List<Integer> completed = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(20);
+
+    for (int i = 0; i < 20; i++) {
+      int task = i;
+      executor.execute("partition", () -> {
+        // earlier tasks take longer so any overlap would reorder the results
+        Uninterruptibles.sleepUninterruptibly(20 - task, TimeUnit.MILLISECONDS);
+        completed.add(task);
+        done.countDown();
+      });
+    }
+
+    assertThat(Uninterruptibles.awaitUninterruptibly(done, 5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < 20; i++) {
+      assertThat(completed.get(i)).isEqualTo(i);
+    }
+    assertThat(executor.getActivePartitionCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void itDoesNotBlockOtherPartitionsBehindASlowTask() {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherPartitionRan = new CountDownLatch(1);
+
+    executor.execute("slow", () -> Uninterruptibles.awaitUninterruptibly(release));
+    executor.execute("fast", otherPartitionRan::countDown);
+
+    assertThat(Uninterruptibles.awaitUninterruptibly(otherPartitionRan, 5, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+  }
+}
@@ -0,0 +1,32 @@
+package com.hubspot.blazar.queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.hubspot.blazar.config.QueueRetryConfiguration;
+
+public class QueueItemBackoffTest {
+  private static final QueueRetryConfiguration RETRY_CONFIGURATION =
+      new QueueRetryConfiguration(Optional.of(10), Optional.of(10L), Optional.of(300L), Optional.of(2.0), Optional.of(0.2));
+
+  @Test
+  public void itDoublesTheDelayAfterEveryFailure() {
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 1, 0.5)).isEqualTo(10);
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 2, 0.5)).isEqualTo(20);
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 3, 0.5)).isEqualTo(40);
+  }
+
+  @Test
+  public void itCapsTheDelay() {
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 9, 0.5)).isEqualTo(300);
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 1000, 0.5)).isEqualTo(300);
+  }
+
+  @Test
+  public void itSpreadsTheDelayByTheJitterFactor() {
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 3, 0)).isEqualTo(32);
+    assertThat(QueueItemBackoff.getDelaySeconds(RETRY_CONFIGURATION, 3, 0.999)).isEqualTo(48);
+  }
+}
@@ -100,6 +100,20 @@ public class QueueProcessorTest extends BlazarServiceTestBase {
     assertThat(received).containsExactly(event);
   }
 
+  @Test
+  public void itDispatchesPostedEventsWithoutWaitingForThePoll() {
+    queueProcessor.stop();
+    queueProcessor.startProcessorWithCustomPollingRate(1, TimeUnit.MINUTES);
+    // let the initial poll run so that only the insert notification can pick up the event
+    Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+
+    BuildTrigger event = new BuildTrigger(Type.PUSH, "abc");
+    eventBus.post(event);
+
+    waitForEvent();
+    assertThat(received).containsExactly(event);
+  }
+
   private void waitForEvent() {
     waitForEvent(1200, TimeUnit.MILLISECONDS);
   }
@@ -0,0 +1,194 @@
+package com.hubspot.blazar.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.blazar.base.BuildOptions;
+import com.hubspot.blazar.base.BuildTrigger;
+import com.hubspot.blazar.base.D3GraphData;
+import com.hubspot.blazar.base.D3GraphLink;
+import com.hubspot.blazar.base.D3GraphNode;
+import com.hubspot.blazar.base.DependencyGraph;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.base.InterProjectBuild;
+import com.hubspot.blazar.base.InterProjectBuildMapping;
+import com.hubspot.blazar.base.InterProjectBuildStatus;
+import com.hubspot.blazar.base.Module;
+import com.hubspot.blazar.base.ModuleWithBranch;
+import com.hubspot.blazar.base.RepositoryBuild;
+import com.hubspot.blazar.data.service.DependenciesService;
+import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
+import com.hubspot.blazar.data.service.InterProjectBuildService;
+import com.hubspot.blazar.data.service.ModuleService;
+import com.hubspot.blazar.data.service.RepositoryBuildService;
+
+public class InterProjectBuildResourceTest {
+  private static final long BUILD_ID = 7;
+  private static final long REPO_BUILD_ID = 12;
+  // module 1 is built first, module 2 depends on it and module 3 depends on both
+  private static final DependencyGraph GRAPH = new DependencyGraph(
+      ImmutableMap.of(1, ImmutableSet.of(2), 2, ImmutableSet.of(3)),
+      Arrays.asList(1, 2, 3));
+
+  private final InterProjectBuildService interProjectBuildService = mock(InterProjectBuildService.class);
+  private final InterProjectBuildMappingService interProjectBuildMappingService = mock(InterProjectBuildMappingService.class);
+  private final RepositoryBuildService repositoryBuildService = mock(RepositoryBuildService.class);
+  private final ModuleService moduleService = mock(ModuleService.class);
+  private final InterProjectBuildResource resource = new InterProjectBuildResource(mock(DependenciesService.class),
+      interProjectBuildService, interProjectBuildMappingService, repositoryBuildService, moduleService);
+
+  @Test
+  public void itDrawsTheGraphOfABuildFromBulkLoadedModules() {
+    givenBuild(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1, 2, 3);
+
+    D3GraphData graphData = resource.getDrawableGraphForBuild(BUILD_ID);
+
+    assertThat(names(graphData.getNodes())).containsExactly("repo1-module1", "repo2-module2", "repo3-module3");
+    assertThat(graphData.getNodes().stream().map(D3GraphNode::getState).collect(Collectors.toList()))
+        .containsExactly(InterProjectBuild.State.SUCCEEDED, InterProjectBuild.State.IN_PROGRESS, InterProjectBuild.State.QUEUED);
+    // links point from the position of the dependency to the position of the module that depends on it
+    assertThat(graphData.getLinks()).containsExactly(new D3GraphLink(1, 0), new D3GraphLink(2, 1));
+    verify(moduleService, times(1)).getWithBranches(anySetOf(Integer.class));
+  }
+
+  @Test
+  public void itLeavesOutModulesThatNoLongerExist() {
+    givenBuild(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1, 2);
+
+    D3GraphData graphData = resource.getDrawableGraphForBuild(BUILD_ID);
+
+    assertThat(names(graphData.getNodes())).containsExactly("repo1-module1", "repo2-module2");
+    assertThat(graphData.getLinks()).containsExactly(new D3GraphLink(1, 0));
+  }
+
+  @Test
+  public void itServesTheGraphOfAFinishedBuildFromTheCache() {
+    givenBuild(InterProjectBuild.State.SUCCEEDED);
+    givenModules(1, 2, 3);
+
+    D3GraphData graphData = resource.getDrawableGraphForBuild(BUILD_ID);
+
+    assertThat(resource.getDrawableGraphForBuild(BUILD_ID)).isSameAs(graphData);
+    verify(interProjectBuildService, times(1)).getWithId(BUILD_ID);
+    verify(moduleService, times(1)).getWithBranches(anySetOf(Integer.class));
+  }
+
+  @Test
+  public void itDrawsTheGraphOfAnUnfinishedBuildEveryTime() {
+    givenBuild(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1, 2, 3);
+
+    resource.getDrawableGraphForBuild(BUILD_ID);
+    resource.getDrawableGraphForBuild(BUILD_ID);
+
+    verify(interProjectBuildService, times(2)).getWithId(BUILD_ID);
+  }
+
+  @Test
+  public void itNamesTheUpAndDownstreamRepoBuildsAfterTheBranchesOfTheirModules() {
+    givenRepoBuildOfModule2(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1, 3);
+
+    InterProjectBuildStatus status = resource.getMappingsForRepoBuild(REPO_BUILD_ID);
+
+    assertThat(status.getRootRepoBuilds()).isEqualTo(ImmutableMap.of(11L, "git.example.com-TestOrg-repo1-master"));
+    assertThat(status.getDownstreamRepoBuilds()).isEqualTo(ImmutableMap.of(13L, "git.example.com-TestOrg-repo3-master"));
+    assertThat(status.getUpstreamRepoBuilds()).isEmpty();
+    assertThat(status.getCancelledDownstreamModules()).containsExactly(moduleWithBranch(3).getModule());
+  }
+
+  @Test
+  public void itLeavesOutTheRepoBuildsOfModulesThatNoLongerExist() {
+    givenRepoBuildOfModule2(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1);
+
+    InterProjectBuildStatus status = resource.getMappingsForRepoBuild(REPO_BUILD_ID);
+
+    assertThat(status.getRootRepoBuilds()).isEqualTo(ImmutableMap.of(11L, "git.example.com-TestOrg-repo1-master"));
+    assertThat(status.getDownstreamRepoBuilds()).isEmpty();
+    assertThat(status.getCancelledDownstreamModules()).isEmpty();
+  }
+
+  @Test
+  public void itServesTheUpAndDownstreamsOfAFinishedBuildFromTheCache() {
+    givenRepoBuildOfModule2(InterProjectBuild.State.CANCELLED);
+    givenModules(1, 3);
+
+    InterProjectBuildStatus status = resource.getMappingsForRepoBuild(REPO_BUILD_ID);
+
+    assertThat(resource.getMappingsForRepoBuild(REPO_BUILD_ID)).isSameAs(status);
+    verify(interProjectBuildMappingService, times(1)).getByRepoBuildId(REPO_BUILD_ID);
+    verify(moduleService, times(1)).getWithBranches(anySetOf(Integer.class));
+  }
+
+  @Test
+  public void itLooksUpTheUpAndDownstreamsOfAnUnfinishedBuildEveryTime() {
+    givenRepoBuildOfModule2(InterProjectBuild.State.IN_PROGRESS);
+    givenModules(1, 3);
+
+    resource.getMappingsForRepoBuild(REPO_BUILD_ID);
+    resource.getMappingsForRepoBuild(REPO_BUILD_ID);
+
+    verify(interProjectBuildMappingService, times(2)).getByRepoBuildId(REPO_BUILD_ID);
+  }
+
+  private void givenBuild(InterProjectBuild.State state) {
+    givenBuild(state, mapping(1, InterProjectBuild.State.SUCCEEDED), mapping(2, InterProjectBuild.State.IN_PROGRESS));
+  }
+
+  private void givenBuild(InterProjectBuild.State state, InterProjectBuildMapping... mappings) {
+    InterProjectBuild build = new InterProjectBuild(Optional.of(BUILD_ID), state, ImmutableSet.of(1), BuildTrigger.forUser("test"),
+        Optional.of(1L), Optional.absent(), Optional.of(GRAPH));
+    when(interProjectBuildService.getWithId(BUILD_ID)).thenReturn(Optional.of(build));
+    when(interProjectBuildMappingService.getMappingsForInterProjectBuild(BUILD_ID)).thenReturn(new HashSet<>(Arrays.asList(mappings)));
+  }
+
+  // module 2's repo build is the one asked about, module 1 is the root of the build and module 3 got cancelled
+  private void givenRepoBuildOfModule2(InterProjectBuild.State state) {
+    InterProjectBuildMapping mapping = mapping(2, InterProjectBuild.State.SUCCEEDED);
+    givenBuild(state, mapping(1, InterProjectBuild.State.SUCCEEDED), mapping, mapping(3, InterProjectBuild.State.CANCELLED));
+    when(interProjectBuildMappingService.getByRepoBuildId(REPO_BUILD_ID)).thenReturn(ImmutableSet.of(mapping));
+    when(repositoryBuildService.get(REPO_BUILD_ID)).thenReturn(Optional.of(
+        RepositoryBuild.newBuilder(2, 1, RepositoryBuild.State.SUCCEEDED, BuildTrigger.forUser("test"), BuildOptions.defaultOptions()).build()));
+  }
+
+  private void givenModules(int... moduleIds) {
+    Set<ModuleWithBranch> modules = new HashSet<>();
+    for (int moduleId : moduleIds) {
+      modules.add(moduleWithBranch(moduleId));
+    }
+    when(moduleService.getWithBranches(anySetOf(Integer.class))).thenReturn(modules);
+  }
+
+  private static InterProjectBuildMapping mapping(int moduleId, InterProjectBuild.State state) {
+    return new InterProjectBuildMapping(Optional.of((long) moduleId), BUILD_ID, moduleId, Optional.of(10L + moduleId), moduleId,
+        Optional.absent(), state);
+  }
+
+  private static ModuleWithBranch moduleWithBranch(int moduleId) {
+    Module module = new Module(Optional.of(moduleId), "module" + moduleId, "maven", "module" + moduleId + "/pom.xml",
+        "module" + moduleId + "/**", true, 0, 0, Optional.absent());
+    return new ModuleWithBranch(module, GitInfo.fromString("git.example.com/TestOrg/repo" + moduleId + "#master"));
+  }
+
+  private static List<String> names(List<D3GraphNode> nodes) {
+    return nodes.stream().map(D3GraphNode::getName).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,91 @@
+package com.hubspot.blazar.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.jukito.JukitoRunner;
+import org.jukito.UseModules;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.hubspot.blazar.BlazarServiceTestBase;
+import com.hubspot.blazar.BlazarServiceTestModule;
+import com.hubspot.blazar.base.Dependency;
+import com.hubspot.blazar.base.DependencyInfo;
+import com.hubspot.blazar.base.DiscoveredModule;
+import com.hubspot.blazar.data.service.DependenciesService;
+
+import io.dropwizard.db.ManagedDataSource;
+
+@RunWith(JukitoRunner.class)
+@UseModules({BlazarServiceTestModule.class})
+public class DependenciesServiceTest extends BlazarServiceTestBase {
+  private static final int REPO2_BRANCH_ID = 2;
+
+  @Inject
+  private DependenciesService dependenciesService;
+
+  @Before
+  public void before(ManagedDataSource dataSource) throws Exception {
+    runSql(dataSource, "InterProjectData.sql");
+  }
+
+  @Test
+  public void itOnlyWritesTheRowsThatChanged() {
+    List<DiscoveredModule> modules = ImmutableList.of(
+        module(4, "Repo2-Module1", ImmutableSet.of("Repo1-Module1")),
+        module(5, "Repo2-Module2", ImmutableSet.of("Repo1-Module2")),
+        module(6, "Repo2-Module3", ImmutableSet.of("Repo2-Module2", "Repo1-Module2")));
+
+    // the fixture rows have no source, so all 7 of them are replaced
+    assertThat(dependenciesService.update(REPO2_BRANCH_ID, modules)).isEqualTo(14);
+    assertThat(dependenciesService.update(REPO2_BRANCH_ID, modules)).isEqualTo(0);
+
+    List<DiscoveredModule> withoutOneDependency = ImmutableList.of(
+        module(4, "Repo2-Module1", ImmutableSet.of("Repo1-Module1")),
+        module(5, "Repo2-Module2", ImmutableSet.of("Repo1-Module2")),
+        module(6, "Repo2-Module3", ImmutableSet.of("Repo2-Module2")));
+    assertThat(dependenciesService.update(REPO2_BRANCH_ID, withoutOneDependency)).isEqualTo(1);
+
+    assertThat(dependenciesService.getDependencies(6)).containsExactly(new Dependency("Repo2-Module2", "1.0.0"));
+    assertThat(dependenciesService.getProvided(6)).containsExactly(new Dependency("Repo2-Module3", "1.0.0"));
+  }
+
+  @Test
+  public void itKeepsTheRowsOfASourceThatDiscoveredNothing() {
+    DiscoveredModule module = module(6, "Repo2-Module3", ImmutableSet.of("Repo2-Module2", "Repo1-Module2"));
+    dependenciesService.update(REPO2_BRANCH_ID, Collections.singletonList(module));
+
+    DependencyInfo onlyPluginDependencies = new DependencyInfo(Collections.emptySet(), Collections.emptySet(),
+        ImmutableSet.of(new Dependency("Repo1-Module1", "1.0.0")), Collections.emptySet());
+    DiscoveredModule rediscovered = new DiscoveredModule("Module3", "config", "/Module3/.blazar.yaml", "/Module3/**",
+        Optional.absent(), onlyPluginDependencies).withId(6);
+
+    assertThat(dependenciesService.update(REPO2_BRANCH_ID, Collections.singletonList(rediscovered))).isEqualTo(1);
+    assertThat(dependenciesService.getDependencies(6)).containsOnly(
+        new Dependency("Repo2-Module2", "1.0.0"),
+        new Dependency("Repo1-Module2", "1.0.0"),
+        new Dependency("Repo1-Module1", "1.0.0"));
+    assertThat(dependenciesService.getProvided(6)).containsExactly(new Dependency("Repo2-Module3", "1.0.0"));
+  }
+
+  private static DiscoveredModule module(int id, String provides, Set<String> dependsOn) {
+    ImmutableSet.Builder<Dependency> dependencies = ImmutableSet.builder();
+    for (String name : dependsOn) {
+      dependencies.add(new Dependency(name, "1.0.0"));
+    }
+
+    DependencyInfo dependencyInfo = new DependencyInfo(dependencies.build(),
+        ImmutableSet.of(new Dependency(provides, "1.0.0")), Collections.emptySet(), Collections.emptySet());
+    return new DiscoveredModule("Module" + id, "config", "/Module/.blazar.yaml", "/Module/**",
+        Optional.absent(), dependencyInfo).withId(id);
+  }
+}
@@ -0,0 +1,85 @@
+package com.hubspot.blazar.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.jukito.JukitoRunner;
+import org.jukito.UseModules;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.hubspot.blazar.BlazarServiceTestBase;
+import com.hubspot.blazar.BlazarServiceTestModule;
+import com.hubspot.blazar.base.ModuleDependency;
+import com.hubspot.blazar.data.dao.DependenciesDao;
+import com.hubspot.blazar.data.dependencies.InMemoryModuleDependencyIndex;
+import com.hubspot.blazar.data.dependencies.SqlModuleDependencyIndex;
+import com.hubspot.blazar.data.service.BranchService;
+
+import io.dropwizard.db.ManagedDataSource;
+
+@RunWith(JukitoRunner.class)
+@UseModules({BlazarServiceTestModule.class})
+public class ModuleDependencyIndexTest extends BlazarServiceTestBase {
+
+  @Inject
+  private DependenciesDao dependenciesDao;
+  @Inject
+  private SqlModuleDependencyIndex sqlIndex;
+  @Inject
+  private BranchService branchService;
+
+  private InMemoryModuleDependencyIndex inMemoryIndex;
+
+  @Before
+  public void before(ManagedDataSource dataSource) throws Exception {
+    runSql(dataSource, "InterProjectData.sql");
+    inMemoryIndex = new InMemoryModuleDependencyIndex(dependenciesDao, 300);
+    inMemoryIndex.reload();
+  }
+
+  @Test
+  public void itBuildsTheSameGraphsAsTheSqlIndex() {
+    assertSameGraphs();
+  }
+
+  @Test
+  public void itStopsFollowingDeactivatedBranches() {
+    branchService.deactivate(branchService.get(3).get());
+    inMemoryIndex.branchChanged(3);
+
+    assertThat(inMemoryIndex.getGraphFromRootModules(-1, Collections.singleton(4)).values()).doesNotContain(7);
+    assertThat(inMemoryIndex.getGraphFromRootModules(3, Collections.singleton(4)).values()).doesNotContain(7);
+    assertSameGraphs();
+  }
+
+  @Test
+  public void itKeepsUpWithChangedDependencies() {
+    dependenciesDao.deleteDependencies(13);
+    inMemoryIndex.moduleDependenciesChanged(13);
+    assertThat(inMemoryIndex.getGraphFromRootModules(-1, Collections.singleton(10)).values()).doesNotContain(13);
+
+    dependenciesDao.insertDependencies(ImmutableSet.of(new ModuleDependency(15, "Repo1-Module1", "1.0.0", null)));
+    inMemoryIndex.moduleDependenciesChanged(15);
+    assertThat(inMemoryIndex.getGraphFromRootModules(-1, Collections.singleton(1)).get(1)).contains(15);
+
+    dependenciesDao.deleteProvidedDependencies(1);
+    inMemoryIndex.moduleDependenciesChanged(1);
+    assertThat(inMemoryIndex.getGraphFromRootModules(-1, Collections.singleton(1)).isEmpty()).isTrue();
+
+    assertSameGraphs();
+  }
+
+  private void assertSameGraphs() {
+    for (int branchId : ImmutableSet.of(-1, 1, 2, 3, 4, 5)) {
+      for (int moduleId = 1; moduleId <= 15; moduleId++) {
+        assertThat(inMemoryIndex.getGraphFromRootModules(branchId, Collections.singleton(moduleId)))
+            .isEqualTo(sqlIndex.getGraphFromRootModules(branchId, Collections.singleton(moduleId)));
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.hubspot.blazar.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.BuildConfig;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.BuildConfigCacheConfiguration;
+
+import io.dropwizard.jackson.Jackson;
+
+public class BuildConfigCacheTest {
+  private static final GitInfo BRANCH = GitInfo.fromString("git.example.com/TestOrg/repo.git#master");
+  private static final GitInfo OTHER_REPO_BRANCH = GitInfo.fromString("git.example.com/TestOrg/other-repo.git#master");
+  private static final String PATH = ".blazar-buildpack.yaml";
+  private static final String SHA = "1111111111111111111111111111111111111111";
+  private static final String YAML = "user: buildpack-user\nenv:\n  VAR: value\n";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void itCachesConfigsBySha() throws Exception {
+    BuildConfigCache cache = buildCache(Optional.absent());
+
+    BuildConfig config = cache.put(BRANCH, PATH, SHA, YAML);
+
+    assertThat(config.getUser()).isEqualTo(Optional.of("buildpack-user"));
+    assertThat(cache.getIfPresent(BRANCH, PATH, SHA)).isEqualTo(Optional.of(config));
+    assertThat(cache.getIfPresent(BRANCH, PATH, "2222222222222222222222222222222222222222").isPresent()).isFalse();
+    assertThat(cache.getIfPresent(OTHER_REPO_BRANCH, PATH, SHA).isPresent()).isFalse();
+  }
+
+  @Test
+  public void itReadsConfigsWrittenByAPreviousInstanceFromDisk() throws Exception {
+    Optional<String> directory = Optional.of(temporaryFolder.getRoot().getAbsolutePath());
+    BuildConfig config = buildCache(directory).put(BRANCH, PATH, SHA, YAML);
+
+    MetricRegistry metricRegistry = new MetricRegistry();
+    BuildConfigCache restarted = buildCache(directory, metricRegistry);
+
+    assertThat(restarted.getIfPresent(BRANCH, PATH, SHA)).isEqualTo(Optional.of(config));
+    assertThat(restarted.getIfPresent(OTHER_REPO_BRANCH, PATH, SHA).isPresent()).isFalse();
+    // both lookups missed the in-memory tier, one of them was found on disk
+    assertThat(gauge(metricRegistry, "configs", "hitRate")).isEqualTo(0.0);
+    assertThat(gauge(metricRegistry, "total", "hitRate")).isEqualTo(0.5);
+    assertThat(metricRegistry.counter(MetricRegistry.name(BuildConfigCache.class, "disk", "hitCount")).getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void itResolvesABranchOnceWhileItsHeadIsCached() throws Exception {
+    BuildConfigCache cache = buildCache(Optional.absent());
+    AtomicInteger lookups = new AtomicInteger();
+
+    assertThat(cache.getBranchHead(BRANCH, "master", () -> SHA + lookups.incrementAndGet())).isEqualTo(SHA + 1);
+    assertThat(cache.getBranchHead(BRANCH, "master", () -> SHA + lookups.incrementAndGet())).isEqualTo(SHA + 1);
+    assertThat(cache.getBranchHead(OTHER_REPO_BRANCH, "master", () -> SHA + lookups.incrementAndGet())).isEqualTo(SHA + 2);
+  }
+
+  private static BuildConfigCache buildCache(Optional<String> diskCacheDirectory) throws Exception {
+    return buildCache(diskCacheDirectory, new MetricRegistry());
+  }
+
+  private static BuildConfigCache buildCache(Optional<String> diskCacheDirectory, MetricRegistry metricRegistry) throws Exception {
+    BlazarConfiguration blazarConfiguration = new BlazarConfiguration()
+        .setBuildConfigCacheConfiguration(new BuildConfigCacheConfiguration(Optional.absent(), Optional.absent(), diskCacheDirectory));
+    return new BuildConfigCache(blazarConfiguration, Jackson.newObjectMapper(), new YAMLFactory(), metricRegistry);
+  }
+
+  private static Object gauge(MetricRegistry metricRegistry, String cacheName, String metric) {
+    return metricRegistry.getGauges().get(MetricRegistry.name(BuildConfigCache.class, cacheName, metric)).getValue();
+  }
+}
@@ -0,0 +1,190 @@
+package com.hubspot.blazar.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.BlazarGHCommit;
+import org.kohsuke.github.BlazarGHCommitFile;
+import org.kohsuke.github.BlazarGHCommitFile.Status;
+import org.kohsuke.github.BlazarGHContent;
+import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHCompare;
+import org.kohsuke.github.GHRef;
+import org.kohsuke.github.GHRepository;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.base.CommitInfo;
+import com.hubspot.blazar.base.GitInfo;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.github.GitHubProtos.Commit;
+
+import io.dropwizard.jackson.Jackson;
+
+public class GitHubHelperTest {
+  private static final Commit PREVIOUS = Commit.newBuilder().setId("previous").build();
+  private static final Commit CURRENT = Commit.newBuilder().setId("current").build();
+  private static final GitInfo BUILDPACK = GitInfo.fromString("git.example.com/TestOrg/buildpacks.git#master");
+  private static final String BUILDPACK_PATH = "java/.blazar-buildpack.yaml";
+  private static final String BUILDPACK_SHA = "1111111111111111111111111111111111111111";
+
+  private final GitHubRequestExecutor gitHubRequestExecutor = new GitHubRequestExecutor(Collections.emptyMap(), new BlazarConfiguration(), new MetricRegistry());
+  private final GHRepository repository = mock(GHRepository.class);
+  private final GHCompare compare = mock(GHCompare.class);
+  private GitHubHelper gitHubHelper;
+
+  @Before
+  public void before() throws Exception {
+    BuildConfigCache buildConfigCache = new BuildConfigCache(new BlazarConfiguration(), Jackson.newObjectMapper(), new YAMLFactory(), new MetricRegistry());
+    gitHubHelper = spy(new GitHubHelper(Collections.emptyMap(), Jackson.newObjectMapper(), new YAMLFactory(), buildConfigCache, gitHubRequestExecutor));
+    doReturn(repository).when(gitHubHelper).repositoryFor(BUILDPACK);
+    when(repository.getHtmlUrl()).thenReturn(new URL("https://git.example.com/TestOrg/repo"));
+    when(repository.getFullName()).thenReturn("TestOrg/repo");
+    when(repository.getCompare(PREVIOUS.getId(), CURRENT.getId())).thenReturn(compare);
+    // the commits shown with the build only need their sha here
+    doAnswer(invocation -> Commit.newBuilder().setId(((GHCommit) invocation.getArguments()[0]).getSHA1()).build())
+        .when(gitHubHelper).toCommit(any(GHCommit.class));
+  }
+
+  @After
+  public void after() {
+    gitHubRequestExecutor.stop();
+  }
+
+  @Test
+  public void itTakesTheAffectedPathsFromTheCompare() throws Exception {
+    List<BlazarGHCommit> commits = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      commits.add(commit("sha" + i, "module" + i + "/pom.xml"));
+    }
+    compare(commits, files("module0/pom.xml", "module11/pom.xml"));
+
+    CommitInfo commitInfo = gitHubHelper.commitInfoFor(repository, CURRENT, Optional.of(PREVIOUS));
+
+    assertThat(commitInfo.isTruncated()).isFalse();
+    assertThat(commitInfo.getAffectedPaths().get()).containsOnly("module0/pom.xml", "module11/pom.xml");
+    // only the most recent commits are kept, but the paths of the older ones still count
+    assertThat(commitInfo.getNewCommits()).hasSize(10);
+    assertThat(commitInfo.getNewCommits().get(0).getId()).isEqualTo("sha2");
+    assertThat(gitHubHelper.affectedPaths(commitInfo)).contains("module0/pom.xml");
+  }
+
+  @Test
+  public void itGoesThroughEveryCommitWhenTheCompareListsTooManyFiles() throws Exception {
+    List<BlazarGHCommit> commits = Arrays.asList(
+        commit("sha0", "module0/pom.xml", "module0/README.md"),
+        commit("sha1", "module1/pom.xml"));
+    compare(commits, manyFiles(300));
+
+    CommitInfo commitInfo = gitHubHelper.commitInfoFor(repository, CURRENT, Optional.of(PREVIOUS));
+
+    assertThat(commitInfo.isTruncated()).isFalse();
+    assertThat(commitInfo.getAffectedPaths().get()).containsOnly("module0/pom.xml", "module0/README.md", "module1/pom.xml");
+  }
+
+  @Test
+  public void itIsTruncatedIfACommitHasTooManyFiles() throws Exception {
+    BlazarGHCommit hugeCommit = new BlazarGHCommit("sha1", manyFiles(300), null);
+    when(repository.getCommit("sha1")).thenReturn(hugeCommit);
+    compare(Arrays.asList(commit("sha0", "module0/pom.xml"), hugeCommit), manyFiles(300));
+
+    CommitInfo commitInfo = gitHubHelper.commitInfoFor(repository, CURRENT, Optional.of(PREVIOUS));
+
+    assertThat(commitInfo.isTruncated()).isTrue();
+    assertThat(commitInfo.getAffectedPaths().isPresent()).isFalse();
+  }
+
+  @Test
+  public void itIsTruncatedIfTheCompareDoesNotListAllCommits() throws Exception {
+    compare(Collections.singletonList(commit("sha0", "module0/pom.xml")), manyFiles(300));
+    when(compare.getTotalCommits()).thenReturn(251);
+
+    CommitInfo commitInfo = gitHubHelper.commitInfoFor(repository, CURRENT, Optional.of(PREVIOUS));
+
+    assertThat(commitInfo.isTruncated()).isTrue();
+    assertThat(commitInfo.getAffectedPaths().isPresent()).isFalse();
+  }
+
+  @Test
+  public void itLoadsABuildpackPinnedToABranch() throws Exception {
+    GHRef ref = mock(GHRef.class);
+    GHRef.GHObject object = mock(GHRef.GHObject.class);
+    when(object.getSha()).thenReturn(BUILDPACK_SHA);
+    when(ref.getObject()).thenReturn(object);
+    when(repository.getRef("heads/v2")).thenReturn(ref);
+
+    assertThat(buildpackUser("v2")).isEqualTo(Optional.of("buildpack-user"));
+  }
+
+  @Test
+  public void itLoadsABuildpackPinnedToATag() throws Exception {
+    when(repository.getRef("heads/v1.0.0")).thenThrow(new FileNotFoundException("Not Found"));
+    when(repository.getCommit("v1.0.0")).thenReturn(new BlazarGHCommit(BUILDPACK_SHA, Collections.emptyList(), null));
+
+    assertThat(buildpackUser("v1.0.0")).isEqualTo(Optional.of("buildpack-user"));
+  }
+
+  @Test
+  public void itLoadsABuildpackPinnedToAnAbbreviatedSha() throws Exception {
+    when(repository.getRef("heads/1111111")).thenThrow(new FileNotFoundException("Not Found"));
+    when(repository.getCommit("1111111")).thenReturn(new BlazarGHCommit(BUILDPACK_SHA, Collections.emptyList(), null));
+
+    assertThat(buildpackUser("1111111")).isEqualTo(Optional.of("buildpack-user"));
+  }
+
+  private Optional<String> buildpackUser(String ref) throws Exception {
+    when(repository.getFileContent(BUILDPACK_PATH, BUILDPACK_SHA)).thenReturn(new BlazarGHContent("user: buildpack-user\n"));
+    return gitHubHelper.configAtSha(BUILDPACK_PATH, BUILDPACK, ref).get().getUser();
+  }
+
+  private BlazarGHCommit commit(String sha, String... paths) throws Exception {
+    BlazarGHCommit commit = new BlazarGHCommit(sha, files(paths), null);
+    when(repository.getCommit(sha)).thenReturn(commit);
+    return commit;
+  }
+
+  private void compare(List<BlazarGHCommit> commits, List<BlazarGHCommitFile> files) {
+    List<GHCompare.Commit> compareCommits = new ArrayList<>();
+    for (BlazarGHCommit commit : commits) {
+      GHCompare.Commit compareCommit = mock(GHCompare.Commit.class);
+      when(compareCommit.getSHA1()).thenReturn(commit.getSHA1());
+      compareCommits.add(compareCommit);
+    }
+
+    when(compare.getCommits()).thenReturn(compareCommits.toArray(new GHCompare.Commit[compareCommits.size()]));
+    when(compare.getTotalCommits()).thenReturn(commits.size());
+    when(compare.getFiles()).thenReturn(files.toArray(new GHCommit.File[files.size()]));
+  }
+
+  private static List<BlazarGHCommitFile> manyFiles(int count) {
+    String[] paths = new String[count];
+    for (int i = 0; i < count; i++) {
+      paths[i] = "generated/file" + i;
+    }
+    return files(paths);
+  }
+
+  private static List<BlazarGHCommitFile> files(String... paths) {
+    List<BlazarGHCommitFile> files = new ArrayList<>();
+    for (String path : paths) {
+      files.add(new BlazarGHCommitFile(path, Status.modified));
+    }
+    return files;
+  }
+}
@@ -0,0 +1,70 @@
+package com.hubspot.blazar.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.hubspot.blazar.config.BlazarConfiguration;
+import com.hubspot.blazar.config.GitHubRequestConfiguration;
+
+public class GitHubRequestExecutorTest {
+  private static final String HOST = "git.example.com";
+  private static final int CONCURRENCY = 3;
+
+  private final GitHubRequestExecutor executor = new GitHubRequestExecutor(Collections.emptyMap(),
+      new BlazarConfiguration().setGitHubRequestConfiguration(new GitHubRequestConfiguration(Optional.of(CONCURRENCY), Optional.absent(), Optional.absent())),
+      new MetricRegistry());
+
+  @After
+  public void stop() {
+    executor.stop();
+  }
+
+  @Test
+  public void itRunsRequestsInParallelAndKeepsTheirOrder() throws Exception {
+    // every request waits for all of them to have started, which only works if they run at the same time
+    CountDownLatch started = new CountDownLatch(CONCURRENCY);
+    List<Callable<Integer>> requests = new ArrayList<>();
+    for (int i = 0; i < CONCURRENCY; i++) {
+      int result = i;
+      requests.add(() -> {
+        started.countDown();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        // finish in reverse order
+        Thread.sleep(10 * (CONCURRENCY - result));
+        return result;
+      });
+    }
+
+    assertThat(executor.invokeAll(HOST, requests)).containsExactly(0, 1, 2);
+  }
+
+  @Test
+  public void itRethrowsTheExceptionOfAFailedRequest() {
+    List<Callable<String>> requests = new ArrayList<>();
+    requests.add(() -> "found");
+    requests.add(() -> {
+      throw new FileNotFoundException("missing");
+    });
+
+    try {
+      executor.invokeAll(HOST, requests);
+      fail("Expected the request to fail");
+    } catch (IOException e) {
+      assertThat(e).isInstanceOf(FileNotFoundException.class).hasMessage("missing");
+    }
+  }
+}
@@ -11,9 +11,8 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hubspot.blazar.base.ModuleBuild;
 import com.hubspot.blazar.config.BlazarConfiguration;
-import com.hubspot.blazar.data.service.BranchService;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.service.ModuleBuildService;
-import com.hubspot.blazar.data.service.ModuleService;
 import com.hubspot.blazar.exception.BuildClusterException;
 import com.hubspot.blazar.externalservice.BuildClusterHealthChecker;
 import com.hubspot.blazar.externalservice.BuildClusterService;
@@ -29,13 +28,12 @@ public class TestBuildClusterService extends BuildClusterService {
   @Inject
   public TestBuildClusterService(Map<String, SingularityClient> singularityClusterClients,
                                  BlazarConfiguration blazarConfiguration,
-                                 ModuleService moduleService,
+                                 ModuleBranchCache moduleBranchCache,
                                  ModuleBuildService moduleBuildService,
-                                 BranchService branchService,
                                  BuildClusterHealthChecker buildClusterHealthChecker,
                                  AsyncHttpClient asyncHttpClient) {
 
-    super(singularityClusterClients, blazarConfiguration, moduleService, moduleBuildService, branchService, buildClusterHealthChecker, asyncHttpClient);
+    super(singularityClusterClients, blazarConfiguration, moduleBranchCache, moduleBuildService, buildClusterHealthChecker, asyncHttpClient);
 
     this.moduleBuildService = moduleBuildService;
     this.failingModules = ImmutableSet.of();
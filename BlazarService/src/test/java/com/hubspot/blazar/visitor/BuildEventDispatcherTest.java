@@ -0,0 +1,104 @@
+package com.hubspot.blazar.visitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.hubspot.blazar.base.BuildOptions;
+import com.hubspot.blazar.base.BuildTrigger;
+import com.hubspot.blazar.base.RepositoryBuild;
+import com.hubspot.blazar.base.notifications.RepositoryBuildNotification;
+import com.hubspot.blazar.base.visitor.RepositoryBuildVisitor;
+import com.hubspot.blazar.data.service.InterProjectBuildService;
+import com.hubspot.blazar.data.service.ModuleBuildService;
+import com.hubspot.blazar.data.service.RepositoryBuildService;
+
+public class BuildEventDispatcherTest {
+  private static final RepositoryBuild BUILD = build(RepositoryBuild.State.SUCCEEDED);
+
+  private final RepositoryBuildService repositoryBuildService = mock(RepositoryBuildService.class);
+  private final RepositoryBuildVisitor visitor = mock(RepositoryBuildVisitor.class);
+  private final RepositoryBuildVisitor gitHubStatus = mock(RepositoryBuildVisitor.class);
+  private final RepositoryBuildVisitor slack = mock(RepositoryBuildVisitor.class);
+  private final EventBus eventBus = mock(EventBus.class);
+  private final BuildEventDispatcher dispatcher = new BuildEventDispatcher(repositoryBuildService, mock(ModuleBuildService.class),
+      mock(InterProjectBuildService.class), Collections.singleton(visitor), Collections.emptySet(), Collections.emptySet(),
+      ImmutableMap.of("gitHubStatus", gitHubStatus, "slack", slack), eventBus);
+
+  @Test
+  public void itQueuesOneNotificationPerNotifier() throws Exception {
+    when(repositoryBuildService.get(1)).thenReturn(Optional.of(BUILD));
+
+    dispatcher.dispatch(BUILD);
+
+    ArgumentCaptor<RepositoryBuildNotification> notifications = ArgumentCaptor.forClass(RepositoryBuildNotification.class);
+    verify(eventBus, times(2)).post(notifications.capture());
+    List<RepositoryBuildNotification> posted = notifications.getAllValues();
+    assertThat(posted).containsOnly(new RepositoryBuildNotification("gitHubStatus", BUILD), new RepositoryBuildNotification("slack", BUILD));
+    // notifiers don't run with the build event
+    verify(visitor).visit(BUILD);
+    verify(gitHubStatus, never()).visit(any(RepositoryBuild.class));
+    verify(slack, never()).visit(any(RepositoryBuild.class));
+  }
+
+  @Test
+  public void itQueuesNoNotificationsIfAVisitorFails() throws Exception {
+    when(repositoryBuildService.get(1)).thenReturn(Optional.of(BUILD));
+    doThrow(new IllegalStateException("visitor failed")).when(visitor).visit(BUILD);
+
+    // the event is retried by the queue
+    assertThatThrownBy(() -> dispatcher.dispatch(BUILD)).isInstanceOf(IllegalStateException.class);
+
+    verify(eventBus, never()).post(any());
+  }
+
+  @Test
+  public void itDeliversANotificationOfTheCurrentState() throws Exception {
+    when(repositoryBuildService.get(1)).thenReturn(Optional.of(BUILD));
+
+    dispatcher.dispatch(new RepositoryBuildNotification("slack", BUILD));
+
+    verify(slack).visit(BUILD);
+    verify(gitHubStatus, never()).visit(any(RepositoryBuild.class));
+  }
+
+  @Test
+  public void itDropsANotificationOfAStateTheBuildMovedPast() throws Exception {
+    when(repositoryBuildService.get(1)).thenReturn(Optional.of(BUILD));
+
+    dispatcher.dispatch(new RepositoryBuildNotification("slack", build(RepositoryBuild.State.IN_PROGRESS)));
+
+    verify(slack, never()).visit(any(RepositoryBuild.class));
+  }
+
+  @Test
+  public void itIgnoresANotificationForAnUnknownNotifier() throws Exception {
+    dispatcher.dispatch(new RepositoryBuildNotification("removed", BUILD));
+
+    verify(repositoryBuildService, never()).get(anyLong());
+    verify(gitHubStatus, never()).visit(any(RepositoryBuild.class));
+    verify(slack, never()).visit(any(RepositoryBuild.class));
+  }
+
+  private static RepositoryBuild build(RepositoryBuild.State state) {
+    return RepositoryBuild.newBuilder(2, 3, state, BuildTrigger.forCommit("0000000000000000000000000000000000000000"), BuildOptions.defaultOptions())
+        .setId(Optional.of(1L))
+        .build();
+  }
+}
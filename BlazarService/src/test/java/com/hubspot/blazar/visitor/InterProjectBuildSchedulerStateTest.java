@@ -0,0 +1,90 @@
+package com.hubspot.blazar.visitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.blazar.base.DependencyGraph;
+import com.hubspot.blazar.base.InterProjectBuild;
+import com.hubspot.blazar.base.InterProjectBuildMapping;
+
+public class InterProjectBuildSchedulerStateTest {
+  private static final long INTER_PROJECT_BUILD_ID = 1;
+
+  // 1 -> 2 -> 3 and 1 -> 4 -> 3, modules 1 and 2 are in branch 10, modules 3 and 4 in branch 20
+  private static final DependencyGraph DIAMOND = new DependencyGraph(
+      ImmutableMap.<Integer, Set<Integer>>of(1, ImmutableSet.of(2, 4), 2, ImmutableSet.of(3), 4, ImmutableSet.of(3)),
+      Arrays.asList(1, 2, 4, 3));
+  private static final Map<Integer, Integer> DIAMOND_BRANCHES = ImmutableMap.of(1, 10, 2, 10, 3, 20, 4, 20);
+
+  @Test
+  public void itLaunchesTheDownstreamsWhoseUpstreamsSucceeded() {
+    InterProjectBuildSchedulerState state = new InterProjectBuildSchedulerState(INTER_PROJECT_BUILD_ID, DIAMOND, DIAMOND_BRANCHES, ImmutableSet.of(mapping(1, 1, InterProjectBuild.State.IN_PROGRESS)));
+
+    state.mappingChanged(mapping(1, 1, InterProjectBuild.State.SUCCEEDED));
+
+    // 3 has to wait for 2 which is built in another branch
+    assertThat(state.getLaunchableModulesByBranch(1).asMap()).isEqualTo(ImmutableMap.of(10, ImmutableSet.of(2), 20, ImmutableSet.of(4)));
+  }
+
+  @Test
+  public void itLaunchesChainsOfModulesInTheSameBranchTogether() {
+    DependencyGraph chain = new DependencyGraph(ImmutableMap.<Integer, Set<Integer>>of(1, ImmutableSet.of(2), 2, ImmutableSet.of(3)), Arrays.asList(1, 2, 3));
+    InterProjectBuildSchedulerState state = new InterProjectBuildSchedulerState(INTER_PROJECT_BUILD_ID, chain, ImmutableMap.of(1, 10, 2, 20, 3, 20), ImmutableSet.of(mapping(1, 1, InterProjectBuild.State.IN_PROGRESS)));
+
+    state.mappingChanged(mapping(1, 1, InterProjectBuild.State.SUCCEEDED));
+
+    assertThat(state.getLaunchableModulesByBranch(1).asMap()).isEqualTo(ImmutableMap.of(20, ImmutableSet.of(2, 3)));
+  }
+
+  @Test
+  public void itWaitsForAllUpstreamsToSucceed() {
+    InterProjectBuildSchedulerState state = new InterProjectBuildSchedulerState(INTER_PROJECT_BUILD_ID, DIAMOND, DIAMOND_BRANCHES, ImmutableSet.of(
+        mapping(1, 1, InterProjectBuild.State.SUCCEEDED),
+        mapping(2, 2, InterProjectBuild.State.IN_PROGRESS),
+        mapping(3, 4, InterProjectBuild.State.IN_PROGRESS)));
+
+    state.mappingChanged(mapping(3, 4, InterProjectBuild.State.SUCCEEDED));
+    assertThat(state.getLaunchableModulesByBranch(4).isEmpty()).isTrue();
+
+    state.mappingChanged(mapping(2, 2, InterProjectBuild.State.SUCCEEDED));
+    assertThat(state.getLaunchableModulesByBranch(2).asMap()).isEqualTo(ImmutableMap.of(20, ImmutableSet.of(3)));
+  }
+
+  @Test
+  public void itFindsTheModulesToCancelAndFinishesOnceAllModulesAreDone() {
+    InterProjectBuildSchedulerState state = new InterProjectBuildSchedulerState(INTER_PROJECT_BUILD_ID, DIAMOND, DIAMOND_BRANCHES, ImmutableSet.of(
+        mapping(1, 1, InterProjectBuild.State.SUCCEEDED),
+        mapping(2, 2, InterProjectBuild.State.IN_PROGRESS)));
+
+    state.mappingChanged(mapping(2, 2, InterProjectBuild.State.FAILED));
+    assertThat(state.getUnmappedDownstreamModules(2)).containsExactly(3);
+    state.mappingChanged(mapping(3, 3, InterProjectBuild.State.CANCELLED));
+    assertThat(state.isFinished()).isFalse();
+
+    state.mappingChanged(mapping(4, 4, InterProjectBuild.State.SUCCEEDED));
+    assertThat(state.isFinished()).isTrue();
+    assertThat(state.getMappingStates()).containsOnly(InterProjectBuild.State.SUCCEEDED, InterProjectBuild.State.FAILED, InterProjectBuild.State.CANCELLED);
+  }
+
+  @Test
+  public void itOnlyTrustsMappingsItKnowsAsTheyAre() {
+    InterProjectBuildSchedulerState state = new InterProjectBuildSchedulerState(INTER_PROJECT_BUILD_ID, DIAMOND, DIAMOND_BRANCHES, ImmutableSet.of(mapping(1, 1, InterProjectBuild.State.IN_PROGRESS)));
+
+    assertThat(state.isCurrent(mapping(1, 1, InterProjectBuild.State.IN_PROGRESS))).isTrue();
+    assertThat(state.isCurrent(mapping(1, 1, InterProjectBuild.State.SUCCEEDED))).isFalse();
+    assertThat(state.isCurrent(mapping(5, 1, InterProjectBuild.State.IN_PROGRESS))).isFalse();
+    assertThat(state.isCurrent(mapping(2, 2, InterProjectBuild.State.IN_PROGRESS))).isFalse();
+  }
+
+  private static InterProjectBuildMapping mapping(long id, int moduleId, InterProjectBuild.State state) {
+    return new InterProjectBuildMapping(Optional.of(id), INTER_PROJECT_BUILD_ID, DIAMOND_BRANCHES.get(moduleId), Optional.of(100L), moduleId, Optional.<Long>absent(), state);
+  }
+}
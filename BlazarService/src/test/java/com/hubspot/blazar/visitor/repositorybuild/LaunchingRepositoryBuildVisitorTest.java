@@ -34,6 +34,7 @@ import com.hubspot.blazar.base.GitInfo;
 import com.hubspot.blazar.base.MalformedFile;
 import com.hubspot.blazar.base.Module;
 import com.hubspot.blazar.base.RepositoryBuild;
+import com.hubspot.blazar.data.cache.ModuleBranchCache;
 import com.hubspot.blazar.data.service.BranchService;
 import com.hubspot.blazar.data.service.DependenciesService;
 import com.hubspot.blazar.data.service.InterProjectBuildMappingService;
@@ -57,6 +58,7 @@ public class LaunchingRepositoryBuildVisitorTest {
   private static final InterProjectBuildService interProjectBuildService = mock(InterProjectBuildService.class);
   private static final InterProjectBuildMappingService interProjectBuildMappingService = mock(InterProjectBuildMappingService.class);
   private static final ModuleService moduleService = mock(ModuleService.class);
+  private static final ModuleBranchCache moduleBranchCache = mock(ModuleBranchCache.class);
   private static final DependenciesService dependenciesService = mock(DependenciesService.class);
   private static final GitHubHelper gitHubHelper = mock(GitHubHelper.class);
 
@@ -104,6 +106,7 @@ public class LaunchingRepositoryBuildVisitorTest {
       interProjectBuildService,
       interProjectBuildMappingService,
       moduleService,
+      moduleBranchCache,
       dependenciesService,
       gitHubHelper);
 
@@ -0,0 +1,144 @@
+package com.hubspot.blazar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Requests the status of a branch with many modules from the running service and counts the queries it took using
+ * the jdbi timers of the service. The number of queries must not depend on the number of modules of the branch.
+ */
+public class BranchStatusQueryCountIT {
+  private static final int MODULE_COUNT = 250;
+  private static final int BUILD_COUNT = 4;
+  // branch, other branches, module states, last successful/non-skipped builds, queued and active builds, malformed files
+  private static final int MAX_QUERIES = 7;
+  private static final int SAMPLES = 5;
+  private static final String DAO_TIMER_PREFIX = "com.hubspot.blazar.data.dao.";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String BLAZAR_URL = String.format("http://localhost:%s", System.getProperty("blazar.port", "8099"));
+
+  private static int branchId;
+
+  @BeforeClass
+  public static void setupBranchWithManyModules() throws SQLException {
+    String url = String.format("jdbc:mysql://localhost:%s/%s", System.getProperty("mysql.port", "3306"), System.getProperty("blazar.mysql.database"));
+    try (Connection connection = DriverManager.getConnection(url, "root", System.getProperty("blazar.mysql.password"))) {
+      branchId = (int) insert(connection, "INSERT INTO branches (host, organization, repository, repositoryId, branch, active) " +
+          "VALUES ('git.example.com', 'test', 'QueryCount', 424242, 'master', 1)");
+
+      long[] repoBuildIds = new long[BUILD_COUNT];
+      for (int buildNumber = 1; buildNumber <= BUILD_COUNT; buildNumber++) {
+        // the last build failed so that the last successful and last non-skipped builds differ
+        String state = buildNumber == BUILD_COUNT ? "FAILED" : "SUCCEEDED";
+        repoBuildIds[buildNumber - 1] = insert(connection, String.format("INSERT INTO repo_builds (branchId, buildNumber, state, buildTrigger) " +
+            "VALUES (%d, %d, '%s', '{\"type\":\"MANUAL\",\"id\":\"QueryCountIT\"}')", branchId, buildNumber, state));
+      }
+
+      try (PreparedStatement modules = connection.prepareStatement("INSERT INTO modules (branchId, name, type, path, glob) VALUES (?, ?, 'config', ?, ?)",
+          Statement.RETURN_GENERATED_KEYS)) {
+        for (int i = 0; i < MODULE_COUNT; i++) {
+          modules.setInt(1, branchId);
+          modules.setString(2, "Module" + i);
+          modules.setString(3, String.format("/Module%d/.blazar.yaml", i));
+          modules.setString(4, String.format("/Module%d/**", i));
+          modules.addBatch();
+        }
+        modules.executeBatch();
+
+        try (ResultSet moduleIds = modules.getGeneratedKeys();
+             PreparedStatement moduleBuilds = connection.prepareStatement("INSERT INTO module_builds (moduleId, repoBuildId, buildNumber, state) VALUES (?, ?, ?, ?)")) {
+          while (moduleIds.next()) {
+            for (int buildNumber = 1; buildNumber <= BUILD_COUNT; buildNumber++) {
+              moduleBuilds.setInt(1, moduleIds.getInt(1));
+              moduleBuilds.setLong(2, repoBuildIds[buildNumber - 1]);
+              moduleBuilds.setInt(3, buildNumber);
+              moduleBuilds.setString(4, buildNumber == BUILD_COUNT ? "FAILED" : "SUCCEEDED");
+              moduleBuilds.addBatch();
+            }
+          }
+          moduleBuilds.executeBatch();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void itGetsTheBranchStatusWithAFixedNumberOfQueries() throws IOException {
+    // the service runs queries of its own in the background, the sample with the fewest is the closest to ours alone
+    long minQueries = Long.MAX_VALUE;
+    long minStateQueries = Long.MAX_VALUE;
+    for (int i = 0; i < SAMPLES; i++) {
+      QueryCount before = countQueries();
+      JsonNode status = get("/blazar/branches/" + branchId + "/status");
+      QueryCount after = countQueries();
+
+      assertEquals(MODULE_COUNT, status.path("moduleStates").size());
+      minQueries = Math.min(minQueries, after.queries - before.queries);
+      minStateQueries = Math.min(minStateQueries, after.stateQueries - before.stateQueries);
+    }
+
+    assertEquals(2, minStateQueries);
+    assertTrue(String.format("Expected at most %d queries but got %d", MAX_QUERIES, minQueries), minQueries <= MAX_QUERIES);
+  }
+
+  private static QueryCount countQueries() throws IOException {
+    QueryCount count = new QueryCount();
+    Iterator<Map.Entry<String, JsonNode>> timers = get("/admin/metrics").path("timers").fields();
+    while (timers.hasNext()) {
+      Map.Entry<String, JsonNode> timer = timers.next();
+      if (timer.getKey().startsWith(DAO_TIMER_PREFIX)) {
+        count.queries += timer.getValue().path("count").asLong();
+        if (timer.getKey().startsWith(DAO_TIMER_PREFIX + "StateDao.")) {
+          count.stateQueries += timer.getValue().path("count").asLong();
+        }
+      }
+    }
+
+    return count;
+  }
+
+  private static JsonNode get(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(BLAZAR_URL + path).openConnection();
+    try {
+      assertEquals(200, connection.getResponseCode());
+      return MAPPER.readTree(connection.getInputStream());
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static long insert(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+      try (ResultSet keys = statement.getGeneratedKeys()) {
+        keys.next();
+        return keys.getLong(1);
+      }
+    }
+  }
+
+  // the number of dao queries and the number of StateDao queries the service has run so far
+  private static class QueryCount {
+    private long queries;
+    private long stateQueries;
+  }
+}
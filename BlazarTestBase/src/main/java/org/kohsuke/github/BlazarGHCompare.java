@@ -43,9 +43,11 @@ public class BlazarGHCompare extends GHCompare {
 
 
   private Commit[] commits;
+  private GHCommit.File[] files;
 
-  public BlazarGHCompare(Commit[] commits){
+  public BlazarGHCompare(Commit[] commits, GHCommit.File[] files){
     this.commits = commits;
+    this.files = files;
   }
 
   @Override
@@ -53,6 +55,16 @@ public class BlazarGHCompare extends GHCompare {
     return this.commits;
   }
 
+  @Override
+  public GHCommit.File[] getFiles() {
+    return this.files;
+  }
+
+  @Override
+  public int getTotalCommits() {
+    return this.commits.length;
+  }
+
   public static Commit makeCommit(BlazarGHCommit commit) throws IOException {
     return new Commit(new InnerCommit(commit));
   }
@@ -10,6 +10,7 @@ import com.google.common.io.Resources;
 public class BlazarGHContent extends GHContent {
 
   private final String content;
+  private String sha;
 
   @JsonCreator
   public BlazarGHContent (@JsonProperty("content") String content) {
@@ -21,6 +22,15 @@ public class BlazarGHContent extends GHContent {
     return content;
   }
 
+  @Override
+  public String getSha() {
+    return sha;
+  }
+
+  public void setSha(String sha) {
+    this.sha = sha;
+  }
+
   @JsonCreator
   // lets us specify content w/o making extra yaml keys for a single field object
   public static BlazarGHContent fromString(String path) {
@@ -128,11 +128,13 @@ public class BlazarGHRepository extends GHRepository {
     int index2 = shas.indexOf(id2);
     List<BlazarGHCommit> compareListWrongType = commits.subList(index2, index1);
     List<BlazarGHCompare.Commit> compareList = new ArrayList<>();
+    List<GHCommit.File> files = new ArrayList<>();
     for (BlazarGHCommit commit : compareListWrongType) {
       compareList.add(BlazarGHCompare.makeCommit(commit));
+      files.addAll(commit.getFiles());
     }
     BlazarGHCompare.Commit commitArray[] = new BlazarGHCompare.Commit[compareList.size()];
-    return new BlazarGHCompare(compareList.toArray(commitArray));
+    return new BlazarGHCompare(compareList.toArray(commitArray), files.toArray(new GHCommit.File[files.size()]));
   }
 
   @Override
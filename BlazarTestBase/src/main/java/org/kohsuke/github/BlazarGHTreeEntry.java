@@ -16,6 +16,10 @@ public class BlazarGHTreeEntry extends GHTreeEntry {
     this.sha = sha;
     this.content = content;
     this.path = path;
+    if (content != null) {
+      // the shas of our test files are made up as well, but they are what the file is cached by
+      content.setSha(sha);
+    }
   }
 
   @Override
@@ -1,7 +1,9 @@
 package org.kohsuke.github;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class BlazarGitHub extends GitHub {
 
@@ -30,4 +32,13 @@ public class BlazarGitHub extends GitHub {
     }
     throw new IllegalArgumentException(String.format("Could not find repo with name %s", name));
   }
+
+  @Override
+  public GHRateLimit getRateLimit() throws IOException {
+    GHRateLimit rateLimit = new GHRateLimit();
+    rateLimit.limit = 5000;
+    rateLimit.remaining = 5000;
+    rateLimit.reset = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+    return rateLimit;
+  }
 }
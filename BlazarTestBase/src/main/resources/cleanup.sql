@@ -11,3 +11,4 @@ TRUNCATE TABLE module_builds;
 TRUNCATE TABLE malformed_files;
 TRUNCATE TABLE instant_message_configs;
 TRUNCATE TABLE queue_items;
+TRUNCATE TABLE queue_items_dead;